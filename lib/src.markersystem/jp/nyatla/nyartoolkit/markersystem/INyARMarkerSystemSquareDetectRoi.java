@@ -0,0 +1,42 @@
+/* 
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.markersystem;
+
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector;
+import jp.nyatla.nyartoolkit.core.types.NyARIntRect;
+
+/**
+ * 画像の一部の範囲から矩形を検出できる矩形検出器のインタフェイスです。
+ * {@link NyARMarkerSystem}は、矩形検出器がこのインタフェイスを持つ場合だけROIトラッキング({@link NyARMarkerSystem#setRoiTracking})を行います。
+ * 持たない場合は、常に全画面から矩形を検出します。
+ */
+public interface INyARMarkerSystemSquareDetectRoi extends INyARMarkerSystemSquareDetect
+{
+	/**
+	 * 画像の一部の範囲から矩形を検出します。範囲の境界に接する矩形は検出しません。
+	 */
+	public void detectMarkerCb(NyARSensor i_sensor,NyARIntRect i_area,int i_th,NyARSquareContourDetector.CbHandler i_handler);
+}
@@ -0,0 +1,42 @@
+/*
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ *
+ */
+package jp.nyatla.nyartoolkit.markersystem;
+
+/**
+ * {@link NyARSystemMetrics}の計測結果を受け取るインタフェイスです。
+ */
+public interface INyARSystemMetricsListener
+{
+	/**
+	 * 1フレーム分の計測が終了したことを通知します。
+	 * この関数は、update関数を呼び出したスレッドから呼び出されます。
+	 * @param i_metrics
+	 * 計測結果を格納したオブジェクト。
+	 * 直前のフレームの値は{@link NyARSystemMetrics#getTime}、{@link NyARSystemMetrics#getCount}、
+	 * 過去のフレームを含めた統計値は{@link NyARSystemMetrics#getPercentile}で得られます。
+	 */
+	public void onFrame(NyARSystemMetrics i_metrics);
+}
@@ -0,0 +1,711 @@
+/*
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ *
+ */
+package jp.nyatla.nyartoolkit.markersystem;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.Lock;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.coord2liner.NyARCoord2Linear;
+import jp.nyatla.nyartoolkit.core.histogram.algo.INyARHistogramAnalyzer_Threshold;
+import jp.nyatla.nyartoolkit.core.marker.artk.algo.NyARMatchPattLibrary_Color_WITHOUT_PCA;
+import jp.nyatla.nyartoolkit.core.marker.artk.match.NyARMatchPattDeviationColorData;
+import jp.nyatla.nyartoolkit.core.marker.artk.match.NyARMatchPattResult;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.NyIdMarkerParam;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.NyIdMarkerPattern;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.NyIdMarkerPickup;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.data.NyIdMarkerDataEncoder_RawBitId;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.data.NyIdMarkerData_RawBitId;
+import jp.nyatla.nyartoolkit.core.marker.psarplaycard.PsARPlayCardPickup;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARAdaptiveThresholdRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.perspectivecopy.INyARPerspectiveCopy;
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector;
+import jp.nyatla.nyartoolkit.core.transmat.INyARTransMat;
+import jp.nyatla.nyartoolkit.core.types.NyARIntCoordinates;
+import jp.nyatla.nyartoolkit.core.types.NyARIntPoint2d;
+import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix44;
+import jp.nyatla.nyartoolkit.markersystem.utils.MultiResolutionPattProvider;
+import jp.nyatla.nyartoolkit.markersystem.utils.NyIdRangeIndex;
+import jp.nyatla.nyartoolkit.markersystem.utils.SquareStack;
+import jp.nyatla.nyartoolkit.markersystem.utils.TMarkerData;
+import jp.nyatla.nyartoolkit.markersystem.utils.TrackingMatcher;
+
+/**
+ * このクラスは、{@link NyARMarkerCatalogue}のマーカを1つのカメラ画像から検出・トラッキングするクラスです。
+ * 検出結果は{@link NyARMarkerSystem}と同じです。
+ * <p>
+ * マーカの定義はカタログから参照して、検出状態だけをインスタンスが持ちます。
+ * 検出状態は検出中のマーカの分だけ作るので、カメラ毎のメモリは登録したマーカの数ではなく、
+ * 同時に検出しているマーカの数に比例します。
+ * カメラ毎に1つのインスタンスを作って、カメラ毎のスレッドから{@link #update}を呼び出します。
+ * インスタンス自体はスレッドセーフではありません。
+ * </p>
+ * <p>
+ * 検出していないマーカの状態は保持しません。
+ * {@link NyARMarkerSystem}と異なり、消失したマーカの姿勢行列や頂点座標を読み出すことはできません。
+ * </p>
+ */
+public class NyARCatalogueMarkerSystem extends NyARSingleCameraSystem
+{
+	/**　定数値。自動敷居値を示す値です。　*/
+	public final static int THLESHOLD_AUTO=NyARMarkerSystem.THLESHOLD_AUTO;
+	/** 定数値。適応的2値化を示す値です。詳細は{@link NyARMarkerSystem#THLESHOLD_ADAPTIVE}を参照してください。*/
+	public final static int THLESHOLD_ADAPTIVE=NyARMarkerSystem.THLESHOLD_ADAPTIVE;
+	/** マーカ消失時の、消失までのﾃﾞｨﾚｲ(フレーム数)の初期値です。*/
+	public final static int LOST_DELAY_DEFAULT=NyARMarkerSystem.LOST_DELAY_DEFAULT;
+	/** 1フレームで検出できるマーカの数の初期値です。*/
+	public final static int MAX_DETECT_MARKER_DEFAULT=32;
+	/**
+	 * 検出中のマーカの状態です。
+	 */
+	private static class Marker extends TMarkerData
+	{
+		/** マーカID（ハンドル）値*/
+		public int id;
+		/** 登録順の通し番号*/
+		public int order;
+		/** ARマーカの一致度*/
+		public double cf;
+		/** NyIdマーカ、ARプレイカードのID値*/
+		public long nyid;
+		/** NyIdマーカ、ARプレイカードの方位*/
+		public int dir;
+	}
+	private final static NyARDoubleMatrix44 ZERO_MATRIX=new NyARDoubleMatrix44();
+	private final NyARMarkerCatalogue _catalogue;
+	private final INyARMarkerSystemSquareDetect _sqdetect;
+	private final INyARHistogramAnalyzer_Threshold _hist_th;
+	private final INyARTransMat _transmat;
+	private final NyARCoord2Linear _coordline;
+	private int _last_gs_th;
+	private int _bin_threshold=THLESHOLD_AUTO;
+	private double _configense_th=0.5;
+	private int lost_th=LOST_DELAY_DEFAULT;
+	private long _time_stamp=-1;
+	/** 検出中のマーカ。登録順に並べます。*/
+	private final ArrayList<Marker> _active=new ArrayList<Marker>();
+	/** 再利用するマーカ*/
+	private final ArrayList<Marker> _pool=new ArrayList<Marker>();
+	/** 検出した矩形*/
+	private SquareStack _sq_stack=new SquareStack(MAX_DETECT_MARKER_DEFAULT);
+	/** 近距離頂点トラッキング*/
+	private final TrackingMatcher _tracking=new TrackingMatcher();
+	//NyIdマーカの作業領域
+	private final NyIdMarkerPickup _id_pickup=new NyIdMarkerPickup();
+	private final NyIdMarkerPattern _id_patt=new NyIdMarkerPattern();
+	private final NyIdMarkerParam _id_param=new NyIdMarkerParam();
+	private final NyIdMarkerDataEncoder_RawBitId _id_encoder=new NyIdMarkerDataEncoder_RawBitId();
+	private final NyIdMarkerData_RawBitId _id_data=new NyIdMarkerData_RawBitId();
+	//ARプレイカードの作業領域
+	private final PsARPlayCardPickup _ps_pickup=new PsARPlayCardPickup();
+	private final PsARPlayCardPickup.PsArIdParam _ps_param=new PsARPlayCardPickup.PsArIdParam();
+	//ARマーカの作業領域
+	/** カタログのグループ毎の、作業領域を持つライブラリ*/
+	private final ArrayList<NyARMatchPattLibrary_Color_WITHOUT_PCA> _libraries=new ArrayList<NyARMatchPattLibrary_Color_WITHOUT_PCA>();
+	private final MultiResolutionPattProvider _mpickup=new MultiResolutionPattProvider();
+	private final NyARMatchPattResult _patt_result=new NyARMatchPattResult();
+	private int[] _shortlist=new int[0];
+	/** ARマーカの候補。一致度の降順(同値は追加順)に並べます。*/
+	private int _num_of_cand=0;
+	private double[] _cand_cf=new double[0];
+	private int[] _cand_mk=new int[0];
+	private int[] _cand_dir=new int[0];
+	private SquareStack.Item[] _cand_sq=new SquareStack.Item[0];
+	//update中に使う値
+	private INyARPerspectiveCopy _ref_input_rfb;
+	private INyARGrayscaleRaster _ref_input_gs;
+	private final OnSquareDetect _on_sq_handler=new OnSquareDetect();
+
+	/**
+	 * コンストラクタです。
+	 * @param i_config
+	 * 初期化済の{@link INyARMarkerSystemConfig}を指定します。
+	 * @param i_catalogue
+	 * 検出するマーカのカタログ。インスタンスを生成した後に登録したマーカも検出します。
+	 */
+	public NyARCatalogueMarkerSystem(INyARMarkerSystemConfig i_config,NyARMarkerCatalogue i_catalogue)
+	{
+		this(i_config,i_catalogue,new SquareDetect(i_config.getScreenSize().w,i_config.getScreenSize().h));
+	}
+	/**
+	 * コンストラクタです。矩形検出器を指定してインスタンスを生成します。
+	 */
+	protected NyARCatalogueMarkerSystem(INyARMarkerSystemConfig i_config,NyARMarkerCatalogue i_catalogue,INyARMarkerSystemSquareDetect i_sqdetect)
+	{
+		super(i_config.getNyARSingleCameraView());
+		this._catalogue=i_catalogue;
+		this._sqdetect=i_sqdetect;
+		this._hist_th=i_config.createAutoThresholdArgorism();
+		this._transmat=i_config.createTransmatAlgorism();
+		this._coordline=new NyARCoord2Linear(this._view.getARParam().getScreenSize(),this._view.getARParam().getDistortionFactor());
+	}
+	/**
+	 * この関数は、インスタンスが参照するカタログを返します。
+	 */
+	public NyARMarkerCatalogue getCatalogue()
+	{
+		return this._catalogue;
+	}
+	/**
+	 * この関数は、1フレームで検出できるマーカの数を設定します。
+	 * 初期値は{@link #MAX_DETECT_MARKER_DEFAULT}です。これを越えたマーカは検出しません。
+	 */
+	public void setMaxDetectMarkerCapacity(int i_max_number_of_marker)
+	{
+		if(this._sq_stack.getArraySize()<i_max_number_of_marker){
+			this._sq_stack=new SquareStack(i_max_number_of_marker);
+		}
+	}
+	/**
+	 * この関数は、2値化敷居値を設定します。
+	 * @param i_th
+	 * 2値化敷居値。{@link #THLESHOLD_AUTO}を指定すると、自動調整になります。
+	 * {@link #THLESHOLD_ADAPTIVE}を指定すると、適応的2値化になります。
+	 * 適応的2値化は、矩形検出器が標準の実装の場合だけ指定できます。
+	 * @throws NyARRuntimeException
+	 * 標準でない矩形検出器に{@link #THLESHOLD_ADAPTIVE}を指定した場合
+	 */
+	public void setBinThreshold(int i_th)
+	{
+		if(this._sqdetect instanceof SquareDetect){
+			((SquareDetect)this._sqdetect)._adaptive=(i_th==THLESHOLD_ADAPTIVE);
+		}else if(i_th==THLESHOLD_ADAPTIVE){
+			throw new NyARRuntimeException("Adaptive threshold is not supported by this square detector.");
+		}
+		this._bin_threshold=i_th;
+	}
+	/**
+	 * この関数は、ARマーカ検出の、敷居値を設定します。
+	 * @param i_val
+	 * 敷居値。0.0&lt;n&lt;1.0の値を指定すること。
+	 */
+	public void setConfidenceThreshold(double i_val)
+	{
+		this._configense_th=i_val;
+	}
+	/**
+	 * この関数は、消失時のディレイ値を指定します。
+	 * デフォルト値は、{@link #LOST_DELAY_DEFAULT}です。
+	 */
+	public void setLostDelay(int i_delay)
+	{
+		this.lost_th=i_delay;
+	}
+	/**
+	 * この関数は、現在の２値化敷居値を返します。
+	 * @return
+	 * 敷居値(0-255)
+	 */
+	public int getCurrentThreshold()
+	{
+		return this._last_gs_th;
+	}
+	/**
+	 * マーカIDに対応する検出中のマーカを返します。
+	 * @return
+	 * 検出していなければnull
+	 */
+	private Marker getActive(int i_id)
+	{
+		ArrayList<Marker> active=this._active;
+		for(int i=active.size()-1;i>=0;i--){
+			Marker mk=active.get(i);
+			if(mk.id==i_id){
+				return mk;
+			}
+		}
+		return null;
+	}
+	/**
+	 * 検出中のマーカを返します。マーカを検出していなければ、例外を投げます。
+	 */
+	private Marker getActiveOrThrow(int i_id)
+	{
+		Marker mk=this.getActive(i_id);
+		if(mk==null){
+			throw new NyARRuntimeException("Marker is not exist.");
+		}
+		return mk;
+	}
+	/**
+	 * この関数は、 マーカIDに対応するマーカが検出されているかを返します。
+	 * @param i_id
+	 * マーカID（ハンドル）値。
+	 */
+	public boolean isExist(int i_id)
+	{
+		return this.getLife(i_id)>0;
+	}
+	/**
+	 * この関数は、マーカのライフ値を返します。
+	 * @return
+	 * ライフ値。検出していないマーカは0です。
+	 */
+	public long getLife(int i_id)
+	{
+		Marker mk=this.getActive(i_id);
+		return mk==null?0:mk.life;
+	}
+	/**
+	 * この関数は、マーカの消失カウンタの値を返します。
+	 * @return
+	 * 消失カウンタの値。検出していないマーカは{@link Integer#MAX_VALUE}です。
+	 */
+	public long getLostCount(int i_id)
+	{
+		Marker mk=this.getActive(i_id);
+		return mk==null?Integer.MAX_VALUE:mk.lost_count;
+	}
+	/**
+	 * この関数は、ARマーカの最近の一致度を返します。
+	 * {@link #isExist(int)}がtrueの時にだけ使用できます。
+	 */
+	public double getConfidence(int i_id)
+	{
+		if((i_id & NyARMarkerSystem.MASK_IDTYPE)!=NyARMarkerSystem.IDTYPE_ARTK){
+			throw new NyARRuntimeException();
+		}
+		return this.getActiveOrThrow(i_id).cf;
+	}
+	/**
+	 * この関数は、NyIdマーカのID値を返します。
+	 * {@link #isExist(int)}がtrueの時にだけ使用できます。
+	 */
+	public long getNyId(int i_id)
+	{
+		if((i_id & NyARMarkerSystem.MASK_IDTYPE)!=NyARMarkerSystem.IDTYPE_NYID){
+			throw new NyARRuntimeException();
+		}
+		return this.getActiveOrThrow(i_id).nyid;
+	}
+	/**
+	 * この関数は、マーカの姿勢変換行列を返します。
+	 * {@link #isExist(int)}がtrueの時にだけ使用できます。
+	 * @return
+	 * [readonly]
+	 * 姿勢行列を格納したオブジェクト。座標系は、ARToolKit座標系です。
+	 */
+	public NyARDoubleMatrix44 getTransformMatrix(int i_id)
+	{
+		return this.getActiveOrThrow(i_id).tmat;
+	}
+	/**
+	 * この関数は、マーカの4頂点の、スクリーン上の二次元座標を返します。
+	 * {@link #isExist(int)}がtrueの時にだけ使用できます。
+	 * @return
+	 * [readonly]
+	 */
+	public NyARIntPoint2d[] getVertex2D(int i_id)
+	{
+		return this.getActiveOrThrow(i_id).tl_vertex;
+	}
+	/**
+	 * この関数は入力画像でインスタンスの状態を更新します。
+	 * 関数の実行中は、カタログへのマーカの登録を待たせます。
+	 * @param i_sensor
+	 * 新しい入力画像を格納したオブジェクト
+	 */
+	public void update(NyARSensor i_sensor)
+	{
+		long time_stamp=i_sensor.getTimeStamp();
+		//センサのタイムスタンプが変化していなければ何もしない。
+		if(this._time_stamp==time_stamp){
+			return;
+		}
+		int th;
+		switch(this._bin_threshold){
+		case THLESHOLD_AUTO:
+			th=this._hist_th.getThreshold(i_sensor.getGsHistogram());
+			break;
+		case THLESHOLD_ADAPTIVE:
+			th=NyARAdaptiveThresholdRaster.getThreshold(NyARAdaptiveThresholdRaster.DEFAULT_OFFSET);
+			break;
+		default:
+			th=this._bin_threshold;
+			break;
+		}
+		Lock lock=this._catalogue._lock.readLock();
+		lock.lock();
+		try{
+			this.prepare();
+			//検出
+			this._ref_input_rfb=i_sensor.getPerspectiveCopy();
+			this._ref_input_gs=i_sensor.getGsImage();
+			this._sq_stack.clear();
+			this._sqdetect.detectMarkerCb(i_sensor,th,this._on_sq_handler);
+			//検出結果の反映処理
+			this._tracking.finish();
+			this.finishARMarker();
+			this.finishIdMarker();
+		}finally{
+			lock.unlock();
+		}
+		this.updateTransMat(time_stamp);
+		//タイムスタンプを更新
+		this._time_stamp=time_stamp;
+		this._last_gs_th=th;
+	}
+	/**
+	 * 検出前の初期化をします。カタログの読み出しロックを持った状態で呼び出します。
+	 */
+	private void prepare()
+	{
+		NyARMarkerCatalogue cat=this._catalogue;
+		//カタログに追加されたグループの作業領域
+		for(int i=this._libraries.size();i<cat._armk_groups.size();i++){
+			this._libraries.add(new NyARMatchPattLibrary_Color_WITHOUT_PCA(cat._armk_groups.get(i).library));
+		}
+		int n=cat._armk.size();
+		if(this._shortlist.length<n){
+			this._shortlist=new int[n*2];
+		}
+		this._num_of_cand=0;
+		ArrayList<Marker> active=this._active;
+		for(int i=active.size()-1;i>=0;i--){
+			Marker target=active.get(i);
+			//直前のsqのリセット
+			target.sq=null;
+			//消失カウンタのインクリメント
+			if(target.life>0){
+				target.lost_count++;
+			}
+		}
+		this._tracking.prepare(active);
+	}
+	/**
+	 * 矩形検出のコールバックです。
+	 */
+	private class OnSquareDetect implements NyARSquareContourDetector.CbHandler
+	{
+		public void detectMarkerCallback(NyARIntCoordinates i_coord,int[] i_vertex_index)
+		{
+			NyARCatalogueMarkerSystem.this.onSquare(i_coord,i_vertex_index);
+		}
+	}
+	/**
+	 * 矩形候補を判定します。
+	 * 判定の順序は{@link NyARMarkerSystem}と同じで、トラッキング、NyIdマーカ、ARプレイカード、ARマーカの順です。
+	 */
+	private void onSquare(NyARIntCoordinates i_coord,int[] i_vertex_index)
+	{
+		NyARMarkerCatalogue cat=this._catalogue;
+		//とりあえずSquareスタックを予約
+		SquareStack.Item sq_tmp=this._sq_stack.prePush();
+		if(sq_tmp==null){
+			return;
+		}
+		//観測座標点の記録
+		for(int i2=0;i2<4;i2++){
+			sq_tmp.ob_vertex[i2].setValue(i_coord.items[i_vertex_index[i2]]);
+		}
+		//頂点分布を計算
+		sq_tmp.vertex_area.setAreaRect(sq_tmp.ob_vertex,4);
+		//頂点座標の中心を計算
+		sq_tmp.center2d.setCenterPos(sq_tmp.ob_vertex,4);
+		//矩形面積
+		sq_tmp.rect_area=sq_tmp.vertex_area.w*sq_tmp.vertex_area.h;
+		boolean is_target_marker=
+			this._tracking.update(sq_tmp) ||
+			(cat._idmk.size()>0 && this.updateIdMarker(sq_tmp)) ||
+			(cat._psmk.size()>0 && this.updatePsARPlayCard(sq_tmp)) ||
+			(cat._armk.size()>0 && this.updateARMarker(sq_tmp));
+		//この矩形が検出対象なら、矩形情報を精密に再計算
+		if(is_target_marker){
+			for(int i2=0;i2<4;i2++){
+				this._coordline.coord2Line(i_vertex_index[i2],i_vertex_index[(i2+1)%4],i_coord,sq_tmp.line[i2]);
+			}
+			for (int i2 = 0; i2 < 4; i2++) {
+				//直線同士の交点計算
+				if(!sq_tmp.line[i2].crossPos(sq_tmp.line[(i2 + 3) % 4],sq_tmp.sqvertex[i2])){
+					throw new NyARRuntimeException();//まずない。ありえない。
+				}
+			}
+		}else{
+			//この矩形は検出対象にマークされなかったので、解除
+			this._sq_stack.pop();
+		}
+	}
+	/** 認識済のNyIdマーカの定義を探索対象から外すフィルタ*/
+	private final NyIdRangeIndex.Filter _free_nyid_filter=new NyIdRangeIndex.Filter(){
+		public boolean isAcceptable(int i_index)
+		{
+			//既に認識済なら無視
+			Marker mk=NyARCatalogueMarkerSystem.this.getActive(i_index|NyARMarkerSystem.IDTYPE_NYID);
+			return mk==null || mk.lost_count!=0;
+		}
+	};
+	/**
+	 * NyIdマーカを判定します。同じIDに反応する定義が複数ある場合は、認識済でない定義のうち、後で登録した定義を選びます。
+	 */
+	private boolean updateIdMarker(SquareStack.Item i_sq)
+	{
+		if(!this._id_pickup.pickFromRaster(this._ref_input_gs,i_sq.ob_vertex,this._id_patt,this._id_param)){
+			return false;
+		}
+		if(!this._id_encoder.encode(this._id_patt,this._id_data)){
+			return false;
+		}
+		NyARMarkerCatalogue cat=this._catalogue;
+		long s=this._id_data.marker_id;
+		int idx=cat._idmk_index.search(s,this._free_nyid_filter);
+		if(idx<0){
+			return false;
+		}
+		Marker target=this.getOrActivate(idx|NyARMarkerSystem.IDTYPE_NYID,cat._idmk.get(idx).order,cat._idmk.get(idx).marker_size);
+		target.nyid=s;
+		target.dir=this._id_param.direction;
+		target.sq=i_sq;
+		return true;
+	}
+	/**
+	 * ARプレイカードを判定します。
+	 */
+	private boolean updatePsARPlayCard(SquareStack.Item i_sq)
+	{
+		if(!this._ps_pickup.getARPlayCardId(this._ref_input_gs,i_sq.ob_vertex,this._ps_param)){
+			return false;
+		}
+		NyARMarkerCatalogue cat=this._catalogue;
+		int s=this._ps_param.id;
+		for(int i=cat._psmk.size()-1;i>=0;i--){
+			NyARMarkerCatalogue.IdMarker mk=cat._psmk.get(i);
+			if(mk.range_s>s || s>mk.range_e){
+				continue;
+			}
+			Marker target=this.getOrActivate(i|NyARMarkerSystem.IDTYPE_PSID,mk.order,mk.marker_size);
+			//既に認識済なら無視
+			if(target.lost_count==0){
+				continue;
+			}
+			target.nyid=s;
+			target.dir=this._ps_param.direction;
+			target.sq=i_sq;
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * ARマーカを判定して、敷居値を越えたものを候補に追加します。
+	 */
+	private boolean updateARMarker(SquareStack.Item i_sq)
+	{
+		NyARMarkerCatalogue cat=this._catalogue;
+		NyARMatchPattResult pr=this._patt_result;
+		int first=this._num_of_cand;
+		for(int i=cat._armk_groups.size()-1;i>=0;i--){
+			NyARMarkerCatalogue.ARGroup g=cat._armk_groups.get(i);
+			//解像度に一致する画像を取得
+			NyARMatchPattDeviationColorData diff=this._mpickup.getDeviationColorData(g.patt_w,g.patt_h,g.patt_edge_percentage,this._ref_input_rfb,i_sq.ob_vertex);
+			int n=this._libraries.get(i).shortlist(diff,this._configense_th,this._shortlist);
+			for(int j=0;j<n;j++){
+				int idx=g.marker_index[this._shortlist[j]];
+				if(!cat._armk.get(idx).matchpatt.evaluate(diff,pr)){
+					continue;
+				}
+				//敷居値をチェック
+				if(pr.confidence<this._configense_th){
+					continue;
+				}
+				this.addCandidate(first,pr.confidence,idx,pr.direction,i_sq);
+			}
+		}
+		return this._num_of_cand>first;
+	}
+	/**
+	 * ARマーカの候補を追加します。
+	 * 1つの矩形の候補は、マーカの番号の降順に追加した場合と同じ順序に並べます。
+	 * @param i_first
+	 * この矩形の最初の候補の位置
+	 */
+	private void addCandidate(int i_first,double i_cf,int i_mk,int i_dir,SquareStack.Item i_sq)
+	{
+		int n=this._num_of_cand;
+		if(this._cand_cf.length<=n){
+			int l=n*2+4;
+			this._cand_cf=java.util.Arrays.copyOf(this._cand_cf,l);
+			this._cand_mk=java.util.Arrays.copyOf(this._cand_mk,l);
+			this._cand_dir=java.util.Arrays.copyOf(this._cand_dir,l);
+			this._cand_sq=java.util.Arrays.copyOf(this._cand_sq,l);
+		}
+		//一致度が小さい候補の前。同値の場合は、この矩形のマーカ番号が小さい候補の前。
+		int ip=n;
+		while(ip>0){
+			int p=ip-1;
+			double cf=this._cand_cf[p];
+			if(cf<i_cf || (cf==i_cf && p>=i_first && this._cand_mk[p]<i_mk)){
+				ip=p;
+				continue;
+			}
+			break;
+		}
+		System.arraycopy(this._cand_cf,ip,this._cand_cf,ip+1,n-ip);
+		System.arraycopy(this._cand_mk,ip,this._cand_mk,ip+1,n-ip);
+		System.arraycopy(this._cand_dir,ip,this._cand_dir,ip+1,n-ip);
+		System.arraycopy(this._cand_sq,ip,this._cand_sq,ip+1,n-ip);
+		this._cand_cf[ip]=i_cf;
+		this._cand_mk[ip]=i_mk;
+		this._cand_dir[ip]=i_dir;
+		this._cand_sq[ip]=i_sq;
+		this._num_of_cand=n+1;
+	}
+	/**
+	 * ARマーカの候補を、一致度が高い順にマーカへ割り当てます。
+	 */
+	private void finishARMarker()
+	{
+		NyARMarkerCatalogue cat=this._catalogue;
+		int n=this._num_of_cand;
+		int[] mk=this._cand_mk;
+		SquareStack.Item[] sq=this._cand_sq;
+		for(int i=0;i<n;i++){
+			if(sq[i]==null){
+				continue;
+			}
+			int idx=mk[i];
+			NyARMarkerCatalogue.ARMarker def=cat._armk.get(idx);
+			Marker target=this.getOrActivate(idx|NyARMarkerSystem.IDTYPE_ARTK,def.order,def.marker_size);
+			if(target.lost_count>0){
+				//未割当のマーカのみ検出操作を実行。
+				int dir=this._cand_dir[i];
+				target.cf=this._cand_cf[i];
+				target.lost_count=0;
+				target.life++;
+				target.sq=sq[i];
+				target.sq.rotateVertexL(4-dir);
+				NyARIntPoint2d.shiftCopy(sq[i].ob_vertex,target.tl_vertex,4-dir);
+				target.tl_center.setValue(sq[i].center2d);
+				target.tl_rect_area=sq[i].rect_area;
+			}
+			//基準アイテムと重複するアイテムを削除する。
+			SquareStack.Item top_sq=sq[i];
+			for(int j=i+1;j<n;j++){
+				if(sq[j]!=null && (mk[j]==idx || sq[j]==top_sq)){
+					sq[j]=null;
+				}
+			}
+			sq[i]=null;
+		}
+		this._num_of_cand=0;
+	}
+	/**
+	 * NyIdマーカとARプレイカードの結果を反映します。
+	 */
+	private void finishIdMarker()
+	{
+		ArrayList<Marker> active=this._active;
+		for(int i=active.size()-1;i>=0;i--){
+			Marker target=active.get(i);
+			if((target.id & NyARMarkerSystem.MASK_IDTYPE)==NyARMarkerSystem.IDTYPE_ARTK){
+				continue;
+			}
+			if(target.sq==null){
+				continue;
+			}
+			if(target.lost_count>0){
+				//参照はそのままで、dirだけ調整する。
+				target.lost_count=0;
+				target.life++;
+				target.sq.rotateVertexL(4-target.dir);
+				NyARIntPoint2d.shiftCopy(target.sq.ob_vertex,target.tl_vertex,4-target.dir);
+				target.tl_center.setValue(target.sq.center2d);
+				target.tl_rect_area=target.sq.rect_area;
+			}
+		}
+	}
+	/**
+	 * 消失判定と姿勢行列の計算をして、消失したマーカを検出中のマーカから外します。
+	 */
+	private void updateTransMat(long i_time_stamp)
+	{
+		ArrayList<Marker> active=this._active;
+		//期限切れチェック
+		for(int i=active.size()-1;i>=0;i--){
+			Marker item=active.get(i);
+			if(item.lost_count>this.lost_th){
+				//連続で検出できなかった場合
+				item.life=0;//活性off
+			}else if(item.sq!=null){
+				//直前のsqを検出できた場合
+				if(!this._transmat.transMatContinue(item.sq,item.marker_offset,item.tmat,item.last_param.last_error,item.tmat,item.last_param)){
+					if(!this._transmat.transMat(item.sq,item.marker_offset,item.tmat,item.last_param)){
+						item.life=0;//活性off
+					}
+				}
+			}
+		}
+		//各ターゲットの更新
+		for(int i=active.size()-1;i>=0;i--){
+			Marker target=active.get(i);
+			if(target.lost_count==0){
+				target.time_stamp=i_time_stamp;
+				//lifeが1(開始時検出のときのみ)
+				if(target.life==1){
+					this._transmat.transMat(target.sq,target.marker_offset,target.tmat,target.last_param);
+				}
+			}
+		}
+		//消失したマーカを外す
+		for(int i=active.size()-1;i>=0;i--){
+			Marker target=active.get(i);
+			if(target.life==0){
+				active.remove(i);
+				this._pool.add(target);
+			}
+		}
+	}
+	/**
+	 * マーカIDに対応する検出中のマーカを返します。検出していなければ、未検出の状態で検出中のマーカに加えます。
+	 */
+	private Marker getOrActivate(int i_id,int i_order,double i_marker_size)
+	{
+		Marker mk=this.getActive(i_id);
+		if(mk!=null){
+			return mk;
+		}
+		ArrayList<Marker> pool=this._pool;
+		mk=pool.size()>0?pool.remove(pool.size()-1):new Marker();
+		mk.id=i_id;
+		mk.order=i_order;
+		mk.life=0;
+		mk.lost_count=Integer.MAX_VALUE;
+		mk.sq=null;
+		mk.cf=0;
+		mk.nyid=0;
+		mk.dir=0;
+		mk.tmat.setValue(ZERO_MATRIX);
+		mk.last_param.last_error=0;
+		mk.marker_offset.setSquare(i_marker_size);
+		//登録順に挿入
+		ArrayList<Marker> active=this._active;
+		int ip=active.size();
+		while(ip>0 && active.get(ip-1).order>i_order){
+			ip--;
+		}
+		active.add(ip,mk);
+		return mk;
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ *
+ */
+package jp.nyatla.nyartoolkit.markersystem;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.marker.artk.NyARCode;
+import jp.nyatla.nyartoolkit.core.marker.artk.algo.NyARMatchPattLibrary_Color_WITHOUT_PCA;
+import jp.nyatla.nyartoolkit.core.marker.artk.algo.NyARMatchPatt_Color_WITHOUT_PCA;
+import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.NyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.perspectivecopy.INyARPerspectiveCopy;
+import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
+import jp.nyatla.nyartoolkit.markersystem.utils.NyIdRangeIndex;
+
+/**
+ * このクラスは、複数の{@link NyARCatalogueMarkerSystem}で共有するマーカ定義のカタログです。
+ * <p>
+ * カタログはマーカの定義(パターン、IDの範囲、サイズ)だけを持ち、検出状態は持ちません。
+ * 検出状態はカメラ毎の{@link NyARCatalogueMarkerSystem}が、検出中のマーカの分だけ持ちます。
+ * 登録した定義は変更されないので、1つのカタログを任意の数のカメラで共有できます。
+ * </p>
+ * <p>
+ * 関数はスレッドセーフです。マーカの登録は、登録中のカタログを参照する{@link NyARCatalogueMarkerSystem#update}が終わるまで待ちます。
+ * マーカID（ハンドル）値は、{@link NyARMarkerSystem}と同じ形式です。
+ * </p>
+ */
+public class NyARMarkerCatalogue
+{
+	/**
+	 * ARマーカの定義です。
+	 */
+	static class ARMarker
+	{
+		/** 登録順の通し番号(全種類のマーカで共通)*/
+		public final int order;
+		public final NyARCode code;
+		public final NyARMatchPatt_Color_WITHOUT_PCA matchpatt;
+		public final int patt_w;
+		public final int patt_h;
+		public final int patt_edge_percentage;
+		public final double marker_size;
+		public ARMarker(int i_order,NyARCode i_code,int i_patt_edge_percentage,double i_marker_size)
+		{
+			this.order=i_order;
+			this.code=i_code;
+			this.matchpatt=new NyARMatchPatt_Color_WITHOUT_PCA(i_code);
+			this.patt_w=i_code.getWidth();
+			this.patt_h=i_code.getHeight();
+			this.patt_edge_percentage=i_patt_edge_percentage;
+			this.marker_size=i_marker_size;
+		}
+	}
+	/**
+	 * 解像度とエッジ割合が同じARマーカのグループです。
+	 */
+	static class ARGroup
+	{
+		public final int patt_w;
+		public final int patt_h;
+		public final int patt_edge_percentage;
+		/** 基準パターンの表。比較には{@link NyARMatchPattLibrary_Color_WITHOUT_PCA#NyARMatchPattLibrary_Color_WITHOUT_PCA(NyARMatchPattLibrary_Color_WITHOUT_PCA)}で作ったインスタンスを使います。*/
+		public final NyARMatchPattLibrary_Color_WITHOUT_PCA library;
+		/** ライブラリのパターン番号から、ARマーカの番号への変換表*/
+		public int[] marker_index=new int[4];
+		public ARGroup(ARMarker i_marker)
+		{
+			this.patt_w=i_marker.patt_w;
+			this.patt_h=i_marker.patt_h;
+			this.patt_edge_percentage=i_marker.patt_edge_percentage;
+			this.library=new NyARMatchPattLibrary_Color_WITHOUT_PCA(i_marker.patt_w,i_marker.patt_h);
+		}
+		public boolean isGroupOf(ARMarker i_marker)
+		{
+			return this.patt_w==i_marker.patt_w && this.patt_h==i_marker.patt_h && this.patt_edge_percentage==i_marker.patt_edge_percentage;
+		}
+		public void add(ARMarker i_marker,int i_marker_index)
+		{
+			int idx=this.library.addARCode(i_marker.code);
+			if(idx>=this.marker_index.length){
+				int[] t=new int[this.marker_index.length*2];
+				System.arraycopy(this.marker_index,0,t,0,this.marker_index.length);
+				this.marker_index=t;
+			}
+			this.marker_index[idx]=i_marker_index;
+		}
+	}
+	/**
+	 * NyIdマーカとARプレイカードの定義です。
+	 */
+	static class IdMarker
+	{
+		/** 登録順の通し番号(全種類のマーカで共通)*/
+		public final int order;
+		/** 反応するidの開始レンジ*/
+		public final long range_s;
+		/** 反応するidの終了レンジ*/
+		public final long range_e;
+		public final double marker_size;
+		public IdMarker(int i_order,long i_range_s,long i_range_e,double i_marker_size)
+		{
+			this.order=i_order;
+			this.range_s=i_range_s;
+			this.range_e=i_range_e;
+			this.marker_size=i_marker_size;
+		}
+	}
+	/** 登録と参照の排他制御。参照側は{@link NyARCatalogueMarkerSystem#update}の間、読み出しロックを持ちます。*/
+	final ReentrantReadWriteLock _lock=new ReentrantReadWriteLock();
+	final ArrayList<ARMarker> _armk=new ArrayList<ARMarker>();
+	final ArrayList<ARGroup> _armk_groups=new ArrayList<ARGroup>();
+	final ArrayList<IdMarker> _idmk=new ArrayList<IdMarker>();
+	/** _idmkのIDの範囲インデクス*/
+	final NyIdRangeIndex _idmk_index=new NyIdRangeIndex();
+	final ArrayList<IdMarker> _psmk=new ArrayList<IdMarker>();
+	/** 次に登録するマーカの通し番号*/
+	private int _number_of_marker=0;
+	/**
+	 * コンストラクタです。空のカタログを作ります。
+	 */
+	public NyARMarkerCatalogue()
+	{
+	}
+	/**
+	 * この関数は、1個のIdマーカをカタログに登録します。
+	 * @param i_id
+	 * 登録するNyIdマーカのid値
+	 * @param i_marker_size
+	 * マーカの四方サイズ[mm]
+	 * @return
+	 * マーカID（ハンドル）値。
+	 */
+	public int addNyIdMarker(long i_id,double i_marker_size)
+	{
+		return this.addNyIdMarker(i_id,i_id,i_marker_size);
+	}
+	/**
+	 * この関数は、ID範囲を持つIdマーカをカタログに登録します。
+	 * 複数の定義が同じIDに反応する場合は、後で登録した定義が優先します。
+	 * @param i_id_s
+	 * ID範囲の開始値
+	 * @param i_id_e
+	 * ID範囲の終了値
+	 * @param i_marker_size
+	 * マーカの四方サイズ[mm]
+	 * @return
+	 * マーカID（ハンドル）値。
+	 */
+	public int addNyIdMarker(long i_id_s,long i_id_e,double i_marker_size)
+	{
+		this._lock.writeLock().lock();
+		try{
+			int n=this._idmk.size();
+			checkCapacity(n);
+			this._idmk.add(new IdMarker(this._number_of_marker++,i_id_s,i_id_e,i_marker_size));
+			this._idmk_index.add(i_id_s,i_id_e);
+			this._idmk_index.optimize();
+			return n|NyARMarkerSystem.IDTYPE_NYID;
+		}finally{
+			this._lock.writeLock().unlock();
+		}
+	}
+	/**
+	 * この関数は、ID範囲を持つARプレイカードをカタログに登録します。
+	 * @param i_id_s
+	 * ID範囲の開始値(1-6)
+	 * @param i_id_e
+	 * ID範囲の終了値(1-6)
+	 * @param i_marker_size
+	 * マーカの四方サイズ[mm]
+	 * @return
+	 * マーカID（ハンドル）値。
+	 */
+	public int addPsARPlayCard(int i_id_s,int i_id_e,double i_marker_size)
+	{
+		if(i_id_s<1 || i_id_e>6 || i_id_s>i_id_e){
+			throw new NyARRuntimeException();
+		}
+		this._lock.writeLock().lock();
+		try{
+			int n=this._psmk.size();
+			checkCapacity(n);
+			this._psmk.add(new IdMarker(this._number_of_marker++,i_id_s,i_id_e,i_marker_size));
+			return n|NyARMarkerSystem.IDTYPE_PSID;
+		}finally{
+			this._lock.writeLock().unlock();
+		}
+	}
+	/**
+	 * この関数は、1個のARプレイカードをカタログに登録します。
+	 * @param i_id
+	 * ARプレイカードのID(1-6)
+	 * @param i_marker_size
+	 * マーカの四方サイズ[mm]
+	 * @return
+	 * マーカID（ハンドル）値。
+	 */
+	public int addPsARPlayCard(int i_id,double i_marker_size)
+	{
+		return this.addPsARPlayCard(i_id,i_id,i_marker_size);
+	}
+	/**
+	 * この関数は、ARToolKitスタイルのマーカーをカタログに登録します。
+	 * @param i_code
+	 * 登録するマーカパターンオブジェクト。カタログが参照するので、登録後に変更しないでください。
+	 * @param i_patt_edge_percentage
+	 * エッジ割合。ARToolkitと同じ場合は25を指定します。
+	 * @param i_marker_size
+	 * マーカの平方サイズ[mm]
+	 * @return
+	 * マーカID（ハンドル）値。
+	 */
+	public int addARMarker(NyARCode i_code,int i_patt_edge_percentage,double i_marker_size)
+	{
+		this._lock.writeLock().lock();
+		try{
+			int n=this._armk.size();
+			checkCapacity(n);
+			ARMarker mk=new ARMarker(this._number_of_marker,i_code,i_patt_edge_percentage,i_marker_size);
+			//グループへ登録
+			ARGroup g=null;
+			for(int i=0;i<this._armk_groups.size();i++){
+				if(this._armk_groups.get(i).isGroupOf(mk)){
+					g=this._armk_groups.get(i);
+					break;
+				}
+			}
+			if(g==null){
+				g=new ARGroup(mk);
+				this._armk_groups.add(g);
+			}
+			g.add(mk,n);
+			this._armk.add(mk);
+			this._number_of_marker++;
+			return n|NyARMarkerSystem.IDTYPE_ARTK;
+		}finally{
+			this._lock.writeLock().unlock();
+		}
+	}
+	/**
+	 * この関数は、ARToolKitスタイルのマーカーをストリームから読みだして、登録します。
+	 * @param i_stream
+	 * マーカデータを読み出すストリーム
+	 * @param i_patt_edge_percentage
+	 * エッジ割合。ARToolkitと同じ場合は25を指定します。
+	 * @param i_marker_size
+	 * マーカの平方サイズ[mm]
+	 * @return
+	 * マーカID（ハンドル）値。
+	 */
+	public int addARMarker(InputStream i_stream,int i_patt_resolution,int i_patt_edge_percentage,double i_marker_size)
+	{
+		NyARCode c=NyARCode.loadFromARPattFile(i_stream,i_patt_resolution,i_patt_resolution);
+		return this.addARMarker(c, i_patt_edge_percentage, i_marker_size);
+	}
+	/**
+	 * この関数は、ARToolKitスタイルのマーカーをファイルから読みだして、登録します。
+	 * @param i_file_name
+	 * マーカデータのファイル名
+	 * @param i_patt_edge_percentage
+	 * エッジ割合。ARToolkitと同じ場合は25を指定します。
+	 * @param i_marker_size
+	 * マーカの平方サイズ[mm]
+	 * @return
+	 * マーカID（ハンドル）値。
+	 */
+	public int addARMarker(String i_file_name,int i_patt_resolution,int i_patt_edge_percentage,double i_marker_size)
+	{
+		try{
+			NyARCode c=NyARCode.loadFromARPattFile(new FileInputStream(i_file_name),i_patt_resolution,i_patt_resolution);
+			return this.addARMarker(c,i_patt_edge_percentage, i_marker_size);
+		}catch(Exception e){
+			throw new NyARRuntimeException(e);
+		}
+	}
+	/**
+	 * この関数は、画像からARマーカパターンを生成して、登録します。
+	 * @param i_raster
+	 * マーカ画像を格納したラスタオブジェクト
+	 * @param i_patt_resolution
+	 * マーカの解像度
+	 * @param i_patt_edge_percentage
+	 * マーカのエッジ領域のサイズ。ARToolKitスタイルの画像を用いる場合は、25を指定します。
+	 * @param i_marker_size
+	 * マーカの平方サイズ[mm]
+	 * @return
+	 * マーカID（ハンドル）値。
+	 */
+	public int addARMarker(INyARRgbRaster i_raster,int i_patt_resolution,int i_patt_edge_percentage,double i_marker_size)
+	{
+		NyARCode c=new NyARCode(i_patt_resolution,i_patt_resolution);
+		NyARIntSize s=i_raster.getSize();
+		//ラスタからマーカパターンを切り出す。
+		INyARPerspectiveCopy pc=(INyARPerspectiveCopy)i_raster.createInterface(INyARPerspectiveCopy.class);
+		INyARRgbRaster tr=NyARRgbRaster.createInstance(i_patt_resolution,i_patt_resolution);
+		pc.copyPatt(0,0,s.w,0,s.w,s.h,0,s.h,i_patt_edge_percentage, i_patt_edge_percentage,4, tr);
+		//切り出したパターンをセット
+		c.setRaster(tr);
+		return this.addARMarker(c,i_patt_edge_percentage,i_marker_size);
+	}
+	/**
+	 * ハンドル値に入りきらない数のマーカを登録しようとしたら、例外を投げます。
+	 */
+	private static void checkCapacity(int i_number_of_marker)
+	{
+		if(i_number_of_marker>NyARMarkerSystem.MASK_IDNUM){
+			throw new NyARRuntimeException("Too many markers");
+		}
+	}
+}
@@ -33,16 +33,17 @@ import jp.nyatla.nyartoolkit.core.histogram.algo.INyARHistogramAnalyzer_Threshol
 import jp.nyatla.nyartoolkit.core.marker.artk.NyARCode;
 import jp.nyatla.nyartoolkit.core.param.NyARParam;
 import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARAdaptiveThresholdRaster;
 import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
 import jp.nyatla.nyartoolkit.core.raster.rgb.NyARRgbRaster;
 import jp.nyatla.nyartoolkit.core.rasterdriver.perspectivecopy.INyARPerspectiveCopy;
 import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector;
-import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector_Rle;
 import jp.nyatla.nyartoolkit.core.transmat.INyARTransMat;
 import jp.nyatla.nyartoolkit.core.types.NyARDoublePoint2d;
 import jp.nyatla.nyartoolkit.core.types.NyARDoublePoint3d;
 import jp.nyatla.nyartoolkit.core.types.NyARIntCoordinates;
 import jp.nyatla.nyartoolkit.core.types.NyARIntPoint2d;
+import jp.nyatla.nyartoolkit.core.types.NyARIntRect;
 import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
 import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix44;
 import jp.nyatla.nyartoolkit.markersystem.utils.*;
@@ -57,15 +58,21 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 {
 	/**　定数値。自動敷居値を示す値です。　*/
 	public final static int THLESHOLD_AUTO=0x7fffffff;
+	/**
+	 * 定数値。適応的2値化を示す値です。
+	 * 画素毎に周囲の平均値と比較するので、照明のむらがある画像でも1回のラベリングでマーカを検出できます。
+	 * 詳細は{@link NyARAdaptiveThresholdRaster}を参照してください。
+	 */
+	public final static int THLESHOLD_ADAPTIVE=0x7ffffffe;
 	/** マーカ消失時の、消失までのﾃﾞｨﾚｲ(フレーム数)の初期値です。*/
 	public final static int LOST_DELAY_DEFAULT=5;
 	
 	
-	private static final int MASK_IDTYPE=0x7ffff000;
-	private static final int MASK_IDNUM =0x00000fff;
-	private static final int IDTYPE_ARTK=0x00000000;
-	private static final int IDTYPE_NYID=0x00001000;
-	private static final int IDTYPE_PSID=0x00002000;
+	static final int MASK_IDTYPE=0x7ffff000;
+	static final int MASK_IDNUM =0x00000fff;
+	static final int IDTYPE_ARTK=0x00000000;
+	static final int IDTYPE_NYID=0x00001000;
+	static final int IDTYPE_PSID=0x00002000;
 
 	final protected INyARMarkerSystemSquareDetect _sqdetect;
 	final protected INyARHistogramAnalyzer_Threshold _hist_th;
@@ -86,10 +93,20 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 	 * 初期化済の{@link MarkerSystem}を指定します。
 	 */
 	public NyARMarkerSystem(INyARMarkerSystemConfig i_config)
+	{
+		this(i_config,new SquareDetect(i_config.getScreenSize().w,i_config.getScreenSize().h));
+	}
+	/**
+	 * コンストラクタです。矩形検出器を指定してインスタンスを生成します。
+	 * @param i_config
+	 * 初期化済の{@link MarkerSystem}を指定します。
+	 * @param i_sqdetect
+	 * 矩形検出器
+	 */
+	protected NyARMarkerSystem(INyARMarkerSystemConfig i_config,INyARMarkerSystemSquareDetect i_sqdetect)
 	{
 		super(i_config.getNyARSingleCameraView());
-		NyARIntSize s=i_config.getScreenSize();
-		this._sqdetect=new SquareDetect(s.w,s.h);
+		this._sqdetect=i_sqdetect;
 		this._hist_th=i_config.createAutoThresholdArgorism();
 		this._armk_list=new ARMarkerList();
 		this._idmk_list=new NyIdList();
@@ -316,6 +333,7 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 	/**
 	 * この関数は、現在の２値化敷居値を返します。
 	 * 自動敷居値を選択している場合は、直近に検出した敷居値を返します。
+	 * 適応的2値化を選択している場合は、{@link NyARAdaptiveThresholdRaster}の画像に対する敷居値を返します。
 	 * @return
 	 * 敷居値(0-255)
 	 */
@@ -584,10 +602,45 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 	 * この関数は、2値化敷居値を設定します。
 	 * @param i_th
 	 * 2値化敷居値。{@link NyARMarkerSystem#THLESHOLD_AUTO}を指定すると、自動調整になります。
+	 * {@link NyARMarkerSystem#THLESHOLD_ADAPTIVE}を指定すると、適応的2値化になります。
+	 * 適応的2値化は、矩形検出器が標準の実装の場合だけ指定できます。
+	 * @throws NyARRuntimeException
+	 * 標準でない矩形検出器に{@link NyARMarkerSystem#THLESHOLD_ADAPTIVE}を指定した場合
+	 */
+	public void setBinThreshold(int i_th)
+	{
+		if(this._sqdetect instanceof SquareDetect){
+			((SquareDetect)this._sqdetect)._adaptive=(i_th==THLESHOLD_ADAPTIVE);
+		}else if(i_th==THLESHOLD_ADAPTIVE){
+			throw new NyARRuntimeException("Adaptive threshold is not supported by this square detector.");
+		}
+		this._bin_threshold=i_th;
+	}
+	/**
+	 * {@link #setBinThreshold}で設定した値を返します。
 	 */
-	public void setBinThreshold(int i_th)
+	int getBinThreshold()
 	{
-		this._bin_threshold=i_th;
+		return this._bin_threshold;
+	}
+	/**
+	 * 種類毎のマーカの登録数を返します。
+	 * @param i_idtype
+	 * IDTYPE_ARTK,IDTYPE_NYID,IDTYPE_PSIDの何れか
+	 */
+	int getNumberOfMarker(int i_idtype)
+	{
+		switch(i_idtype)
+		{
+		case IDTYPE_ARTK:
+			return this._armk_list.size();
+		case IDTYPE_NYID:
+			return this._idmk_list.size();
+		case IDTYPE_PSID:
+			return this._psmk_list.size();
+		default:
+			throw new NyARRuntimeException();
+		}
 	}
 	/**
 	 * この関数は、ARマーカ検出の、敷居値を設定します。
@@ -610,6 +663,115 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 	{
 		this.lost_th=i_delay;
 	}
+	/**
+	 * update関数の計測を有効にします。
+	 * 矩形検出器が標準の実装の場合は、ラベリングと輪郭線取得の時間を分けて記録します。
+	 * それ以外の場合は、ラベリングの時間は{@link NyARSystemMetrics#ST_CONTOUR}に含まれます。
+	 */
+	@Override
+	public void setMetrics(NyARSystemMetrics i_metrics)
+	{
+		super.setMetrics(i_metrics);
+		this._on_sq_handler._metrics=i_metrics;
+		if(this._sqdetect instanceof SquareDetect){
+			((SquareDetect)this._sqdetect)._metrics=i_metrics;
+		}
+	}
+	/** ROIトラッキングモードの全画面探索の間隔。0以下の場合は毎フレーム全画面を探索します。*/
+	private int _roi_full_scan_interval=0;
+	/** ROIの拡張率[%]*/
+	private int _roi_margin_rate;
+	/** 最後に全画面を探索してからのフレーム数*/
+	private int _roi_frame_count;
+	/** 直前のフレームでトラッキング中のマーカを見失ったか*/
+	private boolean _roi_is_lost=true;
+	private NyARIntRect[] _roi=new NyARIntRect[0];
+	/**
+	 * ROIトラッキングモードを設定します。
+	 * このモードでは、直前のフレームで検出したマーカの周辺(ROI)だけから矩形を検出します。
+	 * 全画面の探索は、i_full_scan_intervalフレーム毎と、トラッキング中のマーカを見失った次のフレームで行います。
+	 * 新しく画面に入ったマーカは、次の全画面の探索で検出されます。
+	 * 矩形検出器が{@link INyARMarkerSystemSquareDetectRoi}を持たない場合は、設定に関わらず毎フレーム全画面を探索します。
+	 * @param i_full_scan_interval
+	 * 全画面を探索する間隔(フレーム数)。0以下の場合は、ROIトラッキングを行わずに毎フレーム全画面を探索します。
+	 * @param i_margin_rate
+	 * ROIの拡張率[%]。直前のフレームの頂点の外接矩形を、幅と高さに対してこの割合だけ上下左右に広げた範囲をROIにします。
+	 * 1フレームのマーカの移動量より大きくしてください。
+	 */
+	public void setRoiTracking(int i_full_scan_interval,int i_margin_rate)
+	{
+		this._roi_full_scan_interval=i_full_scan_interval;
+		this._roi_margin_rate=i_margin_rate;
+		this._roi_frame_count=0;
+		this._roi_is_lost=true;
+	}
+	/**
+	 * 直前のフレームの検出結果から、このフレームで探索するROIを計算します。
+	 * {@link TrackingList#prepare}の前に呼び出してください。
+	 * @return
+	 * ROIの数。全画面を探索する場合は0
+	 */
+	private int prepareRoi()
+	{
+		if(this._roi_full_scan_interval<=0 || !(this._sqdetect instanceof INyARMarkerSystemSquareDetectRoi)){
+			return 0;
+		}
+		if(this._roi_is_lost || this._roi_frame_count>=this._roi_full_scan_interval){
+			this._roi_frame_count=0;
+			return 0;
+		}
+		if(this._roi.length<this._tracking_list.size()){
+			this._roi=new NyARIntRect[this._tracking_list.size()];
+			for(int i=0;i<this._roi.length;i++){
+				this._roi[i]=new NyARIntRect();
+			}
+		}
+		NyARIntSize s=this._view.getARParam().getScreenSize();
+		NyARIntRect[] roi=this._roi;
+		int n=0;
+		for(int i=this._tracking_list.size()-1;i>=0;i--){
+			TMarkerData item=this._tracking_list.get(i);
+			//直前のフレームで検出したマーカだけ
+			if(item.life<1 || item.sq==null){
+				continue;
+			}
+			NyARIntRect va=item.sq.vertex_area;
+			int mx=va.w*this._roi_margin_rate/100+2;
+			int my=va.h*this._roi_margin_rate/100+2;
+			NyARIntRect r=roi[n];
+			r.setValue(va.x-mx,va.y-my,va.w+mx*2,va.h+my*2);
+			r.clip(0,0,s.w-1,s.h-1);
+			if(r.w<3 || r.h<3){
+				continue;
+			}
+			n++;
+		}
+		if(n==0){
+			this._roi_frame_count=0;
+			return 0;
+		}
+		this._roi_frame_count++;
+		//重なるROIを統合(同じ矩形を2回検出しないように)
+		for(int i=0;i<n;i++){
+			for(int j=i+1;j<n;j++){
+				NyARIntRect a=roi[i];
+				NyARIntRect b=roi[j];
+				if(a.x>b.x+b.w-1 || b.x>a.x+a.w-1 || a.y>b.y+b.h-1 || b.y>a.y+a.h-1){
+					continue;
+				}
+				int l=Math.min(a.x,b.x);
+				int t=Math.min(a.y,b.y);
+				a.setValue(l,t,Math.max(a.x+a.w,b.x+b.w)-l,Math.max(a.y+a.h,b.y+b.h)-t);
+				//bを削除して、最初から統合をやり直す。
+				roi[j]=roi[n-1];
+				roi[n-1]=b;
+				n--;
+				i=-1;
+				break;
+			}
+		}
+		return n;
+	}
 	private long _time_stamp=-1;
 	private OnSquareDetect _on_sq_handler;
 	/**
@@ -624,15 +786,45 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 		if(this._time_stamp==time_stamp){
 			return;
 		}
-		int th=this._bin_threshold==THLESHOLD_AUTO?this._hist_th.getThreshold(i_sensor.getGsHistogram()):this._bin_threshold;
+		final NyARSystemMetrics m=this._metrics;
+		long t=m!=null?m.beginFrame():0;
+		//グレースケール画像とヒストグラムは同時に生成されるので、先に画像を取得して変換時間をST_GSに記録する
+		INyARGrayscaleRaster gs=i_sensor.getGsImage();
+		if(m!=null){t=m.lap(NyARSystemMetrics.ST_GS,t);}
+		int th;
+		switch(this._bin_threshold){
+		case THLESHOLD_AUTO:
+			th=this._hist_th.getThreshold(i_sensor.getGsHistogram());
+			break;
+		case THLESHOLD_ADAPTIVE:
+			th=NyARAdaptiveThresholdRaster.getThreshold(NyARAdaptiveThresholdRaster.DEFAULT_OFFSET);
+			break;
+		default:
+			th=this._bin_threshold;
+			break;
+		}
+		if(m!=null){t=m.lap(NyARSystemMetrics.ST_HISTOGRAM,t);}
+		int number_of_roi=this.prepareRoi();
 		//解析
 		this._tracking_list.prepare();
 		this._idmk_list.prepare();
 		this._armk_list.prepare();
 		this._psmk_list.prepare();
 		//検出
-		this._on_sq_handler.prepare(i_sensor.getPerspectiveCopy(),i_sensor.getGsImage(),th);
-		this._sqdetect.detectMarkerCb(i_sensor,th,this._on_sq_handler);
+		this._on_sq_handler.prepare(i_sensor.getPerspectiveCopy(),gs,th);
+		if(number_of_roi==0){
+			this._sqdetect.detectMarkerCb(i_sensor,th,this._on_sq_handler);
+		}else{
+			INyARMarkerSystemSquareDetectRoi sd=(INyARMarkerSystemSquareDetectRoi)this._sqdetect;
+			for(int i=0;i<number_of_roi;i++){
+				sd.detectMarkerCb(i_sensor,this._roi[i],th,this._on_sq_handler);
+			}
+		}
+		if(m!=null){
+			//ラベリングと一致判定以外の時間を輪郭線取得の時間にする。
+			long now=System.nanoTime();
+			m.addTime(NyARSystemMetrics.ST_CONTOUR,now-t-m.getTime(NyARSystemMetrics.ST_LABELING)-m.getTime(NyARSystemMetrics.ST_PATTERN_MATCH));
+		}
 
 		//検出結果の反映処理
 		this._tracking_list.finish();
@@ -640,19 +832,31 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 		this._idmk_list.finish();
 		this._psmk_list.finish();
 		//期限切れチェック
+		this._roi_is_lost=false;
 		for(int i=this._tracking_list.size()-1;i>=0;i--){
 			TMarkerData item=this._tracking_list.get(i);
+			if(item.life>0 && item.lost_count>0){
+				//トラッキング中のマーカを見失ったら、次は全画面を探索
+				this._roi_is_lost=true;
+			}
 			if(item.lost_count>this.lost_th){
 				//連続で検出できなかった場合
+				if(m!=null && item.life>0){
+					m.addCount(NyARSystemMetrics.CT_LOST_MARKERS,1);
+				}
 				item.life=0;//活性off
 			}else if(item.sq!=null){
 				//直前のsqを検出できた場合
 //				System.out.println("[Tracking]");
-				if(!this._transmat.transMatContinue(item.sq,item.marker_offset,item.tmat,item.last_param.last_error,item.tmat,item.last_param))
+				if(m!=null){t=System.nanoTime();}
+				boolean is_continue=this._transmat.transMatContinue(item.sq,item.marker_offset,item.tmat,item.last_param.last_error,item.tmat,item.last_param);
+				if(m!=null){t=m.lap(NyARSystemMetrics.ST_TRANSMAT_CONTINUE,t);}
+				if(!is_continue)
 				{
 					if(!this._transmat.transMat(item.sq,item.marker_offset,item.tmat,item.last_param)){
 						item.life=0;//活性off
 					}
+					if(m!=null){m.lap(NyARSystemMetrics.ST_TRANSMAT,t);}
 				}
 			}
 		}
@@ -666,7 +870,9 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 					continue;
 				}
 //				System.out.println("[ARMarker]");
+				if(m!=null){t=System.nanoTime();}
 				this._transmat.transMat(target.sq,target.marker_offset,target.tmat,target.last_param);
+				if(m!=null){m.lap(NyARSystemMetrics.ST_TRANSMAT,t);}
 			}
 		}
 		for(int i=this._idmk_list.size()-1;i>=0;i--){
@@ -678,7 +884,9 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 					continue;
 				}
 //				System.out.println("[NyIdARMarker]");
+				if(m!=null){t=System.nanoTime();}
 				this._transmat.transMat(target.sq,target.marker_offset,target.tmat,target.last_param);
+				if(m!=null){m.lap(NyARSystemMetrics.ST_TRANSMAT,t);}
 			}
 		}
 		for(int i=this._psmk_list.size()-1;i>=0;i--){
@@ -690,13 +898,18 @@ public class NyARMarkerSystem extends NyARSingleCameraSystem
 					continue;
 				}
 //				System.out.println("[PSARMarker]");
+				if(m!=null){t=System.nanoTime();}
 				this._transmat.transMat(target.sq,target.marker_offset,target.tmat,target.last_param);
+				if(m!=null){m.lap(NyARSystemMetrics.ST_TRANSMAT,t);}
 			}
 		}
 		//解析/
 		//タイムスタンプを更新
 		this._time_stamp=time_stamp;
 		this._last_gs_th=th;
+		if(m!=null){
+			m.endFrame();
+		}
 	}
 }
 
@@ -714,6 +927,8 @@ class OnSquareDetect implements NyARSquareContourDetector.CbHandler
 	public INyARPerspectiveCopy _ref_input_rfb;
 	public INyARGrayscaleRaster _ref_input_gs;
 	public int _ref_th;
+	/** nullでなければ、一致判定の時間と矩形候補の数を記録します。*/
+	public NyARSystemMetrics _metrics=null;
 	
 	private NyARCoord2Linear _coordline;		
 	public OnSquareDetect(
@@ -757,12 +972,31 @@ class OnSquareDetect implements NyARSquareContourDetector.CbHandler
 		this._sq_stack.clear();		
 	}
 	public void detectMarkerCallback(NyARIntCoordinates i_coord,int[] i_vertex_index)
+	{
+		final NyARSystemMetrics m=this._metrics;
+		if(m==null){
+			this.onSquare(i_coord,i_vertex_index);
+			return;
+		}
+		long t=System.nanoTime();
+		m.addCount(NyARSystemMetrics.CT_SQUARES,1);
+		if(!this.onSquare(i_coord,i_vertex_index)){
+			m.addCount(NyARSystemMetrics.CT_SQUARE_OVERFLOWS,1);
+		}
+		m.lap(NyARSystemMetrics.ST_PATTERN_MATCH,t);
+	}
+	/**
+	 * 矩形候補を各リストで判定します。
+	 * @return
+	 * SquareStackに空きが無かった場合はfalse
+	 */
+	private boolean onSquare(NyARIntCoordinates i_coord,int[] i_vertex_index)
 	{
 		//とりあえずSquareスタックを予約
 		SquareStack.Item sq_tmp=this._sq_stack.prePush();
 		//確保できない(1つのdetectorが複数の候補を得る場合(同じARマーカが多くある場合など)に発生することがある。)
 		if(sq_tmp==null){
-			return;
+			return false;
 		}
 		//観測座標点の記録
 		for(int i2=0;i2<4;i2++){
@@ -825,38 +1059,6 @@ class OnSquareDetect implements NyARSquareContourDetector.CbHandler
 			//この矩形は検出対象にマークされなかったので、解除
 			this._sq_stack.pop();
 		}
+		return true;
 	}	
 }
-
-
-
-
-class SquareDetect implements INyARMarkerSystemSquareDetect
-{
-	private NyARSquareContourDetector_Rle _sd;
-	public SquareDetect(int i_width,int i_height)
-	{
-		this._sd=new NyARSquareContourDetector_Rle(new NyARIntSize(i_width,i_height));
-	}
-	public void detectMarkerCb(NyARSensor i_sensor,int i_th,NyARSquareContourDetector.CbHandler i_handler)
-	{
-		this._sd.detectMarker(i_sensor.getGsImage(), i_th,i_handler);
-	}
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
@@ -0,0 +1,419 @@
+/*
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ *
+ */
+package jp.nyatla.nyartoolkit.markersystem;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.histogram.algo.INyARHistogramAnalyzer_Threshold;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARAdaptiveThresholdRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.NyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector;
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector_Rle;
+import jp.nyatla.nyartoolkit.core.types.NyARIntCoordinates;
+import jp.nyatla.nyartoolkit.core.types.NyARIntRect;
+import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
+
+/**
+ * このクラスは、{@link NyARMarkerSystem}の処理を2段のパイプラインにして、複数のフレームを並行に処理します。
+ * <p>
+ * 前段のスレッドは、グレースケール画像とヒストグラムの生成、閾値の計算、ラベリングと輪郭線の取得を行い、矩形候補を記録します。
+ * 後段のスレッドは、記録した矩形候補で{@link NyARMarkerSystem#update}を実行して、マーカの一致判定と姿勢行列の計算を行います。
+ * 前段がフレームk+1を処理している間に、後段がフレームkを処理します。
+ * 一致判定と姿勢行列の計算は、トラッキングリストを共有するので後段にまとめています。
+ * </p>
+ * <p>
+ * 処理結果は、後段のフレーム毎に{@link NyARMarkerSystemSnapshot}として公開します。{@link #getSnapshot}で、任意のスレッドから最新の結果を得られます。
+ * マーカの登録と設定は、{@link #getMarkerSystem}で得たオブジェクトに対して、{@link #start}の前に行ってください。
+ * {@link #start}の後は、{@link NyARMarkerSystem}の関数を呼び出さないでください。
+ * </p>
+ * <p>
+ * ROIトラッキング({@link NyARMarkerSystem#setRoiTracking})を有効にした場合、前段は常に全画面を探索して、後段はROIの中の矩形候補だけを使います。
+ * 入力画像は、配列をバッファに持つラスタである必要があります。
+ * </p>
+ * <p>
+ * ワーカスレッドの処理中に例外が発生した場合、そのフレームを破棄してスロットを空きに戻し、処理を継続します。
+ * 発生した例外は記録して、次の{@link #submit}で通知します。
+ * </p>
+ */
+public class NyARMarkerSystemPipeline
+{
+	/**
+	 * 前段で検出した矩形候補を記録するクラスです。
+	 */
+	private static class SquareCandidateList implements NyARSquareContourDetector.CbHandler
+	{
+		/** 矩形候補の数*/
+		public int length=0;
+		/** n番目の候補の輪郭線の開始位置。[length+1]*/
+		private int[] _offset=new int[17];
+		/** 頂点のインデクス。[4*length]*/
+		private int[] _vertex=new int[64];
+		private int[] _x=new int[1024];
+		private int[] _y=new int[1024];
+		private NyARIntCoordinates _coord=new NyARIntCoordinates(1);
+		private int[] _vertex_index=new int[4];
+		public void clear()
+		{
+			this.length=0;
+		}
+		@Override
+		public void detectMarkerCallback(NyARIntCoordinates i_coord,int[] i_vertex_index)
+		{
+			int n=this.length;
+			int s=this._offset[n];
+			int e=s+i_coord.length;
+			//バッファの拡張
+			if(this._offset.length<n+2){
+				this._offset=grow(this._offset,(n+2)*2);
+				this._vertex=grow(this._vertex,(n+2)*8);
+			}
+			if(this._x.length<e){
+				this._x=grow(this._x,e*2);
+				this._y=grow(this._y,e*2);
+			}
+			for(int i=0;i<i_coord.length;i++){
+				this._x[s+i]=i_coord.items[i].x;
+				this._y[s+i]=i_coord.items[i].y;
+			}
+			for(int i=0;i<4;i++){
+				this._vertex[n*4+i]=i_vertex_index[i];
+			}
+			this._offset[n+1]=e;
+			this.length=n+1;
+		}
+		/**
+		 * 記録した矩形候補をi_handlerに通知します。
+		 * @param i_area
+		 * nullでない場合は、全ての頂点がこの範囲に含まれる候補だけを通知します。
+		 */
+		public void replay(NyARIntRect i_area,NyARSquareContourDetector.CbHandler i_handler)
+		{
+			for(int i=0;i<this.length;i++){
+				int s=this._offset[i];
+				int l=this._offset[i+1]-s;
+				if(i_area!=null){
+					boolean is_inner=true;
+					for(int j=0;j<4;j++){
+						int p=s+this._vertex[i*4+j];
+						if(!i_area.isInnerPoint(this._x[p],this._y[p])){
+							is_inner=false;
+							break;
+						}
+					}
+					if(!is_inner){
+						continue;
+					}
+				}
+				if(this._coord.items.length<l){
+					this._coord=new NyARIntCoordinates(l*2);
+				}
+				NyARIntCoordinates coord=this._coord;
+				for(int j=0;j<l;j++){
+					coord.items[j].x=this._x[s+j];
+					coord.items[j].y=this._y[s+j];
+				}
+				coord.length=l;
+				for(int j=0;j<4;j++){
+					this._vertex_index[j]=this._vertex[i*4+j];
+				}
+				i_handler.detectMarkerCallback(coord,this._vertex_index);
+			}
+		}
+		private static int[] grow(int[] i_src,int i_new_length)
+		{
+			int[] r=new int[i_new_length];
+			System.arraycopy(i_src,0,r,0,i_src.length);
+			return r;
+		}
+	}
+	/**
+	 * パイプラインのスロットが持つセンサです。フレームの通し番号をタイムスタンプにします。
+	 */
+	private static class PipelineSensor extends NyARSensor
+	{
+		public final SquareCandidateList squares=new SquareCandidateList();
+		public PipelineSensor(NyARIntSize i_size)
+		{
+			super(i_size);
+		}
+		public void update(INyARRgbRaster i_input,long i_time_stamp)
+		{
+			super.update(i_input);
+			this._src_ts=i_time_stamp;
+		}
+	}
+	/**
+	 * 記録済の矩形候補を通知する矩形検出器です。
+	 */
+	private static class ReplaySquareDetect implements INyARMarkerSystemSquareDetectRoi
+	{
+		@Override
+		public void detectMarkerCb(NyARSensor i_sensor,int i_th,NyARSquareContourDetector.CbHandler i_handler)
+		{
+			((PipelineSensor)i_sensor).squares.replay(null,i_handler);
+		}
+		@Override
+		public void detectMarkerCb(NyARSensor i_sensor,NyARIntRect i_area,int i_th,NyARSquareContourDetector.CbHandler i_handler)
+		{
+			((PipelineSensor)i_sensor).squares.replay(i_area,i_handler);
+		}
+	}
+	/**
+	 * パイプラインで処理中の1フレーム分のデータです。
+	 */
+	private static class Slot
+	{
+		public final PipelineSensor sensor;
+		/** 入力画像のコピー。最初に入力した画像と同じ形式で生成します。*/
+		public INyARRgbRaster raster=null;
+		public Slot(NyARIntSize i_size)
+		{
+			this.sensor=new PipelineSensor(i_size);
+		}
+	}
+	private static class PipelineMarkerSystem extends NyARMarkerSystem
+	{
+		public PipelineMarkerSystem(INyARMarkerSystemConfig i_config)
+		{
+			super(i_config,new ReplaySquareDetect());
+		}
+	}
+
+	private final PipelineMarkerSystem _ms;
+	private final ArrayBlockingQueue<Slot> _free_slots;
+	private final ArrayBlockingQueue<Slot> _detect_queue;
+	private final ArrayBlockingQueue<Slot> _update_queue;
+	private final AtomicReference<NyARMarkerSystemSnapshot> _snapshot=new AtomicReference<NyARMarkerSystemSnapshot>();
+	/** ワーカスレッドで発生した、未通知の例外*/
+	private final AtomicReference<RuntimeException> _error=new AtomicReference<RuntimeException>();
+	private final DetectThread _detect_thread;
+	private final UpdateThread _update_thread;
+	private long _frame_count=0;
+	/**
+	 * コンストラクタです。
+	 * @param i_config
+	 * 初期化済の{@link INyARMarkerSystemConfig}を指定します。
+	 * @param i_number_of_slot
+	 * 同時に処理できるフレームの数です。2以上を指定します。
+	 * 前段と後段で1フレームずつ処理するので、3以上にすると処理中にも次のフレームを受け付けられます。
+	 */
+	public NyARMarkerSystemPipeline(INyARMarkerSystemConfig i_config,int i_number_of_slot)
+	{
+		if(i_number_of_slot<2){
+			throw new NyARRuntimeException("Invalid number of slot.");
+		}
+		NyARIntSize s=i_config.getScreenSize();
+		this._ms=new PipelineMarkerSystem(i_config);
+		this._free_slots=new ArrayBlockingQueue<Slot>(i_number_of_slot);
+		this._detect_queue=new ArrayBlockingQueue<Slot>(i_number_of_slot);
+		this._update_queue=new ArrayBlockingQueue<Slot>(i_number_of_slot);
+		for(int i=0;i<i_number_of_slot;i++){
+			this._free_slots.add(new Slot(s));
+		}
+		this._detect_thread=new DetectThread(i_config);
+		this._update_thread=new UpdateThread();
+	}
+	/**
+	 * コンストラクタです。3フレームを同時に処理できるインスタンスを生成します。
+	 */
+	public NyARMarkerSystemPipeline(INyARMarkerSystemConfig i_config)
+	{
+		this(i_config,3);
+	}
+	/**
+	 * パイプラインの後段で使う{@link NyARMarkerSystem}を返します。
+	 * マーカの登録と設定は、{@link #start}の前にこのオブジェクトに対して行います。
+	 */
+	public NyARMarkerSystem getMarkerSystem()
+	{
+		return this._ms;
+	}
+	/**
+	 * ワーカスレッドを開始します。
+	 */
+	public void start()
+	{
+		this._detect_thread.start();
+		this._update_thread.start();
+	}
+	/**
+	 * ワーカスレッドを終了します。
+	 * メインスレッド終了時に必ず実行してください。
+	 */
+	public void shutdown()
+	{
+		try {
+			this._detect_thread.interrupt();
+			this._update_thread.interrupt();
+			this._detect_thread.join();
+			this._update_thread.join();
+		} catch (InterruptedException e) {
+		}
+	}
+	/**
+	 * 入力画像をパイプラインに投入します。関数は画像をコピーして、すぐに戻ります。
+	 * この関数は、1つのスレッドから呼び出してください。
+	 * @param i_input
+	 * カラー画像。画像のサイズは、スクリーンサイズと同じである必要があります。
+	 * @return
+	 * 空きスロットが無く、フレームを破棄した場合はfalseです。
+	 * @throws NyARRuntimeException
+	 * 前回の呼び出しの後に、ワーカスレッドで例外が発生していた場合です。例外は1度だけ通知します。
+	 * 例外が発生したフレームは破棄済なので、続けて次のフレームを投入できます。
+	 */
+	public boolean submit(INyARRgbRaster i_input)
+	{
+		//ワーカスレッドの例外を通知
+		RuntimeException e=this._error.getAndSet(null);
+		if(e!=null){
+			throw new NyARRuntimeException(e);
+		}
+		Slot slot=this._free_slots.poll();
+		if(slot==null){
+			return false;
+		}
+		//入力画像のコピー
+		if(slot.raster==null || !slot.raster.isEqualBufferType(i_input.getBufferType())){
+			NyARIntSize s=i_input.getSize();
+			slot.raster=NyARRgbRaster.createInstance(s.w,s.h,i_input.getBufferType(),true);
+		}
+		Object src=i_input.getBuffer();
+		if(!src.getClass().isArray()){
+			this._free_slots.add(slot);
+			throw new NyARRuntimeException("The buffer of input raster must be an array.");
+		}
+		System.arraycopy(src,0,slot.raster.getBuffer(),0,Array.getLength(src));
+		this._frame_count++;
+		slot.sensor.update(slot.raster,this._frame_count);
+		this._detect_queue.add(slot);
+		return true;
+	}
+	/**
+	 * 最新の処理結果を返します。任意のスレッドから呼び出すことができます。
+	 * @return
+	 * 処理結果。まだ1フレームも処理していない場合はnullです。
+	 */
+	public NyARMarkerSystemSnapshot getSnapshot()
+	{
+		return this._snapshot.get();
+	}
+
+	/**
+	 * ワーカスレッドで発生した例外を記録して、スロットを空きに戻します。
+	 * 未通知の例外がある場合は、最初の例外を残します。
+	 */
+	private void abortSlot(Slot i_slot,RuntimeException i_error) throws InterruptedException
+	{
+		this._error.compareAndSet(null,i_error);
+		this._free_slots.put(i_slot);
+	}
+	/**
+	 * 前段のスレッドです。グレースケール画像の生成から輪郭線の取得までを行います。
+	 */
+	private class DetectThread extends Thread
+	{
+		private final INyARHistogramAnalyzer_Threshold _hist_th;
+		private final NyARSquareContourDetector_Rle _sd;
+		public DetectThread(INyARMarkerSystemConfig i_config)
+		{
+			super();
+			this._hist_th=i_config.createAutoThresholdArgorism();
+			this._sd=new NyARSquareContourDetector_Rle(i_config.getScreenSize());
+		}
+		private void detect(PipelineSensor i_sensor)
+		{
+			INyARGrayscaleRaster gs=i_sensor.getGsImage();
+			int bin_th=NyARMarkerSystemPipeline.this._ms.getBinThreshold();
+			//後段のupdateと同じ閾値を使う
+			int th;
+			switch(bin_th){
+			case NyARMarkerSystem.THLESHOLD_AUTO:
+				th=this._hist_th.getThreshold(i_sensor.getGsHistogram());
+				break;
+			case NyARMarkerSystem.THLESHOLD_ADAPTIVE:
+				th=NyARAdaptiveThresholdRaster.getThreshold(NyARAdaptiveThresholdRaster.DEFAULT_OFFSET);
+				gs=i_sensor.getAdaptiveThresholdImage();
+				break;
+			default:
+				th=bin_th;
+				break;
+			}
+			i_sensor.squares.clear();
+			this._sd.detectMarker(gs,th,i_sensor.squares);
+		}
+		@Override
+		public void run()
+		{
+			try {
+				for(;;){
+					Slot slot=NyARMarkerSystemPipeline.this._detect_queue.take();
+					try{
+						this.detect(slot.sensor);
+					}catch(RuntimeException e){
+						NyARMarkerSystemPipeline.this.abortSlot(slot,e);
+						continue;
+					}
+					NyARMarkerSystemPipeline.this._update_queue.put(slot);
+				}
+			} catch (InterruptedException e) {
+				//Interrupted!
+				return;
+			}
+		}
+	}
+	/**
+	 * 後段のスレッドです。マーカの一致判定と姿勢行列の計算を行い、結果を公開します。
+	 */
+	private class UpdateThread extends Thread
+	{
+		@Override
+		public void run()
+		{
+			final NyARMarkerSystemPipeline parent=NyARMarkerSystemPipeline.this;
+			try {
+				for(;;){
+					Slot slot=parent._update_queue.take();
+					try{
+						parent._ms.update(slot.sensor);
+						parent._snapshot.set(new NyARMarkerSystemSnapshot(parent._ms,slot.sensor.getTimeStamp()));
+					}catch(RuntimeException e){
+						parent.abortSlot(slot,e);
+						continue;
+					}
+					parent._free_slots.put(slot);
+				}
+			} catch (InterruptedException e) {
+				//Interrupted!
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ *
+ */
+package jp.nyatla.nyartoolkit.markersystem;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix44;
+
+/**
+ * このクラスは、{@link NyARMarkerSystem}のある時点のマーカの状態を保持します。
+ * {@link NyARMarkerSystemPipeline#getSnapshot}が返します。
+ * <p>
+ * インスタンスは生成後に変更されないので、任意のスレッドから読み出すことができます。
+ * 関数の引数は、{@link NyARMarkerSystem}の同名の関数と同じです。
+ * </p>
+ */
+public class NyARMarkerSystemSnapshot
+{
+	private static class Item
+	{
+		public final long life;
+		public final long lost_count;
+		public final double cf;
+		public final long nyid;
+		public final NyARDoubleMatrix44 tmat=new NyARDoubleMatrix44();
+		public Item(NyARMarkerSystem i_ms,int i_id)
+		{
+			this.life=i_ms.getLife(i_id);
+			this.lost_count=i_ms.getLostCount(i_id);
+			this.cf=(i_id & NyARMarkerSystem.MASK_IDTYPE)==NyARMarkerSystem.IDTYPE_ARTK?i_ms.getConfidence(i_id):0;
+			this.nyid=(i_id & NyARMarkerSystem.MASK_IDTYPE)==NyARMarkerSystem.IDTYPE_NYID?i_ms.getNyId(i_id):0;
+			this.tmat.setValue(i_ms.getTransformMatrix(i_id));
+		}
+	}
+	private final static int[] IDTYPES={NyARMarkerSystem.IDTYPE_ARTK,NyARMarkerSystem.IDTYPE_NYID,NyARMarkerSystem.IDTYPE_PSID};
+	/** [IDTYPE>>12][ID番号]*/
+	private final Item[][] _items;
+	private final long _time_stamp;
+	private final int _threshold;
+	/**
+	 * コンストラクタです。i_msの現在の状態をコピーします。
+	 * @param i_ms
+	 * 状態をコピーするマーカシステム
+	 * @param i_time_stamp
+	 * スナップショットのフレーム番号
+	 */
+	NyARMarkerSystemSnapshot(NyARMarkerSystem i_ms,long i_time_stamp)
+	{
+		this._items=new Item[IDTYPES.length][];
+		for(int i=0;i<IDTYPES.length;i++){
+			Item[] items=new Item[i_ms.getNumberOfMarker(IDTYPES[i])];
+			for(int j=0;j<items.length;j++){
+				items[j]=new Item(i_ms,IDTYPES[i]|j);
+			}
+			this._items[i]=items;
+		}
+		this._time_stamp=i_time_stamp;
+		this._threshold=i_ms.getCurrentThreshold();
+	}
+	private Item getItem(int i_id)
+	{
+		int t=(i_id & NyARMarkerSystem.MASK_IDTYPE)>>12;
+		int n=i_id & NyARMarkerSystem.MASK_IDNUM;
+		if(t>=this._items.length || n>=this._items[t].length){
+			throw new NyARRuntimeException();
+		}
+		return this._items[t][n];
+	}
+	/**
+	 * スナップショットのフレーム番号を返します。
+	 * 値は{@link NyARMarkerSystemPipeline#submit}で受け付けたフレームの通し番号です。
+	 */
+	public long getTimeStamp()
+	{
+		return this._time_stamp;
+	}
+	/**
+	 * {@link NyARMarkerSystem#getCurrentThreshold}の値を返します。
+	 */
+	public int getCurrentThreshold()
+	{
+		return this._threshold;
+	}
+	/**
+	 * {@link NyARMarkerSystem#isExist}の値を返します。
+	 */
+	public boolean isExist(int i_id)
+	{
+		return this.getItem(i_id).life>0;
+	}
+	/**
+	 * {@link NyARMarkerSystem#getLife}の値を返します。
+	 */
+	public long getLife(int i_id)
+	{
+		return this.getItem(i_id).life;
+	}
+	/**
+	 * {@link NyARMarkerSystem#getLostCount}の値を返します。
+	 */
+	public long getLostCount(int i_id)
+	{
+		return this.getItem(i_id).lost_count;
+	}
+	/**
+	 * {@link NyARMarkerSystem#getConfidence}の値を返します。ARマーカのみ使用できます。
+	 */
+	public double getConfidence(int i_id)
+	{
+		if((i_id & NyARMarkerSystem.MASK_IDTYPE)!=NyARMarkerSystem.IDTYPE_ARTK){
+			throw new NyARRuntimeException();
+		}
+		return this.getItem(i_id).cf;
+	}
+	/**
+	 * {@link NyARMarkerSystem#getNyId}の値を返します。NyIdマーカのみ使用できます。
+	 */
+	public long getNyId(int i_id)
+	{
+		if((i_id & NyARMarkerSystem.MASK_IDTYPE)!=NyARMarkerSystem.IDTYPE_NYID){
+			throw new NyARRuntimeException();
+		}
+		return this.getItem(i_id).nyid;
+	}
+	/**
+	 * {@link NyARMarkerSystem#getTransformMatrix}の値を返します。
+	 * @return
+	 * [readonly]
+	 * 姿勢行列を格納したオブジェクト。
+	 */
+	public NyARDoubleMatrix44 getTransformMatrix(int i_id)
+	{
+		return this.getItem(i_id).tmat;
+	}
+}
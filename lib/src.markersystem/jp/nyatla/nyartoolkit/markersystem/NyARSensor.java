@@ -27,13 +27,17 @@ package jp.nyatla.nyartoolkit.markersystem;
 
 
 
+import java.util.concurrent.ForkJoinPool;
+
 import jp.nyatla.nyartoolkit.core.histogram.NyARHistogram;
 import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARAdaptiveThresholdRaster;
 import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
 import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
 import jp.nyatla.nyartoolkit.core.rasterdriver.histogram.INyARHistogramFromRaster;
 import jp.nyatla.nyartoolkit.core.rasterdriver.perspectivecopy.INyARPerspectiveCopy;
-import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilter;
+import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilterRgbAveHist;
+import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.NyARRgb2GsFilterFactory;
 import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
 import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
 
@@ -89,7 +93,42 @@ public class NyARSensor
 	}	
 	private INyARHistogramFromRaster _hist_drv=null;	
 	private INyARPerspectiveCopy _pcopy;
-	private INyARRgb2GsFilter _rgb2gs=null;
+	/** グレースケール画像とヒストグラムを1回の走査で作るドライバ*/
+	private INyARRgb2GsFilterRgbAveHist _rgb2gs=null;
+	/** nullでなければ、グレースケール画像とヒストグラムをこのスレッドプールで並列に作ります。*/
+	private ForkJoinPool _pool=null;
+	private int _number_of_strips=0;
+	/**
+	 * グレースケール画像とヒストグラムの生成の、並列モードを設定します。
+	 * 並列モードでは、入力画像を水平方向の帯に分割して、i_poolのスレッドで変換します。
+	 * 結果は、シリアル処理と同じです。
+	 * 詳細は、{@link NyARRgb2GsFilterFactory#createRgbAveHistDriver(INyARRgbRaster,ForkJoinPool,int)}を参照してください。
+	 * @param i_pool
+	 * 変換に使うスレッドプール。nullの場合はシリアル処理です。
+	 * @param i_number_of_strips
+	 * 最大の帯の数。2未満の場合はシリアル処理です。
+	 */
+	public void setParallelMode(ForkJoinPool i_pool,int i_number_of_strips)
+	{
+		if(i_pool==null || i_number_of_strips<2){
+			this._pool=null;
+			this._number_of_strips=0;
+		}else{
+			this._pool=i_pool;
+			this._number_of_strips=i_number_of_strips;
+		}
+		//ラスタドライバの再生成
+		if(this._ref_raster!=null){
+			this._rgb2gs=this.createRgb2GsDriver(this._ref_raster);
+		}
+	}
+	private INyARRgb2GsFilterRgbAveHist createRgb2GsDriver(INyARRgbRaster i_input)
+	{
+		if(this._pool==null){
+			return (INyARRgb2GsFilterRgbAveHist) i_input.createInterface(INyARRgb2GsFilterRgbAveHist.class);
+		}
+		return NyARRgb2GsFilterFactory.createRgbAveHistDriver(i_input,this._pool,this._number_of_strips);
+	}
 	/**
 	 * この関数は、入力画像を元にインスタンスの状態を更新します。
 	 * 関数はタイムスタンプをインクリメントします。
@@ -101,7 +140,7 @@ public class NyARSensor
 	{
 		//ラスタドライバの準備
 		if(this._ref_raster!=i_input){
-			this._rgb2gs=(INyARRgb2GsFilter) i_input.createInterface(INyARRgb2GsFilter.class);
+			this._rgb2gs=this.createRgb2GsDriver(i_input);
 			this._pcopy=(INyARPerspectiveCopy) i_input.createInterface(INyARPerspectiveCopy.class);
 			this._ref_raster=i_input;
 		}
@@ -128,6 +167,7 @@ public class NyARSensor
 	}
 	/**
 	 * この関数は、グレースケールに変換した現在の画像を返します。
+	 * 変換と同時にヒストグラムも生成するので、続けて{@link #getGsHistogram}を呼び出しても画像を再度走査しません。
 	 * @return
 	 * [readonly]
 	 * グレースケールに変換した現在の画像
@@ -136,8 +176,7 @@ public class NyARSensor
 	{
 		//必要に応じてグレースケール画像の生成
 		if(this._src_ts!=this._gs_id_ts){
-			this._rgb2gs.convert(this._gs_raster);
-			this._gs_id_ts=this._src_ts;
+			this.updateGsImage();
 		}
 		return this._gs_raster;
 		//
@@ -151,12 +190,51 @@ public class NyARSensor
 	public NyARHistogram getGsHistogram()
 	{
 		//必要に応じてヒストグラムを生成
-		if(this._gs_id_ts!=this._gs_hist_ts){
-			this._hist_drv.createHistogram(4,this._gs_hist);
-			this._gs_hist_ts=this._gs_id_ts;
+		if(this._src_ts!=this._gs_hist_ts){
+			if(this._src_ts!=this._gs_id_ts){
+				this.updateGsImage();
+			}else{
+				this._hist_drv.createHistogram(HISTOGRAM_SKIP,this._gs_hist);
+				this._gs_hist_ts=this._gs_id_ts;
+			}
 		}
 		return this._gs_hist;
 	}
+	/** 適応的2値化用の画像。最初に必要になったときに作ります。*/
+	private NyARAdaptiveThresholdRaster _adaptive_raster=null;
+	private long _adaptive_ts=0;
+	/**
+	 * この関数は、現在のGS画像を局所平均で2値化するための画像を返します。
+	 * 画像の内容は{@link NyARAdaptiveThresholdRaster}を参照してください。
+	 * @return
+	 * [readonly]
+	 * 現在のGS画像の適応的2値化用の画像
+	 */
+	public INyARGrayscaleRaster getAdaptiveThresholdImage()
+	{
+		if(this._adaptive_raster==null){
+			this._adaptive_raster=new NyARAdaptiveThresholdRaster(this._gs_raster);
+			this._adaptive_ts=this._src_ts-1;
+		}
+		//必要に応じて積分画像を生成
+		if(this._src_ts!=this._adaptive_ts){
+			this.getGsImage();
+			this._adaptive_raster.update();
+			this._adaptive_ts=this._src_ts;
+		}
+		return this._adaptive_raster;
+	}
+	/** ヒストグラムを作るときの行の間引き数*/
+	private final static int HISTOGRAM_SKIP=4;
+	/**
+	 * グレースケール画像とヒストグラムを、入力画像の1回の走査で更新します。
+	 */
+	private void updateGsImage()
+	{
+		this._rgb2gs.convert(HISTOGRAM_SKIP,this._gs_raster,this._gs_hist);
+		this._gs_id_ts=this._src_ts;
+		this._gs_hist_ts=this._src_ts;
+	}
 	/**
 	 * この関数は、現在の入力画像の参照値を返します。
 	 * @return
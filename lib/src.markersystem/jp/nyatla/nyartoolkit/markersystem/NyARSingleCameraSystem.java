@@ -80,4 +80,26 @@ public class NyARSingleCameraSystem
 	{
 		this._view.setClipping(i_near, i_far);
 	}
+	/** nullでなければ、update関数の処理時間と検出数をこのオブジェクトに記録します。*/
+	protected NyARSystemMetrics _metrics=null;
+	/**
+	 * update関数の計測を有効にします。
+	 * 計測しない場合のオーバヘッドは、ステージ毎のnullチェックだけです。
+	 * @param i_metrics
+	 * 計測結果を記録するオブジェクト。nullの場合は計測を止めます。
+	 */
+	public void setMetrics(NyARSystemMetrics i_metrics)
+	{
+		this._metrics=i_metrics;
+	}
+	/**
+	 * [readonly]
+	 * 計測結果を記録しているオブジェクトを返します。
+	 * @return
+	 * {@link #setMetrics}で設定したオブジェクト。計測していなければnull
+	 */
+	public NyARSystemMetrics getMetrics()
+	{
+		return this._metrics;
+	}
 }
@@ -0,0 +1,245 @@
+/*
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ *
+ */
+package jp.nyatla.nyartoolkit.markersystem;
+
+import java.util.Arrays;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+
+/**
+ * このクラスは、{@link NyARSingleCameraSystem}のupdate関数の処理時間と検出数を記録します。
+ * {@link NyARSingleCameraSystem#setMetrics}で設定したときだけ計測します。
+ * <p>
+ * 処理時間はステージ({@link #ST_GS}等)毎にナノ秒単位で記録し、直近のフレームの値を{@link #getTime}で、
+ * 最大window_sizeフレームのパーセンタイル値を{@link #getPercentile}で返します。
+ * 検出数はカウンタ({@link #CT_LABELS}等)毎に記録し、直近のフレームの値を{@link #getCount}で、
+ * 計測開始からの合計値を{@link #getTotalCount}で返します。
+ * </p>
+ * このクラスはスレッドセーフではありません。値の読出しは、{@link INyARSystemMetricsListener#onFrame}の中か、
+ * update関数と同じスレッドから行ってください。
+ */
+public class NyARSystemMetrics
+{
+	/** グレースケール画像の生成。{@link NyARSensor}は画像と同時にヒストグラムを生成するので、その時間を含みます。*/
+	public final static int ST_GS=0;
+	/** 閾値計算(ヒストグラムの生成は{@link #ST_GS}に含みます)*/
+	public final static int ST_HISTOGRAM=1;
+	/** ラベリング*/
+	public final static int ST_LABELING=2;
+	/** 輪郭線の取得と矩形判定*/
+	public final static int ST_CONTOUR=3;
+	/** 矩形とマーカの一致判定(トラッキング、NyId、PlayCard、ARマーカ)と、辺の再計算*/
+	public final static int ST_PATTERN_MATCH=4;
+	/** 姿勢行列の計算*/
+	public final static int ST_TRANSMAT=5;
+	/** 前回の姿勢行列を使った姿勢行列の計算*/
+	public final static int ST_TRANSMAT_CONTINUE=6;
+	/** KPMへの入力画像の設定(NFT)*/
+	public final static int ST_KPM_INPUT=7;
+	/** KPMの特徴点検出とマッチング(NFT)。ワーカスレッドで処理した時間を、結果を受け取ったフレームで記録します。*/
+	public final static int ST_KPM_MATCHING=8;
+	/** サーフェイストラッキング(NFT)*/
+	public final static int ST_SURFACE_TRACKING=9;
+	/** update関数全体*/
+	public final static int ST_TOTAL=10;
+	/** ステージの数*/
+	public final static int NUMBER_OF_STAGE=11;
+
+	/** ラベル数*/
+	public final static int CT_LABELS=0;
+	/** 矩形候補の数*/
+	public final static int CT_SQUARES=1;
+	/** SquareStackに格納できなかった矩形候補の数*/
+	public final static int CT_SQUARE_OVERFLOWS=2;
+	/** 消失したマーカの数*/
+	public final static int CT_LOST_MARKERS=3;
+	/** カウンタの数*/
+	public final static int NUMBER_OF_COUNTER=4;
+
+	private final long[] _time=new long[NUMBER_OF_STAGE];
+	private final int[] _count=new int[NUMBER_OF_COUNTER];
+	private final long[] _total_count=new long[NUMBER_OF_COUNTER];
+	/** ステージ毎の処理時間のリングバッファ*/
+	private final long[][] _history;
+	private final long[] _work;
+	private long _number_of_frame=0;
+	private long _frame_start;
+	private INyARSystemMetricsListener _listener=null;
+
+	/**
+	 * コンストラクタです。
+	 * @param i_window_size
+	 * パーセンタイル値の計算に使うフレーム数です。
+	 */
+	public NyARSystemMetrics(int i_window_size)
+	{
+		if(i_window_size<1){
+			throw new NyARRuntimeException("Invalid window size.");
+		}
+		this._history=new long[NUMBER_OF_STAGE][i_window_size];
+		this._work=new long[i_window_size];
+	}
+	/**
+	 * コンストラクタです。直近の300フレームの統計値を計算します。
+	 */
+	public NyARSystemMetrics()
+	{
+		this(300);
+	}
+	/**
+	 * フレーム毎の通知先を設定します。
+	 * @param i_listener
+	 * 通知先のオブジェクト。nullの場合は通知しません。
+	 */
+	public void setListener(INyARSystemMetricsListener i_listener)
+	{
+		this._listener=i_listener;
+	}
+	/**
+	 * 計測したフレームの数を返します。
+	 */
+	public long getNumberOfFrame()
+	{
+		return this._number_of_frame;
+	}
+	/**
+	 * 直近のフレームの処理時間を返します。
+	 * @param i_stage
+	 * ステージ番号。{@link #ST_GS}等の定数です。
+	 * @return
+	 * 処理時間[ns]
+	 */
+	public long getTime(int i_stage)
+	{
+		return this._time[i_stage];
+	}
+	/**
+	 * 直近のフレームのカウンタ値を返します。
+	 * @param i_counter
+	 * カウンタ番号。{@link #CT_LABELS}等の定数です。
+	 */
+	public int getCount(int i_counter)
+	{
+		return this._count[i_counter];
+	}
+	/**
+	 * 計測開始からのカウンタの合計値を返します。
+	 * @param i_counter
+	 * カウンタ番号。{@link #CT_LABELS}等の定数です。
+	 */
+	public long getTotalCount(int i_counter)
+	{
+		return this._total_count[i_counter];
+	}
+	/**
+	 * 直近window_sizeフレームの処理時間のパーセンタイル値を返します。
+	 * @param i_stage
+	 * ステージ番号。{@link #ST_GS}等の定数です。
+	 * @param i_percentile
+	 * 0から100までのパーセンタイル。50で中央値、100で最大値です。
+	 * @return
+	 * 処理時間[ns]。計測したフレームが無い場合は0です。
+	 */
+	public long getPercentile(int i_stage,double i_percentile)
+	{
+		int n=(int)Math.min(this._number_of_frame,this._work.length);
+		if(n==0){
+			return 0;
+		}
+		long[] w=this._work;
+		System.arraycopy(this._history[i_stage],0,w,0,n);
+		Arrays.sort(w,0,n);
+		//nearest-rank
+		int idx=(int)Math.ceil(i_percentile*n/100.0)-1;
+		return w[Math.max(0,Math.min(n-1,idx))];
+	}
+	/**
+	 * 統計値をリセットします。
+	 */
+	public void reset()
+	{
+		Arrays.fill(this._time,0);
+		Arrays.fill(this._count,0);
+		Arrays.fill(this._total_count,0);
+		this._number_of_frame=0;
+	}
+
+	/**
+	 * フレームの計測を開始します。update関数の先頭で呼び出します。
+	 * @return
+	 * 現在時刻[ns]
+	 */
+	public long beginFrame()
+	{
+		Arrays.fill(this._time,0);
+		Arrays.fill(this._count,0);
+		this._frame_start=System.nanoTime();
+		return this._frame_start;
+	}
+	/**
+	 * i_startから現在までの時間をステージに加算します。
+	 * @return
+	 * 現在時刻[ns]。次のステージの開始時刻に使います。
+	 */
+	public long lap(int i_stage,long i_start)
+	{
+		long now=System.nanoTime();
+		this._time[i_stage]+=now-i_start;
+		return now;
+	}
+	/**
+	 * ステージに処理時間を加算します。
+	 */
+	public void addTime(int i_stage,long i_ns)
+	{
+		this._time[i_stage]+=i_ns;
+	}
+	/**
+	 * カウンタに値を加算します。
+	 */
+	public void addCount(int i_counter,int i_value)
+	{
+		this._count[i_counter]+=i_value;
+	}
+	/**
+	 * フレームの計測を終了して、結果をリスナに通知します。update関数の最後で呼び出します。
+	 */
+	public void endFrame()
+	{
+		this._time[ST_TOTAL]=System.nanoTime()-this._frame_start;
+		int p=(int)(this._number_of_frame%this._work.length);
+		for(int i=0;i<NUMBER_OF_STAGE;i++){
+			this._history[i][p]=this._time[i];
+		}
+		for(int i=0;i<NUMBER_OF_COUNTER;i++){
+			this._total_count[i]+=this._count[i];
+		}
+		this._number_of_frame++;
+		if(this._listener!=null){
+			this._listener.onFrame(this);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/* 
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.markersystem;
+
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARRleLabelFragmentInfo;
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector;
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector_Rle;
+import jp.nyatla.nyartoolkit.core.types.NyARIntRect;
+import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
+
+/**
+ * {@link NyARMarkerSystem}と{@link NyARCatalogueMarkerSystem}が使う、標準の矩形検出器です。
+ */
+class SquareDetect implements INyARMarkerSystemSquareDetectRoi
+{
+	/** nullでなければ、ラベリングの時間とラベル数を記録します。*/
+	public NyARSystemMetrics _metrics=null;
+	/** trueなら、{@link NyARSensor#getAdaptiveThresholdImage}の画像から矩形を検出します。*/
+	public boolean _adaptive=false;
+	private NyARSquareContourDetector_Rle _sd;
+	public SquareDetect(int i_width,int i_height)
+	{
+		this._sd=new Detector(new NyARIntSize(i_width,i_height));
+	}
+	/** ラベリングの時間を計測して、範囲を指定したラベリングでは範囲の境界に接するラベルを除外する矩形検出器*/
+	private class Detector extends NyARSquareContourDetector_Rle
+	{
+		public Detector(NyARIntSize i_size)
+		{
+			super(i_size);
+		}
+		@Override
+		protected void setupImageDriver(NyARIntSize i_size)
+		{
+			super.setupImageDriver(i_size);
+			this._labeling=new MeasuredLabeling(i_size.w,i_size.h);
+		}
+		private class MeasuredLabeling extends Labeling
+		{
+			public MeasuredLabeling(int i_width,int i_height)
+			{
+				super(i_width,i_height);
+			}
+			@Override
+			public boolean labeling(INyARGrayscaleRaster i_raster,int i_th)
+			{
+				final NyARSystemMetrics m=SquareDetect.this._metrics;
+				if(m==null){
+					return super.labeling(i_raster,i_th);
+				}
+				long t=System.nanoTime();
+				boolean ret=super.labeling(i_raster,i_th);
+				m.lap(NyARSystemMetrics.ST_LABELING,t);
+				m.addCount(NyARSystemMetrics.CT_LABELS,this.label_stack.getLength());
+				return ret;
+			}
+			@Override
+			public boolean labeling(INyARGrayscaleRaster i_raster,NyARIntRect i_area,int i_th)
+			{
+				final NyARSystemMetrics m=SquareDetect.this._metrics;
+				if(m==null){
+					boolean ret=super.labeling(i_raster,i_area,i_th);
+					this.removeAreaEdgeLabels(i_area);
+					return ret;
+				}
+				long t=System.nanoTime();
+				boolean ret=super.labeling(i_raster,i_area,i_th);
+				this.removeAreaEdgeLabels(i_area);
+				m.lap(NyARSystemMetrics.ST_LABELING,t);
+				m.addCount(NyARSystemMetrics.CT_LABELS,this.label_stack.getLength());
+				return ret;
+			}
+			/**
+			 * 範囲の境界に接するラベルを除外します。ROIの外に続いているかもしれないからです。
+			 * ソート済の順序は維持します。
+			 */
+			private void removeAreaEdgeLabels(NyARIntRect i_area)
+			{
+				final int l=i_area.x;
+				final int t=i_area.y;
+				final int r=i_area.x+i_area.w-1;
+				final int b=i_area.y+i_area.h-1;
+				NyARRleLabelFragmentInfo[] items=this.label_stack.getArray();
+				int n=0;
+				for(int i=0;i<this.label_stack.getLength();i++){
+					NyARRleLabelFragmentInfo item=items[i];
+					if(item.clip_l==l || item.clip_r==r || item.clip_t==t || item.clip_b==b){
+						continue;
+					}
+					items[n]=item;
+					n++;
+				}
+				this.label_stack.setLength(n);
+			}
+		}
+	}
+	public void detectMarkerCb(NyARSensor i_sensor,int i_th,NyARSquareContourDetector.CbHandler i_handler)
+	{
+		this._sd.detectMarker(this._adaptive?i_sensor.getAdaptiveThresholdImage():i_sensor.getGsImage(), i_th,i_handler);
+	}
+	public void detectMarkerCb(NyARSensor i_sensor,NyARIntRect i_area,int i_th,NyARSquareContourDetector.CbHandler i_handler)
+	{
+		this._sd.detectMarker(this._adaptive?i_sensor.getAdaptiveThresholdImage():i_sensor.getGsImage(),i_area,i_th,i_handler);
+	}
+}
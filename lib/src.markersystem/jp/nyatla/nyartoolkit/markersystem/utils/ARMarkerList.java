@@ -29,6 +29,7 @@ import java.util.ArrayList;
 
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
 import jp.nyatla.nyartoolkit.core.marker.artk.NyARCode;
+import jp.nyatla.nyartoolkit.core.marker.artk.algo.NyARMatchPattLibrary_Color_WITHOUT_PCA;
 import jp.nyatla.nyartoolkit.core.marker.artk.algo.NyARMatchPatt_Color_WITHOUT_PCA;
 import jp.nyatla.nyartoolkit.core.marker.artk.match.NyARMatchPattDeviationColorData;
 import jp.nyatla.nyartoolkit.core.marker.artk.match.NyARMatchPattResult;
@@ -53,10 +54,13 @@ public class ARMarkerList extends ArrayList<ARMarkerList.Item>
 		public int patt_h;
 		/** MK_ARの情報。パターンのエッジ割合。*/
 		public final int patt_edge_percentage;
+		/** MK_ARの情報。基準パターン。*/
+		public final NyARCode code;
 		/** */
 		public Item(NyARCode i_patt,int i_patt_edge_percentage,double i_patt_size)
 		{
 			super();
+			this.code=i_patt;
 			this.matchpatt=new NyARMatchPatt_Color_WITHOUT_PCA(i_patt);
 			this.patt_edge_percentage=i_patt_edge_percentage;
 			this.marker_offset.setSquare(i_patt_size);
@@ -65,10 +69,47 @@ public class ARMarkerList extends ArrayList<ARMarkerList.Item>
 			return;
 		}		
 	}	
+	/**
+	 * 解像度とエッジ割合が同じマーカのグループです。
+	 * グループ毎に1回だけ比較画像を作り、{@link NyARMatchPattLibrary_Color_WITHOUT_PCA}で候補を絞り込みます。
+	 */
+	private static class PattGroup
+	{
+		/** 比較画像を作るときに使うマーカ*/
+		public final ARMarkerList.Item ref_item;
+		public final NyARMatchPattLibrary_Color_WITHOUT_PCA library;
+		/** ライブラリのパターン番号から、リストのインデクスへの変換表*/
+		public int[] item_index=new int[4];
+		public PattGroup(ARMarkerList.Item i_item)
+		{
+			this.ref_item=i_item;
+			this.library=new NyARMatchPattLibrary_Color_WITHOUT_PCA(i_item.patt_w,i_item.patt_h);
+		}
+		public boolean isGroupOf(ARMarkerList.Item i_item)
+		{
+			return this.ref_item.patt_w==i_item.patt_w && this.ref_item.patt_h==i_item.patt_h && this.ref_item.patt_edge_percentage==i_item.patt_edge_percentage;
+		}
+		public void add(ARMarkerList.Item i_item,int i_item_index)
+		{
+			int idx=this.library.addARCode(i_item.code);
+			if(idx>=this.item_index.length){
+				int[] t=new int[this.item_index.length*2];
+				System.arraycopy(this.item_index,0,t,0,this.item_index.length);
+				this.item_index=t;
+			}
+			this.item_index[idx]=i_item_index;
+		}
+	}
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
+	private final ArrayList<PattGroup> _groups=new ArrayList<PattGroup>();
+	//update関数の作業領域
+	private int[] _shortlist=new int[0];
+	private boolean[] _passed=new boolean[0];
+	private double[] _passed_cf=new double[0];
+	private int[] _passed_dir=new int[0];
 	private double _configense_th=0.5;//RGB比較をしなければ0.7くらいでいいのだけど。
 	private final NyARMatchPattResult _patt_result=new NyARMatchPattResult();;
 	private final MultiResolutionPattProvider _mpickup=new MultiResolutionPattProvider();
@@ -89,6 +130,26 @@ public class ARMarkerList extends ArrayList<ARMarkerList.Item>
 		while(this._mkmap.getLength()<s*s){
 			this._mkmap.append();
 		}
+		//グループへ登録
+		PattGroup g=null;
+		for(int i=0;i<this._groups.size();i++){
+			if(this._groups.get(i).isGroupOf(i_e)){
+				g=this._groups.get(i);
+				break;
+			}
+		}
+		if(g==null){
+			g=new PattGroup(i_e);
+			this._groups.add(g);
+		}
+		g.add(i_e,s-1);
+		//作業領域の調整
+		if(this._passed.length<s){
+			this._shortlist=new int[s*2];
+			this._passed=new boolean[s*2];
+			this._passed_cf=new double[s*2];
+			this._passed_dir=new int[s*2];
+		}
 		return super.add(i_e);
 	}
 	/**
@@ -110,29 +171,46 @@ public class ARMarkerList extends ArrayList<ARMarkerList.Item>
 	{
 		//sq_tmpに値を生成したかのフラグ
 		boolean is_ganalated_sq=false;
-		for(int i=this.size()-1;i>=0;i--){
-			ARMarkerList.Item target=this.get(i);
+		boolean[] passed=this._passed;
+		//グループ毎に、敷居値を越える可能性のあるマーカだけを評価する。
+		for(int i=this._groups.size()-1;i>=0;i--){
+			PattGroup g=this._groups.get(i);
 			//解像度に一致する画像を取得
-			NyARMatchPattDeviationColorData diff=this._mpickup.getDeviationColorData(target, i_pix_drv,i_sq.ob_vertex);
-			//マーカのパターン解像度に一致したサンプリング画像と比較する。
-			if(!target.matchpatt.evaluate(diff,this._patt_result)){
-				continue;
+			NyARMatchPattDeviationColorData diff=this._mpickup.getDeviationColorData(g.ref_item, i_pix_drv,i_sq.ob_vertex);
+			int n=g.library.shortlist(diff,this._configense_th,this._shortlist);
+			for(int j=0;j<n;j++){
+				int idx=g.item_index[this._shortlist[j]];
+				ARMarkerList.Item target=this.get(idx);
+				//マーカのパターン解像度に一致したサンプリング画像と比較する。
+				if(!target.matchpatt.evaluate(diff,this._patt_result)){
+					continue;
+				}
+				//敷居値をチェック
+				if(this._patt_result.confidence<this._configense_th)
+				{
+					continue;
+				}
+				passed[idx]=true;
+				this._passed_cf[idx]=this._patt_result.confidence;
+				this._passed_dir[idx]=this._patt_result.direction;
 			}
-			//敷居値をチェック
-			if(this._patt_result.confidence<this._configense_th)
-			{
+		}
+		//マーカマップへの追加はリストの逆順に行う。
+		for(int i=this.size()-1;i>=0;i--){
+			if(!passed[i]){
 				continue;
 			}
+			passed[i]=false;
 			//マーカマップへの追加対象か調べる。
-			ARMarkerSortList.Item ip=this._mkmap.getInsertPoint(this._patt_result.confidence);
+			ARMarkerSortList.Item ip=this._mkmap.getInsertPoint(this._passed_cf[i]);
 			if(ip==null){
 				continue;
 			}
 			//マーカマップアイテムの矩形に参照値を設定する。
 			ip=this._mkmap.insertFromTailBefore(ip);
-			ip.cf=this._patt_result.confidence;
-			ip.dir=this._patt_result.direction;
-			ip.marker=target;
+			ip.cf=this._passed_cf[i];
+			ip.dir=this._passed_dir[i];
+			ip.marker=this.get(i);
 			ip.ref_sq=i_sq;
 			is_ganalated_sq=true;
 		}
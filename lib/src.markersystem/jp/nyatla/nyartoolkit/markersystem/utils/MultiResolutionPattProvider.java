@@ -71,11 +71,18 @@ public class MultiResolutionPattProvider
 	 */
 	public NyARMatchPattDeviationColorData getDeviationColorData(ARMarkerList.Item i_marker,INyARPerspectiveCopy i_pix_drv, NyARIntPoint2d[] i_vertex)
 	{
-		int mk_edge=i_marker.patt_edge_percentage;
+		return this.getDeviationColorData(i_marker.patt_w,i_marker.patt_h,i_marker.patt_edge_percentage,i_pix_drv,i_vertex);
+	}
+	/**
+	 * [readonly]パターンの解像度とエッジ割合にマッチした{@link NyARMatchPattDeviationColorData}インスタンスを得る。
+	 */
+	public NyARMatchPattDeviationColorData getDeviationColorData(int i_patt_w,int i_patt_h,int i_patt_edge_percentage,INyARPerspectiveCopy i_pix_drv, NyARIntPoint2d[] i_vertex)
+	{
+		int mk_edge=i_patt_edge_percentage;
 		for(int i=this.items.size()-1;i>=0;i--)
 		{
 			Item ptr=this.items.get(i);
-			if(!ptr._patt.getSize().isEqualSize(i_marker.patt_w,i_marker.patt_h) || ptr._patt_edge!=mk_edge)
+			if(!ptr._patt.getSize().isEqualSize(i_patt_w,i_patt_h) || ptr._patt_edge!=mk_edge)
 			{
 				//サイズとエッジサイズが合致しない物はスルー
 				continue;
@@ -86,7 +93,7 @@ public class MultiResolutionPattProvider
 			return ptr._patt_d;
 		}
 		//無い。新しく生成
-		Item item=new Item(i_marker.patt_w,i_marker.patt_h,mk_edge);
+		Item item=new Item(i_patt_w,i_patt_h,mk_edge);
 		//タイムスタンプの更新とデータの生成
 		i_pix_drv.copyPatt(i_vertex,item._patt_edge,item._patt_edge,item._patt_resolution,item._patt);
 		item._patt_d.setRaster(item._patt);
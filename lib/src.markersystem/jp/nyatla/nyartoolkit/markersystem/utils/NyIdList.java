@@ -74,10 +74,32 @@ public class NyIdList extends ArrayList<NyIdList.Item>
 	{
 		this._id_pickup = new NyIdMarkerPickup();
 	}
+	/**
+	 * このAdd以外使わないでね。
+	 * 追加したアイテムは、次の{@link #update}からIDの範囲インデクスで探索されます。
+	 */
+	public boolean add(NyIdList.Item i_e)
+	{
+		if(!super.add(i_e)){
+			return false;
+		}
+		this._index.add(i_e.nyid_range_s,i_e.nyid_range_e);
+		return true;
+	}
+	/** IDの範囲インデクス。インデクスはリストのインデクスと同じです。*/
+	private final NyIdRangeIndex _index=new NyIdRangeIndex();
+	/** 認識済のアイテムを探索対象から外すフィルタ*/
+	private final NyIdRangeIndex.Filter _free_filter=new NyIdRangeIndex.Filter(){
+		public boolean isAcceptable(int i_index)
+		{
+			//既に認識済なら無視
+			return NyIdList.this.get(i_index).lost_count!=0;
+		}
+	};
 	public void prepare()
 	{
-		//nothing to do
 		//sqはtrackingでnull初期化済み
+		this._index.optimize();
 	}
 	public boolean update(INyARGrayscaleRaster i_raster,SquareStack.Item i_sq)
 	{
@@ -90,23 +112,16 @@ public class NyIdList extends ArrayList<NyIdList.Item>
 		}
 		//IDを検出
 		long s=this._id_data.marker_id;
-		for(int i=this.size()-1;i>=0;i--){
-			Item target=this.get(i);
-			if(target.nyid_range_s>s || s>target.nyid_range_e)
-			{
-				continue;
-			}
-			//既に認識済なら無視
-			if(target.lost_count==0){
-				continue;
-			}
-			//一致したよー。
-			target.nyid=s;
-			target.dir=this._id_param.direction;
-			target.sq=i_sq;
-			return true;
+		int idx=this._index.search(s,this._free_filter);
+		if(idx<0){
+			return false;
 		}
-		return false;
+		//一致したよー。
+		Item target=this.get(idx);
+		target.nyid=s;
+		target.dir=this._id_param.direction;
+		target.sq=i_sq;
+		return true;
 	}
 	public void finish()
 	{
@@ -0,0 +1,191 @@
+/* 
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.markersystem.utils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * このクラスは、NyIdの範囲[s,e]の集合から、IDを含む範囲を探索するインデクスです。
+ * 範囲はsの順に並べて、区間の最大eを持つ二分木(配列表現)で探索します。
+ * 追加した範囲は一旦未整列リストに入れて、{@link #optimize}で一定数たまったら木を作り直します。
+ * <p>
+ * 探索中に範囲を追加することはできません。探索だけなら、複数のスレッドから同時に使えます。
+ * </p>
+ */
+public class NyIdRangeIndex
+{
+	/**
+	 * 探索対象にする範囲を選択するインタフェイスです。
+	 */
+	public interface Filter
+	{
+		/**
+		 * i_index番目の範囲を探索対象にするならtrueを返します。
+		 */
+		public boolean isAcceptable(int i_index);
+	}
+	/** 未整列リストがこの数を越えたら木を作り直す(最小値)*/
+	private final static int MIN_PENDING=64;
+	/** 追加順の範囲*/
+	private long[] _range_s=new long[16];
+	private long[] _range_e=new long[16];
+	private int _length=0;
+	/** sの順に並べた範囲のインデクス*/
+	private int[] _sorted=new int[0];
+	/** 木の葉の数(2のべき乗)*/
+	private int _tree_size=0;
+	/** 木のノード毎の、配下の範囲のeの最大値。[1]が根、[_tree_size+n]がn番目の葉*/
+	private long[] _tree_max_e=new long[0];
+	/** 木に入っていない範囲のインデクス*/
+	private int[] _pending=new int[16];
+	private int _num_of_pending=0;
+	/**
+	 * 範囲を追加します。
+	 * @return
+	 * 範囲のインデクス。追加した順に0から割り当てます。
+	 */
+	public int add(long i_s,long i_e)
+	{
+		int idx=this._length;
+		if(this._range_s.length<=idx){
+			this._range_s=Arrays.copyOf(this._range_s,idx*2);
+			this._range_e=Arrays.copyOf(this._range_e,idx*2);
+		}
+		this._range_s[idx]=i_s;
+		this._range_e[idx]=i_e;
+		this._length++;
+		//未整列リストに追加
+		if(this._pending.length<=this._num_of_pending){
+			this._pending=Arrays.copyOf(this._pending,this._num_of_pending*2);
+		}
+		this._pending[this._num_of_pending++]=idx;
+		return idx;
+	}
+	/**
+	 * 登録した範囲の数を返します。
+	 */
+	public int getLength()
+	{
+		return this._length;
+	}
+	/**
+	 * 未整列リストが大きくなっていたら、木を作り直します。
+	 */
+	public void optimize()
+	{
+		final int n=this._length;
+		if(this._num_of_pending<=MIN_PENDING && this._num_of_pending*16<=n){
+			return;
+		}
+		final long[] rs=this._range_s;
+		Integer[] idx=new Integer[n];
+		for(int i=0;i<n;i++){
+			idx[i]=i;
+		}
+		Arrays.sort(idx,new Comparator<Integer>(){
+			public int compare(Integer a,Integer b)
+			{
+				long sa=rs[a];
+				long sb=rs[b];
+				return sa<sb?-1:(sa>sb?1:a.compareTo(b));
+			}
+		});
+		int ts=1;
+		while(ts<n){
+			ts*=2;
+		}
+		int[] sorted=new int[n];
+		long[] max_e=new long[ts*2];
+		Arrays.fill(max_e,Long.MIN_VALUE);
+		for(int i=0;i<n;i++){
+			sorted[i]=idx[i];
+			max_e[ts+i]=this._range_e[idx[i]];
+		}
+		for(int i=ts-1;i>0;i--){
+			max_e[i]=max_e[i*2]>max_e[i*2+1]?max_e[i*2]:max_e[i*2+1];
+		}
+		this._sorted=sorted;
+		this._tree_size=ts;
+		this._tree_max_e=max_e;
+		this._num_of_pending=0;
+	}
+	/**
+	 * i_idを含む範囲のうち、i_filterが受け入れるもので、インデクスが最大のものを返します。
+	 * 全ての範囲を逆順に走査して最初に見つかるものと同じです。
+	 * @param i_filter
+	 * 範囲の選択条件。nullの場合は全ての範囲が対象です。
+	 * @return
+	 * 範囲のインデクス。無ければ-1
+	 */
+	public int search(long i_id,Filter i_filter)
+	{
+		int best=this.searchTree(1,0,this._tree_size,this.upperBound(i_id),i_id,i_filter,-1);
+		//未整列リスト
+		for(int i=this._num_of_pending-1;i>=0;i--){
+			int idx=this._pending[i];
+			if(idx>best && this.isMatch(idx,i_id,i_filter)){
+				best=idx;
+			}
+		}
+		return best;
+	}
+	/**
+	 * sがi_id以下の最初の位置の次を返します。
+	 */
+	private int upperBound(long i_id)
+	{
+		int lo=0;
+		int hi=this._sorted.length;
+		while(lo<hi){
+			int m=(lo+hi)>>>1;
+			if(this._range_s[this._sorted[m]]<=i_id){
+				lo=m+1;
+			}else{
+				hi=m;
+			}
+		}
+		return lo;
+	}
+	private int searchTree(int i_node,int i_lo,int i_hi,int i_limit,long i_id,Filter i_filter,int i_best)
+	{
+		//葉の範囲[i_lo,i_hi)のうち、s<=i_idとなるのは[0,i_limit)
+		if(i_lo>=i_limit || this._tree_max_e[i_node]<i_id){
+			return i_best;
+		}
+		if(i_hi-i_lo==1){
+			int idx=this._sorted[i_lo];
+			return (idx>i_best && this.isMatch(idx,i_id,i_filter))?idx:i_best;
+		}
+		int m=(i_lo+i_hi)>>>1;
+		i_best=this.searchTree(i_node*2,i_lo,m,i_limit,i_id,i_filter,i_best);
+		return this.searchTree(i_node*2+1,m,i_hi,i_limit,i_id,i_filter,i_best);
+	}
+	private boolean isMatch(int i_idx,long i_id,Filter i_filter)
+	{
+		return this._range_s[i_idx]<=i_id && i_id<=this._range_e[i_idx] && (i_filter==null || i_filter.isAcceptable(i_idx));
+	}
+}
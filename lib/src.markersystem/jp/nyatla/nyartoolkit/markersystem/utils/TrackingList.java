@@ -31,19 +31,17 @@ import jp.nyatla.nyartoolkit.core.types.NyARIntPoint2d;
 
 /**
  * このクラスは。近距離頂点トラッキングの判定と、そこで検出した結果を保持します。
+ * 判定と割り当ては{@link TrackingMatcher}で行います。
  */
 public class TrackingList extends ArrayList<TMarkerData>
 {
 	private static final long serialVersionUID = -6446466460932931830L;
-	private VertexSortTable _tracking_list;
+	private final TrackingMatcher _matcher=new TrackingMatcher();
 	public TrackingList()
 	{
-		this._tracking_list=new VertexSortTable(1);
 	}
 	public void prepare()
 	{
-		//トラッキングリストをリセット
-		this._tracking_list.reset();
 		//検出のために初期値設定
 		for(int i=this.size()-1;i>=0;i--){
 			TMarkerData target=this.get(i);
@@ -54,52 +52,12 @@ public class TrackingList extends ArrayList<TMarkerData>
 				target.lost_count++;
 			}
 		}
+		//トラッキング対象のマーカを登録
+		this._matcher.prepare(this);
 	}
-	private int[] __ret=new int[2];
 	public boolean update(SquareStack.Item i_new_sq)
 	{
-		int[] ret=this.__ret;
-		int new_area=i_new_sq.rect_area;
-		//頂点の対角距離
-		int new_sq_dist=i_new_sq.vertex_area.getDiagonalSqDist();
-		boolean is_dispatched=false;
-		for(int i=this.size()-1;i>=0;i--)
-		{
-			TMarkerData target=this.get(i);
-			if(target.lost_count>1){
-				continue;
-			}
-			//面積比が急激0.8-1.2倍以外の変動なら無視
-			int a_rate=new_area*100/target.tl_rect_area;
-			if(a_rate<50 || 150<a_rate){
-				continue;
-			}
-			//移動距離^2の二乗が対角線距離^2の4倍以上なら無視
-			long sq_move=target.tl_center.sqDist(i_new_sq.center2d);
-			if(sq_move*4/new_sq_dist>0){
-				continue;
-			}
-			compareVertexSet(i_new_sq.ob_vertex,target.tl_vertex,ret);
-			int sqdist=ret[1];
-			int shift=ret[0];
-			//頂点移動距離の合計が、(中心点移動距離+4)の10倍を超えてたらNG <-
-			if(sqdist>(sq_move+8)*10){
-				continue;
-			}
-			//登録可能か確認
-			VertexSortTable.Item item=this._tracking_list.getInsertPoint(sqdist);
-			if(item==null){
-				continue;
-			}
-			//登録
-			item=this._tracking_list.insertFromTailBefore(item);
-			item.marker=target;
-			item.shift=shift;
-			item.sq_dist=sqdist;
-			item.ref_sq=i_new_sq;
-			is_dispatched=true;
-		}
-		return is_dispatched;
+		return this._matcher.update(i_new_sq);
 	}
 
 	/**
@@ -133,38 +91,8 @@ public class TrackingList extends ArrayList<TMarkerData>
     	ret[0]=min_index;
     	ret[1]=min_dist;
     }
-    /**
-     * トラッキングリストへ追加。このadd以外使わないでね。
-     */
-	public boolean add(TMarkerData e)
-	{
-		//1マーカ辺りの最大候補数
-		for(int i=0;i<2;i++){
-			this._tracking_list.append();
-		}
-		return super.add(e);
-	}
 	public void finish()
 	{
-		//一致率の最も高いアイテムを得る。
-		VertexSortTable.Item top_item=this._tracking_list.getTopItem();
-		//アイテムを検出できなくなるまで、一致率が高い順にアイテムを得る。
-		while(top_item!=null){
-			//検出したアイテムのARmarkerIndexのデータをセット
-			TMarkerData target=top_item.marker;
-			//検出カウンタが1以上（未検出の場合のみ検出）
-			if(target.lost_count>0){
-				target.lost_count=0;
-				target.life++;
-				target.sq=top_item.ref_sq;
-				target.sq.rotateVertexL(4-top_item.shift);
-				NyARIntPoint2d.shiftCopy(top_item.ref_sq.ob_vertex,target.tl_vertex,4-top_item.shift);
-				target.tl_center.setValue(top_item.ref_sq.center2d);
-				target.tl_rect_area=top_item.ref_sq.rect_area;
-			}
-			//基準アイテムと重複するアイテムを削除する。
-			this._tracking_list.disableMatchItem(top_item);
-			top_item=this._tracking_list.getTopItem();
-		}
-	}	
+		this._matcher.finish();
+	}
 }
@@ -0,0 +1,471 @@
+/* 
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.markersystem.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import jp.nyatla.nyartoolkit.core.types.NyARIntPoint2d;
+
+/**
+ * このクラスは、近距離頂点トラッキングの対応付けを行います。
+ * <p>
+ * トラッキング中のマーカを、直前の中心座標(tl_center)で格子に分けたハッシュ表に登録して、
+ * 新しい矩形の近傍の格子にあるマーカだけを判定します。
+ * 判定の条件は、矩形とマーカの中心の距離が矩形の対角線長の1/2未満であることを含むので、
+ * 近傍の格子の外にあるマーカが条件を満たすことはありません。
+ * </p>
+ * <p>
+ * 矩形とマーカの候補の組は、頂点の移動距離を費用として、組の数が最大で費用の合計が最小になるように割り当てます。
+ * 割り当ては候補の組でつながるマーカと矩形のグループ毎に行い、1つの矩形は1つのマーカにだけ割り当てます。
+ * </p>
+ */
+public class TrackingMatcher
+{
+	/** 格子の最小サイズ(2のべき乗の指数)*/
+	private final static int MIN_CELL_SHIFT=3;
+	//格子
+	/** 登録したマーカ*/
+	private TMarkerData[] _markers=new TMarkerData[0];
+	private int _num_of_marker=0;
+	/** 格子のサイズ(2のべき乗の指数)*/
+	private int _cell_shift;
+	private int[] _cell_x=new int[0];
+	private int[] _cell_y=new int[0];
+	/** ハッシュ表。格子毎の先頭のマーカ*/
+	private int[] _bucket=new int[1];
+	private int _bucket_mask;
+	/** 同じハッシュ値の次のマーカ*/
+	private int[] _next=new int[0];
+	/** 近傍のマーカの作業領域*/
+	private int[] _near=new int[0];
+	//候補の組
+	private int _num_of_pair=0;
+	private int[] _pair_mk=new int[0];
+	private int[] _pair_sq=new int[0];
+	private int[] _pair_shift=new int[0];
+	private int[] _pair_dist=new int[0];
+	/** 候補の組を持つ矩形*/
+	private SquareStack.Item[] _squares=new SquareStack.Item[0];
+	private int _num_of_square=0;
+	//割り当ての作業領域
+	private int[] _uf=new int[0];
+	private int[] _group_start=new int[0];
+	private int[] _order=new int[0];
+	private int[] _local=new int[0];
+	private int[] _rows=new int[0];
+	private int[] _cols=new int[0];
+	private long[] _cost=new long[0];
+	private int[] _cost_pair=new int[0];
+	private long[] _u=new long[0];
+	private long[] _v=new long[0];
+	private int[] _p=new int[0];
+	private int[] _way=new int[0];
+	private long[] _minv=new long[0];
+	private boolean[] _used=new boolean[0];
+	private final int[] __ret=new int[2];
+
+	/**
+	 * トラッキング対象(lost_countが1以下)のマーカを格子に登録して、候補の組をリセットします。
+	 * マーカのlost_countを更新した後で呼び出してください。
+	 * @param i_markers
+	 * マーカのリスト。候補の組はリストの逆順に判定します。
+	 */
+	public void prepare(List<? extends TMarkerData> i_markers)
+	{
+		this._num_of_pair=0;
+		this._num_of_square=0;
+		int n=i_markers.size();
+		if(this._markers.length<n){
+			this._markers=new TMarkerData[n*2];
+			this._cell_x=new int[n*2];
+			this._cell_y=new int[n*2];
+			this._next=new int[n*2];
+			this._near=new int[n*2];
+		}
+		//トラッキング対象のマーカ
+		int m=0;
+		double side=0;
+		for(int i=0;i<n;i++){
+			TMarkerData target=i_markers.get(i);
+			if(target.lost_count>1){
+				continue;
+			}
+			this._markers[m++]=target;
+			side+=Math.sqrt(target.tl_rect_area);
+		}
+		this._num_of_marker=m;
+		if(m==0){
+			return;
+		}
+		//格子のサイズは、マーカの一辺の平均長
+		int shift=MIN_CELL_SHIFT;
+		while((1<<shift)<side/m && shift<30){
+			shift++;
+		}
+		this._cell_shift=shift;
+		int bs=1;
+		while(bs<m*2){
+			bs*=2;
+		}
+		if(this._bucket.length<bs){
+			this._bucket=new int[bs];
+		}
+		Arrays.fill(this._bucket,0,bs,-1);
+		//逆順に登録して、バケットの中を昇順に並べる
+		for(int i=m-1;i>=0;i--){
+			NyARIntPoint2d c=this._markers[i].tl_center;
+			int gx=c.x>>shift;
+			int gy=c.y>>shift;
+			this._cell_x[i]=gx;
+			this._cell_y[i]=gy;
+			int h=hash(gx,gy)&(bs-1);
+			this._next[i]=this._bucket[h];
+			this._bucket[h]=i;
+		}
+		this._bucket_mask=bs-1;
+	}
+	private static int hash(int i_gx,int i_gy)
+	{
+		return (i_gx*73856093)^(i_gy*19349663);
+	}
+	/**
+	 * 矩形を、近傍のトラッキング対象のマーカと比較して、条件を満たす組を候補に加えます。
+	 * 条件は{@link TrackingList}の従来の条件と同じです。
+	 * @return
+	 * 候補の組を1つ以上加えたらtrue
+	 */
+	public boolean update(SquareStack.Item i_new_sq)
+	{
+		int m=this._num_of_marker;
+		if(m==0){
+			return false;
+		}
+		int[] ret=this.__ret;
+		int new_area=i_new_sq.rect_area;
+		//頂点の対角距離
+		int new_sq_dist=i_new_sq.vertex_area.getDiagonalSqDist();
+		//中心の距離が対角線長の1/2未満の範囲にある格子
+		int r=(int)Math.sqrt(new_sq_dist)/2+1;
+		int shift=this._cell_shift;
+		int cx=i_new_sq.center2d.x;
+		int cy=i_new_sq.center2d.y;
+		int gx0=(cx-r)>>shift;
+		int gx1=(cx+r)>>shift;
+		int gy0=(cy-r)>>shift;
+		int gy1=(cy+r)>>shift;
+		int[] near=this._near;
+		int num_of_near=0;
+		if((long)(gx1-gx0+1)*(gy1-gy0+1)>m){
+			//格子を探すより全て調べる方が早い
+			for(int i=0;i<m;i++){
+				near[num_of_near++]=i;
+			}
+		}else{
+			for(int gy=gy0;gy<=gy1;gy++){
+				for(int gx=gx0;gx<=gx1;gx++){
+					for(int i=this._bucket[hash(gx,gy)&this._bucket_mask];i>=0;i=this._next[i]){
+						if(this._cell_x[i]==gx && this._cell_y[i]==gy){
+							near[num_of_near++]=i;
+						}
+					}
+				}
+			}
+			//登録順に並べる
+			Arrays.sort(near,0,num_of_near);
+		}
+		boolean is_dispatched=false;
+		//リストの逆順に判定する
+		for(int j=num_of_near-1;j>=0;j--)
+		{
+			int idx=near[j];
+			TMarkerData target=this._markers[idx];
+			//面積比が急激0.8-1.2倍以外の変動なら無視
+			int a_rate=new_area*100/target.tl_rect_area;
+			if(a_rate<50 || 150<a_rate){
+				continue;
+			}
+			//移動距離^2の二乗が対角線距離^2の4倍以上なら無視
+			long sq_move=target.tl_center.sqDist(i_new_sq.center2d);
+			if(sq_move*4/new_sq_dist>0){
+				continue;
+			}
+			TrackingList.compareVertexSet(i_new_sq.ob_vertex,target.tl_vertex,ret);
+			int sqdist=ret[1];
+			int shift_v=ret[0];
+			//頂点移動距離の合計が、(中心点移動距離+4)の10倍を超えてたらNG <-
+			if(sqdist>(sq_move+8)*10){
+				continue;
+			}
+			if(!is_dispatched){
+				this.addSquare(i_new_sq);
+				is_dispatched=true;
+			}
+			this.addPair(idx,this._num_of_square-1,shift_v,sqdist);
+		}
+		return is_dispatched;
+	}
+	private void addSquare(SquareStack.Item i_sq)
+	{
+		if(this._squares.length<=this._num_of_square){
+			this._squares=Arrays.copyOf(this._squares,this._num_of_square*2+4);
+		}
+		this._squares[this._num_of_square++]=i_sq;
+	}
+	private void addPair(int i_mk,int i_sq,int i_shift,int i_dist)
+	{
+		int n=this._num_of_pair;
+		if(this._pair_mk.length<=n){
+			int l=n*2+4;
+			this._pair_mk=Arrays.copyOf(this._pair_mk,l);
+			this._pair_sq=Arrays.copyOf(this._pair_sq,l);
+			this._pair_shift=Arrays.copyOf(this._pair_shift,l);
+			this._pair_dist=Arrays.copyOf(this._pair_dist,l);
+		}
+		this._pair_mk[n]=i_mk;
+		this._pair_sq[n]=i_sq;
+		this._pair_shift[n]=i_shift;
+		this._pair_dist[n]=i_dist;
+		this._num_of_pair=n+1;
+	}
+	/**
+	 * 候補の組を割り当てて、割り当てたマーカに矩形を設定します。
+	 * lost_countが0のマーカは、割り当てても値を変更しません。
+	 */
+	public void finish()
+	{
+		int np=this._num_of_pair;
+		if(np==0){
+			return;
+		}
+		int m=this._num_of_marker;
+		int nn=m+this._num_of_square;
+		if(this._uf.length<nn+1){
+			this._uf=new int[nn*2+1];
+			this._group_start=new int[nn*2+1];
+			this._local=new int[nn*2+1];
+		}
+		if(this._order.length<np){
+			this._order=new int[np*2];
+		}
+		//候補の組でつながるマーカと矩形をまとめる
+		int[] uf=this._uf;
+		for(int i=0;i<nn;i++){
+			uf[i]=i;
+		}
+		for(int i=0;i<np;i++){
+			int a=find(uf,this._pair_mk[i]);
+			int b=find(uf,m+this._pair_sq[i]);
+			if(a!=b){
+				uf[a>b?a:b]=a<b?a:b;
+			}
+		}
+		//グループ毎に組を並べる(グループ内は組の順)
+		int[] gs=this._group_start;
+		Arrays.fill(gs,0,nn+1,0);
+		for(int i=0;i<np;i++){
+			gs[find(uf,this._pair_mk[i])+1]++;
+		}
+		for(int i=0;i<nn;i++){
+			gs[i+1]+=gs[i];
+		}
+		int[] order=this._order;
+		for(int i=0;i<np;i++){
+			order[gs[find(uf,this._pair_mk[i])]++]=i;
+		}
+		//gs[root]はグループの終端を指している
+		Arrays.fill(this._local,0,nn,-1);
+		int s=0;
+		for(int i=0;i<nn;i++){
+			if(gs[i]>s){
+				this.assign(order,s,gs[i]);
+				s=gs[i];
+			}
+		}
+	}
+	private static int find(int[] i_uf,int i_n)
+	{
+		while(i_uf[i_n]!=i_n){
+			i_uf[i_n]=i_uf[i_uf[i_n]];
+			i_n=i_uf[i_n];
+		}
+		return i_n;
+	}
+	/**
+	 * 1つのグループの組[i_s,i_e)を割り当てます。
+	 */
+	private void assign(int[] i_order,int i_s,int i_e)
+	{
+		int m=this._num_of_marker;
+		int[] local=this._local;
+		//グループのマーカと矩形に番号を振る
+		int nr=0;
+		int nc=0;
+		if(this._rows.length<i_e-i_s){
+			this._rows=new int[(i_e-i_s)*2];
+			this._cols=new int[(i_e-i_s)*2];
+		}
+		for(int i=i_s;i<i_e;i++){
+			int p=i_order[i];
+			int r=this._pair_mk[p];
+			int c=m+this._pair_sq[p];
+			if(local[r]<0){
+				local[r]=nr;
+				this._rows[nr++]=r;
+			}
+			if(local[c]<0){
+				local[c]=nc;
+				this._cols[nc++]=c;
+			}
+		}
+		if(nr==1 || nc==1){
+			//1つのマーカか1つの矩形を取り合う場合は、費用が最小の組(同値なら先の組)
+			int best=i_order[i_s];
+			for(int i=i_s+1;i<i_e;i++){
+				int p=i_order[i];
+				if(this._pair_dist[p]<this._pair_dist[best]){
+					best=p;
+				}
+			}
+			this.apply(best);
+			return;
+		}
+		//組の数が最大で、費用の合計が最小の割り当て
+		int k=nr>nc?nr:nc;
+		if(this._cost.length<k*k){
+			this._cost=new long[k*k*2];
+			this._cost_pair=new int[k*k*2];
+		}
+		long big=1;
+		for(int i=i_s;i<i_e;i++){
+			big+=this._pair_dist[i_order[i]];
+		}
+		Arrays.fill(this._cost,0,k*k,big);
+		Arrays.fill(this._cost_pair,0,k*k,-1);
+		for(int i=i_s;i<i_e;i++){
+			int p=i_order[i];
+			int idx=local[this._pair_mk[p]]*k+local[m+this._pair_sq[p]];
+			this._cost[idx]=this._pair_dist[p];
+			this._cost_pair[idx]=p;
+		}
+		this.solve(k);
+		for(int j=1;j<=k;j++){
+			int row=this._p[j];
+			if(row==0){
+				continue;
+			}
+			int p=this._cost_pair[(row-1)*k+(j-1)];
+			if(p>=0){
+				this.apply(p);
+			}
+		}
+	}
+	/**
+	 * k*kの費用行列の最小費用の割り当てを、ハンガリー法で計算します。
+	 * 結果は_p[列+1]=行+1です。
+	 */
+	private void solve(int k)
+	{
+		if(this._u.length<k+1){
+			int l=(k+1)*2;
+			this._u=new long[l];
+			this._v=new long[l];
+			this._p=new int[l];
+			this._way=new int[l];
+			this._minv=new long[l];
+			this._used=new boolean[l];
+		}
+		long[] a=this._cost;
+		long[] u=this._u;
+		long[] v=this._v;
+		int[] p=this._p;
+		int[] way=this._way;
+		long[] minv=this._minv;
+		boolean[] used=this._used;
+		Arrays.fill(u,0,k+1,0);
+		Arrays.fill(v,0,k+1,0);
+		Arrays.fill(p,0,k+1,0);
+		for(int i=1;i<=k;i++){
+			p[0]=i;
+			int j0=0;
+			Arrays.fill(minv,0,k+1,Long.MAX_VALUE);
+			Arrays.fill(used,0,k+1,false);
+			do{
+				used[j0]=true;
+				int i0=p[j0];
+				long delta=Long.MAX_VALUE;
+				int j1=0;
+				for(int j=1;j<=k;j++){
+					if(used[j]){
+						continue;
+					}
+					long cur=a[(i0-1)*k+(j-1)]-u[i0]-v[j];
+					if(cur<minv[j]){
+						minv[j]=cur;
+						way[j]=j0;
+					}
+					if(minv[j]<delta){
+						delta=minv[j];
+						j1=j;
+					}
+				}
+				for(int j=0;j<=k;j++){
+					if(used[j]){
+						u[p[j]]+=delta;
+						v[j]-=delta;
+					}else{
+						minv[j]-=delta;
+					}
+				}
+				j0=j1;
+			}while(p[j0]!=0);
+			do{
+				int j1=way[j0];
+				p[j0]=p[j1];
+				j0=j1;
+			}while(j0!=0);
+		}
+	}
+	/**
+	 * 候補の組を割り当てます。
+	 */
+	private void apply(int i_pair)
+	{
+		TMarkerData target=this._markers[this._pair_mk[i_pair]];
+		SquareStack.Item sq=this._squares[this._pair_sq[i_pair]];
+		int shift=this._pair_shift[i_pair];
+		//検出カウンタが1以上（未検出の場合のみ検出）
+		if(target.lost_count>0){
+			target.lost_count=0;
+			target.life++;
+			target.sq=sq;
+			target.sq.rotateVertexL(4-shift);
+			NyARIntPoint2d.shiftCopy(sq.ob_vertex,target.tl_vertex,4-shift);
+			target.tl_center.setValue(sq.center2d);
+			target.tl_rect_area=sq.rect_area;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/* 
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.nftsystem;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+
+/**
+ * 最新の入力画像を1枚だけ保持して、書込み側のスレッドから取出し側のスレッドへ渡す交換器です。
+ * 3枚の画像を循環させるので、どちらのスレッドも相手を待たずに書込み/取出しができます。
+ * 取り出す前に次の画像が届いた場合は、古い画像を捨てます。
+ * <p>
+ * 書込み側と取出し側は、それぞれ同時に1つのスレッドだけが呼び出せます。
+ * 取出し側の待機は、呼び出し側で行います。
+ * </p>
+ */
+class LatestFrameExchanger
+{
+	private static class Frame{
+		final public INyARGrayscaleRaster raster;
+		/** まだ取り出していない画像ならtrue*/
+		public volatile boolean fresh=false;
+		public Frame(int i_width,int i_height)
+		{
+			this.raster=NyARGrayscaleRaster.createInstance(i_width,i_height);
+		}
+	}
+	final private AtomicReference<Frame> _slot;
+	/** 書込み側の画像*/
+	private Frame _back;
+	/** 取出し側の画像*/
+	private Frame _front;
+	public LatestFrameExchanger(int i_width,int i_height)
+	{
+		this._slot=new AtomicReference<Frame>(new Frame(i_width,i_height));
+		this._back=new Frame(i_width,i_height);
+		this._front=new Frame(i_width,i_height);
+	}
+	/**
+	 * 画像をコピーして、取出し側に渡します。
+	 * @param i_src
+	 * {@link NyARBufferType#INT1D_GRAY_8}形式の画像
+	 * @return
+	 * 取り出していない画像を捨てた場合はtrue
+	 */
+	public boolean put(INyARGrayscaleRaster i_src)
+	{
+		if(!i_src.isEqualBufferType(NyARBufferType.INT1D_GRAY_8)){
+			throw new NyARRuntimeException();
+		}
+		Frame f=this._back;
+		int[] s=(int[])i_src.getBuffer();
+		System.arraycopy(s,0,(int[])f.raster.getBuffer(),0,s.length);
+		f.fresh=true;
+		f=this._slot.getAndSet(f);
+		this._back=f;
+		return f.fresh;
+	}
+	/**
+	 * 取り出していない画像があるかを返します。
+	 */
+	public boolean hasFrame()
+	{
+		return this._slot.get().fresh;
+	}
+	/**
+	 * 最新の画像を取り出します。
+	 * @return
+	 * 次の{@link #poll}まで有効な画像。取り出していない画像が無ければnull
+	 */
+	public INyARGrayscaleRaster poll()
+	{
+		//スロットに未処理の画像を置くのは書込み側だけなので、確認後に交換した画像は必ず未処理の画像になる。
+		if(!this._slot.get().fresh){
+			return null;
+		}
+		Frame f=this._front;
+		f.fresh=false;
+		this._front=this._slot.getAndSet(f);
+		return this._front.raster;
+	}
+}
@@ -0,0 +1,281 @@
+/* 
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.nftsystem;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+
+/**
+ * このクラスは、複数の{@link NyARNftSystem}のKPM処理を、決まった数のワーカスレッドで分担して処理するサービスです。
+ * {@link NyARNftSystem#NyARNftSystem(INyARNftSystemConfig,NyARKpmService)}で生成したインスタンスは、
+ * 専用のKPMスレッドを持たずに、このサービスに画像を渡します。
+ * <p>
+ * スケジューリングの規則は次の通りです。
+ * <ul>
+ * <li>1つのストリーム(NyARNftSystem)が保持する画像は最新の1枚だけです。処理待ちの間に次の画像が届いた場合は、古い画像を捨てます。
+ * <li>1つのストリームを同時に処理するワーカは1つだけです。処理待ちのストリームは、到着順に処理します。
+ * <li>追跡中のNFTターゲットが無いストリームを優先します。ただし、優先ストリームを{@link #MAX_PRIORITY_RUN}回続けて処理した後は、
+ * もう一方のストリームを1つ処理します。
+ * </ul>
+ * </p>
+ * ワーカスレッドはメインスレッド終了時に{@link #shutdown}で終了してください。
+ */
+public class NyARKpmService
+{
+	/**
+	 * ストリームの画像を処理するインタフェイスです。
+	 */
+	public interface IStreamHandler
+	{
+		/**
+		 * 画像を処理します。ワーカスレッドから呼び出します。
+		 * 同じストリームのこの関数を、複数のワーカが同時に呼び出すことはありません。
+		 * @param i_frame
+		 * 処理する画像。関数を抜けた後は使えません。
+		 */
+		public void process(INyARGrayscaleRaster i_frame);
+	}
+	/**
+	 * 優先ストリームを続けて処理する最大の回数です。
+	 */
+	public final static int MAX_PRIORITY_RUN=3;
+	/**
+	 * サービスに画像を渡す1つのストリームです。{@link NyARKpmService#openStream}で生成します。
+	 */
+	public class Stream
+	{
+		final private static int ST_IDLE=0;
+		final private static int ST_QUEUED=1;
+		final private static int ST_RUNNING=2;
+		final private LatestFrameExchanger _frames;
+		final private IStreamHandler _handler;
+		final private AtomicInteger _state=new AtomicInteger(ST_IDLE);
+		/** 追跡中のNFTターゲットがあるかのフラグ。キューに入れる時の優先度に使います。*/
+		private volatile boolean _is_tracking=false;
+		private volatile boolean _is_closed=false;
+		private Stream(int i_width,int i_height,IStreamHandler i_handler)
+		{
+			this._frames=new LatestFrameExchanger(i_width,i_height);
+			this._handler=i_handler;
+		}
+		/**
+		 * 画像をコピーして、サービスの処理待ちにします。呼び出したスレッドは、処理を待ちません。
+		 * 1つのストリームには、同時に1つのスレッドだけが画像を渡せます。
+		 * @param i_frame
+		 * 処理する画像
+		 * @param i_is_tracking
+		 * ストリームが追跡中のNFTターゲットを持つ場合はtrue。trueの場合は、優先度が下がります。
+		 */
+		public void submit(INyARGrayscaleRaster i_frame,boolean i_is_tracking)
+		{
+			if(this._is_closed){
+				throw new NyARRuntimeException("Stream is closed.");
+			}
+			this._is_tracking=i_is_tracking;
+			if(this._frames.put(i_frame)){
+				NyARKpmService.this._dropped.incrementAndGet();
+			}
+			if(this._state.compareAndSet(ST_IDLE,ST_QUEUED)){
+				NyARKpmService.this.enqueue(this);
+			}
+		}
+		/**
+		 * ストリームを閉じます。処理中の画像があれば、処理の終了を待ちます。
+		 * 処理待ちの画像は捨てます。
+		 */
+		public void close()
+		{
+			this._is_closed=true;
+			synchronized(this){
+				while(this._state.get()==ST_RUNNING){
+					try {
+						this.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		}
+		/**
+		 * 最新の画像を1枚処理します。ワーカスレッドから呼び出します。
+		 */
+		private void runOnce()
+		{
+			this._state.set(ST_RUNNING);
+			try{
+				INyARGrayscaleRaster f=this._frames.poll();
+				if(f!=null && !this._is_closed){
+					this._handler.process(f);
+					NyARKpmService.this._processed.incrementAndGet();
+				}
+			}finally{
+				synchronized(this){
+					this._state.set(ST_IDLE);
+					this.notifyAll();
+				}
+			}
+			//処理中に届いた画像があれば、キューの末尾に入れ直す。
+			if(!this._is_closed && this._frames.hasFrame() && this._state.compareAndSet(ST_IDLE,ST_QUEUED)){
+				NyARKpmService.this.enqueue(this);
+			}
+		}
+	}
+	/**
+	 * ワーカスレッドです。
+	 */
+	private class Worker extends Thread
+	{
+		@Override
+		public void run()
+		{
+			for(;;){
+				Stream s;
+				try {
+					s=NyARKpmService.this.dequeue();
+				} catch (InterruptedException e) {
+					return;
+				}
+				if(s==null){
+					return;
+				}
+				try{
+					s.runOnce();
+				}catch(RuntimeException e){
+					//1つのストリームの例外で、ワーカを止めない。
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	final private Worker[] _workers;
+	/** 追跡中のNFTターゲットが無いストリームのキュー*/
+	final private ArrayDeque<Stream> _priority_queue=new ArrayDeque<Stream>();
+	/** 追跡中のNFTターゲットがあるストリームのキュー*/
+	final private ArrayDeque<Stream> _normal_queue=new ArrayDeque<Stream>();
+	/** 優先ストリームを続けて処理した回数*/
+	private int _priority_run=0;
+	private boolean _is_shutdown=false;
+	final private AtomicLong _dropped=new AtomicLong();
+	final private AtomicLong _processed=new AtomicLong();
+	/**
+	 * コンストラクタです。ワーカスレッドを開始します。
+	 * @param i_number_of_worker
+	 * ワーカスレッドの数。同時に処理するストリームの最大数です。
+	 */
+	public NyARKpmService(int i_number_of_worker)
+	{
+		if(i_number_of_worker<1){
+			throw new NyARRuntimeException("Invalid number of worker.");
+		}
+		this._workers=new Worker[i_number_of_worker];
+		for(int i=0;i<i_number_of_worker;i++){
+			this._workers[i]=new Worker();
+			this._workers[i].start();
+		}
+	}
+	/**
+	 * 新しいストリームを生成します。
+	 * @param i_width
+	 * 画像の幅
+	 * @param i_height
+	 * 画像の高さ
+	 * @param i_handler
+	 * 画像を処理するオブジェクト
+	 * @return
+	 * 生成したストリーム
+	 */
+	public Stream openStream(int i_width,int i_height,IStreamHandler i_handler)
+	{
+		return new Stream(i_width,i_height,i_handler);
+	}
+	/**
+	 * 処理する前に、新しい画像で上書きして捨てた画像の数を返します。
+	 */
+	public long getNumberOfDroppedFrames()
+	{
+		return this._dropped.get();
+	}
+	/**
+	 * 処理した画像の数を返します。
+	 */
+	public long getNumberOfProcessedFrames()
+	{
+		return this._processed.get();
+	}
+	private synchronized void enqueue(Stream i_stream)
+	{
+		if(i_stream._is_tracking){
+			this._normal_queue.addLast(i_stream);
+		}else{
+			this._priority_queue.addLast(i_stream);
+		}
+		this.notify();
+	}
+	/**
+	 * 次に処理するストリームを取り出します。処理待ちのストリームが無ければ待ちます。
+	 * @return
+	 * ストリーム。サービスを終了した場合はnull
+	 */
+	private synchronized Stream dequeue() throws InterruptedException
+	{
+		for(;;){
+			if(this._is_shutdown){
+				return null;
+			}
+			if(!this._normal_queue.isEmpty() && (this._priority_queue.isEmpty() || this._priority_run>=MAX_PRIORITY_RUN)){
+				this._priority_run=0;
+				return this._normal_queue.pollFirst();
+			}
+			if(!this._priority_queue.isEmpty()){
+				this._priority_run++;
+				return this._priority_queue.pollFirst();
+			}
+			this.wait();
+		}
+	}
+	/**
+	 * ワーカスレッドを終了します。処理中の画像があれば、処理の終了を待ちます。
+	 * サービスを使う{@link NyARNftSystem}を全て{@link NyARNftSystem#shutdown}してから呼び出してください。
+	 */
+	public void shutdown()
+	{
+		synchronized(this){
+			this._is_shutdown=true;
+			this.notifyAll();
+		}
+		try {
+			for(Worker w:this._workers){
+				w.join();
+			}
+		} catch (InterruptedException e) {
+		}
+	}
+}
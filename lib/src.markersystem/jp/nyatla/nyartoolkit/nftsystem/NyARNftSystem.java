@@ -4,10 +4,16 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.kpm.keyframe.KeyframeMap;
 import jp.nyatla.nyartoolkit.core.kpm.matcher.FreakKeypointMatching;
 import jp.nyatla.nyartoolkit.core.marker.nft.NyARNftDataSet;
 import jp.nyatla.nyartoolkit.core.param.NyARParam;
@@ -20,9 +26,11 @@ import jp.nyatla.nyartoolkit.core.transmat.NyARTransMatResultParam;
 import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
 import jp.nyatla.nyartoolkit.core.types.NyARDoublePoint2d;
 import jp.nyatla.nyartoolkit.core.types.NyARDoublePoint3d;
+import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
 import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix44;
 import jp.nyatla.nyartoolkit.markersystem.NyARSensor;
 import jp.nyatla.nyartoolkit.markersystem.NyARSingleCameraSystem;
+import jp.nyatla.nyartoolkit.markersystem.NyARSystemMetrics;
 
 /**
  * このクラスは、NFTマーカ(自然特徴点マーカ)の検出・トラッキングクラスです。
@@ -36,46 +44,137 @@ public class NyARNftSystem extends NyARSingleCameraSystem
 	 * コンフィギュレーションを格納したオブジェクト。
 	 */
 	public NyARNftSystem(INyARNftSystemConfig i_config) {
+		this(i_config,null);
+	}
+	/**
+	 * コンストラクタです。
+	 * KPMの処理を、複数のインスタンスで共有するサービスに任せます。
+	 * @param i_config
+	 * コンフィギュレーションを格納したオブジェクト。
+	 * @param i_kpm_service
+	 * KPMの処理を行うサービス。nullの場合は、専用のKPMスレッドを開始します。
+	 */
+	public NyARNftSystem(INyARNftSystemConfig i_config,NyARKpmService i_kpm_service) {
 		super(i_config.getNyARSingleCameraView());
 		NyARParam cparam=this._view.getARParam();
-		this._kpm_thread=new KpmThread(cparam,this._nftdatalist);
+		NyARIntSize s=cparam.getScreenSize();
+		this._kpm=new KpmProcessor(cparam);
 		this._surface_tracker=new NyARSurfaceTracker(cparam,16,0.5);
 		this._sftrackingutils=new NyARSurfaceTrackingTransmatUtils(cparam,5.0);
-		this._kpm_thread.start();
+		if(i_kpm_service==null){
+			this._kpm_thread=new KpmThread(this._kpm,s);
+			this._kpm_stream=null;
+			this._kpm_thread.start();
+		}else{
+			this._kpm_thread=null;
+			this._kpm_stream=i_kpm_service.openStream(s.w,s.h,this._kpm);
+		}
 	}
 	private long _last_time_stamp=-1;
 	/**
 	 * NFTターゲット1個の状態を管理するクラスです。
 	 */
-	private class NftTarget{
+	private static class NftTarget{
 		/** KPMによる初期検出対象*/
 		final private static int ST_KPM_SEARCH	=1;
 		final private static int ST_KPM_FOUND 	=2;
 		/** AR2SURFACEトラッキングによる検出状態維持*/
 		final private static int ST_AR2_TRACKING=3;
-		public int stage;
+		/** 検出状態。メインスレッドだけが書き換えます。KPMスレッドは、検出対象の判定に読み出します。*/
+		public volatile int stage;
+		/** KPMによる検出を開始する度に1増える番号。古い検出結果を捨てるために使います。*/
+		public volatile int search_epoch;
 		/** 参照定義セット*/
-		public NyARNftDataSet dataset;
-		/** KPMスレッドの出力結果*/
-		public NyARDoubleMatrix44 back_transmat=new NyARDoubleMatrix44();
-		/** transmat_backが更新されたかのフラグ*/
-		public boolean back_has_result;
+		final public NyARNftDataSet dataset;
+		/** KPMスレッドの出力結果。メインスレッドが取り出すまで、最後の結果を保持します。*/
+		final public AtomicReference<KpmResult> kpm_result=new AtomicReference<KpmResult>();
 
 		/** メインスレッド用の出力結果*/
-		public NyARDoubleMatrix44 front_transmat=new NyARDoubleMatrix44();
+		final public NyARDoubleMatrix44 front_transmat=new NyARDoubleMatrix44();
 		/** コンストラクタ*/
 		public NftTarget(NyARNftDataSet i_dataset)
 		{
 			this.dataset=i_dataset;
+			this.search_epoch=0;
+			this.stage=ST_KPM_SEARCH;
+		}
+		/**
+		 * KPMによる検出をやり直します。
+		 */
+		public void restartSearch()
+		{
+			this.search_epoch++;
 			this.stage=ST_KPM_SEARCH;
-			this.back_has_result=false;
 		}
 	}
-	private class NyARNftTargetList extends ArrayList<NftTarget>{
-		private static final long serialVersionUID = 2150347966734138642L;	
+	/**
+	 * KPMスレッドの検出結果です。生成後は変更しません。
+	 */
+	private static class KpmResult{
+		/** 姿勢行列*/
+		final public NyARDoubleMatrix44 transmat=new NyARDoubleMatrix44();
+		/** 検出を開始した時の{@link NftTarget#search_epoch}*/
+		final public int search_epoch;
+		public KpmResult(NyARDoubleMatrix44 i_transmat,int i_search_epoch)
+		{
+			this.transmat.setValue(i_transmat);
+			this.search_epoch=i_search_epoch;
+		}
 	}
+	/**
+	 * NFTターゲットの一覧です。
+	 * 登録と削除は配列を複製して差し替えるので、読み出し側はロックせずに、呼び出した時点の一覧を参照できます。
+	 * IDは配列のインデクスです。削除したIDの要素はnullになり、IDは再利用しません。
+	 */
+	private static class NftTargetRegistry{
+		final private AtomicReference<NftTarget[]> _items=new AtomicReference<NftTarget[]>(new NftTarget[0]);
+		/**
+		 * 現在の一覧を返します。返した配列は変更しないでください。
+		 */
+		public NftTarget[] snapshot()
+		{
+			return this._items.get();
+		}
+		public int add(NftTarget i_item)
+		{
+			for(;;){
+				NftTarget[] s=this._items.get();
+				NftTarget[] d=Arrays.copyOf(s,s.length+1);
+				d[s.length]=i_item;
+				if(this._items.compareAndSet(s,d)){
+					return s.length;
+				}
+			}
+		}
+		public void remove(int i_id)
+		{
+			for(;;){
+				NftTarget[] s=this._items.get();
+				if(i_id<0 || i_id>=s.length || s[i_id]==null){
+					throw new NyARRuntimeException("Invalid target id.");
+				}
+				NftTarget[] d=s.clone();
+				d[i_id]=null;
+				if(this._items.compareAndSet(s,d)){
+					return;
+				}
+			}
+		}
+		public NftTarget get(int i_id)
+		{
+			NftTarget[] s=this._items.get();
+			if(i_id<0 || i_id>=s.length || s[i_id]==null){
+				throw new NyARRuntimeException("Invalid target id.");
+			}
+			return s[i_id];
+		}
+	}
+	final private KpmProcessor _kpm;
+	/** 専用のKPMスレッド。サービスを使う場合はnull*/
 	final private KpmThread _kpm_thread;
-	final private NyARNftTargetList _nftdatalist=new NyARNftTargetList();
+	/** KPMサービスのストリーム。専用のKPMスレッドを使う場合はnull*/
+	final private NyARKpmService.Stream _kpm_stream;
+	final private NftTargetRegistry _nftdatalist=new NftTargetRegistry();
 	final private NyARSurfaceTrackingTransmatUtils _sftrackingutils;
 	
 	final private NyARSurfaceTracker _surface_tracker;	
@@ -102,17 +201,52 @@ public class NyARNftSystem extends NyARSingleCameraSystem
 
 		//ステータス遷移
 
-		
+		final NyARSystemMetrics m=this._metrics;
+		long t=m!=null?m.beginFrame():0;
 		NyARDoublePoint2d[] pos2d=this._pos2d;
 		NyARDoublePoint3d[] pos3d=this._pos3d;
 		INyARGrayscaleRaster gs=i_sensor.getGsImage();
+		if(m!=null){t=m.lap(NyARSystemMetrics.ST_GS,t);}
 		
-		//KPMスレッドによる更新()
-		this._kpm_thread.updateInputImage(gs);
+		NftTarget[] targets=this._nftdatalist.snapshot();
+		//KPMスレッドの検出結果の取込み
+		boolean is_searching=false;
+		boolean is_tracking=false;
+		for(NftTarget target : targets){
+			if(target==null){
+				continue;
+			}
+			KpmResult r=target.kpm_result.getAndSet(null);
+			if(target.stage!=NftTarget.ST_KPM_SEARCH){
+				is_tracking=true;
+				continue;
+			}
+			//現在の検出で見つかった時だけ更新
+			if(r!=null && r.search_epoch==target.search_epoch){
+				target.front_transmat.setValue(r.transmat);
+				target.stage=NftTarget.ST_KPM_FOUND;
+			}else{
+				is_searching=true;
+			}
+		}
+		//KPMスレッドの処理時間の記録
+		long kpm_time=this._kpm.last_kpm_time.getAndSet(-1);
+		if(m!=null && kpm_time>=0){
+			m.addTime(NyARSystemMetrics.ST_KPM_MATCHING,kpm_time);
+		}
+		//KPMスレッドへの画像の受け渡し
+		if(is_searching){
+			if(this._kpm_thread!=null){
+				this._kpm_thread.updateInputImage(gs);
+			}else{
+				this._kpm_stream.submit(gs,is_tracking);
+			}
+		}
+		if(m!=null){t=m.lap(NyARSystemMetrics.ST_KPM_INPUT,t);}
 
 		//SurfaceTrackingによるfrontデータの更新
-		for(NftTarget target:this._nftdatalist){
-			if(target.stage<NftTarget.ST_KPM_FOUND){
+		for(NftTarget target:targets){
+			if(target==null || target.stage<NftTarget.ST_KPM_FOUND){
 				//KPM検出前なら何もしない。
 				continue;
 			}
@@ -121,18 +255,24 @@ public class NyARNftSystem extends NyARSingleCameraSystem
 				//NftTarget.ST_AR2_TRACKING以降				
 				//front_transmatに作る。
 				NyARSurfaceTracker st=this._surface_tracker;
+				if(m!=null){t=System.nanoTime();}
 				int nop=st.tracking(gs,target.dataset.surface_dataset,target.front_transmat, this._pos2d, pos3d,16);
+				if(m!=null){t=m.lap(NyARSystemMetrics.ST_SURFACE_TRACKING,t);}
 				if(nop==0){
 					//失敗
-					target.stage=NftTarget.ST_KPM_SEARCH;
+					target.restartSearch();
+					if(m!=null){m.addCount(NyARSystemMetrics.CT_LOST_MARKERS,1);}
 					continue;
 				}
 				//Transmatの試験
 				NyARDoublePoint3d off=NyARSurfaceTrackingTransmatUtils.centerOffset(pos3d,nop,new NyARDoublePoint3d());
 				NyARSurfaceTrackingTransmatUtils.modifyInputOffset(target.front_transmat, pos3d,nop,off);//ARTK5の補正
-				if(!this._sftrackingutils.surfaceTrackingTransmat(target.front_transmat, pos2d, pos3d, nop,target.front_transmat,this.result_param)){
+				boolean is_tracked=this._sftrackingutils.surfaceTrackingTransmat(target.front_transmat, pos2d, pos3d, nop,target.front_transmat,this.result_param);
+				if(m!=null){m.lap(NyARSystemMetrics.ST_TRANSMAT_CONTINUE,t);}
+				if(!is_tracked){
 					//失敗
-					target.stage=NftTarget.ST_KPM_SEARCH;
+					target.restartSearch();
+					if(m!=null){m.addCount(NyARSystemMetrics.CT_LOST_MARKERS,1);}
 					continue;
 				}
 				NyARSurfaceTrackingTransmatUtils.restoreOutputOffset(target.front_transmat,off);//ARTK5の補正
@@ -142,6 +282,9 @@ public class NyARNftSystem extends NyARSingleCameraSystem
 				break;
 			}
 		}
+		if(m!=null){
+			m.endFrame();
+		}
 	}
 	/**
 	 * ファイルから、検出対象のNFTデータセットをインスタンスに登録します。
@@ -180,6 +323,7 @@ public class NyARNftSystem extends NyARSingleCameraSystem
 	}
 	/**
 	 * NFTの特徴点データセットオブジェクトをインスタンスに登録します。
+	 * KPMスレッドの処理を待たずに登録します。検出は、次の{@link #update}から始まります。
 	 * @param i_dataset
 	 * 登録する特徴点データセット
 	 * @return
@@ -187,16 +331,17 @@ public class NyARNftSystem extends NyARSingleCameraSystem
 	 */
 	public int addNftTarget(NyARNftDataSet i_dataset)
 	{
-		//KPMスレッドが待機中になるまで待つ
-		while(this._kpm_thread.getState()!=Thread.State.WAITING){
-			Thread.yield();
-		}		
-		//追加
-		if(!this._nftdatalist.add(new NftTarget(i_dataset)))
-		{
-			throw new NyARRuntimeException();
-		}
-		return this._nftdatalist.size()-1;
+		return this._nftdatalist.add(new NftTarget(i_dataset));
+	}
+	/**
+	 * 登録した検出対象を削除します。
+	 * KPMスレッドの処理を待たずに削除します。削除したID値は再利用しません。
+	 * @param i_id
+	 * 削除する検出対象のID値
+	 */
+	public void removeNftTarget(int i_id)
+	{
+		this._nftdatalist.remove(i_id);
 	}
 	/**
 	 * {@link InputStream}からnftdataset形式のファイルを読みだしてインスタンスに登録します。
@@ -241,68 +386,132 @@ public class NyARNftSystem extends NyARSingleCameraSystem
 	
 
 	/**
-	 * Key point Matching Thread
+	 * Key point Matching処理です。
+	 * 専用のKPMスレッド({@link KpmThread})か、{@link NyARKpmService}のワーカスレッドから呼び出します。
 	 */
-	private class KpmThread extends Thread
+	private class KpmProcessor implements NyARKpmService.IStreamHandler
 	{
 		final private FreakKeypointMatching _attached_matcher;
-		final private NyARNftTargetList _ref_nftdatalist;
-		public KpmThread(NyARParam i_ref_cparam,NyARNftTargetList i_attached_nftdatalist)
+		/** 直前のKPM処理の時間[ns]。未計測の場合は-1*/
+		final public AtomicLong last_kpm_time=new AtomicLong(-1);
+		/** kpmMatchingに渡すNFTターゲット毎の引数*/
+		private KeyframeMap[] _keymaps=new KeyframeMap[0];
+		private NyARDoubleMatrix44[] _transmats=new NyARDoubleMatrix44[0];
+		private boolean[] _results=new boolean[0];
+		/** kpmMatchingの開始時の{@link NftTarget#search_epoch}*/
+		private int[] _epochs=new int[0];
+		/** 前回のkpmMatchingに渡したキーマップ*/
+		private KeyframeMap[] _last_keymaps=new KeyframeMap[0];
+		private int _last_number_of_target=-1;
+		/** 前回のkpmMatchingで1つでもNFTターゲットが見つかったかのフラグ*/
+		private boolean _last_found=false;
+		/** 特徴点セットが現在のピラミッドから計算されているかのフラグ*/
+		private boolean _has_feature_set=false;
+		public KpmProcessor(NyARParam i_ref_cparam)
 		{
-			super();
 			this._attached_matcher=new FreakKeypointMatching(i_ref_cparam);
-			this._ref_nftdatalist=i_attached_nftdatalist;
 		}
-		/** この関数はメインクラスのupdateから実行します。
-		 * 
+		@Override
+		public void process(INyARGrayscaleRaster i_frame)
+		{
+			long t=System.nanoTime();
+			boolean changed=this._attached_matcher.updateInputImage(i_frame);
+			//この時点の一覧で処理する。処理中に追加/削除されたNFTターゲットは、次回から反映する。
+			NftTarget[] targets=NyARNftSystem.this._nftdatalist.snapshot();
+			int n=targets.length;
+			if(this._keymaps.length<n){
+				this._keymaps=new KeyframeMap[n];
+				this._transmats=NyARDoubleMatrix44.createArray(n);
+				this._results=new boolean[n];
+				this._epochs=new int[n];
+				this._last_keymaps=new KeyframeMap[n];
+			}
+			for(int i=0;i<n;i++){
+				NftTarget nt=targets[i];
+				//検出ステージチェック。処理中に状態が変わった場合は、メインスレッドがsearch_epochで結果を捨てる。
+				if(nt==null || nt.stage!=NftTarget.ST_KPM_SEARCH){
+					this._keymaps[i]=null;
+					continue;
+				}
+				this._epochs[i]=nt.search_epoch;
+				this._keymaps[i]=nt.dataset.freak_fset;
+			}
+			//入力画像が変化せず、前回と同じNFTターゲットの検出に失敗していれば、結果も同じなので何もしない。
+			if(!changed && !this._last_found && this.isSameKeymaps(n)){
+				this.last_kpm_time.set(System.nanoTime()-t);
+				return;
+			}
+			//特徴点セットは、ピラミッドが更新された時だけ計算する。
+			if(changed || !this._has_feature_set){
+				this._attached_matcher.updateFeatureSet();
+				this._has_feature_set=true;
+			}
+			//全てのNFTターゲットをまとめて判定
+			this._attached_matcher.kpmMatching(this._keymaps,this._transmats,this._results);
+			boolean found=false;
+			for(int i=0;i<n;i++){
+				if(this._keymaps[i]!=null && this._results[i]){
+					//N番目のNFTターゲットに結果を渡す。メインスレッドが取り出す前の結果は上書きする。
+					targets[i].kpm_result.set(new KpmResult(this._transmats[i],this._epochs[i]));
+					found=true;
+				}
+			}
+			System.arraycopy(this._keymaps,0,this._last_keymaps,0,n);
+			this._last_number_of_target=n;
+			this._last_found=found;
+			this.last_kpm_time.set(System.nanoTime()-t);
+		}
+		/**
+		 * 先頭n個のキーマップが、前回のkpmMatchingと同じかを返します。
 		 */
-		public boolean updateInputImage(INyARGrayscaleRaster i_input)
+		private boolean isSameKeymaps(int n)
 		{
-			synchronized(this){
-				Thread.State st=this.getState();
-				//スレッドが無期限待機中でなければなにもしない。
-				if(st!=Thread.State.WAITING){
+			if(this._last_number_of_target!=n){
+				return false;
+			}
+			for(int i=0;i<n;i++){
+				if(this._keymaps[i]!=this._last_keymaps[i]){
 					return false;
 				}
-				//計算結果のコピー
-				for(NftTarget target : this._ref_nftdatalist){
-					//検出フラグの更新
-					if(target.back_has_result && target.stage==NftTarget.ST_KPM_SEARCH){
-						//見つかった時だけ更新						
-						target.stage=NftTarget.ST_KPM_FOUND;
-						target.front_transmat.setValue(target.back_transmat);
-						target.back_has_result=false;
-					}
-				}
-				//KPMスレッドの再開
-				this._attached_matcher.updateInputImage(i_input);
-				this.notify();
 			}
 			return true;
 		}
+	}
+	/**
+	 * Key point Matching Thread
+	 */
+	private static class KpmThread extends Thread
+	{
+		final private KpmProcessor _processor;
+		final private LatestFrameExchanger _frames;
+		public KpmThread(KpmProcessor i_processor,NyARIntSize i_size)
+		{
+			super();
+			this._processor=i_processor;
+			this._frames=new LatestFrameExchanger(i_size.w,i_size.h);
+		}
+		/** この関数はメインクラスのupdateから実行します。
+		 * 画像をコピーしてKPMスレッドに渡します。KPMスレッドの処理は待ちません。
+		 */
+		public void updateInputImage(INyARGrayscaleRaster i_input)
+		{
+			this._frames.put(i_input);
+			LockSupport.unpark(this);
+		}
 		@Override
 		public void run()
 		{
-			try {
-				for(;;){
-					//開始待ち
-					synchronized(this){
-						this.wait();
-					}
-					//全てのキーマップをチェック
-					this._attached_matcher.updateFeatureSet();
-					for(NftTarget nt : this._ref_nftdatalist){
-						//検出ステージチェック(別スレッドからの更新と衝突した場合は1フレーム無駄になる。)
-						if(nt.stage>NftTarget.ST_KPM_SEARCH){
-							continue;
-						}
-						//N番目のNFTターゲットのバックグラウンドに書き込み
-						nt.back_has_result=this._attached_matcher.kpmMatching(nt.dataset.freak_fset,nt.back_transmat);
+			for(;;){
+				//開始待ち
+				INyARGrayscaleRaster gs;
+				while((gs=this._frames.poll())==null){
+					LockSupport.park(this);
+					if(Thread.interrupted()){
+						//Interrupted!
+						return;
 					}
 				}
-			} catch (InterruptedException e) {
-				//Interrupted!
-				return;
+				this._processor.process(gs);
 			}
 		}
 	}
@@ -311,12 +520,57 @@ public class NyARNftSystem extends NyARSingleCameraSystem
 		// TODO Auto-generated method stub
 		
 	}	
+	/**
+	 * KPMの一致判定を並列に処理するスレッドプールを設定します。
+	 * NFTターゲットとキーフレームの組を、i_number_of_worker個のタスクで分担して処理します。
+	 * 設定は、次のKPM処理から有効になります。
+	 * @param i_executor
+	 * スレッドプール。nullの場合は、KPMスレッドで順番に処理します。
+	 * @param i_number_of_worker
+	 * 並列に処理するタスクの数。
+	 */
+	public void setKpmExecutor(ExecutorService i_executor,int i_number_of_worker)
+	{
+		this._kpm._attached_matcher.setExecutor(i_executor,i_number_of_worker);
+	}
+	/**
+	 * KPMのピラミッド生成と特徴点検出を並列に処理するスレッドプールを設定します。
+	 * 初回の姿勢推定までの時間を短くします。検出結果は変わりません。
+	 * 設定は、次のKPM処理から有効になります。
+	 * @param i_pool
+	 * スレッドプール。nullの場合は、KPMスレッドで処理します。
+	 * @param i_number_of_bands
+	 * 画像を分割する最大の帯数
+	 */
+	public void setKpmParallelMode(ForkJoinPool i_pool,int i_number_of_bands)
+	{
+		this._kpm._attached_matcher.setParallelMode(i_pool,i_number_of_bands);
+	}
+	/**
+	 * KPMの入力画像の変化検出を設定します。
+	 * 有効にすると、前回の入力画像から変化した行の範囲だけピラミッドを再計算します。
+	 * 画像が変化していなければ特徴点の再検出を省略し、NFTターゲットが見つかっていなければ一致判定も省略します。
+	 * カメラが固定されている場合に、KPMスレッドの負荷を下げます。
+	 * @param i_threshold
+	 * 16x16画素のブロックの平均画素値の差の閾値。これを超えたブロックを変化したものとします。
+	 * 0の場合は、1画素でも変化したブロックを変化したものとします。検出結果は、変化検出が無効の時と同じです。
+	 * 負の値の場合は、変化検出を無効にします(規定値)。
+	 */
+	public void setKpmChangeDetection(int i_threshold)
+	{
+		this._kpm._attached_matcher.setChangeDetection(i_threshold);
+	}
 	/**
 	 * ワーカースレッドを終了します。
 	 * メインスレッド終了時に必ず実行してください。
+	 * KPMサービスを使う場合は、サービスのストリームを閉じます。サービスは終了しません。
 	 */
 	public void shutdown()
 	{
+		if(this._kpm_thread==null){
+			this._kpm_stream.close();
+			return;
+		}
 		try {
 			this._kpm_thread.interrupt();
 			this._kpm_thread.join();
@@ -0,0 +1,217 @@
+/* 
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.core.integralimage;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.NyARRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
+
+/**
+ * このクラスは、グレースケール画像の積分画像(Summed area table)です。
+ * 画素(x,y)には、(0,0)-(x,y)の矩形に含まれる画素値の合計を格納します。
+ * 作成後は、任意の矩形の画素値の合計を、4回の参照で計算できます。
+ * <p>
+ * 合計値はintで保持します。画像が大きく値があふれる場合でも、矩形の合計値がintに収まれば
+ * (矩形の面積が8,421,504画素以下であれば)、{@link #getBoxIntegral}の値は正しく計算できます。
+ * </p>
+ * <p>入力できる画素形式 - {@link #genIntegralImage}には、すべての{@link INyARGrayscaleRaster}を入力できます。
+ * {@link NyARBufferType#INT1D_GRAY_8}は、バッファを直接読み出します。
+ * </p>
+ */
+public class NyARIntegralImage extends NyARRaster
+{
+	/**
+	 * 積分画像の生成ドライバのインタフェイスです。
+	 */
+	public interface IIntegralImageGenerator
+	{
+		public void genIntegralImage(INyARGrayscaleRaster i_in);
+	}
+	/** 最後に処理したラスタ*/
+	private INyARGrayscaleRaster _last_input_raster=null;
+	private IIntegralImageGenerator _ig;
+	/**
+	 * コンストラクタです。
+	 * @param i_width
+	 * ラスタのサイズ
+	 * @param i_height
+	 * ラスタのサイズ
+	 */
+	public NyARIntegralImage(int i_width,int i_height)
+	{
+		super(i_width,i_height,NyARBufferType.INT1D,true);
+	}
+	@Override
+	public Object createInterface(Class<?> i_iid)
+	{
+		throw new NyARRuntimeException();
+	}
+	/**
+	 * この関数は、グレースケール画像から積分画像を作ります。
+	 * @param i_in
+	 * 入力画像。インスタンスと同じサイズである必要があります。
+	 */
+	public void genIntegralImage(INyARGrayscaleRaster i_in)
+	{
+		if(i_in!=this._last_input_raster){
+			if(!this._size.isEqualSize(i_in.getSize())){
+				throw new NyARRuntimeException();
+			}
+			switch(i_in.getBufferType()){
+			case NyARBufferType.INT1D_GRAY_8:
+				this._ig=new NyARIntegralImageGenerator_INT1D(this);
+				break;
+			default:
+				this._ig=new NyARIntegralImageGenerator_Any(this);
+				break;
+			}
+			this._last_input_raster=i_in;
+		}
+		this._ig.genIntegralImage(i_in);
+	}
+	/**
+	 * この関数は、矩形の画素値の合計を返します。
+	 * 矩形は画像の範囲でクリップします。
+	 * @param i_sx
+	 * 矩形の左上座標
+	 * @param i_sy
+	 * 矩形の左上座標
+	 * @param i_xsize
+	 * 矩形の幅
+	 * @param i_ysize
+	 * 矩形の高さ
+	 * @return
+	 * 画素値の合計
+	 */
+	public int getBoxIntegral(int i_sx,int i_sy,int i_xsize,int i_ysize)
+	{
+		final int[] buf=(int[])this._buf;
+		final int w=this._size.w;
+		final int h=this._size.h;
+		//右下の点(この点を含む)
+		int c2=i_sx+i_xsize-1;
+		int r2=i_sy+i_ysize-1;
+		if(c2>=w){
+			c2=w-1;
+		}
+		if(r2>=h){
+			r2=h-1;
+		}
+		//左上の1つ外側の点
+		final int c1=i_sx-1;
+		final int r1=i_sy-1;
+		if(c2<0 || r2<0 || c1>=c2 || r1>=r2){
+			return 0;
+		}
+		int ret=buf[r2*w+c2];
+		if(c1>=0){
+			ret-=buf[r2*w+c1];
+			if(r1>=0){
+				ret+=buf[r1*w+c1];
+			}
+		}
+		if(r1>=0){
+			ret-=buf[r1*w+c2];
+		}
+		return ret;
+	}
+}
+
+/**
+ * {@link NyARBufferType#INT1D_GRAY_8}の積分画像生成ドライバ
+ */
+class NyARIntegralImageGenerator_INT1D implements NyARIntegralImage.IIntegralImageGenerator
+{
+	private final int[] _ref_buf;
+	private final NyARIntSize _ref_size;
+	public NyARIntegralImageGenerator_INT1D(NyARIntegralImage i_ref_raster)
+	{
+		assert(i_ref_raster.isEqualBufferType(NyARBufferType.INT1D));
+		this._ref_buf=(int[])i_ref_raster.getBuffer();
+		this._ref_size=i_ref_raster.getSize();
+	}
+	public void genIntegralImage(INyARGrayscaleRaster i_in)
+	{
+		final int[] out_buf=this._ref_buf;
+		final int[] in_buf=(int[])i_in.getBuffer();
+		final int w=this._ref_size.w;
+		final int h=this._ref_size.h;
+		int rs;
+		//0行目
+		rs=0;
+		for(int p=0;p<w;p++){
+			rs+=in_buf[p];
+			out_buf[p]=rs;
+		}
+		//残り
+		for(int p1=w,p0=0;p1<w*h;){
+			rs=0;
+			for(final int e=p1+w;p1<e;p1++,p0++){
+				rs+=in_buf[p1];
+				out_buf[p1]=rs+out_buf[p0];
+			}
+		}
+	}
+}
+
+/**
+ * 全ての{@link INyARGrayscaleRaster}の積分画像生成ドライバ
+ */
+class NyARIntegralImageGenerator_Any implements NyARIntegralImage.IIntegralImageGenerator
+{
+	private final int[] _ref_buf;
+	private final NyARIntSize _ref_size;
+	public NyARIntegralImageGenerator_Any(NyARIntegralImage i_ref_raster)
+	{
+		assert(i_ref_raster.isEqualBufferType(NyARBufferType.INT1D));
+		this._ref_buf=(int[])i_ref_raster.getBuffer();
+		this._ref_size=i_ref_raster.getSize();
+	}
+	public void genIntegralImage(INyARGrayscaleRaster i_in)
+	{
+		final int[] out_buf=this._ref_buf;
+		final int w=this._ref_size.w;
+		final int h=this._ref_size.h;
+		int rs;
+		//0行目
+		rs=0;
+		for(int i=0;i<w;i++){
+			rs+=i_in.getPixel(i,0);
+			out_buf[i]=rs;
+		}
+		//残り
+		for(int j=1;j<h;j++){
+			rs=0;
+			final int p=j*w;
+			for(int i=0;i<w;i++){
+				rs+=i_in.getPixel(i,j);
+				out_buf[p+i]=rs+out_buf[p-w+i];
+			}
+		}
+	}
+}
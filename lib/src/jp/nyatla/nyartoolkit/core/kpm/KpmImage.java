@@ -40,13 +40,17 @@ import jp.nyatla.nyartoolkit.core.raster.INyARRaster;
 import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
 import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
 
+/**
+ * このクラスは、KPMのガウシアンピラミッドの1段を格納するラスタです。
+ * 画素値はfloat[]に格納します。読出し値の計算はdoubleで行います。
+ */
 public class KpmImage implements INyARRaster {
 	private NyARIntSize _size;
-	private double[] _buf;
+	private float[] _buf;
 
 	public KpmImage(int i_width, int i_height) {
 		this._size = new NyARIntSize(i_width, i_height);
-		this._buf = new double[i_width * i_height];
+		this._buf = new float[i_width * i_height];
 	}
 
 	@Override
@@ -108,7 +112,7 @@ public class KpmImage implements INyARRaster {
      */
 	public double bilinearInterpolation(double x, double y)
 	{
-		double[] buf=this._buf;
+		float[] buf=this._buf;
 		int width=this._size.w;
 		double w0, w1, w2, w3;
 		// Compute location of 4 neighbor pixels
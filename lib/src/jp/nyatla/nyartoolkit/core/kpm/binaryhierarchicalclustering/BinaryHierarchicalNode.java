@@ -37,6 +37,7 @@ package jp.nyatla.nyartoolkit.core.kpm.binaryhierarchicalclustering;
 
 import jp.nyatla.nyartoolkit.core.kpm.freak.FreakFeaturePoint;
 import jp.nyatla.nyartoolkit.core.kpm.keyframe.FreakMatchPointSetStack;
+import jp.nyatla.nyartoolkit.core.kpm.utils.LongDescripter768;
 
 
 
@@ -57,6 +58,9 @@ public class BinaryHierarchicalNode
 
 	// Index of the features at this node
 	final public FreakMatchPointSetStack.Item[] reserv_index;
+
+	/** 子ノードのcenterのデスクプタブロック。子ノードが無い場合はnullです。*/
+	final public long[] children_descripters;
 	
 	
 	public BinaryHierarchicalNode(int id,FreakFeaturePoint i_feature,boolean i_is_leaf,FreakMatchPointSetStack.Item[] i_reserv_index,BinaryHierarchicalNode[] i_children)
@@ -70,6 +74,15 @@ public class BinaryHierarchicalNode
 			this.center=null;
 		}
     	this.children=i_children;
+    	if(i_children!=null){
+    		LongDescripter768[] d=new LongDescripter768[i_children.length];
+    		for(int i=0;i<d.length;i++){
+    			d[i]=i_children[i].center.descripter;
+    		}
+    		this.children_descripters=LongDescripter768.createBlock(d,d.length);
+    	}else{
+    		this.children_descripters=null;
+    	}
 	}
 	
 }
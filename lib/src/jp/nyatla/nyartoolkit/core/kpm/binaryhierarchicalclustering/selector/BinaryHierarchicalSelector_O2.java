@@ -58,6 +58,8 @@ public class BinaryHierarchicalSelector_O2
 	final private NodeStack _node_stack=new NodeStack(1000);
 	
 	private int _num_of_result;
+	//子ノードとの距離の一時バッファ
+	private int[] _dist=new int[16];
 	public BinaryHierarchicalSelector_O2(int i_MaxNodesToPop,int i_max_result)
 	{
 		this._result=new FreakMatchPointSetStack.Item[i_max_result];
@@ -134,13 +136,19 @@ public class BinaryHierarchicalSelector_O2
     /**
      * Get a queue of all the children nodes sorted by distance from node center.
      */
-    private static int nearest(BinaryHierarchicalNode i_node,NodeStack nodes,LimitedPriorityNodeList queue,LongDescripter768 feature)
+    private int nearest(BinaryHierarchicalNode i_node,NodeStack nodes,LimitedPriorityNodeList queue,LongDescripter768 feature)
     {
         int mind = Integer.MAX_VALUE;
 
         int sp=nodes.getLength();
         BinaryHierarchicalNode[] children=i_node.children;
         int num_of_children=children.length;
+        //子ノードとの距離を一括で計算
+        if(this._dist.length<num_of_children){
+        	this._dist=new int[num_of_children];
+        }
+        int[] dist=this._dist;
+        feature.hammingDistance(i_node.children_descripters,num_of_children,dist);
         
         //最小値の探索
         for(int i = 0; i < num_of_children; i++) {      	
@@ -149,7 +157,7 @@ public class BinaryHierarchicalSelector_O2
         		//ワークエリアを使い切った。
         		return 0;
         	}
-            int d = children[i].center.descripter.hammingDistance(feature);
+            int d = dist[i];
             item.node=children[i];
             item.distance=d;
             if(d < mind) {
@@ -36,6 +36,8 @@
 package jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid;
 
 import jp.nyatla.nyartoolkit.core.kpm.pyramid.GaussianScaleSpacePyramid;
+import jp.nyatla.nyartoolkit.core.utils.BandRunner;
+import jp.nyatla.nyartoolkit.core.kpm.utils.RowSpanTable;
 
 public class DoGPyramid {
 	public DoGPyramid(int i_width, int i_height, int i_num_of_octaves, int i_num_scales_per_octaves)
@@ -50,6 +52,16 @@ public class DoGPyramid {
 				this.mImages[i * this.mNumScalesPerOctave + j] = new LaplacianImage(i_width >> i, i_height >> i);// 多分あってるんじゃないか的な
 			}
 		}
+		//全画像の行の表
+		int n=this.mImages.length;
+		int[] w=new int[n];
+		int[] rb=new int[n];
+		int[] re=new int[n];
+		for(int i=0;i<n;i++){
+			w[i]=this.mImages[i].getWidth();
+			re[i]=this.mImages[i].getHeight();
+		}
+		this._rows=new RowSpanTable(w,rb,re);
 	}
 	/**
 	 * Compute the Difference-of-Gaussian from a Gaussian Pyramid.
@@ -61,6 +73,40 @@ public class DoGPyramid {
 			}
 		}
 	}
+	/**
+	 * {@link #compute(GaussianScaleSpacePyramid)}を、全てのDoG画像の行を帯に分割して処理します。
+	 * 結果は{@link #compute(GaussianScaleSpacePyramid)}と同じです。
+	 * @param i_runner
+	 * 帯の分割器
+	 */
+	public void compute(GaussianScaleSpacePyramid pyramid,BandRunner i_runner)
+	{
+		ComputeJob j=this._compute_job;
+		j.pyramid=pyramid;
+		i_runner.run(j,this._rows.size(),BandRunner.MIN_BAND_PIXELS);
+		j.pyramid=null;
+	}
+	private class ComputeJob implements BandRunner.IBandJob
+	{
+		public GaussianScaleSpacePyramid pyramid;
+		@Override
+		public void run(int i_band, int i_begin, int i_end)
+		{
+			RowSpanTable t=DoGPyramid.this._rows;
+			LaplacianImage[] images=DoGPyramid.this.mImages;
+			int nos=DoGPyramid.this.mNumScalesPerOctave;
+			for(int i=0;i<images.length;i++){
+				int r0=t.firstRow(i,i_begin);
+				int r1=t.firstRow(i,i_end);
+				if(r0>=r1){
+					continue;
+				}
+				int w=images[i].getWidth();
+				images[i].difference_image_binomial(this.pyramid.get(i/nos,i%nos),this.pyramid.get(i/nos,i%nos+1),r0*w,r1*w);
+			}
+		}
+	}
+	final private ComputeJob _compute_job=new ComputeJob();
 
 
 	/**
@@ -102,6 +148,8 @@ public class DoGPyramid {
 
 	// DoG images
 	private LaplacianImage[] mImages;
+	/** 全てのDoG画像の行の表*/
+	final private RowSpanTable _rows;
 
 	// Number of octaves and scales
 	private int mNumOctaves;
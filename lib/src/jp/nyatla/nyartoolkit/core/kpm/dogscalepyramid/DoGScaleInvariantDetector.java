@@ -36,8 +36,12 @@
 package jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid;
 
 
+import java.util.concurrent.ForkJoinPool;
+
 import jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid.utils.AreaBuckit;
 import jp.nyatla.nyartoolkit.core.kpm.pyramid.GaussianScaleSpacePyramid;
+import jp.nyatla.nyartoolkit.core.utils.BandRunner;
+import jp.nyatla.nyartoolkit.core.kpm.utils.RowSpanTable;
 import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix33;
 
 public class DoGScaleInvariantDetector {
@@ -80,9 +84,47 @@ public class DoGScaleInvariantDetector {
 		this.mOrientationAssignment = new OrientationAssignment(i_width,i_height,i_octerv, i_num_of_scale_of_octerv,kMaxNumOrientations, 3, 1.5f, 5, 0.8f);
 		this.mBuckets = new AreaBuckit(i_width,i_height,10,10,i_MaxNumFeaturePoints);
 		this._tmp_fps=new DogFeaturePointStack(kMaxNumFeaturePoints);
+		//極値検出をするDoG画像の行の表
+		DoGPyramid lap=this.mLaplacianPyramid;
+		int n=lap.size();
+		int[] w=new int[n];
+		int[] rb=new int[n];
+		int[] re=new int[n];
+		for(int i=1;i<n-1;i++){
+			LaplacianImage im0 = lap.get(i - 1);
+			LaplacianImage im1 = lap.get(i);
+			LaplacianImage im2 = lap.get(i + 1);
+			w[i]=im1.getWidth();
+			if (im0.getWidth() == im1.getWidth() && im0.getWidth() == im2.getWidth()) {
+				rb[i]=1;
+				re[i]=im1.getHeight() - 1;
+			} else if (im0.getWidth() == im1.getWidth() && (im1.getWidth() >> 1) == im2.getWidth()) {
+				rb[i]=2;
+				re[i]=(int) Math.floor(((im2.getHeight() - 1) - 0.5f) * 2.0f + 0.5f);
+			} else if ((im0.getWidth() >> 1) == im1.getWidth() && (im0.getWidth() >> 1) == im2.getWidth()) {
+				rb[i]=1;
+				re[i]=im1.getHeight() - 1;
+			}
+		}
+		this._extract_rows=new RowSpanTable(w,rb,re);
+		this._context=new BandContext(new BandRunner(null,1));
 	}
 
 	final private DogFeaturePointStack _tmp_fps;
+	/**
+	 * 並列モードを設定します。
+	 * DoG画像の計算、極値の検出、サブピクセル位置の計算と勾配画像の計算を、帯に分割してi_poolのスレッドで処理します。
+	 * 帯毎の結果は帯の順に結合するので、検出結果は直列処理と同じです。
+	 * 設定は、次の{@link #detect}から有効になります。
+	 * @param i_pool
+	 * 帯の処理に使うスレッドプール。nullの場合は、呼び出したスレッドで処理します。
+	 * @param i_number_of_bands
+	 * 最大の帯数。帯毎に特徴点の作業領域を確保します。
+	 */
+	public void setParallelMode(ForkJoinPool i_pool,int i_number_of_bands)
+	{
+		this._context=new BandContext(new BandRunner(i_pool,i_number_of_bands));
+	}
 
 	/**
 	 * Detect scale-invariant feature points given a pyramid.
@@ -91,21 +133,22 @@ public class DoGScaleInvariantDetector {
 	 */
 	public void detect(GaussianScaleSpacePyramid i_pyramid,DogFeaturePointStack i_dog_feature_points)
 	{
+		BandContext ctx=this._context;
 		//clean up 1st feature stack
 		DogFeaturePointStack tmp_fp=this._tmp_fps;
 		tmp_fp.clear();
 
 		// Compute Laplacian images (DoG)
-		this.mLaplacianPyramid.compute(i_pyramid);
+		this.mLaplacianPyramid.compute(i_pyramid,ctx.runner);
 
 		// Detect minima and maximum in Laplacian images
-		this.extractFeatures(i_pyramid, this.mLaplacianPyramid,tmp_fp);
+		this.extractFeatures(i_pyramid,ctx,tmp_fp);
 
 		// Sub-pixel refinement
-		this.findSubpixelLocations(i_pyramid,tmp_fp);
+		this.findSubpixelLocations(i_pyramid,ctx,tmp_fp);
 
 		// Compute the gradient pyramid		
-		this.mOrientationAssignment.computeGradients(i_pyramid);		
+		this.mOrientationAssignment.computeGradients(i_pyramid,ctx.runner);		
 		
 		AreaBuckit abuckit=this.mBuckets;
 
@@ -188,290 +231,390 @@ public class DoGScaleInvariantDetector {
 		xysp[2] = s * a;
 	}
 
+	/**
+	 * 全てのDoG画像の極値を検出して、i_dog_fpに追加します。
+	 * DoG画像の行を帯に分割して検出し、帯毎の結果を帯の順に結合します。
+	 */
+	private void extractFeatures(GaussianScaleSpacePyramid pyramid,BandContext i_ctx,DogFeaturePointStack i_dog_fp)
+	{
+		ExtractJob j=this._extract_job;
+		j.pyramid=pyramid;
+		j.fps=i_dog_fp;
+		j.ctx=i_ctx;
+		int n=i_ctx.runner.run(j,this._extract_rows.size(),BandRunner.MIN_BAND_PIXELS);
+		j.pyramid=null;
+		j.fps=null;
+		j.ctx=null;
+		//帯0はi_dog_fpへ直接格納済。帯1以降を順に追加
+		for(int i=1;i<n;i++){
+			DogFeaturePointStack src=i_ctx.work[i].fps;
+			for(int k=0;k<src.getLength();k++){
+				DogFeaturePoint fp=i_dog_fp.prePush();
+				if(fp==null){
+					prepush_warning();
+					return;
+				}
+				DogFeaturePoint sp=src.getItem(k);
+				fp.octave = sp.octave;
+				fp.scale = sp.scale;
+				fp.score = sp.score;
+				fp.sigma = sp.sigma;
+				fp.x = sp.x;
+				fp.y = sp.y;
+			}
+		}
+	}
+	/**
+	 * 極値検出の帯のジョブです。
+	 */
+	private class ExtractJob implements BandRunner.IBandJob
+	{
+		public GaussianScaleSpacePyramid pyramid;
+		public DogFeaturePointStack fps;
+		public BandContext ctx;
+		@Override
+		public void run(int i_band, int i_begin, int i_end)
+		{
+			DoGScaleInvariantDetector parent=DoGScaleInvariantDetector.this;
+			BandWork w=this.ctx.work[i_band];
+			DogFeaturePointStack out=this.fps;
+			if(i_band>0){
+				out=w.fps;
+				out.clear();
+			}
+			RowSpanTable t=parent._extract_rows;
+			for (int i = 1; i < parent.mLaplacianPyramid.size() - 1; i++) {
+				int r0=t.firstRow(i,i_begin);
+				int r1=t.firstRow(i,i_end);
+				if(r0<r1){
+					parent.extractFeatures(this.pyramid,parent.mLaplacianPyramid,i,r0,r1,out,w.extrema_tmp);
+				}
+			}
+		}
+	}
+	final private ExtractJob _extract_job=new ExtractJob();
+	/** 極値検出をするDoG画像の行の表*/
+	final private RowSpanTable _extract_rows;
+	/**
+	 * 帯毎の作業領域です。
+	 */
+	private static class BandWork
+	{
+		final public double[] extrema_tmp=new double[2];
+		final public double[] ul_tmp=new double[2];
+		final public double[] ul_b=new double[3];
+		final public double[] ul_H=new double[9];
+		final public NyARDoubleMatrix33 ul_m=new NyARDoubleMatrix33();
+		final public double[] hessian_tmp=new double[5];
+		/** 極値の格納先。帯0は出力へ直接格納するのでnullです。*/
+		final public DogFeaturePointStack fps;
+		public BandWork(boolean i_has_fps)
+		{
+			this.fps=i_has_fps?new DogFeaturePointStack(kMaxNumFeaturePoints):null;
+		}
+	}
+	/**
+	 * 帯の分割器と、帯毎の作業領域の組です。
+	 */
+	private static class BandContext
+	{
+		final public BandRunner runner;
+		final public BandWork[] work;
+		public BandContext(BandRunner i_runner)
+		{
+			this.runner=i_runner;
+			this.work=new BandWork[i_runner.getNumberOfBands()];
+			for(int i=0;i<this.work.length;i++){
+				this.work[i]=new BandWork(i>0);
+			}
+		}
+	}
+	/** {@link #setParallelMode}で差し替えます。*/
+	private volatile BandContext _context;
+	/** サブピクセル位置の計算で、1つの帯が処理する最小の点数*/
+	final private static int MIN_BAND_POINTS=64;
+
 	/**
 	 * Extract the minima/maxima.
+	 * DoG画像i(1からsize-2)の、i_row_beginからi_row_end-1行の極値をi_dog_fpに追加します。
+	 * 行の範囲は、{@link #_extract_rows}の範囲内です。
 	 */
-	private void extractFeatures(GaussianScaleSpacePyramid pyramid, DoGPyramid laplacian,DogFeaturePointStack i_dog_fp)
+	private void extractFeatures(GaussianScaleSpacePyramid pyramid, DoGPyramid laplacian,int i,int i_row_begin,int i_row_end,DogFeaturePointStack i_dog_fp,double[] i_tmp)
 	{
 		double laplacianSqrThreshold = (this.mLaplacianThreshold * this.mLaplacianThreshold);
 
-		for (int i = 1; i < mLaplacianPyramid.size() - 1; i++) {
-			LaplacianImage im0 = laplacian.get(i - 1);
-			LaplacianImage im1 = laplacian.get(i);
-			LaplacianImage im2 = laplacian.get(i + 1);
-			double[] im0b = (double[]) im0.getBuffer();
-			double[] im1b = (double[]) im1.getBuffer();
-			double[] im2b = (double[]) im2.getBuffer();
+		LaplacianImage im0 = laplacian.get(i - 1);
+		LaplacianImage im1 = laplacian.get(i);
+		LaplacianImage im2 = laplacian.get(i + 1);
+		float[] im0b = (float[]) im0.getBuffer();
+		float[] im1b = (float[]) im1.getBuffer();
+		float[] im2b = (float[]) im2.getBuffer();
 
-			int octave = laplacian.octaveFromIndex((int) i);
-			int scale = laplacian.scaleFromIndex((int) i);
+		int octave = laplacian.octaveFromIndex((int) i);
+		int scale = laplacian.scaleFromIndex((int) i);
 
-			if (im0.getWidth() == im1.getWidth() && im0.getWidth() == im2.getWidth()) { // All images are the
-																						// same size
-				// ASSERT(im0.height() == im1.height(), "Height is inconsistent");
-				// ASSERT(im0.height() == im2.height(), "Height is inconsistent");
+		if (im0.getWidth() == im1.getWidth() && im0.getWidth() == im2.getWidth()) { // All images are the
+																					// same size
+			// ASSERT(im0.height() == im1.height(), "Height is inconsistent");
+			// ASSERT(im0.height() == im2.height(), "Height is inconsistent");
 
-				int width_minus_1 = im1.getWidth() - 1;
-				int heigh_minus_1 = im1.getHeight() - 1;
+			int width_minus_1 = im1.getWidth() - 1;
 
-				for (int row = 1; row < heigh_minus_1; row++) {
-					int im0_ym1 = im0.get(row - 1);
-					int im0_y = im0.get(row);
-					int im0_yp1 = im0.get(row + 1);
+			for (int row = i_row_begin; row < i_row_end; row++) {
+				int im0_ym1 = im0.get(row - 1);
+				int im0_y = im0.get(row);
+				int im0_yp1 = im0.get(row + 1);
 
-					int im1_ym1 = im1.get(row - 1);
-					int im1_y = im1.get(row);
-					int im1_yp1 = im1.get(row + 1);
+				int im1_ym1 = im1.get(row - 1);
+				int im1_y = im1.get(row);
+				int im1_yp1 = im1.get(row + 1);
 
-					int im2_ym1 = im2.get(row - 1);
-					int im2_y = im2.get(row);
-					int im2_yp1 = im2.get(row + 1);
+				int im2_ym1 = im2.get(row - 1);
+				int im2_y = im2.get(row);
+				int im2_yp1 = im2.get(row + 1);
 
-					for (int col = 1; col < width_minus_1; col++) {
-						double value = im1b[im1_y + col];
+				for (int col = 1; col < width_minus_1; col++) {
+					double value = im1b[im1_y + col];
 
-						// Check laplacian score
-						if ((value * value) < laplacianSqrThreshold) {
-							continue;
-						}
-						boolean extrema = false;
-						if (value > im0b[im0_ym1 + col - 1] && value > im0b[im0_ym1 + col]
-								&& value > im0b[im0_ym1 + col + 1] && value > im0b[im0_y + col - 1]
-								&& value > im0b[im0_y + col] && value > im0b[im0_y + col + 1]
-								&& value > im0b[im0_yp1 + col - 1] && value > im0b[im0_yp1 + col]
-								&& value > im0b[im0_yp1 + col + 1] &&
-								/* im1 - 8 evaluations */
-								value > im1b[im1_ym1 + col - 1] && value > im1b[im1_ym1 + col]
-								&& value > im1b[im1_ym1 + col + 1] && value > im1b[im1_y + col - 1]
-								&& value > im1b[im1_y + col + 1] && value > im1b[im1_yp1 + col - 1]
-								&& value > im1b[im1_yp1 + col] && value > im1b[im1_yp1 + col + 1] &&
-								/* im2 - 9 evaluations */
-								value > im2b[im2_ym1 + col - 1] && value > im2b[im2_ym1 + col]
-								&& value > im2b[im2_ym1 + col + 1] && value > im2b[im2_y + col - 1]
-								&& value > im2b[im2_y + col] && value > im2b[im2_y + col + 1]
-								&& value > im2b[im2_yp1 + col - 1] && value > im2b[im2_yp1 + col]
-								&& value > im2b[im2_yp1 + col + 1])
-						{
-							extrema = true;
-						} else if (value < im0b[im0_ym1 + col - 1] && value < im0b[im0_ym1 + col]
-								&& value < im0b[im0_ym1 + col + 1] && value < im0b[im0_y + col - 1]
-								&& value < im0b[im0_y + col] && value < im0b[im0_y + col + 1]
-								&& value < im0b[im0_yp1 + col - 1] && value < im0b[im0_yp1 + col]
-								&& value < im0b[im0_yp1 + col + 1] &&
-								/* im1 - 8 evaluations */
-								value < im1b[im1_ym1 + col - 1] && value < im1b[im1_ym1 + col]
-								&& value < im1b[im1_ym1 + col + 1] && value < im1b[im1_y + col - 1]
-								&& value < im1b[im1_y + col + 1] && value < im1b[im1_yp1 + col - 1]
-								&& value < im1b[im1_yp1 + col] && value < im1b[im1_yp1 + col + 1] &&
-								/* im2 - 9 evaluations */
-								value < im2b[im2_ym1 + col - 1] && value < im2b[im2_ym1 + col]
-								&& value < im2b[im2_ym1 + col + 1] && value < im2b[im2_y + col - 1]
-								&& value < im2b[im2_y + col] && value < im2b[im2_y + col + 1]
-								&& value < im2b[im2_yp1 + col - 1] && value < im2b[im2_yp1 + col]
-								&& value < im2b[im2_yp1 + col + 1])
-						{ 
-							extrema = true;
-						}
+					// Check laplacian score
+					if ((value * value) < laplacianSqrThreshold) {
+						continue;
+					}
+					boolean extrema = false;
+					if (value > im0b[im0_ym1 + col - 1] && value > im0b[im0_ym1 + col]
+							&& value > im0b[im0_ym1 + col + 1] && value > im0b[im0_y + col - 1]
+							&& value > im0b[im0_y + col] && value > im0b[im0_y + col + 1]
+							&& value > im0b[im0_yp1 + col - 1] && value > im0b[im0_yp1 + col]
+							&& value > im0b[im0_yp1 + col + 1] &&
+							/* im1 - 8 evaluations */
+							value > im1b[im1_ym1 + col - 1] && value > im1b[im1_ym1 + col]
+							&& value > im1b[im1_ym1 + col + 1] && value > im1b[im1_y + col - 1]
+							&& value > im1b[im1_y + col + 1] && value > im1b[im1_yp1 + col - 1]
+							&& value > im1b[im1_yp1 + col] && value > im1b[im1_yp1 + col + 1] &&
+							/* im2 - 9 evaluations */
+							value > im2b[im2_ym1 + col - 1] && value > im2b[im2_ym1 + col]
+							&& value > im2b[im2_ym1 + col + 1] && value > im2b[im2_y + col - 1]
+							&& value > im2b[im2_y + col] && value > im2b[im2_y + col + 1]
+							&& value > im2b[im2_yp1 + col - 1] && value > im2b[im2_yp1 + col]
+							&& value > im2b[im2_yp1 + col + 1])
+					{
+						extrema = true;
+					} else if (value < im0b[im0_ym1 + col - 1] && value < im0b[im0_ym1 + col]
+							&& value < im0b[im0_ym1 + col + 1] && value < im0b[im0_y + col - 1]
+							&& value < im0b[im0_y + col] && value < im0b[im0_y + col + 1]
+							&& value < im0b[im0_yp1 + col - 1] && value < im0b[im0_yp1 + col]
+							&& value < im0b[im0_yp1 + col + 1] &&
+							/* im1 - 8 evaluations */
+							value < im1b[im1_ym1 + col - 1] && value < im1b[im1_ym1 + col]
+							&& value < im1b[im1_ym1 + col + 1] && value < im1b[im1_y + col - 1]
+							&& value < im1b[im1_y + col + 1] && value < im1b[im1_yp1 + col - 1]
+							&& value < im1b[im1_yp1 + col] && value < im1b[im1_yp1 + col + 1] &&
+							/* im2 - 9 evaluations */
+							value < im2b[im2_ym1 + col - 1] && value < im2b[im2_ym1 + col]
+							&& value < im2b[im2_ym1 + col + 1] && value < im2b[im2_y + col - 1]
+							&& value < im2b[im2_y + col] && value < im2b[im2_y + col + 1]
+							&& value < im2b[im2_yp1 + col - 1] && value < im2b[im2_yp1 + col]
+							&& value < im2b[im2_yp1 + col + 1])
+					{ 
+						extrema = true;
+					}
 
-						if (extrema) {
-							DogFeaturePoint fp = i_dog_fp.prePush();
-							if(fp==null){
-								prepush_warning();
-								break;
-							}
-							fp.octave = octave;
-							fp.scale = scale;
-							fp.score = value;
-							fp.sigma = pyramid.effectiveSigma(octave, scale);
-							double[] tmp = new double[2];
-							bilinear_upsample_point(tmp, col, row, octave);
-							fp.x = tmp[0];
-							fp.y = tmp[1];
+					if (extrema) {
+						DogFeaturePoint fp = i_dog_fp.prePush();
+						if(fp==null){
+							prepush_warning();
+							break;
 						}
-
+						fp.octave = octave;
+						fp.scale = scale;
+						fp.score = value;
+						fp.sigma = pyramid.effectiveSigma(octave, scale);
+						double[] tmp = i_tmp;
+						bilinear_upsample_point(tmp, col, row, octave);
+						fp.x = tmp[0];
+						fp.y = tmp[1];
 					}
+
 				}
-			} else if (im0.getWidth() == im1.getWidth() && (im1.getWidth() >> 1) == im2.getWidth()) {
+			}
+		} else if (im0.getWidth() == im1.getWidth() && (im1.getWidth() >> 1) == im2.getWidth()) {
 
-				int end_x = (int) Math.floor(((im2.getWidth() - 1) - 0.5f) * 2.0f + 0.5f);
-				int end_y = (int) Math.floor(((im2.getHeight() - 1) - 0.5f) * 2.0f + 0.5f);
+			int end_x = (int) Math.floor(((im2.getWidth() - 1) - 0.5f) * 2.0f + 0.5f);
 
-				for (int row = 2; row < end_y; row++) {
-					int im0_ym1 = im0.get(row - 1);
-					int im0_y = im0.get(row);
-					int im0_yp1 = im0.get(row + 1);
+			for (int row = i_row_begin; row < i_row_end; row++) {
+				int im0_ym1 = im0.get(row - 1);
+				int im0_y = im0.get(row);
+				int im0_yp1 = im0.get(row + 1);
 
-					int im1_ym1 = im1.get(row - 1);
-					int im1_y = im1.get(row);
-					int im1_yp1 = im1.get(row + 1);
+				int im1_ym1 = im1.get(row - 1);
+				int im1_y = im1.get(row);
+				int im1_yp1 = im1.get(row + 1);
 
-					for (int col = 2; col < end_x; col++) {
+				for (int col = 2; col < end_x; col++) {
 
-						double value = im1b[im1_y + col];
+					double value = im1b[im1_y + col];
 
-						// Check laplacian score
-						if ((value * value) < laplacianSqrThreshold) {
-							continue;
-						}
+					// Check laplacian score
+					if ((value * value) < laplacianSqrThreshold) {
+						continue;
+					}
 
-						// Compute downsampled point location
-						double ds_x = col * 0.5f - 0.25f;
-						double ds_y = row * 0.5f - 0.25f;
-
-						boolean extrema = false;
-						if (
-						/* im0 - 9 evaluations */
-						value > im0b[im0_ym1 + col - 1] && value > im0b[im0_ym1 + col]
-								&& value > im0b[im0_ym1 + col + 1] && value > im0b[im0_y + col - 1]
-								&& value > im0b[im0_y + col] && value > im0b[im0_y + col + 1]
-								&& value > im0b[im0_yp1 + col - 1] && value > im0b[im0_yp1 + col]
-								&& value > im0b[im0_yp1 + col + 1] &&
-								/* im1 - 8 evaluations */
-								value > im1b[im1_ym1 + col - 1] && value > im1b[im1_ym1 + col]
-								&& value > im1b[im1_ym1 + col + 1] && value > im1b[im1_y + col - 1]
-								&& value > im1b[im1_y + col + 1] && value > im1b[im1_yp1 + col - 1]
-								&& value > im1b[im1_yp1 + col] && value > im1b[im1_yp1 + col + 1] &&
-								/* im2 - 9 evaluations */
-								value > im2.bilinearInterpolation( ds_x - 0.5f, ds_y - 0.5f)
-								&& value > im2.bilinearInterpolation( ds_x, ds_y - 0.5f)
-								&& value > im2.bilinearInterpolation( ds_x + 0.5f, ds_y - 0.5f)
-								&& value > im2.bilinearInterpolation( ds_x - 0.5f, ds_y)
-								&& value > im2.bilinearInterpolation( ds_x, ds_y)
-								&& value > im2.bilinearInterpolation( ds_x + 0.5f, ds_y)
-								&& value > im2.bilinearInterpolation( ds_x - 0.5f, ds_y + 0.5f)
-								&& value > im2.bilinearInterpolation( ds_x, ds_y + 0.5f)
-								&& value > im2.bilinearInterpolation( ds_x + 0.5f, ds_y + 0.5f)) {
-							extrema = true;
-						} else if (
-						/* im0 - 9 evaluations */
-						value < im0b[im0_ym1 + col - 1] && value < im0b[im0_ym1 + col]
-								&& value < im0b[im0_ym1 + col + 1] && value < im0b[im0_y + col - 1]
-								&& value < im0b[im0_y + col] && value < im0b[im0_y + col + 1]
-								&& value < im0b[im0_yp1 + col - 1] && value < im0b[im0_yp1 + col]
-								&& value < im0b[im0_yp1 + col + 1] &&
-								/* im1 - 8 evaluations */
-								value < im1b[im1_ym1 + col - 1] && value < im1b[im1_ym1 + col]
-								&& value < im1b[im1_ym1 + col + 1] && value < im1b[im1_y + col - 1]
-								&& value < im1b[im1_y + col + 1] && value < im1b[im1_yp1 + col - 1]
-								&& value < im1b[im1_yp1 + col] && value < im1b[im1_yp1 + col + 1] &&
-								/* im2 - 9 evaluations */
-								value < im2.bilinearInterpolation(ds_x - 0.5f, ds_y - 0.5f)
-								&& value < im2.bilinearInterpolation(ds_x, ds_y - 0.5f)
-								&& value < im2.bilinearInterpolation(ds_x + 0.5f, ds_y - 0.5f)
-								&& value < im2.bilinearInterpolation(ds_x - 0.5f, ds_y)
-								&& value < im2.bilinearInterpolation(ds_x, ds_y)
-								&& value < im2.bilinearInterpolation(ds_x + 0.5f, ds_y)
-								&& value < im2.bilinearInterpolation(ds_x - 0.5f, ds_y + 0.5f)
-								&& value < im2.bilinearInterpolation(ds_x, ds_y + 0.5f)
-								&& value < im2.bilinearInterpolation(ds_x + 0.5f, ds_y + 0.5f)) 
-						{
-							extrema = true;
-						}
+					// Compute downsampled point location
+					double ds_x = col * 0.5f - 0.25f;
+					double ds_y = row * 0.5f - 0.25f;
+
+					boolean extrema = false;
+					if (
+					/* im0 - 9 evaluations */
+					value > im0b[im0_ym1 + col - 1] && value > im0b[im0_ym1 + col]
+							&& value > im0b[im0_ym1 + col + 1] && value > im0b[im0_y + col - 1]
+							&& value > im0b[im0_y + col] && value > im0b[im0_y + col + 1]
+							&& value > im0b[im0_yp1 + col - 1] && value > im0b[im0_yp1 + col]
+							&& value > im0b[im0_yp1 + col + 1] &&
+							/* im1 - 8 evaluations */
+							value > im1b[im1_ym1 + col - 1] && value > im1b[im1_ym1 + col]
+							&& value > im1b[im1_ym1 + col + 1] && value > im1b[im1_y + col - 1]
+							&& value > im1b[im1_y + col + 1] && value > im1b[im1_yp1 + col - 1]
+							&& value > im1b[im1_yp1 + col] && value > im1b[im1_yp1 + col + 1] &&
+							/* im2 - 9 evaluations */
+							value > im2.bilinearInterpolation( ds_x - 0.5f, ds_y - 0.5f)
+							&& value > im2.bilinearInterpolation( ds_x, ds_y - 0.5f)
+							&& value > im2.bilinearInterpolation( ds_x + 0.5f, ds_y - 0.5f)
+							&& value > im2.bilinearInterpolation( ds_x - 0.5f, ds_y)
+							&& value > im2.bilinearInterpolation( ds_x, ds_y)
+							&& value > im2.bilinearInterpolation( ds_x + 0.5f, ds_y)
+							&& value > im2.bilinearInterpolation( ds_x - 0.5f, ds_y + 0.5f)
+							&& value > im2.bilinearInterpolation( ds_x, ds_y + 0.5f)
+							&& value > im2.bilinearInterpolation( ds_x + 0.5f, ds_y + 0.5f)) {
+						extrema = true;
+					} else if (
+					/* im0 - 9 evaluations */
+					value < im0b[im0_ym1 + col - 1] && value < im0b[im0_ym1 + col]
+							&& value < im0b[im0_ym1 + col + 1] && value < im0b[im0_y + col - 1]
+							&& value < im0b[im0_y + col] && value < im0b[im0_y + col + 1]
+							&& value < im0b[im0_yp1 + col - 1] && value < im0b[im0_yp1 + col]
+							&& value < im0b[im0_yp1 + col + 1] &&
+							/* im1 - 8 evaluations */
+							value < im1b[im1_ym1 + col - 1] && value < im1b[im1_ym1 + col]
+							&& value < im1b[im1_ym1 + col + 1] && value < im1b[im1_y + col - 1]
+							&& value < im1b[im1_y + col + 1] && value < im1b[im1_yp1 + col - 1]
+							&& value < im1b[im1_yp1 + col] && value < im1b[im1_yp1 + col + 1] &&
+							/* im2 - 9 evaluations */
+							value < im2.bilinearInterpolation(ds_x - 0.5f, ds_y - 0.5f)
+							&& value < im2.bilinearInterpolation(ds_x, ds_y - 0.5f)
+							&& value < im2.bilinearInterpolation(ds_x + 0.5f, ds_y - 0.5f)
+							&& value < im2.bilinearInterpolation(ds_x - 0.5f, ds_y)
+							&& value < im2.bilinearInterpolation(ds_x, ds_y)
+							&& value < im2.bilinearInterpolation(ds_x + 0.5f, ds_y)
+							&& value < im2.bilinearInterpolation(ds_x - 0.5f, ds_y + 0.5f)
+							&& value < im2.bilinearInterpolation(ds_x, ds_y + 0.5f)
+							&& value < im2.bilinearInterpolation(ds_x + 0.5f, ds_y + 0.5f)) 
+					{
+						extrema = true;
+					}
 
-						if (extrema) {
-							DogFeaturePoint fp = i_dog_fp.prePush();
-							if(fp==null){
-								prepush_warning();
-								break;
-							}
-							fp.octave = octave;
-							fp.scale = scale;
-							fp.score = value;
-							fp.sigma = pyramid.effectiveSigma(octave, scale);
-							double[] tmp = new double[2];
-							bilinear_upsample_point(tmp, col, row, octave);
-							fp.x = tmp[0];
-							fp.y = tmp[1];
+					if (extrema) {
+						DogFeaturePoint fp = i_dog_fp.prePush();
+						if(fp==null){
+							prepush_warning();
+							break;
 						}
+						fp.octave = octave;
+						fp.scale = scale;
+						fp.score = value;
+						fp.sigma = pyramid.effectiveSigma(octave, scale);
+						double[] tmp = i_tmp;
+						bilinear_upsample_point(tmp, col, row, octave);
+						fp.x = tmp[0];
+						fp.y = tmp[1];
 					}
 				}
-			} else if ((im0.getWidth() >> 1) == im1.getWidth() && (im0.getWidth() >> 1) == im2.getWidth()) {
+			}
+		} else if ((im0.getWidth() >> 1) == im1.getWidth() && (im0.getWidth() >> 1) == im2.getWidth()) {
 
-				int width_minus_1 = im1.getWidth() - 1;
-				int height_minus_1 = im1.getHeight() - 1;
+			int width_minus_1 = im1.getWidth() - 1;
 
-				for (int row = 1; row < height_minus_1; row++) {
-					int im1_ym1 = im1.get(row - 1);
-					int im1_y = im1.get(row);
-					int im1_yp1 = im1.get(row + 1);
+			for (int row = i_row_begin; row < i_row_end; row++) {
+				int im1_ym1 = im1.get(row - 1);
+				int im1_y = im1.get(row);
+				int im1_yp1 = im1.get(row + 1);
 
-					int im2_ym1 = im2.get(row - 1);
-					int im2_y = im2.get(row);
-					int im2_yp1 = im2.get(row + 1);
+				int im2_ym1 = im2.get(row - 1);
+				int im2_y = im2.get(row);
+				int im2_yp1 = im2.get(row + 1);
 
-					for (int col = 1; col < width_minus_1; col++) {
-						double value = im1b[im1_y + col];
+				for (int col = 1; col < width_minus_1; col++) {
+					double value = im1b[im1_y + col];
 
-						// Check laplacian score
-						if ((value * value) < laplacianSqrThreshold) {
-							continue;
-						}
+					// Check laplacian score
+					if ((value * value) < laplacianSqrThreshold) {
+						continue;
+					}
 
-						double us_x = (col << 1) + 0.5f;
-						double us_y = (row << 1) + 0.5f;
-
-						boolean extrema = false;
-						if (value > im1b[im1_ym1 + col - 1] && value > im1b[im1_ym1 + col]
-								&& value > im1b[im1_ym1 + col + 1] && value > im1b[im1_y + col - 1]
-								&& value > im1b[im1_y + col + 1] && value > im1b[im1_yp1 + col - 1]
-								&& value > im1b[im1_yp1 + col] && value > im1b[im1_yp1 + col + 1] &&
-								/* im2 - 9 evaluations */
-								value > im2b[im2_ym1 + col - 1] && value > im2b[im2_ym1 + col]
-								&& value > im2b[im2_ym1 + col + 1] && value > im2b[im2_y + col - 1]
-								&& value > im2b[im2_y + col] && value > im2b[im2_y + col + 1]
-								&& value > im2b[im2_yp1 + col - 1] && value > im2b[im2_yp1 + col]
-								&& value > im2b[im2_yp1 + col + 1] &&
-								/* im2 - 9 evaluations */
-								value > im0.bilinearInterpolation(us_x - 2.0f, us_y - 2.0f)
-								&& value > im0.bilinearInterpolation(us_x, us_y - 2.0f)
-								&& value > im0.bilinearInterpolation(us_x + 2.0f, us_y - 2.0f)
-								&& value > im0.bilinearInterpolation(us_x - 2.0f, us_y)
-								&& value > im0.bilinearInterpolation(us_x, us_y)
-								&& value > im0.bilinearInterpolation(us_x + 2.0f, us_y)
-								&& value > im0.bilinearInterpolation(us_x - 2.0f, us_y + 2.0f)
-								&& value > im0.bilinearInterpolation(us_x, us_y + 2.0f)
-								&& value > im0.bilinearInterpolation(us_x + 2.0f, us_y + 2.0f))
-						{ 
-							extrema = true;
-						} else if (value < im1b[im1_ym1 + col - 1] && value < im1b[im1_ym1 + col]
-								&& value < im1b[im1_ym1 + col + 1] && value < im1b[im1_y + col - 1]
-								&& value < im1b[im1_y + col + 1] && value < im1b[im1_yp1 + col - 1]
-								&& value < im1b[im1_yp1 + col] && value < im1b[im1_yp1 + col + 1] &&
-								/* im2 - 9 evaluations */
-								value < im2b[im2_ym1 + col - 1] && value < im2b[im2_ym1 + col]
-								&& value < im2b[im2_ym1 + col + 1] && value < im2b[im2_y + col - 1]
-								&& value < im2b[im2_y + col] && value < im2b[im2_y + col + 1]
-								&& value < im2b[im2_yp1 + col - 1] && value < im2b[im2_yp1 + col]
-								&& value < im2b[im2_yp1 + col + 1] &&
-								/* im2 - 9 evaluations */
-								value < im0.bilinearInterpolation(us_x - 2.0f, us_y - 2.0f)
-								&& value < im0.bilinearInterpolation(us_x, us_y - 2.0f)
-								&& value < im0.bilinearInterpolation(us_x + 2.0f, us_y - 2.0f)
-								&& value < im0.bilinearInterpolation(us_x - 2.0f, us_y)
-								&& value < im0.bilinearInterpolation(us_x, us_y)
-								&& value < im0.bilinearInterpolation(us_x + 2.0f, us_y)
-								&& value < im0.bilinearInterpolation(us_x - 2.0f, us_y + 2.0f)
-								&& value < im0.bilinearInterpolation(us_x, us_y + 2.0f)
-								&& value < im0.bilinearInterpolation(us_x + 2.0f, us_y + 2.0f))
-						{ 
-							extrema = true;
-						}
+					double us_x = (col << 1) + 0.5f;
+					double us_y = (row << 1) + 0.5f;
+
+					boolean extrema = false;
+					if (value > im1b[im1_ym1 + col - 1] && value > im1b[im1_ym1 + col]
+							&& value > im1b[im1_ym1 + col + 1] && value > im1b[im1_y + col - 1]
+							&& value > im1b[im1_y + col + 1] && value > im1b[im1_yp1 + col - 1]
+							&& value > im1b[im1_yp1 + col] && value > im1b[im1_yp1 + col + 1] &&
+							/* im2 - 9 evaluations */
+							value > im2b[im2_ym1 + col - 1] && value > im2b[im2_ym1 + col]
+							&& value > im2b[im2_ym1 + col + 1] && value > im2b[im2_y + col - 1]
+							&& value > im2b[im2_y + col] && value > im2b[im2_y + col + 1]
+							&& value > im2b[im2_yp1 + col - 1] && value > im2b[im2_yp1 + col]
+							&& value > im2b[im2_yp1 + col + 1] &&
+							/* im2 - 9 evaluations */
+							value > im0.bilinearInterpolation(us_x - 2.0f, us_y - 2.0f)
+							&& value > im0.bilinearInterpolation(us_x, us_y - 2.0f)
+							&& value > im0.bilinearInterpolation(us_x + 2.0f, us_y - 2.0f)
+							&& value > im0.bilinearInterpolation(us_x - 2.0f, us_y)
+							&& value > im0.bilinearInterpolation(us_x, us_y)
+							&& value > im0.bilinearInterpolation(us_x + 2.0f, us_y)
+							&& value > im0.bilinearInterpolation(us_x - 2.0f, us_y + 2.0f)
+							&& value > im0.bilinearInterpolation(us_x, us_y + 2.0f)
+							&& value > im0.bilinearInterpolation(us_x + 2.0f, us_y + 2.0f))
+					{ 
+						extrema = true;
+					} else if (value < im1b[im1_ym1 + col - 1] && value < im1b[im1_ym1 + col]
+							&& value < im1b[im1_ym1 + col + 1] && value < im1b[im1_y + col - 1]
+							&& value < im1b[im1_y + col + 1] && value < im1b[im1_yp1 + col - 1]
+							&& value < im1b[im1_yp1 + col] && value < im1b[im1_yp1 + col + 1] &&
+							/* im2 - 9 evaluations */
+							value < im2b[im2_ym1 + col - 1] && value < im2b[im2_ym1 + col]
+							&& value < im2b[im2_ym1 + col + 1] && value < im2b[im2_y + col - 1]
+							&& value < im2b[im2_y + col] && value < im2b[im2_y + col + 1]
+							&& value < im2b[im2_yp1 + col - 1] && value < im2b[im2_yp1 + col]
+							&& value < im2b[im2_yp1 + col + 1] &&
+							/* im2 - 9 evaluations */
+							value < im0.bilinearInterpolation(us_x - 2.0f, us_y - 2.0f)
+							&& value < im0.bilinearInterpolation(us_x, us_y - 2.0f)
+							&& value < im0.bilinearInterpolation(us_x + 2.0f, us_y - 2.0f)
+							&& value < im0.bilinearInterpolation(us_x - 2.0f, us_y)
+							&& value < im0.bilinearInterpolation(us_x, us_y)
+							&& value < im0.bilinearInterpolation(us_x + 2.0f, us_y)
+							&& value < im0.bilinearInterpolation(us_x - 2.0f, us_y + 2.0f)
+							&& value < im0.bilinearInterpolation(us_x, us_y + 2.0f)
+							&& value < im0.bilinearInterpolation(us_x + 2.0f, us_y + 2.0f))
+					{ 
+						extrema = true;
+					}
 
-						if (extrema) {
-							DogFeaturePoint fp = i_dog_fp.prePush();
-							if(fp==null){
-								prepush_warning();
-								break;
-							}
-							fp.octave = octave;
-							fp.scale = scale;
-							fp.score = value;
-							fp.sigma = pyramid.effectiveSigma(octave, scale);
-							double[] tmp = new double[2];
-							bilinear_upsample_point(tmp, col, row, octave);
-							fp.x = tmp[0];
-							fp.y = tmp[1];
+					if (extrema) {
+						DogFeaturePoint fp = i_dog_fp.prePush();
+						if(fp==null){
+							prepush_warning();
+							break;
 						}
+						fp.octave = octave;
+						fp.scale = scale;
+						fp.score = value;
+						fp.sigma = pyramid.effectiveSigma(octave, scale);
+						double[] tmp = i_tmp;
+						bilinear_upsample_point(tmp, col, row, octave);
+						fp.x = tmp[0];
+						fp.y = tmp[1];
 					}
 				}
 			}
@@ -483,47 +626,84 @@ public class DoGScaleInvariantDetector {
 
 	/**
 	 * Sub-pixel refinement.
+	 * 点毎の計算は帯に分割して処理し、採用した点を元の順序のまま先頭へ詰めます。
+	 */
+	private void findSubpixelLocations(GaussianScaleSpacePyramid pyramid,BandContext i_ctx,DogFeaturePointStack i_dog_fp) {
+		SubpixelJob j=this._subpixel_job;
+		j.pyramid=pyramid;
+		j.fps=i_dog_fp;
+		j.ctx=i_ctx;
+		i_ctx.runner.run(j,i_dog_fp.getLength(),MIN_BAND_POINTS);
+		j.pyramid=null;
+		j.fps=null;
+		j.ctx=null;
+
+		int num_points = 0;
+		boolean[] accept=this._subpixel_accept;
+		for (int i = 0; i < i_dog_fp.getLength(); i++) {
+			if(accept[i]){
+				i_dog_fp.swap(i,num_points++);
+			}
+		}
+		i_dog_fp.setLength(num_points);
+	}
+	/**
+	 * 1つの点のサブピクセル位置を計算して、点を採用するかを返します。
 	 */
-	private void findSubpixelLocations(GaussianScaleSpacePyramid pyramid,DogFeaturePointStack i_dog_fp) {
-		int num_points;
+	private boolean findSubpixelLocation(GaussianScaleSpacePyramid pyramid,DogFeaturePoint kp,BandWork i_work) {
 		double laplacianSqrThreshold;
 		double hessianThreshold;
 
-		num_points = 0;
 		laplacianSqrThreshold = (this.mLaplacianThreshold * this.mLaplacianThreshold);
 		double te = (mEdgeThreshold + 1);
 		hessianThreshold = ((te * te) / mEdgeThreshold);
 
-		for (int i = 0; i < i_dog_fp.getLength(); i++) {
-			DogFeaturePoint kp = i_dog_fp.getItem(i);
-			//assert kp.scale < mLaplacianPyramid.numScalePerOctave();
-			// ASSERT(kp.scale < mLaplacianPyramid.numScalePerOctave(),
-			// "Feature point scale is out of bounds");
-			int lap_index = kp.octave * mLaplacianPyramid.numScalePerOctave() + kp.scale;
-
-			// Get Laplacian images
-			LaplacianImage lap0 = mLaplacianPyramid.get(lap_index - 1);
-			LaplacianImage lap1 = mLaplacianPyramid.get(lap_index);
-			LaplacianImage lap2 = mLaplacianPyramid.get(lap_index + 1);
-
-			// Compute the Hessian
-			if (!this.updateLocation(kp,lap0, lap1, lap2)) {
-				continue;
-			}
+		//assert kp.scale < mLaplacianPyramid.numScalePerOctave();
+		// ASSERT(kp.scale < mLaplacianPyramid.numScalePerOctave(),
+		// "Feature point scale is out of bounds");
+		int lap_index = kp.octave * mLaplacianPyramid.numScalePerOctave() + kp.scale;
 
+		// Get Laplacian images
+		LaplacianImage lap0 = mLaplacianPyramid.get(lap_index - 1);
+		LaplacianImage lap1 = mLaplacianPyramid.get(lap_index);
+		LaplacianImage lap2 = mLaplacianPyramid.get(lap_index + 1);
 
-			if (Math.abs(kp.edge_score) < hessianThreshold && (kp.score * kp.score) >= laplacianSqrThreshold
-					&& kp.x >= 0 && kp.x < mLaplacianPyramid.get(0).getWidth() && kp.y >= 0
-					&& kp.y < mLaplacianPyramid.get(0).getHeight()) {
-				// Update the sigma
-				kp.sigma = pyramid.effectiveSigma(kp.octave, kp.sp_scale);
-				i_dog_fp.swap(i,num_points++);
-			}
+		// Compute the Hessian
+		if (!this.updateLocation(kp,lap0, lap1, lap2,i_work)) {
+			return false;
 		}
-		i_dog_fp.setLength(num_points);
-	}
 
 
+		if (Math.abs(kp.edge_score) < hessianThreshold && (kp.score * kp.score) >= laplacianSqrThreshold
+				&& kp.x >= 0 && kp.x < mLaplacianPyramid.get(0).getWidth() && kp.y >= 0
+				&& kp.y < mLaplacianPyramid.get(0).getHeight()) {
+			// Update the sigma
+			kp.sigma = pyramid.effectiveSigma(kp.octave, kp.sp_scale);
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * サブピクセル位置の計算の帯のジョブです。
+	 */
+	private class SubpixelJob implements BandRunner.IBandJob
+	{
+		public GaussianScaleSpacePyramid pyramid;
+		public DogFeaturePointStack fps;
+		public BandContext ctx;
+		@Override
+		public void run(int i_band, int i_begin, int i_end)
+		{
+			BandWork w=this.ctx.work[i_band];
+			boolean[] accept=DoGScaleInvariantDetector.this._subpixel_accept;
+			for(int i=i_begin;i<i_end;i++){
+				accept[i]=findSubpixelLocation(this.pyramid,this.fps.getItem(i),w);
+			}
+		}
+	}
+	final private SubpixelJob _subpixel_job=new SubpixelJob();
+	/** 点毎の採用フラグ*/
+	final private boolean[] _subpixel_accept=new boolean[kMaxNumFeaturePoints];
 
 	final private double[] _addFeatureOrientations_tmp=new double[3];
 	
@@ -585,10 +765,10 @@ public class DoGScaleInvariantDetector {
 	// const Image& lap0,const Image& lap1,const Image& lap2,
 	// int x,int y)
 
-	private boolean updateLocation(DogFeaturePoint kp,LaplacianImage lap0, LaplacianImage lap1, LaplacianImage lap2)
+	private boolean updateLocation(DogFeaturePoint kp,LaplacianImage lap0, LaplacianImage lap1, LaplacianImage lap2,BandWork i_work)
 	{
-		double[] tmp = new double[2];
-		double[] b = new double[3];
+		double[] tmp = i_work.ul_tmp;
+		double[] b = i_work.ul_b;
 		
 		
 		// Downsample the feature point to the detection octave
@@ -599,26 +779,26 @@ public class DoGScaleInvariantDetector {
 		int x = (int) (xp + 0.5f);
 		int y = (int) (yp + 0.5f);		
 		
-		double[] H=new double[9];
+		double[] H=i_work.ul_H;
 		if (lap0.getWidth() == lap1.getWidth() && lap1.getWidth() == lap2.getWidth()) {
 			//すべての画像サイズが同じ
 			//assert lap0.getHeight() == lap1.getHeight() && lap1.getHeight() == lap2.getHeight();// "Width/height are not consistent");
-			ComputeSubpixelHessianSameOctave(H, b, lap0, lap1, lap2, x, y);
+			ComputeSubpixelHessianSameOctave(H, b, lap0, lap1, lap2, x, y, i_work.hessian_tmp);
 		} else if ((lap0.getWidth() == lap1.getWidth()) && ((lap1.getWidth() >> 1) == lap2.getWidth())) {
 			//0,1が同じで2がその半分
 			//assert (lap0.getHeight() == lap1.getHeight()) && ((lap1.getHeight() >> 1) == lap2.getHeight());// Width/height are not consistent");
-			ComputeSubpixelHessianFineOctavePair(H, b, lap0, lap1, lap2, x, y);
+			ComputeSubpixelHessianFineOctavePair(H, b, lap0, lap1, lap2, x, y, i_work.hessian_tmp);
 		} else if (((lap0.getWidth() >> 1) == lap1.getWidth()) && (lap1.getWidth() == lap2.getWidth())) {
 			//0の半分が1,2
 			//assert ((lap0.getWidth() >> 1) == lap1.getWidth()) && (lap1.getWidth() == lap2.getWidth());// Width/height are not consistent");
-			ComputeSubpixelHessianCoarseOctavePair(H, b, lap0, lap1, lap2, x, y);
+			ComputeSubpixelHessianCoarseOctavePair(H, b, lap0, lap1, lap2, x, y, i_work.hessian_tmp);
 		} else {
 			// ASSERT(0, "Image sizes are inconsistent");
 			return false;
 		}
 		
 		// A*u=b	//		if (!SolveSymmetricLinearSystem3x3(u, H, b)) {
-		NyARDoubleMatrix33 m = new NyARDoubleMatrix33();
+		NyARDoubleMatrix33 m = i_work.ul_m;
 		m.m00 = H[0];
 		m.m01 = H[1];
 		m.m02 = H[2];
@@ -650,7 +830,7 @@ public class DoGScaleInvariantDetector {
 		// Compute a linear estimate of the intensity
 		// ASSERT(kp.score == lap1.get<float>(y)[x],
 		// "Score is not consistent with the DoG image");
-		double[] lap1_buf = (double[]) lap1.getBuffer();
+		float[] lap1_buf = (float[]) lap1.getBuffer();
 		kp.score = lap1_buf[lap1.get(y) + x] - (b[0] * u0 + b[1] * u1 + b[2] * u2);
 
 		// Update the location:
@@ -672,7 +852,7 @@ public class DoGScaleInvariantDetector {
 	// const Image& lap0,const Image& lap1,const Image& lap2,
 	// int x,int y)
 	private void ComputeSubpixelHessianCoarseOctavePair(double H[], double b[], LaplacianImage lap0, LaplacianImage lap1,
-			LaplacianImage lap2, int x, int y) {
+			LaplacianImage lap2, int x, int y, double[] i_tmp) {
 		double val;
 		double x_mul_2, y_mul_2;
 		double Dx, Dy, Ds;
@@ -692,7 +872,7 @@ public class DoGScaleInvariantDetector {
 		int lap2_p = lap2.get(y) + x;
 		int lap2_pp1 = lap2.get(y + 1) + x;
 
-		double[] tmp = new double[5];
+		double[] tmp = i_tmp;
 		// Upsample the point to the higher octave
 		bilinear_upsample_point(tmp, x, y, 1);
 		x_mul_2 = tmp[0];
@@ -707,8 +887,8 @@ public class DoGScaleInvariantDetector {
 		Dxy = tmp[4];
 		// Interpolate the VALUE at the finer octave
 		val = lap0.bilinearInterpolation(x_mul_2, y_mul_2);
-		double[] lap2buf = (double[]) lap2.getBuffer();
-		double[] lap1buf = (double[]) lap1.getBuffer();
+		float[] lap2buf = (float[]) lap2.getBuffer();
+		float[] lap1buf = (float[]) lap1.getBuffer();
 
 		Ds = 0.5f * (lap2buf[lap2_p + 0] - val);
 		Dss = val + (-2.0f * lap1buf[lap1_p + 0]) + lap2buf[lap2_p + 0];
@@ -739,7 +919,7 @@ public class DoGScaleInvariantDetector {
 	// const Image& lap0,const Image& lap1,const Image& lap2,
 	// int x,int y)
 	private void ComputeSubpixelHessianFineOctavePair(double[] H, double[] b, LaplacianImage lap0, LaplacianImage lap1,
-			LaplacianImage lap2, int x, int y) {
+			LaplacianImage lap2, int x, int y, double[] i_tmp) {
 		double x_div_2, y_div_2;
 		double val;
 		double Dx, Dy, Ds;
@@ -757,7 +937,7 @@ public class DoGScaleInvariantDetector {
 		int lap0_p = lap0.get(y) + x;
 		int lap0_pp1 = lap0.get(y + 1) + x;
 		int lap1_p = lap1.get(y) + x;
-		double[] tmp = new double[5];
+		double[] tmp = i_tmp;
 		bilinear_downsample_point(tmp, x, y, 1);
 		x_div_2 = tmp[0];
 		y_div_2 = tmp[1];
@@ -778,8 +958,8 @@ public class DoGScaleInvariantDetector {
 		val = lap2.bilinearInterpolation(x_div_2, y_div_2);
 
 
-		double[] lap0_buf = (double[]) lap0.getBuffer();
-		double[] lap1_buf = (double[]) lap1.getBuffer();
+		float[] lap0_buf = (float[]) lap0.getBuffer();
+		float[] lap1_buf = (float[]) lap1.getBuffer();
 
 		Ds = 0.5f * (val - lap0_buf[lap0_p + 0]);
 		Dss = lap0_buf[lap0_p + 0] + (-2.0f * lap1_buf[lap1_p + 0]) + val;
@@ -816,7 +996,7 @@ public class DoGScaleInvariantDetector {
 	// const Image& lap0,const Image& lap1,const Image& lap2,
 	// int x,int y)
 	private void ComputeSubpixelHessianSameOctave(double[] H, double[] b, LaplacianImage lap0, LaplacianImage lap1, LaplacianImage lap2,
-			int x, int y) {
+			int x, int y, double[] i_tmp) {
 		double Dx, Dy, Ds;
 		double Dxx, Dyy, Dxy;
 		double Dss, Dxs, Dys;
@@ -837,7 +1017,7 @@ public class DoGScaleInvariantDetector {
 		int lap2_p = lap2.get(y) + x;
 		int lap2_pp1 = lap2.get(y + 1) + x;
 
-		double[] tmp = new double[5];
+		double[] tmp = i_tmp;
 		// Compute spatial derivatives
 //	 ComputeSubpixelDerivatives(Dx, Dy, Dxx, Dyy, Dxy, lap1, x, y);
 		lap1.computeSubpixelDerivatives(x, y, tmp);
@@ -846,9 +1026,9 @@ public class DoGScaleInvariantDetector {
 		Dxx = tmp[2];
 		Dyy = tmp[3];
 		Dxy = tmp[4];
-		double[] lap0buf = (double[]) lap0.getBuffer();
-		double[] lap1buf = (double[]) lap1.getBuffer();
-		double[] lap2buf = (double[]) lap2.getBuffer();
+		float[] lap0buf = (float[]) lap0.getBuffer();
+		float[] lap1buf = (float[]) lap1.getBuffer();
+		float[] lap2buf = (float[]) lap2.getBuffer();
 		// Compute scale derivates
 		Ds = 0.5f * (lap2buf[lap2_p + 0] - lap0buf[lap0_p + 0]);
 		Dss = lap0buf[lap0_p + 0] + (-2.0f * lap1buf[lap1_p + 0]) + lap2buf[lap2_p + 0];
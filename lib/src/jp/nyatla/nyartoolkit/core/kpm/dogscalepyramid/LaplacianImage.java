@@ -41,13 +41,17 @@ import jp.nyatla.nyartoolkit.core.raster.INyARRaster;
 import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
 import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
 
+/**
+ * このクラスは、DoGピラミッドの1段を格納するラスタです。
+ * 画素値はfloat[]に格納します。
+ */
 public class LaplacianImage implements INyARRaster {
 	private NyARIntSize _size;
-	private double[] _buf;
+	private float[] _buf;
 
 	public LaplacianImage(int i_width, int i_height) {
 		this._size = new NyARIntSize(i_width, i_height);
-		this._buf = new double[i_width * i_height];
+		this._buf = new float[i_width * i_height];
 	}
 
 	@Override
@@ -109,7 +113,7 @@ public class LaplacianImage implements INyARRaster {
      */
 	public double bilinearInterpolation(double x, double y)
 	{
-		double[] buf=this._buf;
+		float[] buf=this._buf;
 		int width=this._size.w;
 		double w0, w1, w2, w3;
 		// Compute location of 4 neighbor pixels
@@ -142,14 +146,26 @@ public class LaplacianImage implements INyARRaster {
 	 */
 	public void difference_image_binomial(KpmImage im1, KpmImage im2) {
 		// Compute diff
-		double[] p0 = (double[]) this.getBuffer();
-		double[] p1 = (double[]) im1.getBuffer();
-		double[] p2 = (double[]) im2.getBuffer();
+		float[] p0 = (float[]) this.getBuffer();
+		float[] p1 = (float[]) im1.getBuffer();
+		float[] p2 = (float[]) im2.getBuffer();
 		for (int i = im1.getWidth()*im1.getHeight()-1; i>=0 ; i--) {
 			p0[i] = p1[i] - p2[i];
 		}
 		return;
 	}
+	/**
+	 * 画素番号[i_begin,i_end)の差分画像を計算します。
+	 */
+	public void difference_image_binomial(KpmImage im1, KpmImage im2,int i_begin,int i_end) {
+		float[] p0 = (float[]) this.getBuffer();
+		float[] p1 = (float[]) im1.getBuffer();
+		float[] p2 = (float[]) im2.getBuffer();
+		for (int i = i_begin; i<i_end ; i++) {
+			p0[i] = p1[i] - p2[i];
+		}
+		return;
+	}
 	// private void ComputeSubpixelDerivatives(
 	// float& Dx, float& Dy,
 	// float& Dxx,float& Dyy,float& Dxy,
@@ -158,7 +174,7 @@ public class LaplacianImage implements INyARRaster {
 	public void computeSubpixelDerivatives(int x, int y,double[] dn)
 	{
 
-		double[] im_buf = (double[]) this.getBuffer();
+		float[] im_buf = (float[]) this.getBuffer();
 		int pm1 = this.get(y - 1) + x;
 		int p = this.get(y) + x;
 		int pp1 = this.get(y + 1) + x;
@@ -36,10 +36,12 @@
 package jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid;
 
 
-import jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid.gradientimage.GradientsImage_ARTK;
+import jp.nyatla.nyartoolkit.core.kpm.KpmImage;
 import jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid.gradientimage.GradientsImage_O1;
 import jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid.utils.BilinearHistogram;
 import jp.nyatla.nyartoolkit.core.kpm.pyramid.GaussianScaleSpacePyramid;
+import jp.nyatla.nyartoolkit.core.utils.BandRunner;
+import jp.nyatla.nyartoolkit.core.kpm.utils.RowSpanTable;
 
 
 public class OrientationAssignment {
@@ -67,7 +69,9 @@ public class OrientationAssignment {
 	final private BilinearHistogram mHistogram;
 
 	// Vector of gradient images
-	final private GradientsImage_ARTK[] mGradients;
+	final private GradientsImage_O1[] mGradients;
+	/** 全ての勾配画像の行の表*/
+	final private RowSpanTable _rows;
 
 	public OrientationAssignment(int fine_width, int fine_height, int num_octaves, int num_scales_per_octave,
 			int num_bins, double gaussian_expansion_factor, double support_region_expansion_factor,
@@ -81,13 +85,22 @@ public class OrientationAssignment {
 		this.mHistogram = new BilinearHistogram(num_bins);
 
 		// Allocate gradient images
-		this.mGradients = new GradientsImage_ARTK[num_octaves * this.mNumScalesPerOctave];
+		this.mGradients = new GradientsImage_O1[num_octaves * this.mNumScalesPerOctave];
 		for (int i = 0; i < num_octaves; i++) {
 			for (int j = 0; j < num_scales_per_octave; j++) {
 				this.mGradients[i * num_scales_per_octave + j] = new GradientsImage_O1(fine_width >> i, fine_height >> i);
 
 			}
 		}
+		int n=this.mGradients.length;
+		int[] w=new int[n];
+		int[] rb=new int[n];
+		int[] re=new int[n];
+		for(int i=0;i<n;i++){
+			w[i]=fine_width >> (i/num_scales_per_octave);
+			re[i]=fine_height >> (i/num_scales_per_octave);
+		}
+		this._rows=new RowSpanTable(w,rb,re);
 	}
 
 	/**
@@ -99,6 +112,37 @@ public class OrientationAssignment {
 			this.mGradients[i].computePolarGradients(pyramid.images()[i]);
 		}
 	}
+	/**
+	 * {@link #computeGradients(GaussianScaleSpacePyramid)}を、全ての勾配画像の行を帯に分割して処理します。
+	 * 結果は{@link #computeGradients(GaussianScaleSpacePyramid)}と同じです。
+	 * @param i_runner
+	 * 帯の分割器
+	 */
+	public void computeGradients(GaussianScaleSpacePyramid pyramid,BandRunner i_runner)
+	{
+		GradientJob j=this._gradient_job;
+		j.images=pyramid.images();
+		i_runner.run(j,this._rows.size(),BandRunner.MIN_BAND_PIXELS);
+		j.images=null;
+	}
+	private class GradientJob implements BandRunner.IBandJob
+	{
+		public KpmImage[] images;
+		@Override
+		public void run(int i_band, int i_begin, int i_end)
+		{
+			RowSpanTable t=OrientationAssignment.this._rows;
+			GradientsImage_O1[] g=OrientationAssignment.this.mGradients;
+			for(int i=0;i<g.length;i++){
+				int r0=t.firstRow(i,i_begin);
+				int r1=t.firstRow(i,i_end);
+				if(r0<r1){
+					g[i].computePolarGradients(this.images[i],r0,r1);
+				}
+			}
+		}
+	}
+	final private GradientJob _gradient_job=new GradientJob();
 
 	/**
 	 * Compute orientations for a keypoint.
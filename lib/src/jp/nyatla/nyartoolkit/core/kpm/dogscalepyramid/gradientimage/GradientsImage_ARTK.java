@@ -46,18 +46,18 @@ public class GradientsImage_ARTK
 {
 	final protected static double PI=NyARMath.PI;
 	final protected NyARIntSize _size;
-	final protected double[] _angle;
-	final protected double[] _mag;
+	final protected float[] _angle;
+	final protected float[] _mag;
 
 	public GradientsImage_ARTK(int i_width, int i_height) {
 		this._size = new NyARIntSize(i_width, i_height);
-		this._angle = new double[i_width * i_height];
-		this._mag = new double[i_width * i_height];
+		this._angle = new float[i_width * i_height];
+		this._mag = new float[i_width * i_height];
 	}
-	public double[] getAngle(){
+	public float[] getAngle(){
 		return this._angle;
 	}
-	public double[] getMag(){
+	public float[] getMag(){
 		return this._mag;
 	}
 
@@ -71,8 +71,8 @@ public class GradientsImage_ARTK
 	 */
 	public void buildOrientationHistogram(double x,double y,double radius,double gw_scale,BilinearHistogram i_histogram)
 	{
-		double[] a_buf=this._angle;
-		double[] m_buf=this._mag;
+		float[] a_buf=this._angle;
+		float[] m_buf=this._mag;
 		int xi = (int) (x + 0.5f);
 		int yi = (int) (y + 0.5f);		
 		// Box around feature point
@@ -121,12 +121,12 @@ public class GradientsImage_ARTK
 	public void computePolarGradients(KpmImage i_img)
 	{
 		double dx, dy;
-		double[] a_gradient=this._angle;
-		double[] m_gradient=this._mag;
+		float[] a_gradient=this._angle;
+		float[] m_gradient=this._mag;
 		int width=this._size.w;
 		int height=this._size.h;
 		assert this._size.isEqualSize(i_img.getSize());
-		double[] im=(double[])i_img.getBuffer();
+		float[] im=(float[])i_img.getBuffer();
 
 
 		int width_minus_1;
@@ -148,8 +148,8 @@ public class GradientsImage_ARTK
 		dx = im[p_ptr + 1] - im[p_ptr];// dx = p_ptr[1] - p_ptr[0];
 		dy = im[pp1_ptr] - im[pm1_ptr];// dy = pp1_ptr[0] - pm1_ptr[0];
 		// SET_GRADIENT(dx, dy)
-		a_gradient[gradient_ptr] = (Math.atan2(dy, dx) + PI);
-		m_gradient[gradient_ptr] = Math.sqrt(dx * dx + dy * dy);
+		a_gradient[gradient_ptr] = (float)((Math.atan2(dy, dx) + PI));
+		m_gradient[gradient_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 		gradient_ptr++;
 		p_ptr++;
 		pm1_ptr++;
@@ -159,8 +159,8 @@ public class GradientsImage_ARTK
 			dx = im[p_ptr + 1] - im[p_ptr - 1];
 			dy = im[pp1_ptr] - im[pm1_ptr];
 			// SET_GRADIENT(dx, dy)
-			a_gradient[gradient_ptr] = (Math.atan2(dy, dx) + PI);
-			m_gradient[gradient_ptr] = Math.sqrt(dx * dx + dy * dy);
+			a_gradient[gradient_ptr] = (float)((Math.atan2(dy, dx) + PI));
+			m_gradient[gradient_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 			gradient_ptr++;
 			p_ptr++;
 			pm1_ptr++;
@@ -170,8 +170,8 @@ public class GradientsImage_ARTK
 		dx = im[p_ptr] - im[p_ptr - 1];
 		dy = im[pp1_ptr] - im[pm1_ptr];
 		// SET_GRADIENT(dx, dy)
-		a_gradient[gradient_ptr] = (Math.atan2(dy, dx) + PI);
-		m_gradient[gradient_ptr] = Math.sqrt(dx * dx + dy * dy);
+		a_gradient[gradient_ptr] = (float)((Math.atan2(dy, dx) + PI));
+		m_gradient[gradient_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 		gradient_ptr++;
 		p_ptr++;
 		pm1_ptr++;
@@ -186,8 +186,8 @@ public class GradientsImage_ARTK
 			dx = im[p_ptr + 1] - im[p_ptr];
 			dy = im[pp1_ptr] - im[pm1_ptr];
 			// SET_GRADIENT(dx, dy)
-			a_gradient[gradient_ptr] = (Math.atan2(dy, dx) + PI);
-			m_gradient[gradient_ptr] = Math.sqrt(dx * dx + dy * dy);
+			a_gradient[gradient_ptr] = (float)((Math.atan2(dy, dx) + PI));
+			m_gradient[gradient_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 			gradient_ptr++;
 			p_ptr++;
 			pm1_ptr++;
@@ -197,8 +197,8 @@ public class GradientsImage_ARTK
 				dx = im[p_ptr + 1] - im[p_ptr - 1];
 				dy = im[pp1_ptr] - im[pm1_ptr];
 				// SET_GRADIENT(dx, dy)
-				a_gradient[gradient_ptr] = (Math.atan2(dy, dx) + PI);
-				m_gradient[gradient_ptr] = Math.sqrt(dx * dx + dy * dy);
+				a_gradient[gradient_ptr] = (float)((Math.atan2(dy, dx) + PI));
+				m_gradient[gradient_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 				gradient_ptr++;
 				p_ptr++;
 				pm1_ptr++;
@@ -207,8 +207,8 @@ public class GradientsImage_ARTK
 			dx = im[p_ptr] - im[p_ptr - 1];
 			dy = im[pp1_ptr] - im[pm1_ptr];
 			// SET_GRADIENT(dx, dy)
-			a_gradient[gradient_ptr] = (Math.atan2(dy, dx) + PI);
-			m_gradient[gradient_ptr] = Math.sqrt(dx * dx + dy * dy);
+			a_gradient[gradient_ptr] = (float)((Math.atan2(dy, dx) + PI));
+			m_gradient[gradient_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 			gradient_ptr++;
 			p_ptr++;
 			pm1_ptr++;
@@ -223,8 +223,8 @@ public class GradientsImage_ARTK
 		dx = im[p_ptr + 1] - im[p_ptr];
 		dy = im[pp1_ptr] - im[pm1_ptr];
 		// SET_GRADIENT(dx, dy)
-		a_gradient[gradient_ptr] = (Math.atan2(dy, dx) + PI);
-		m_gradient[gradient_ptr] = Math.sqrt(dx * dx + dy * dy);
+		a_gradient[gradient_ptr] = (float)((Math.atan2(dy, dx) + PI));
+		m_gradient[gradient_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 		gradient_ptr++;
 		p_ptr++;
 		pm1_ptr++;
@@ -234,8 +234,8 @@ public class GradientsImage_ARTK
 			dx = im[p_ptr + 1] - im[p_ptr - 1];
 			dy = im[pp1_ptr] - im[pm1_ptr];
 			// SET_GRADIENT(dx, dy)
-			a_gradient[gradient_ptr] = (Math.atan2(dy, dx) + PI);
-			m_gradient[gradient_ptr] = Math.sqrt(dx * dx + dy * dy);
+			a_gradient[gradient_ptr] = (float)((Math.atan2(dy, dx) + PI));
+			m_gradient[gradient_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 			gradient_ptr++;
 			p_ptr++;
 			pm1_ptr++;
@@ -246,8 +246,8 @@ public class GradientsImage_ARTK
 		dx = im[p_ptr] - im[p_ptr - 1];
 		dy = im[pp1_ptr] - im[pm1_ptr];
 		// SET_GRADIENT(dx, dy)
-		a_gradient[gradient_ptr] = (Math.atan2(dy, dx) + PI);
-		m_gradient[gradient_ptr] = Math.sqrt(dx * dx + dy * dy);
+		a_gradient[gradient_ptr] = (float)((Math.atan2(dy, dx) + PI));
+		m_gradient[gradient_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 		gradient_ptr++;
 		p_ptr++;
 		pm1_ptr++;
@@ -55,8 +55,8 @@ public final class GradientsImage_O1 extends GradientsImage_ARTK{
 	 */
 	public void buildOrientationHistogram(double x,double y,double radius,double gw_scale,BilinearHistogram i_histogram)
 	{
-		double[] a_buf=this._angle;
-		double[] m_buf=this._mag;
+		float[] a_buf=this._angle;
+		float[] m_buf=this._mag;
 		int xi = (int) (x + 0.5f);
 		int yi = (int) (y + 0.5f);		
 		// Box around feature point
@@ -104,99 +104,56 @@ public final class GradientsImage_O1 extends GradientsImage_ARTK{
 	}
 	public void computePolarGradients(KpmImage i_img)
 	{
-		double[] a_gradient=this._angle;
-		double[] m_gradient=this._mag;
+		this.computePolarGradients(i_img,0,this._size.h);
+	}
+	/**
+	 * 勾配画像のi_r0からi_r1-1行を計算します。
+	 * 上下左右の端の画素は、画像の外側を端の画素で延長して計算します。
+	 * 異なる行の範囲は、異なるスレッドから同時に計算できます。
+	 */
+	public void computePolarGradients(KpmImage i_img,int i_r0,int i_r1)
+	{
+		float[] a_gradient=this._angle;
+		float[] m_gradient=this._mag;
 		double dx, dy;
 		int width=this._size.w;
-		int height=this._size.h;
-		double[] im=(double[])i_img.getBuffer();
-
-
-
-		int p_ptr;
-
+		int height_minus_1=this._size.h-1;
+		float[] im=(float[])i_img.getBuffer();
 
 		int width_minus_2 = width - 2;
-		int height_minus_2 = height - 2;
-
-
-		//Left Top
-		p_ptr = 0; // p_ptr = im;
-		dx = im[p_ptr + 1] - im[p_ptr];// dx = p_ptr[1] - p_ptr[0];
-		dy = im[p_ptr+width] - im[p_ptr];// dy = pp1_ptr[0] - pm1_ptr[0];
-		// SET_GRADIENT(dx, dy)
-		a_gradient[p_ptr] = FastMath.fastAtan2(dy, dx) + Math.PI;
-		m_gradient[p_ptr] = Math.sqrt(dx * dx + dy * dy);
-		p_ptr++;
-
-		//Top row
-		for (int col = width_minus_2; col>0 ; col--) {
-			dx = im[p_ptr + 1] - im[p_ptr - 1];
-			dy = im[p_ptr+width] - im[p_ptr];
-			// SET_GRADIENT(dx, dy)
-			a_gradient[p_ptr] = FastMath.fastAtan2(dy, dx) + Math.PI;
-			m_gradient[p_ptr] = Math.sqrt(dx * dx + dy * dy);
-			p_ptr++;
-		}
 
-		//Right Top
-		dx = im[p_ptr] - im[p_ptr - 1];
-		dy = im[p_ptr+width] - im[p_ptr];
-		// SET_GRADIENT(dx, dy)
-		a_gradient[p_ptr] = FastMath.fastAtan2(dy, dx) + Math.PI;
-		m_gradient[p_ptr] = Math.sqrt(dx * dx + dy * dy);
-
-
-		//Non-Border
-		p_ptr =width;
-		for (int row = height_minus_2; row>0; row--) {
+		for (int row = i_r0; row<i_r1; row++) {
+			int p_ptr=row*width;
+			//上下の端は、その行自身を延長する
+			int pm1_ptr=row>0?p_ptr-width:p_ptr;
+			int pp1_ptr=row<height_minus_1?p_ptr+width:p_ptr;
 			//Left
 			dx = im[p_ptr + 1] - im[p_ptr];
-			dy = im[p_ptr+width] - im[p_ptr-width];
+			dy = im[pp1_ptr] - im[pm1_ptr];
 			// SET_GRADIENT(dx, dy)
-			a_gradient[p_ptr] = FastMath.fastAtan2(dy, dx) + Math.PI;
-			m_gradient[p_ptr] = Math.sqrt(dx * dx + dy * dy);
+			a_gradient[p_ptr] = (float)(FastMath.fastAtan2(dy, dx) + Math.PI);
+			m_gradient[p_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 			p_ptr++;
+			pm1_ptr++;
+			pp1_ptr++;
 
 			for (int col = width_minus_2; col>0 ; col--) {
 				dx = im[p_ptr + 1] - im[p_ptr - 1];
-				dy = im[p_ptr+width] - im[p_ptr-width];
+				dy = im[pp1_ptr] - im[pm1_ptr];
 				// SET_GRADIENT(dx, dy)
-				a_gradient[p_ptr] = FastMath.fastAtan2(dy, dx)+Math.PI;//(Math.atan2(dy, dx) + PI);
-				m_gradient[p_ptr] = Math.sqrt(dx * dx + dy * dy);
+				a_gradient[p_ptr] = (float)(FastMath.fastAtan2(dy, dx)+Math.PI);//(Math.atan2(dy, dx) + PI);
+				m_gradient[p_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 				p_ptr++;
+				pm1_ptr++;
+				pp1_ptr++;
 			}
 			//Right
 			dx = im[p_ptr] - im[p_ptr - 1];
-			dy = im[p_ptr+width] - im[p_ptr-width];
+			dy = im[pp1_ptr] - im[pm1_ptr];
 			// SET_GRADIENT(dx, dy)
-			a_gradient[p_ptr] = (FastMath.fastAtan2(dy, dx) + Math.PI);
-			m_gradient[p_ptr] = Math.sqrt(dx * dx + dy * dy);
-			p_ptr++;
-		}
-		
-		// Lower row
-		p_ptr = (height-1) * width;// p_ptr = &im[height_minus_1*width];
-		dx = im[p_ptr + 1] - im[p_ptr];
-		dy = im[p_ptr] - im[p_ptr - width];
-		// SET_GRADIENT(dx, dy)
-		a_gradient[p_ptr] = (FastMath.fastAtan2(dy, dx) + Math.PI);
-		m_gradient[p_ptr] = Math.sqrt(dx * dx + dy * dy);
-		p_ptr++;
-		for (int col = width_minus_2; col>0 ; col--) {
-			dx = im[p_ptr + 1] - im[p_ptr - 1];
-			dy = im[p_ptr] - im[p_ptr - width];
-			// SET_GRADIENT(dx, dy)
-			a_gradient[p_ptr] = (FastMath.fastAtan2(dy, dx) + Math.PI);
-			m_gradient[p_ptr] = Math.sqrt(dx * dx + dy * dy);
-			p_ptr++;
-
+			a_gradient[p_ptr] = (float)(FastMath.fastAtan2(dy, dx) + Math.PI);
+			m_gradient[p_ptr] = (float)Math.sqrt(dx * dx + dy * dy);
 		}
-		dx = im[p_ptr] - im[p_ptr - 1];
-		dy = im[p_ptr] - im[p_ptr - width];
-		// SET_GRADIENT(dx, dy)
-		a_gradient[p_ptr] = (FastMath.fastAtan2(dy, dx) + Math.PI);
-		m_gradient[p_ptr] = Math.sqrt(dx * dx + dy * dy);
 	}
 	
     /**
@@ -211,7 +168,7 @@ public final class GradientsImage_O1 extends GradientsImage_ARTK{
     public static void main(String[] args){
     	KpmImage in=new KpmImage(640,480);
     	for(int i=0;i<640*480;i++){
-    		((double[])in.getBuffer())[i]=Math.random()*255;
+    		((float[])in.getBuffer())[i]=(float)(Math.random()*255);
     	}
     	GradientsImage_ARTK gs1=new GradientsImage_ARTK(640,480);
     	GradientsImage_ARTK gs2=new GradientsImage_O1(640,480);
@@ -231,8 +188,8 @@ public final class GradientsImage_O1 extends GradientsImage_ARTK{
 			long e=System.currentTimeMillis();
 			double d=0;
 			for(int i=0;i<640*480;i++){
-				double t=((double[])gs1.getAngle())[i]-((double[])gs2.getAngle())[i];
-				double t2=((double[])gs1.getMag())[i]-((double[])gs2.getMag())[i];
+				double t=((float[])gs1.getAngle())[i]-((float[])gs2.getAngle())[i];
+				double t2=((float[])gs1.getMag())[i]-((float[])gs2.getMag())[i];
 				d+=t+t2;
 			}
 			double ga1=(s2-s)/50f;
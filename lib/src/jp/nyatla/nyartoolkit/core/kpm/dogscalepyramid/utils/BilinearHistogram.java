@@ -55,11 +55,12 @@ public class BilinearHistogram
 	 * @param[in] x Source histogram
 	 * @param[in] kernel size=3
 	 */
+	private final static double[] SMOOTHING_KERNEL={ 0.274068619061197f, 0.451862761877606f, 0.274068619061197f };
 	public void smoothOrientationHistogram(int i_num_smoothing)
 	{
 		int n=this.mHistogram.length;
 		double[] h=this.mHistogram;
-		double[] kernel = { 0.274068619061197f, 0.451862761877606f, 0.274068619061197f };
+		double[] kernel = SMOOTHING_KERNEL;
 		for (int iter = 0; iter < i_num_smoothing; iter++) {
 			// sigma=1
 			double first = h[0];
@@ -105,9 +106,13 @@ public class BilinearHistogram
 			this.mHistogram[i]=0;
 		}
 	}
+	final private double[] _R=new double[3];
+	final private double[] _p0=new double[2];
+	final private double[] _pm1=new double[2];
+	final private double[] _pp1=new double[2];
 	public int findPeak(double mPeakThreshold,double[] i_list)
 	{
-		double[] R = new double[3];
+		double[] R = this._R;
 		int mNumBins=this.mHistogram.length;
 		double max_height=0;
 		// Find the peak of the histogram.
@@ -123,9 +128,15 @@ public class BilinearHistogram
 		int num_of_peak=0;
 		// Find all the peaks.
 		for (int i = 0; i < mNumBins; i++) {
-			double[] p0 = { i, mHistogram[i] };
-			double[] pm1 = { (i - 1), mHistogram[(i - 1 + mNumBins) % mNumBins] };
-			double[] pp1 = { (i + 1), mHistogram[(i + 1 + mNumBins) % mNumBins] };
+			double[] p0 = this._p0;
+			double[] pm1 = this._pm1;
+			double[] pp1 = this._pp1;
+			p0[0]=i;
+			p0[1]=mHistogram[i];
+			pm1[0]=i - 1;
+			pm1[1]=mHistogram[(i - 1 + mNumBins) % mNumBins];
+			pp1[0]=i + 1;
+			pp1[1]=mHistogram[(i + 1 + mNumBins) % mNumBins];
 
 			// Ensure that "p0" is a relative peak w.r.t. the two neighbors
 			if ((mHistogram[i] > mPeakThreshold * max_height) && (p0[1] > pm1[1]) && (p0[1] > pp1[1])) {
@@ -199,6 +199,17 @@ public class FREAKExtractor {
 		}
 	}
 
+	//WORK AREA
+	final private double[] _samples = new double[37];
+	final private double[] _S = new double[9];
+	final private double[] _c = new double[2];
+	final private double[] _r0 = new double[2 * 6];
+	final private double[] _r1 = new double[2 * 6];
+	final private double[] _r2 = new double[2 * 6];
+	final private double[] _r3 = new double[2 * 6];
+	final private double[] _r4 = new double[2 * 6];
+	final private double[] _r5 = new double[2 * 6];
+	final private GaussianScaleSpacePyramid.LocateResult _lr = new GaussianScaleSpacePyramid.LocateResult();
 	/**
 	 * Extract a descriptor from the pyramid for a single point.
 	 */
@@ -210,7 +221,7 @@ public class FREAKExtractor {
 			double sigma_center, double sigma_ring0, double sigma_ring1,
 			double sigma_ring2, double sigma_ring3, double sigma_ring4,
 			double sigma_ring5, double expansion_factor) {
-		double[] samples = new double[37];
+		double[] samples = this._samples;
 
 		// Create samples
 		if (!SamplePyramidFREAK84(samples, pyramid, point, points_ring0,
@@ -237,15 +248,15 @@ public class FREAKExtractor {
 			double sigma_center, double sigma_ring0, double sigma_ring1,
 			double sigma_ring2, double sigma_ring3, double sigma_ring4,
 			double sigma_ring5, double expansion_factor) {
-		double[] S = new double[9];
+		double[] S = this._S;
 
-		double[] c = new double[2];
-		double[] r0 = new double[2 * 6];
-		double[] r1 = new double[2 * 6];
-		double[] r2 = new double[2 * 6];
-		double[] r3 = new double[2 * 6];
-		double[] r4 = new double[2 * 6];
-		double[] r5 = new double[2 * 6];
+		double[] c = this._c;
+		double[] r0 = this._r0;
+		double[] r1 = this._r1;
+		double[] r2 = this._r2;
+		double[] r3 = this._r3;
+		double[] r4 = this._r4;
+		double[] r5 = this._r5;
 
 		double sc, s0, s1, s2, s3, s4, s5;
 
@@ -323,7 +334,7 @@ public class FREAKExtractor {
 		//
 		// Locate and sample ring 5
 		//
-		GaussianScaleSpacePyramid.LocateResult lr = new GaussianScaleSpacePyramid.LocateResult();
+		GaussianScaleSpacePyramid.LocateResult lr = this._lr;
 		pyramid.locate(s5, lr);
 		samples[0] = SampleReceptor(pyramid, r5[0], r5[1], lr.octave, lr.scale);
 		samples[1] = SampleReceptor(pyramid, r5[2], r5[3], lr.octave, lr.scale);
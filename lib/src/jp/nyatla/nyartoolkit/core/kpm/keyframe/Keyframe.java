@@ -37,6 +37,7 @@ package jp.nyatla.nyartoolkit.core.kpm.keyframe;
 
 import jp.nyatla.nyartoolkit.core.kpm.binaryhierarchicalclustering.BinaryHierarchicalClusterBuilder;
 import jp.nyatla.nyartoolkit.core.kpm.binaryhierarchicalclustering.BinaryHierarchicalNode;
+import jp.nyatla.nyartoolkit.core.kpm.utils.LongDescripter768;
 
 
 
@@ -50,12 +51,75 @@ public class Keyframe {
 	private final BinaryHierarchicalNode mIndex;
 	
 	public Keyframe(int width, int height,FreakMatchPointSetStack i_binaryFeatureStore)
+	{
+		this(width,height,i_binaryFeatureStore,buildIndex(i_binaryFeatureStore));
+	}
+	/**
+	 * 構築済のインデクスを使うコンストラクタです。
+	 * {@link jp.nyatla.nyartoolkit.core.marker.nft.NyARNftFreakBhFile}から読み出したインデクスを使うときに使います。
+	 * @param i_index
+	 * i_binaryFeatureStoreの要素を参照するインデクス
+	 */
+	public Keyframe(int width, int height,FreakMatchPointSetStack i_binaryFeatureStore,BinaryHierarchicalNode i_index)
 	{
 		this.mWidth = width;
 		this.mHeight = height;
 		this.mStore = i_binaryFeatureStore;
+        this.mIndex=i_index;
+        //極値の種類毎にデスクプタブロックを作る
+        for(int i=0;i<2;i++){
+        	boolean maxima=(i==1);
+        	int n=0;
+        	for(int j=0;j<this.mStore.getLength();j++){
+        		if(this.mStore.getItem(j).maxima==maxima){
+        			n++;
+        		}
+        	}
+        	FreakMatchPointSetStack.Item[] items=new FreakMatchPointSetStack.Item[n];
+        	LongDescripter768[] desc=new LongDescripter768[n];
+        	n=0;
+        	for(int j=0;j<this.mStore.getLength();j++){
+        		FreakMatchPointSetStack.Item item=this.mStore.getItem(j);
+        		if(item.maxima==maxima){
+        			items[n]=item;
+        			desc[n]=item.descripter;
+        			n++;
+        		}
+        	}
+        	this._block_items[i]=items;
+        	this._block[i]=LongDescripter768.createBlock(desc,n);
+        }
+	}
+	private static BinaryHierarchicalNode buildIndex(FreakMatchPointSetStack i_binaryFeatureStore)
+	{
 		BinaryHierarchicalClusterBuilder bhi= new BinaryHierarchicalClusterBuilder(i_binaryFeatureStore.getLength(),128,8,16);
-        this.mIndex=bhi.build(this.mStore);
+		return bhi.build(i_binaryFeatureStore);
+	}
+	/** 極値の種類毎のデスクプタブロック。[0]が極小、[1]が極大です。*/
+	private final long[][] _block=new long[2][];
+	/** デスクプタブロックに対応する特徴点*/
+	private final FreakMatchPointSetStack.Item[][] _block_items=new FreakMatchPointSetStack.Item[2][];
+	/**
+	 * 特徴点のうち、極値の種類がi_maximaに一致するもののデスクプタを連続して格納した配列を返します。
+	 * 格納順は{@link #getFeaturePointSet}と同じです。
+	 * @param i_maxima
+	 * 極大ならtrue
+	 * @return
+	 * [readonly]
+	 * デスクプタブロック。{@link LongDescripter768#hammingDistance(long[], int)}等で使います。
+	 */
+	public long[] getDescripterBlock(boolean i_maxima)
+	{
+		return this._block[i_maxima?1:0];
+	}
+	/**
+	 * {@link #getDescripterBlock}のn番目のデスクプタに対応する特徴点の配列を返します。
+	 * @return
+	 * [readonly]
+	 */
+	public FreakMatchPointSetStack.Item[] getDescripterBlockItems(boolean i_maxima)
+	{
+		return this._block_items[i_maxima?1:0];
 	}
 	/**
 	 * Get/Set image width.
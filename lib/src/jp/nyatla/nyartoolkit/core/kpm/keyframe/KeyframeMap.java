@@ -36,6 +36,7 @@
 package jp.nyatla.nyartoolkit.core.kpm.keyframe;
 
 
+import java.util.Map;
 import java.util.TreeMap;
 
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
@@ -47,6 +48,13 @@ public class KeyframeMap extends TreeMap<Integer,Keyframe>
 {
 	private static final long serialVersionUID = -2089174031892137840L;
 
+	/**
+	 * 空のキーマップを生成します。
+	 */
+	public KeyframeMap()
+	{
+		super();
+	}
 	/**
 	 * FsetFileデータから、page_idに一致したキーマップを生成します。
 	 * @param i_refDataSet
@@ -89,4 +97,46 @@ public class KeyframeMap extends TreeMap<Integer,Keyframe>
 		}
 		return;
 	}
+	/** {@link #getKeyframeArray}のキャッシュ*/
+	private Keyframe[] _keyframes=null;
+	/**
+	 * キーフレームをキーの順に並べた配列を返します。
+	 * 配列はキャッシュして、{@link #put}等でマップを変更したときに作り直します。
+	 * @return
+	 * [readonly]
+	 * キーフレームの配列
+	 */
+	public Keyframe[] getKeyframeArray()
+	{
+		Keyframe[] r=this._keyframes;
+		if(r==null){
+			r=this.values().toArray(new Keyframe[this.size()]);
+			this._keyframes=r;
+		}
+		return r;
+	}
+	@Override
+	public Keyframe put(Integer i_key,Keyframe i_value)
+	{
+		this._keyframes=null;
+		return super.put(i_key,i_value);
+	}
+	@Override
+	public void putAll(Map<? extends Integer,? extends Keyframe> i_map)
+	{
+		this._keyframes=null;
+		super.putAll(i_map);
+	}
+	@Override
+	public Keyframe remove(Object i_key)
+	{
+		this._keyframes=null;
+		return super.remove(i_key);
+	}
+	@Override
+	public void clear()
+	{
+		this._keyframes=null;
+		super.clear();
+	}
 }
\ No newline at end of file
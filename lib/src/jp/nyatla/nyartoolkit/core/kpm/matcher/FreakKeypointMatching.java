@@ -39,7 +39,15 @@ package jp.nyatla.nyartoolkit.core.kpm.matcher;
 
 
 
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
 
 import jp.nyatla.nyartoolkit.core.icp.NyARIcpPlane;
 import jp.nyatla.nyartoolkit.core.icp.NyARIcpPoint;
@@ -47,16 +55,10 @@ import jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid.DoGScaleInvariantDetector;
 import jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid.DogFeaturePointStack;
 import jp.nyatla.nyartoolkit.core.kpm.freak.FREAKExtractor;
 import jp.nyatla.nyartoolkit.core.kpm.freak.FreakFeaturePointStack;
-import jp.nyatla.nyartoolkit.core.kpm.keyframe.FreakMatchPointSetStack;
 import jp.nyatla.nyartoolkit.core.kpm.keyframe.Keyframe;
 import jp.nyatla.nyartoolkit.core.kpm.keyframe.KeyframeMap;
-import jp.nyatla.nyartoolkit.core.kpm.matcher.binaryfeature.BinaryHirerarchialClusteringMatcher;
-import jp.nyatla.nyartoolkit.core.kpm.matcher.binaryfeature.BinaryFeatureMatcher;
-import jp.nyatla.nyartoolkit.core.kpm.matcher.findinliners.FindInliers;
-import jp.nyatla.nyartoolkit.core.kpm.matcher.findinliners.FindInliers_O1;
-import jp.nyatla.nyartoolkit.core.kpm.matcher.homography_estimation.RobustHomography;
-import jp.nyatla.nyartoolkit.core.kpm.matcher.houghsimilarityvoting.HoughSimilarityVoting_O3;
 import jp.nyatla.nyartoolkit.core.kpm.pyramid.BinomialPyramid32f;
+import jp.nyatla.nyartoolkit.core.kpm.utils.InputChangeDetector;
 
 
 import jp.nyatla.nyartoolkit.core.param.NyARParam;
@@ -70,6 +72,15 @@ import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix44;
 
 /**
  * KpmPose6DOF
+ * <p>
+ * {@link #setExecutor}でスレッドプールを設定すると、NFTターゲットとキーフレームの組の一致判定を複数のスレッドで並列に処理します。
+ * 一致判定の結果は、最もインライアが多いキーフレームです。インライア数が同じ場合は、
+ * ターゲット毎に{@link KeyframeMap}の順で先にあるキーフレームを選ぶので、スレッドの数や実行順に関わらず同じ結果になります。
+ * </p>
+ * <p>
+ * {@link #setParallelMode}でスレッドプールを設定すると、ピラミッドの生成と特徴点の検出を、画像を帯に分割して並列に処理します。
+ * 検出する特徴点は、直列処理と同じです。
+ * </p>
  */
 public class FreakKeypointMatching {
 
@@ -95,17 +106,10 @@ public class FreakKeypointMatching {
 
 	private int mMinNumInliers;
 
-	/** Feature matcher */
-	final private BinaryFeatureMatcher _matcher;
-	// Robust homography estimation
-	final RobustHomography mRobustHomography=new RobustHomography();
-	final private HomographyMat _H = new HomographyMat();
-	final private InverseHomographyMat _hinv=new InverseHomographyMat();
-	
-	
-	/** Similarity voter*/
-	final private HoughSimilarityVoting_O3 mHoughSimilarityVoting;
-	final private FindInliers _find_inliner;
+	/** 一致判定のワーカ群。{@link #setExecutor}で差し替えます。*/
+	private volatile WorkerPool _pool;
+	/** 入力画像の変化検出器。{@link #setChangeDetection}で差し替えます。nullの場合は、変化検出をしません。*/
+	private volatile InputChangeDetector _change_detector=null;
 		
 	
 	public FreakKeypointMatching(NyARParam i_ref_cparam)
@@ -123,24 +127,84 @@ public class FreakKeypointMatching {
 		this.mMinNumInliers = kMinNumInliers;
 
 		//
-
-		this._tmp_pair_stack[0]=new FeaturePairStack(kMaxNumFeatures);
-		this._tmp_pair_stack[1]=new FeaturePairStack(kMaxNumFeatures);
-		this._find_inliner=new FindInliers_O1(kHomographyInlierThreshold);		
-		double dx = size.w + (size.w * 0.2f);
-		double dy = size.h + (size.h * 0.2f);
-		this.mHoughSimilarityVoting=new HoughSimilarityVoting_O3(-dx, dx, -dy, dy, 12, 10);		
-		this._matcher=new BinaryHirerarchialClusteringMatcher();
+		this._icp_planer=new NyARIcpPlane(i_ref_cparam.getPerspectiveProjectionMatrix());
+		this._icp_point=new NyARIcpPoint(i_ref_cparam.getPerspectiveProjectionMatrix());
+		this._pool=new WorkerPool(null,1);
+	}
+	/**
+	 * 一致判定を並列に処理するスレッドプールを設定します。
+	 * 処理中の{@link #kpmMatching}には影響しません。次の呼出しから有効になります。
+	 * スレッドプールを使わない場合、{@link #kpmMatching}は初回以降ヒープを確保しません。スレッドプールを使う場合は、タスクの投入でオブジェクトを確保します。
+	 * @param i_executor
+	 * 一致判定を実行するスレッドプール。nullの場合は、呼出し元のスレッドで順番に処理します。
+	 * {@link java.util.concurrent.ForkJoinPool}等を指定します。
+	 * @param i_number_of_worker
+	 * 並列に処理するタスクの数。タスク毎に一致判定の作業領域を確保します。
+	 */
+	public void setExecutor(ExecutorService i_executor,int i_number_of_worker)
+	{
+		if(i_number_of_worker<1){
+			throw new NyARRuntimeException("Invalid number of worker.");
+		}
+		this._pool=new WorkerPool(i_executor,i_executor==null?1:i_number_of_worker);
 	}
-	
 
 
+	/**
+	 * ピラミッドの生成({@link #updateInputImage})と特徴点の検出({@link #updateFeatureSet})の並列モードを設定します。
+	 * 画像を行単位の帯に分割して、i_poolのスレッドで処理します。検出結果は直列処理と同じです。
+	 * 設定は、次の呼出しから有効になります。
+	 * @param i_pool
+	 * 帯の処理に使うスレッドプール。nullの場合は、呼出し元のスレッドで処理します。
+	 * 直列処理の場合、これらの関数は初回以降ヒープを確保しません。
+	 * @param i_number_of_bands
+	 * 最大の帯数。通常は、i_poolの並列数を指定します。
+	 */
+	public void setParallelMode(ForkJoinPool i_pool,int i_number_of_bands)
+	{
+		if(i_number_of_bands<1){
+			throw new NyARRuntimeException("Invalid number of bands.");
+		}
+		this._pyramid.setParallelMode(i_pool,i_number_of_bands);
+		this._dog_detector.setParallelMode(i_pool,i_number_of_bands);
+	}
+	/**
+	 * 入力画像の変化検出を設定します。
+	 * 有効にすると、{@link #updateInputImage}は前回の入力画像から変化したブロック行の範囲だけピラミッドを再計算します。
+	 * 画像が変化していなければ、ピラミッドを更新しません。
+	 * 閾値が0の場合は、1画素でも変化した行を再計算するので、検出結果は変化検出が無効の時と同じです。
+	 * 1以上の場合は閾値以下の変化を無視するので、検出結果は変化検出が無効の時と一致しないことがあります。
+	 * 設定は、次の{@link #updateInputImage}から有効になります。最初の画像では、ピラミッド全体を計算します。
+	 * @param i_threshold
+	 * ブロック({@link InputChangeDetector#BLOCK_SIZE}四方)の平均画素値の差の閾値。負の値の場合は、変化検出を無効にします。
+	 */
+	public void setChangeDetection(int i_threshold)
+	{
+		if(i_threshold<0){
+			this._change_detector=null;
+		}else{
+			NyARIntSize size=this._ref_cparam.getScreenSize();
+			this._change_detector=new InputChangeDetector(size.w,size.h,i_threshold);
+		}
+	}
 	/**
 	 * 現在の画像で入力画像にセットします。
+	 * @return
+	 * ピラミッドを更新した場合はtrue。
+	 * 変化検出が有効で、入力画像が前回から変化していなければfalseです。この場合、前回の{@link #updateFeatureSet}の結果をそのまま使えます。
 	 */
-	public void updateInputImage(INyARGrayscaleRaster in_image){
-		// Build the pyramid		
-		this._pyramid.build(in_image);		
+	public boolean updateInputImage(INyARGrayscaleRaster in_image){
+		InputChangeDetector cd=this._change_detector;
+		if(cd==null){
+			// Build the pyramid		
+			this._pyramid.build(in_image);
+			return true;
+		}
+		if(!cd.update(in_image)){
+			return false;
+		}
+		this._pyramid.build(in_image,cd.getRowBegin(),cd.getRowEnd());
+		return true;
 	}
 	/**
 	 * 現在の入力画像から特徴点セットを検出します。
@@ -158,8 +222,21 @@ public class FreakKeypointMatching {
 		query_keypoint.clear();
 		this.mFeatureExtractor.extract(this._pyramid,this._dog_feature_points,query_keypoint);			
 	}
+	/**
+	 * {@link #updateFeatureSet}で検出した特徴点セットを返します。
+	 * 返したオブジェクトは、次に{@link #updateFeatureSet}を呼び出すまで有効です。
+	 * @return
+	 * 特徴点セットの参照値
+	 */
+	public FreakFeaturePointStack getQueryFeatureSet()
+	{
+		return this.mQueryKeyframe;
+	}
 	
 	final private NyARTransMatResultParam _result_param=new NyARTransMatResultParam();
+	final private KeyframeMap[] _single_keymap=new KeyframeMap[1];
+	final private NyARDoubleMatrix44[] _single_transmat=new NyARDoubleMatrix44[1];
+	final private boolean[] _single_result=new boolean[1];
 	/**
 	 * 現在の特徴点セットから、
 	 * @param i_keymap
@@ -168,144 +245,250 @@ public class FreakKeypointMatching {
 	 */
 	public boolean kpmMatching(KeyframeMap i_keymap,NyARDoubleMatrix44 i_transmat)
 	{
-		FeaturePairStack result=new FeaturePairStack(kMaxNumFeatures);	
-		if(!this.query(this.mQueryKeyframe,i_keymap,result)){
-			return false;
-		}
-		return kpmUtilGetPose_binary(this._ref_cparam, result,i_transmat,this._result_param);
+		this._single_keymap[0]=i_keymap;
+		this._single_transmat[0]=i_transmat;
+		this.kpmMatching(this._single_keymap,this._single_transmat,this._single_result);
+		this._single_keymap[0]=null;
+		this._single_transmat[0]=null;
+		return this._single_result[0];
 	}
-	
-
-
 	/**
-	 * 2chの一時バッファ
+	 * 現在の特徴点セットと、複数のキーマップの一致判定をします。
+	 * 全てのキーマップのキーフレームを1つのタスク表にして、{@link #setExecutor}で設定したスレッドプールで処理します。
+	 * @param i_keymaps
+	 * キーマップの配列。nullの要素は判定しません。
+	 * @param i_transmat
+	 * 姿勢行列の格納先。i_keymapsと同じ長さの配列です。
+	 * @param o_result
+	 * 判定結果の格納先。i_keymapsと同じ長さの配列です。一致したキーマップの要素にtrueを格納します。
 	 */
-	final private FeaturePairStack[] _tmp_pair_stack=new FeaturePairStack[2];
-
-
-	private boolean query(FreakFeaturePointStack query_keyframe,KeyframeMap i_keymap,FeaturePairStack i_result)
+	public void kpmMatching(KeyframeMap[] i_keymaps,NyARDoubleMatrix44[] i_transmat,boolean[] o_result)
 	{
-		// mMatchedInliers.clear();
-		HomographyMat H = this._H;
-		InverseHomographyMat hinv=this._hinv;
-		hinv=new InverseHomographyMat_O1();
-		
-		int num_of_query_frame=query_keyframe.getLength();
-		//ワークエリアの設定
-		if(num_of_query_frame>this._tmp_pair_stack[0].getArraySize()){
-			this._tmp_pair_stack[0]=new FeaturePairStack(num_of_query_frame+10);
-			this._tmp_pair_stack[1]=new FeaturePairStack(num_of_query_frame+10);
+		WorkerPool pool=this._pool;
+		int num_of_map=i_keymaps.length;
+		//タスク表の作成
+		int n=0;
+		for(int i=0;i<num_of_map;i++){
+			o_result[i]=false;
+			if(i_keymaps[i]!=null){
+				n+=i_keymaps[i].size();
+			}
 		}
-		int tmp_ch=0;
-		int last_inliers=0;
-		
-		for (Map.Entry<Integer, Keyframe> i : i_keymap.entrySet())
-		{
-			Keyframe second = i.getValue();
-			FreakMatchPointSetStack ref_points = second.getFeaturePointSet();
-			//新しいワークエリアを作る。
-			FeaturePairStack match_result=this._tmp_pair_stack[tmp_ch];
-			//ワークエリア初期化
-			match_result.clear();
-
-			//特徴量同士のマッチング
-			if (this._matcher.match(query_keyframe,second,match_result) < this.mMinNumInliers) {
+		if(this._task_keyframe.length<n){
+			this._task_keyframe=new Keyframe[n+10];
+			this._task_map=new int[n+10];
+		}
+		n=0;
+		for(int i=0;i<num_of_map;i++){
+			if(i_keymaps[i]==null){
 				continue;
 			}
-
-			// Vote for a transformation based on the correspondences
-			if(!this.mHoughSimilarityVoting.extractMatches(match_result,second.width(), second.height())){
-				continue;
+			Keyframe[] kfs=i_keymaps[i].getKeyframeArray();
+			for (int j=0;j<kfs.length;j++){
+				this._task_keyframe[n]=kfs[j];
+				this._task_map[n]=i;
+				n++;
 			}
-
-			// Estimate the transformation between the two images
-			if (!this.mRobustHomography.PreemptiveRobustHomography(H, match_result,second.width(), second.height())) {
-				continue;
+		}
+		this._number_of_task=n;
+		//一致判定
+		pool.run(this,num_of_map);
+		//ワーカ毎の結果から、インライア数が最大で、タスク番号が最小のものを選ぶ
+		Worker[] workers=pool.workers;
+		for(int i=0;i<num_of_map;i++){
+			Worker best=null;
+			for(int j=0;j<workers.length;j++){
+				Worker w=workers[j];
+				if(w.best_inliers[i]<=0){
+					continue;
+				}
+				if(best==null || w.best_inliers[i]>best.best_inliers[i] || (w.best_inliers[i]==best.best_inliers[i] && w.best_task[i]<best.best_task[i])){
+					best=w;
+				}
 			}
-			
-			//ここでHInv計算
-			if(!hinv.inverse(H)){
-				continue;
+			if(best!=null){
+				o_result[i]=this.kpmUtilGetPose_binary(best.best[i],i_transmat[i],this._result_param);
 			}
+		}
+		//参照の解放
+		for(int i=0;i<n;i++){
+			this._task_keyframe[i]=null;
+		}
+	}
+	/** タスク毎のキーフレーム*/
+	private Keyframe[] _task_keyframe=new Keyframe[0];
+	/** タスク毎のキーマップ番号*/
+	private int[] _task_map=new int[0];
+	private int _number_of_task;
 
-			// Apply some heuristics to the homography
-			if (!hinv.checkHomographyHeuristics(second.width(), second.height())) {
-				continue;
+	/**
+	 * 一致判定を実行するワーカです。一致判定の作業領域と、キーマップ毎の最良の結果を持ちます。
+	 */
+	private static class Worker implements Callable<Object>
+	{
+		final public KeyframeMatcher matcher;
+		/** キーマップ毎の最良の結果*/
+		public FeaturePairStack[] best=new FeaturePairStack[0];
+		/** キーマップ毎の最良の結果のインライア数*/
+		public int[] best_inliers=new int[0];
+		/** キーマップ毎の最良の結果のタスク番号*/
+		public int[] best_task=new int[0];
+		private FeaturePairStack _work=null;
+		private FreakKeypointMatching _ref_parent;
+		private AtomicInteger _ref_next_task;
+		public Worker(KeyframeMatcher i_matcher)
+		{
+			this.matcher=i_matcher;
+		}
+		public void prepare(FreakKeypointMatching i_parent,AtomicInteger i_next_task,int i_num_of_map)
+		{
+			this._ref_parent=i_parent;
+			this._ref_next_task=i_next_task;
+			if(this.best.length<i_num_of_map){
+				FeaturePairStack[] b=new FeaturePairStack[i_num_of_map];
+				System.arraycopy(this.best,0,b,0,this.best.length);
+				this.best=b;
+				this.best_inliers=new int[i_num_of_map];
+				this.best_task=new int[i_num_of_map];
 			}
-			
-			// Find the inliers
-			this._find_inliner.extructMatches(H, match_result);
-			if (match_result.getLength() < mMinNumInliers) {
-				continue;
+			for(int i=0;i<i_num_of_map;i++){
+				this.best_inliers[i]=0;
 			}
-
-			//
-			// Use the estimated homography to find more inliers
-			match_result.clear();
-			if (_matcher.match(query_keyframe, ref_points, hinv, 10,match_result) < mMinNumInliers) {
-				continue;
+		}
+		private FeaturePairStack newStack()
+		{
+			return new FeaturePairStack(this._ref_parent.mQueryKeyframe.getArraySize());
+		}
+		@Override
+		public Object call()
+		{
+			FreakKeypointMatching parent=this._ref_parent;
+			FreakFeaturePointStack query=parent.mQueryKeyframe;
+			for(;;){
+				//未処理のタスクを取得。タスク番号は昇順に取得する。
+				int i=this._ref_next_task.getAndIncrement();
+				if(i>=parent._number_of_task){
+					break;
+				}
+				int map_id=parent._task_map[i];
+				if(this._work==null){
+					this._work=this.newStack();
+				}
+				int inliers=this.matcher.match(query,parent._task_keyframe[i],this._work);
+				//インライア数が同じ場合は、先に処理したタスクを残す。
+				if(inliers>this.best_inliers[map_id]){
+					FeaturePairStack t=this.best[map_id];
+					this.best[map_id]=this._work;
+					this._work=t;
+					this.best_inliers[map_id]=inliers;
+					this.best_task[map_id]=i;
+				}
 			}
-
-			//
-			// Vote for a similarity with new matches
-			if(!this.mHoughSimilarityVoting.extractMatches(match_result,second.width(), second.height())){
-				continue;
+			this._ref_parent=null;
+			return null;
+		}
+	}
+	/**
+	 * スレッドプールとワーカの組です。
+	 */
+	private class WorkerPool
+	{
+		/**
+		 * 中断時に{@link #_next_task}に設定する値です。ワーカは、実行中のタスクを終えると停止します。
+		 * ワーカ数だけ加算しても桁あふれしない値にします。
+		 */
+		final private static int TASK_CANCELLED=Integer.MAX_VALUE/2;
+		final public ExecutorService executor;
+		final public Worker[] workers;
+		final private Future<?>[] _futures;
+		final private AtomicInteger _next_task=new AtomicInteger();
+		public WorkerPool(ExecutorService i_executor,int i_number_of_worker)
+		{
+			NyARIntSize size=FreakKeypointMatching.this._ref_cparam.getScreenSize();
+			this.executor=i_executor;
+			this.workers=new Worker[i_number_of_worker];
+			for(int i=0;i<i_number_of_worker;i++){
+				this.workers[i]=new Worker(new KeyframeMatcher(size.w,size.h,kHomographyInlierThreshold,FreakKeypointMatching.this.mMinNumInliers));
 			}
-
-			//
-			// Re-estimate the homography
-			if (!this.mRobustHomography.PreemptiveRobustHomography(H, match_result,second.width(), second.height())) {
-				continue;
+			this._futures=new Future<?>[i_number_of_worker];
+		}
+		public void run(FreakKeypointMatching i_parent,int i_num_of_map)
+		{
+			this._next_task.set(0);
+			for(int i=0;i<this.workers.length;i++){
+				this.workers[i].prepare(i_parent,this._next_task,i_num_of_map);
 			}
-			// Apply some heuristics to the homography
-			if(!hinv.inverse(H)){
-				continue;
+			if(this.executor==null || this.workers.length==1){
+				this.workers[0].call();
+				return;
 			}
-			if (!hinv.checkHomographyHeuristics(second.width(), second.height())) {
-				continue;
+			Future<?>[] fs=this._futures;
+			RuntimeException error=null;
+			boolean interrupted=false;
+			int n=0;
+			try{
+				for(;n<fs.length;n++){
+					fs[n]=this.executor.submit(this.workers[n]);
+				}
+			}catch(RuntimeException e){
+				//投入できなかった場合は、投入済のワーカを止める。
+				error=e;
+				this._next_task.set(TASK_CANCELLED);
 			}
-			//
-			// Check if this is the best match based on number of inliers
-			this._find_inliner.extructMatches(H, match_result);
-
-			//ポイント数が最小値より大きい&&最高成績ならテンポラリチャンネルを差し替える。
-			if (match_result.getLength() >= mMinNumInliers && match_result.getLength() > last_inliers) {
-				//出力チャンネルを切り替え
-				tmp_ch=(tmp_ch+1)%2;
-				last_inliers=match_result.getLength();
+			//全てのワーカの終了を待つ。割込まれても、実行中のワーカが止まるまでは結果とワーカを再利用しない。
+			for(int i=0;i<n;i++){
+				for(;;){
+					try {
+						fs[i].get();
+						break;
+					} catch (InterruptedException e) {
+						interrupted=true;
+						this._next_task.set(TASK_CANCELLED);
+					} catch (ExecutionException e) {
+						if(error==null){
+							error=new NyARRuntimeException(e);
+						}
+						this._next_task.set(TASK_CANCELLED);
+						break;
+					}
+				}
+				fs[i]=null;
 			}
-		}
-		//出力は last_inlines>0の場合に[(tmp_ch+1)%2]にある。
-		if(last_inliers<=0){
-			return false;
-		}
-		{
-			FeaturePairStack match_result=this._tmp_pair_stack[(tmp_ch+1)%2];
-			FeaturePairStack.Item[] dest=match_result.getArray();
-			for(int i=0;i<match_result.getLength();i++){
-				FeaturePairStack.Item t=i_result.prePush();
-				if(t==null){
-					System.out.println("Push overflow!");
-					break;
+			if(interrupted){
+				//割込み状態を戻して、結果なしで終了する。
+				Thread.currentThread().interrupt();
+				for(int i=0;i<this.workers.length;i++){
+					Arrays.fill(this.workers[i].best_inliers,0);
 				}
-				t.query=dest[i].query;
-				t.ref=dest[i].ref;
+			}
+			if(error!=null){
+				throw error;
 			}
 		}
-		return true;
 	}
 
-	private static boolean kpmUtilGetPose_binary(NyARParam i_cparam, FeaturePairStack matchData,NyARDoubleMatrix44 i_transmat,NyARTransMatResultParam i_resultparam)
+	//kpmUtilGetPose_binaryの作業領域
+	final private NyARDoubleMatrix44 _init_mat_xw2xc=new NyARDoubleMatrix44();
+	private NyARDoublePoint2d[] _s_coord=NyARDoublePoint2d.createArray(kMaxNumFeatures);
+	private NyARDoublePoint3d[] _w_coord=NyARDoublePoint3d.createArray(kMaxNumFeatures);
+	final private NyARIcpPlane _icp_planer;
+	final private NyARIcpPoint _icp_point;
+
+	private boolean kpmUtilGetPose_binary(FeaturePairStack matchData,NyARDoubleMatrix44 i_transmat,NyARTransMatResultParam i_resultparam)
 	{
-		NyARDoubleMatrix44 initMatXw2Xc = new NyARDoubleMatrix44();
+		NyARDoubleMatrix44 initMatXw2Xc = this._init_mat_xw2xc;
 		// ARdouble err;
 		int i;
 
 		if (matchData.getLength() < 4) {
 			return false;
 		}
-		NyARDoublePoint2d[] sCoord = NyARDoublePoint2d.createArray(matchData.getLength());
-		NyARDoublePoint3d[] wCoord = NyARDoublePoint3d.createArray(matchData.getLength());
+		if(this._s_coord.length<matchData.getLength()){
+			this._s_coord=NyARDoublePoint2d.createArray(matchData.getLength());
+			this._w_coord=NyARDoublePoint3d.createArray(matchData.getLength());
+		}
+		NyARDoublePoint2d[] sCoord = this._s_coord;
+		NyARDoublePoint3d[] wCoord = this._w_coord;
 		for (i = 0; i < matchData.getLength(); i++) {
 			sCoord[i].x = matchData.getItem(i).query.x;
 			sCoord[i].y = matchData.getItem(i).query.y;
@@ -316,16 +499,14 @@ public class FreakKeypointMatching {
 		}
 
 
-		NyARIcpPlane icp_planer = new NyARIcpPlane(i_cparam.getPerspectiveProjectionMatrix());
-		if (!icp_planer.icpGetInitXw2Xc_from_PlanarData(sCoord, wCoord, matchData.getLength(), initMatXw2Xc)) {
+		if (!this._icp_planer.icpGetInitXw2Xc_from_PlanarData(sCoord, wCoord, matchData.getLength(), initMatXw2Xc)) {
 			return false;
 		}
 		/*
 		 * printf("--- Init pose ---\n"); for( int j = 0; j < 3; j++ ) { for( i = 0; i < 4; i++ ) printf(" %8.3f",
 		 * initMatXw2Xc[j][i]); printf("\n"); }
 		 */
-		NyARIcpPoint icp_point = new NyARIcpPoint(i_cparam.getPerspectiveProjectionMatrix());
-		icp_point.icpPoint(sCoord, wCoord, matchData.getLength(), initMatXw2Xc, i_transmat,i_resultparam);
+		this._icp_point.icpPoint(sCoord, wCoord, matchData.getLength(), initMatXw2Xc, i_transmat,i_resultparam);
 		if (i_resultparam.last_error > 10.0f) {
 			return false;
 		}
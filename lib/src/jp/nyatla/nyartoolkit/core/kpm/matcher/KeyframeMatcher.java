@@ -0,0 +1,165 @@
+/*
+ * PROJECT: NyARToolkit
+ * --------------------------------------------------------------------------------
+ * This work is based on the original ARToolKit developed by
+ *  Copyright 2013-2015 Daqri, LLC.
+ *  Author(s): Chris Broaddus
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ *  Copyright (C)2016 Ryo Iizuka
+ *
+ * NyARToolkit is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * NyARToolkit is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and to
+ * copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module
+ * which is neither derived from nor based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you
+ * are not obligated to do so. If you do not wish to do so, delete this exception
+ * statement from your version.
+ *
+ */
+package jp.nyatla.nyartoolkit.core.kpm.matcher;
+
+import jp.nyatla.nyartoolkit.core.kpm.freak.FreakFeaturePointStack;
+import jp.nyatla.nyartoolkit.core.kpm.keyframe.Keyframe;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.binaryfeature.BinaryFeatureMatcher;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.binaryfeature.BinaryHirerarchialClusteringMatcher;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.findinliners.FindInliers;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.findinliners.FindInliers_O1;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.homography_estimation.RobustHomography;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.houghsimilarityvoting.HoughSimilarityVoting_O3;
+
+/**
+ * クエリ特徴点セットと1つのキーフレームの一致判定を行うクラスです。
+ * {@link FreakKeypointMatching}から使います。
+ * インスタンスは一致判定の作業領域を持つので、スレッド毎に1つ使います。
+ * 判定結果は入力にだけ依存します。同じ入力に対しては、どのインスタンスでも同じ結果を返します。
+ */
+class KeyframeMatcher
+{
+	final private BinaryFeatureMatcher _matcher=new BinaryHirerarchialClusteringMatcher();
+	final private RobustHomography _robust_homography=new RobustHomography();
+	final private HomographyMat _H=new HomographyMat();
+	final private InverseHomographyMat _hinv=new InverseHomographyMat_O1();
+	final private HoughSimilarityVoting_O3 _hough_similarity_voting;
+	final private FindInliers _find_inliner;
+	final private int _min_num_inliers;
+	/**
+	 * @param i_width
+	 * 入力画像の幅
+	 * @param i_height
+	 * 入力画像の高さ
+	 * @param i_inlier_threshold
+	 * インライアとみなす距離の閾値
+	 * @param i_min_num_inliers
+	 * 一致とみなす最小のインライア数
+	 */
+	public KeyframeMatcher(int i_width,int i_height,double i_inlier_threshold,int i_min_num_inliers)
+	{
+		double dx = i_width + (i_width * 0.2f);
+		double dy = i_height + (i_height * 0.2f);
+		this._hough_similarity_voting=new HoughSimilarityVoting_O3(-dx, dx, -dy, dy, 12, 10);
+		this._find_inliner=new FindInliers_O1(i_inlier_threshold);
+		this._min_num_inliers=i_min_num_inliers;
+	}
+	/**
+	 * クエリ特徴点セットとキーフレームの一致判定をします。
+	 * @param i_query
+	 * クエリ特徴点セット
+	 * @param i_keyframe
+	 * キーフレーム
+	 * @param o_result
+	 * 結果の格納先。関数は内容をクリアして、作業領域として使います。
+	 * 配列サイズは、クエリ特徴点の数以上である必要があります。
+	 * @return
+	 * インライアの数。一致しなかった場合は0です。0以外の場合、o_resultにインライアが格納されます。
+	 */
+	public int match(FreakFeaturePointStack i_query,Keyframe i_keyframe,FeaturePairStack o_result)
+	{
+		HomographyMat H = this._H;
+		InverseHomographyMat hinv=this._hinv;
+		FeaturePairStack match_result=o_result;
+		int min_num_inliers=this._min_num_inliers;
+		//ワークエリア初期化
+		match_result.clear();
+
+		//特徴量同士のマッチング
+		if (this._matcher.match(i_query,i_keyframe,match_result) < min_num_inliers) {
+			return 0;
+		}
+
+		// Vote for a transformation based on the correspondences
+		if(!this._hough_similarity_voting.extractMatches(match_result,i_keyframe.width(), i_keyframe.height())){
+			return 0;
+		}
+
+		// Estimate the transformation between the two images
+		if (!this._robust_homography.PreemptiveRobustHomography(H, match_result,i_keyframe.width(), i_keyframe.height())) {
+			return 0;
+		}
+
+		//ここでHInv計算
+		if(!hinv.inverse(H)){
+			return 0;
+		}
+
+		// Apply some heuristics to the homography
+		if (!hinv.checkHomographyHeuristics(i_keyframe.width(), i_keyframe.height())) {
+			return 0;
+		}
+
+		// Find the inliers
+		this._find_inliner.extructMatches(H, match_result);
+		if (match_result.getLength() < min_num_inliers) {
+			return 0;
+		}
+
+		//
+		// Use the estimated homography to find more inliers
+		match_result.clear();
+		if (this._matcher.match(i_query, i_keyframe.getFeaturePointSet(), hinv, 10,match_result) < min_num_inliers) {
+			return 0;
+		}
+
+		//
+		// Vote for a similarity with new matches
+		if(!this._hough_similarity_voting.extractMatches(match_result,i_keyframe.width(), i_keyframe.height())){
+			return 0;
+		}
+
+		//
+		// Re-estimate the homography
+		if (!this._robust_homography.PreemptiveRobustHomography(H, match_result,i_keyframe.width(), i_keyframe.height())) {
+			return 0;
+		}
+		// Apply some heuristics to the homography
+		if(!hinv.inverse(H)){
+			return 0;
+		}
+		if (!hinv.checkHomographyHeuristics(i_keyframe.width(), i_keyframe.height())) {
+			return 0;
+		}
+		//
+		// Check if this is the best match based on number of inliers
+		this._find_inliner.extructMatches(H, match_result);
+		if (match_result.getLength() < min_num_inliers) {
+			return 0;
+		}
+		return match_result.getLength();
+	}
+}
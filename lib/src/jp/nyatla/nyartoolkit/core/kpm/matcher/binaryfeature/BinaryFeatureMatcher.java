@@ -48,6 +48,8 @@ public class BinaryFeatureMatcher
 	// Threshold on the 1st and 2nd best matches
 	final protected double mThreshold;
 
+	/** searchBest2の結果*/
+	final private int[] _best2=new int[2];
 	public BinaryFeatureMatcher() {
 		this.mThreshold = 0.7f;
 	}
@@ -62,30 +64,17 @@ public class BinaryFeatureMatcher
 		if (i_query.getLength() == 0 || ref.getLength() == 0) {
 			return 0;
 		}
+		int[] best2=this._best2;
 		// mMatches.reserve(features1.size());
 		for (int i = 0; i < i_query.getLength(); i++) {
-			int first_best = Integer.MAX_VALUE;
-			int second_best = Integer.MAX_VALUE;
-			int best_index = Integer.MAX_VALUE;
-
 			// Search for 1st and 2nd best match
+			// Both points should be a MINIMA or MAXIMA
 			FreakFeaturePoint p1 = i_query.getItem(i);
-			for (int j = 0; j < ref.getLength(); j++) {
-				// Both points should be a MINIMA or MAXIMA
-				if (p1.maxima != ref.getItem(j).maxima) {
-					continue;
-				}
-
-				// ASSERT(FEATURE_SIZE == 96, "Only 96 bytes supported now");
-				int d = i_query.getItem(i).descripter.hammingDistance(ref.getItem(j).descripter);
-				if (d < first_best) {
-					second_best = first_best;
-					first_best = d;
-					best_index = (int) j;
-				} else if (d < second_best) {
-					second_best = d;
-				}
-			}
+			long[] block=i_key_frame.getDescripterBlock(p1.maxima);
+			FreakMatchPointSetStack.Item[] block_items=i_key_frame.getDescripterBlockItems(p1.maxima);
+			int best_index=p1.descripter.searchBest2(block,block_items.length,best2);
+			int first_best = best2[0];
+			int second_best = best2[1];
 
 			// Check if FIRST_BEST has been set
 			if (first_best != Integer.MAX_VALUE) {
@@ -94,15 +83,15 @@ public class BinaryFeatureMatcher
 				if (second_best == Integer.MAX_VALUE) {
 					// mMatches.push_back(match_t((int)i, best_index));
 					FeaturePairStack.Item t = i_maches.prePush();
-					t.query=i_query.getItem(i);
-					t.ref=ref.getItem(best_index);
+					t.query=p1;
+					t.ref=block_items[best_index];
 				} else {
 					// Ratio test
 					double r = (double) first_best / (double) second_best;
 					if (r < mThreshold) {
 						FeaturePairStack.Item t = i_maches.prePush();
-						t.query=i_query.getItem(i);
-						t.ref=ref.getItem(best_index);
+						t.query=p1;
+						t.ref=block_items[best_index];
 						// mMatches.push_back(match_t((int)i, best_index));
 					}
 				}
@@ -35,14 +35,20 @@
  */
 package jp.nyatla.nyartoolkit.core.kpm.pyramid;
 
+import java.util.concurrent.ForkJoinPool;
+
 import jp.nyatla.nyartoolkit.core.kpm.KpmImage;
+import jp.nyatla.nyartoolkit.core.utils.BandRunner;
 import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
 import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
 
 public class BinomialPyramid32f extends GaussianScaleSpacePyramid
 {
     final private int[] mTemp_us16;
-    final private double[] mTemp_f32_1;
+    final private float[] mTemp_f32_1;
+    final private KpmImage[] _tmp_images;
+    /** 帯の分割器。{@link #setParallelMode}で差し替えます。*/
+    private volatile BandRunner _runner;
     public BinomialPyramid32f(int i_width, int i_height, int i_num_of_octaves, int i_num_scales_per_octaves)
     {    	
     	super(i_num_of_octaves,i_num_scales_per_octaves);
@@ -53,10 +59,29 @@ public class BinomialPyramid32f extends GaussianScaleSpacePyramid
 				this.mPyramid[i*this.mNumScalesPerOctave+j]=new KpmImage(i_width>>i, i_height>>i);
 			}
 		}
+		//apply_filter_twiceの作業領域(オクターブ毎)
+		this._tmp_images=new KpmImage[i_num_of_octaves];
+		for(int i = 0; i < i_num_of_octaves; i++) {
+			this._tmp_images[i]=new KpmImage(i_width>>i, i_height>>i);
+		}
 		this.mTemp_us16=new int[i_width*i_height];
-		this.mTemp_f32_1=new double[i_width*i_height];
+		this.mTemp_f32_1=new float[i_width*i_height];
+		this._runner=new BandRunner(null,1);
 		return;
 	}
+	/**
+	 * ピラミッド生成の並列モードを設定します。
+	 * 各段のフィルタと縮小を行単位の帯に分割して、i_poolのスレッドで処理します。結果は直列処理と同じです。
+	 * 設定は、次の{@link #build}から有効になります。
+	 * @param i_pool
+	 * 帯の処理に使うスレッドプール。nullの場合は、呼び出したスレッドで処理します。
+	 * @param i_number_of_bands
+	 * 最大の帯数
+	 */
+	public void setParallelMode(ForkJoinPool i_pool,int i_number_of_bands)
+	{
+		this._runner=new BandRunner(i_pool,i_number_of_bands);
+	}
 
 
     /**
@@ -78,49 +103,90 @@ public class BinomialPyramid32f extends GaussianScaleSpacePyramid
 		return num_octaves;
 	}
     public void build(INyARGrayscaleRaster i_raster)
+    {
+    	this.build(i_raster,0,i_raster.getHeight());
+    }
+    /**
+     * 入力画像のi_row_beginからi_row_end-1行が変化したものとして、ピラミッドを更新します。
+     * 各段で、変化した行の影響を受ける行だけを再計算します。それ以外の行は、前回の値をそのまま使います。
+     * <p>
+     * 範囲外の行が前回の入力画像と同じであれば、結果は{@link #build(INyARGrayscaleRaster)}と同じです。
+     * 初回は、画像全体を指定してください。
+     * </p>
+     * @param i_raster
+     * 入力画像
+     * @param i_row_begin
+     * 変化した行の先頭(含む)
+     * @param i_row_end
+     * 変化した行の終端(含まない)
+     */
+    public void build(INyARGrayscaleRaster i_raster,int i_row_begin,int i_row_end)
     {
         assert(i_raster.getSize().isEqualSize(this.mPyramid[0].getSize()));
         assert(this.mPyramid.length == mNumOctaves*mNumScalesPerOctave);
+        if(i_row_begin>=i_row_end){
+        	return;
+        }
+        BandRunner runner=this._runner;
+        //フィルタ1回毎に、上下2行ずつ影響範囲が広がる。
+        int h=i_raster.getHeight();
+        int r0=i_row_begin;
+        int r1=i_row_end;
         
         // First octave
-        apply_filter(mPyramid[0],i_raster);
-        apply_filter(mPyramid[1], mPyramid[0]);
-        apply_filter_twice(mPyramid[2], mPyramid[1]);
+        r0=r0>2?r0-2:0;r1=r1+2<h?r1+2:h;
+        apply_filter(runner,mPyramid[0],i_raster,r0,r1);
+        r0=r0>2?r0-2:0;r1=r1+2<h?r1+2:h;
+        apply_filter(runner,mPyramid[1], mPyramid[0],r0,r1);
+        apply_filter_twice(runner,mPyramid[2], mPyramid[1],this._tmp_images[0],r0,r1);
+        r0=r0>4?r0-4:0;r1=r1+4<h?r1+4:h;
         
         // Remaining octaves
         for(int i = 1; i < mNumOctaves; i++) {
             // Downsample
-            downsample_bilinear(
-            	(double[])mPyramid[i*mNumScalesPerOctave].getBuffer(),
-            	(double[])mPyramid[i*mNumScalesPerOctave-1].getBuffer(),
-                mPyramid[i*mNumScalesPerOctave-1].getWidth(),
-                mPyramid[i*mNumScalesPerOctave-1].getHeight());
+            KpmImage src=mPyramid[i*mNumScalesPerOctave-1];
+            h=src.getHeight()>>1;
+            r0=r0>>1;r1=(r1+1)>>1;
+            if(r1>h){
+            	r1=h;
+            }
+            DownsampleJob d=this._downsample_job;
+            d.dst=(float[])mPyramid[i*mNumScalesPerOctave].getBuffer();
+            d.src=(float[])src.getBuffer();
+            d.src_width=src.getWidth();
+            d.row_begin=r0;
+            runner.run(d,r1-r0,minBandRows(src.getWidth()>>1));
             
             // Apply binomial filters
-            apply_filter(mPyramid[i*mNumScalesPerOctave+1], mPyramid[i*mNumScalesPerOctave]);
-            apply_filter_twice(mPyramid[i*mNumScalesPerOctave+2], mPyramid[i*mNumScalesPerOctave+1]);
+            r0=r0>2?r0-2:0;r1=r1+2<h?r1+2:h;
+            apply_filter(runner,mPyramid[i*mNumScalesPerOctave+1], mPyramid[i*mNumScalesPerOctave],r0,r1);
+            apply_filter_twice(runner,mPyramid[i*mNumScalesPerOctave+2], mPyramid[i*mNumScalesPerOctave+1],this._tmp_images[i],r0,r1);
+            r0=r0>4?r0-4:0;r1=r1+4<h?r1+4:h;
         }
         return;
-    }	
-    private void binomial_4th_order(double[] dst,int[] tmp,int[] src,int width,int height)
+    }
+    private static int minBandRows(int i_width)
+    {
+    	return BandRunner.MIN_BAND_PIXELS/i_width;
+    }
+    /**
+     * 水平方向のフィルタを、i_r0からi_r1-1行に適用します。
+     */
+    private static void binomial_4th_order_h(int[] tmp,int[] src,int width,int i_r0,int i_r1)
     {
-		int tmp_ptr=0;
-
 		int width_minus_1, width_minus_2;
-		int height_minus_2;
 		
 		assert(width >= 5);//), "Image is too small");
-		assert(height >= 5);//, "Image is too small");
 		
 		width_minus_1 = width-1;
 		width_minus_2 = width-2;
-		height_minus_2 = height-2;
 		
 		
 		// Apply horizontal filter
-		for(int row = 0; row < height; row++)
+		for(int row = i_r0; row < i_r1; row++)
 		{
 			int src_ptr=row*width;
+			int tmp_ptr=src_ptr;
 			// Left border is computed by extending the border pixel beyond the image
 
 			tmp[tmp_ptr++] = ((src[src_ptr+0]<<1)+(src[src_ptr+0]<<2)) + ((src[src_ptr+0]+src[src_ptr+1])<<2) + (src[src_ptr+0]+src[src_ptr+2]);
@@ -134,100 +200,47 @@ public class BinomialPyramid32f extends GaussianScaleSpacePyramid
 			tmp[tmp_ptr++] = ((src[src_ptr+width_minus_2]<<1)+(src[src_ptr+width_minus_2]<<2)) + ((src[src_ptr+width_minus_2-1]+src[src_ptr+width_minus_2+1])<<2) + (src[src_ptr+width_minus_2-2]+src[src_ptr+width_minus_2+1]);
 			tmp[tmp_ptr++] = ((src[src_ptr+width_minus_1]<<1)+(src[src_ptr+width_minus_1]<<2)) + ((src[src_ptr+width_minus_1-1]+src[src_ptr+width_minus_1])<<2)   + (src[src_ptr+width_minus_1-2]+src[src_ptr+width_minus_1]);
 		}
-		
-		int pm2;
-		int pm1;
-		int p;
-		int pp1;
-		int pp2;
-		
-		// Apply vertical filter along top border. This is applied twice as there are two
-		// border pixels.
-		pm2     = 0;//tmp
-		pm1     = 0;//tmp
-		p       = 0;//tmp
-		pp1     = width;//p+width
-		pp2     = pp1+width;//pp1+width		
-		int dst_ptr = 0;
-		for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
-			dst[dst_ptr] = (((tmp[p]<<1)+(tmp[p]<<2)) + ((tmp[pm1]+tmp[pp1])<<2) + (tmp[pm2]+tmp[pp2]))*(1.0f/256.0f);
-		}
-		
-		pm2     = 0;//tmp;
-		pm1     = 0;//tmp;
-		p       = width;//tmp+width;
-		pp1     = p+width;
-		pp2     = pp1+width;
-		dst_ptr = width;
-		
-		for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
-			dst[dst_ptr] = (((tmp[p]<<1)+(tmp[p]<<2)) + ((tmp[pm1]+tmp[pp1])<<2) + (tmp[pm2]+tmp[pp2]))*(1.0f/256.0f);
-		}
-		
-		// Apply vertical filter for non-border pixels.
-		pm2 = 0;//tmp;
-		pm1 = pm2+width;
-		p   = pm1+width;
-		pp1 = p+width;
-		pp2 = pp1+width;
-		
-		for(int row = 2; row < height_minus_2; row++) {
-			pm2 = (row-2)*width;//&tmp[(row-2)*width];
-			pm1 = pm2+width;
-			p   = pm1+width;
-			pp1 = p+width;
-			pp2 = pp1+width;
+    }
+    /**
+     * 垂直方向のフィルタを、i_r0からi_r1-1行に適用します。
+     * 上下の2行は、境界の画素を画像の外側へ延長して計算します。
+     */
+    private static void binomial_4th_order_v(float[] dst,int[] tmp,int width,int height,int i_r0,int i_r1)
+    {
+		assert(height >= 5);//, "Image is too small");
+		for(int row = i_r0; row < i_r1; row++) {
+			int pm2 = (row<2?0:row-2)*width;
+			int pm1 = (row<1?0:row-1)*width;
+			int p   = row*width;
+			int pp1 = (row+1<height?row+1:height-1)*width;
+			int pp2 = (row+2<height?row+2:height-1)*width;
 			
-			dst_ptr = row*width;//&dst[row*width];
+			int dst_ptr = row*width;//&dst[row*width];
 			
 			for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
 				dst[dst_ptr] = (((tmp[p]<<1)+(tmp[p]<<2)) + ((tmp[pm1]+tmp[pp1])<<2) + (tmp[pm2]+tmp[pp2]))*(1.0f/256.0f);
 			}
 		}
-
-		// Apply vertical filter for bottom border. Similar to top border.
-		pm2     = (height-4)*width;//tmp+(height-4)*width;
-		pm1     = pm2+width;
-		p       = pm1+width;
-		pp1     = p+width;
-		pp2     = pp1;
-		dst_ptr = (height-2)*width;//dst+(height-2)*width;
-
-		for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
-			dst[dst_ptr] = (((tmp[p]<<1)+(tmp[p]<<2)) + ((tmp[pm1]+tmp[pp1])<<2) + (tmp[pm2]+tmp[pp2]))*(1.0f/256.0f);
-		}
-		
-		pm2     = (height-3)*width;//tmp+(height-3)*width;
-		pm1     = pm2+width;
-		p       = pm1+width;
-		pp1     = p;
-		pp2     = p;
-		dst_ptr = (height-1)*width;//dst+(height-1)*width;
-		
-		for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
-			dst[dst_ptr] = (((tmp[p]<<1)+(tmp[p]<<2)) + ((tmp[pm1]+tmp[pp1])<<2) + (tmp[pm2]+tmp[pp2]))*(1.0f/256.0f);
-		}
     }
-    private void binomial_4th_order(double[] dst,double[] tmp,double[] src,int width,int height)
+    /**
+     * 水平方向のフィルタを、i_r0からi_r1-1行に適用します。
+     */
+    private static void binomial_4th_order_h(float[] tmp,float[] src,int width,int i_r0,int i_r1)
     {
-		int tmp_ptr=0;
-
 		int width_minus_1, width_minus_2;
-		int height_minus_2;
 		
 		assert(width >= 5);//), "Image is too small");
-		assert(height >= 5);//, "Image is too small");
 		
 		width_minus_1 = width-1;
 		width_minus_2 = width-2;
-		height_minus_2 = height-2;
 		
 		
 		// Apply horizontal filter
-		for(int row = 0; row < height; row++)
+		for(int row = i_r0; row < i_r1; row++)
 		{
 //			const unsigned char* src_ptr = &src[row*width];
 			int src_ptr=row*width;
+			int tmp_ptr=src_ptr;
 			
 			// Left border is computed by extending the border pixel beyond the image
 
@@ -244,91 +257,39 @@ public class BinomialPyramid32f extends GaussianScaleSpacePyramid
 			tmp[tmp_ptr++] = 6.0f*src[src_ptr+width_minus_1] + 4.0f*(src[src_ptr+width_minus_1-1]+src[src_ptr+width_minus_1])   + src[src_ptr+width_minus_1-2] + src[src_ptr+width_minus_1];
 
 		}
-		
-		int pm2;
-		int pm1;
-		int p;
-		int pp1;
-		int pp2;
-		
-		// Apply vertical filter along top border. This is applied twice as there are two
-		// border pixels.
-		pm2     = 0;//tmp
-		pm1     = 0;//tmp
-		p       = 0;//tmp
-		pp1     = width;//p+width
-		pp2     = pp1+width;//pp1+width		
-		int dst_ptr = 0;
-		for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
-			dst[dst_ptr] = (6.0f*tmp[p] + 4.0f*(tmp[pm1]+tmp[pp1]) + (tmp[pm2]) + (tmp[pp2]))*(1.0f/256.0f);;
-		}
-
-		
-		pm2     = 0;//tmp;
-		pm1     = 0;//tmp;
-		p       = width;//tmp+width;
-		pp1     = p+width;
-		pp2     = pp1+width;
-		dst_ptr = width;
-		
-		for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
-			dst[dst_ptr] = (6.0f*(tmp[p]) + 4.0f*(tmp[pm1]+tmp[pp1]) + (tmp[pm2]) + (tmp[pp2]))*(1.0f/256.0f);;
-		}
-		
-		// Apply vertical filter for non-border pixels.
-		pm2 = 0;//tmp;
-		pm1 = pm2+width;
-		p   = pm1+width;
-		pp1 = p+width;
-		pp2 = pp1+width;
-		
-		for(int row = 2; row < height_minus_2; row++) {
-			pm2 = (row-2)*width;//&tmp[(row-2)*width];
-			pm1 = pm2+width;
-			p   = pm1+width;
-			pp1 = p+width;
-			pp2 = pp1+width;
+    }
+    /**
+     * 垂直方向のフィルタを、i_r0からi_r1-1行に適用します。
+     * 上下の2行は、境界の画素を画像の外側へ延長して計算します。
+     */
+    private static void binomial_4th_order_v(float[] dst,float[] tmp,int width,int height,int i_r0,int i_r1)
+    {
+		assert(height >= 5);//, "Image is too small");
+		for(int row = i_r0; row < i_r1; row++) {
+			int pm2 = (row<2?0:row-2)*width;
+			int pm1 = (row<1?0:row-1)*width;
+			int p   = row*width;
+			int pp1 = (row+1<height?row+1:height-1)*width;
+			int pp2 = (row+2<height?row+2:height-1)*width;
 			
-			dst_ptr = row*width;//&dst[row*width];
+			int dst_ptr = row*width;//&dst[row*width];
 			
 			for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
-				dst[dst_ptr] = (6.0f*(tmp[p]) + 4.0f*(tmp[pm1]+tmp[pp1]) + (tmp[pm2]) + (tmp[pp2]))*(1.0f/256.0f);;
+				dst[dst_ptr] = (6.0f*(tmp[p]) + 4.0f*(tmp[pm1]+tmp[pp1]) + (tmp[pm2]) + (tmp[pp2]))*(1.0f/256.0f);
 			}
 		}
-
-		// Apply vertical filter for bottom border. Similar to top border.
-		pm2     = (height-4)*width;//tmp+(height-4)*width;
-		pm1     = pm2+width;
-		p       = pm1+width;
-		pp1     = p+width;
-		pp2     = pp1;
-		dst_ptr = (height-2)*width;//dst+(height-2)*width;
-
-		for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
-			dst[dst_ptr] = (6.0f*(tmp[p]) + 4.0f*(tmp[pm1]+tmp[pp1]) + (tmp[pm2]) + (tmp[pp2]))*(1.0f/256.0f);;
-		}
-		
-		pm2     = (height-3)*width;//tmp+(height-3)*width;
-		pm1     = pm2+width;
-		p       = pm1+width;
-		pp1     = p;
-		pp2     = p;
-		dst_ptr = (height-1)*width;//dst+(height-1)*width;
-		
-		for(int col = 0; col < width; col++, dst_ptr++, pm2++, pm1++, p++, pp1++, pp2++) {
-			dst[dst_ptr] = (6.0f*(tmp[p]) + 4.0f*(tmp[pm1]+tmp[pp1]) + (tmp[pm2]) + (tmp[pp2]))*(1.0f/256.0f);;
-		}
     }   
-        
-    private void downsample_bilinear(double[] dst,double[] src, int src_width, int src_height)
+    /**
+     * 縮小画像のi_r0からi_r1-1行を計算します。
+     */
+    private static void downsample_bilinear(float[] dst,float[] src, int src_width,int i_r0,int i_r1)
     {
         int src_ptr1;
         int src_ptr2;
         
         int dst_width = src_width>>1;
-        int dst_height = src_height>>1;
-        int dst_ptr=0;
-        for(int row = 0; row < dst_height; row++) {
+        int dst_ptr=i_r0*dst_width;
+        for(int row = i_r0; row < i_r1; row++) {
             src_ptr1 = (row<<1)*src_width;
             src_ptr2 = src_ptr1 + src_width;
             for(int col = 0; col < dst_width; col++, src_ptr1+=2, src_ptr2+=2) {
@@ -336,25 +297,114 @@ public class BinomialPyramid32f extends GaussianScaleSpacePyramid
             }
         }
     }
+    /**
+     * 二項フィルタの帯のジョブです。水平フィルタを全ての行に適用してから、垂直フィルタを適用します。
+     * 垂直フィルタは上下2行の水平フィルタの結果を参照するので、2つのパスは別々に実行します。
+     * 垂直フィルタを[v_begin,v_end)行に適用する場合、水平フィルタはその上下2行を含めた範囲に適用します。
+     */
+    private static class FilterJob implements BandRunner.IBandJob
+    {
+    	public boolean vertical;
+    	public float[] dst;
+    	public int[] src_i;
+    	public int[] tmp_i;
+    	public float[] src_f;
+    	public float[] tmp_f;
+    	public int width;
+    	public int height;
+    	/** 垂直フィルタを適用する行範囲*/
+    	public int v_begin;
+    	public int v_end;
+    	private int _h_begin;
+		@Override
+		public void run(int i_band, int i_begin, int i_end)
+		{
+			if(this.src_i!=null){
+				if(this.vertical){
+					binomial_4th_order_v(this.dst,this.tmp_i,this.width,this.height,this.v_begin+i_begin,this.v_begin+i_end);
+				}else{
+					binomial_4th_order_h(this.tmp_i,this.src_i,this.width,this._h_begin+i_begin,this._h_begin+i_end);
+				}
+			}else{
+				if(this.vertical){
+					binomial_4th_order_v(this.dst,this.tmp_f,this.width,this.height,this.v_begin+i_begin,this.v_begin+i_end);
+				}else{
+					binomial_4th_order_h(this.tmp_f,this.src_f,this.width,this._h_begin+i_begin,this._h_begin+i_end);
+				}
+			}
+		}
+		public void run(BandRunner i_runner)
+		{
+			int min_rows=minBandRows(this.width);
+			int hb=this.v_begin>2?this.v_begin-2:0;
+			int he=this.v_end+2<this.height?this.v_end+2:this.height;
+			this._h_begin=hb;
+			this.vertical=false;
+			i_runner.run(this,he-hb,min_rows);
+			this.vertical=true;
+			i_runner.run(this,this.v_end-this.v_begin,min_rows);
+			this.dst=null;
+			this.src_i=null;
+			this.src_f=null;
+		}
+    }
+    /**
+     * 縮小の帯のジョブです。
+     */
+    private static class DownsampleJob implements BandRunner.IBandJob
+    {
+    	public float[] dst;
+    	public float[] src;
+    	public int src_width;
+    	public int row_begin;
+		@Override
+		public void run(int i_band, int i_begin, int i_end)
+		{
+			downsample_bilinear(this.dst,this.src,this.src_width,this.row_begin+i_begin,this.row_begin+i_end);
+		}
+    }
+    final private FilterJob _filter_job=new FilterJob();
+    final private DownsampleJob _downsample_job=new DownsampleJob();
 
-    private void apply_filter(KpmImage dst, INyARGrayscaleRaster src)
+    private void apply_filter(BandRunner i_runner,KpmImage dst, INyARGrayscaleRaster src,int i_row_begin,int i_row_end)
     {
     	assert(src.isEqualBufferType(NyARBufferType.INT1D_GRAY_8));
-        binomial_4th_order((double[])dst.getBuffer(),this.mTemp_us16,(int[])src.getBuffer(),src.getWidth(),src.getHeight());
+    	FilterJob f=this._filter_job;
+    	f.dst=(float[])dst.getBuffer();
+    	f.src_i=(int[])src.getBuffer();
+    	f.tmp_i=this.mTemp_us16;
+    	f.width=src.getWidth();
+    	f.height=src.getHeight();
+    	f.v_begin=i_row_begin;
+    	f.v_end=i_row_end;
+    	f.run(i_runner);
     }    
-    private void apply_filter(KpmImage dst, KpmImage src)
+    private void apply_filter(BandRunner i_runner,KpmImage dst, KpmImage src,int i_row_begin,int i_row_end)
     {
-        binomial_4th_order(
-        	(double[])dst.getBuffer(),this.mTemp_f32_1,(double[])src.getBuffer(),src.getWidth(),src.getHeight());
+    	FilterJob f=this._filter_job;
+    	f.dst=(float[])dst.getBuffer();
+    	f.src_f=(float[])src.getBuffer();
+    	f.tmp_f=this.mTemp_f32_1;
+    	f.width=src.getWidth();
+    	f.height=src.getHeight();
+    	f.v_begin=i_row_begin;
+    	f.v_end=i_row_end;
+    	f.run(i_runner);
     }    
-    private void apply_filter_twice(KpmImage dst,KpmImage src)
+    /**
+     * フィルタを2回適用します。i_row_begin,i_row_endは、srcの変化した行範囲です。
+     */
+    private void apply_filter_twice(BandRunner i_runner,KpmImage dst,KpmImage src,KpmImage tmp,int i_row_begin,int i_row_end)
     {
-    	KpmImage tmp=new KpmImage(src.getWidth(),src.getHeight());
-        apply_filter(tmp, src);
-        apply_filter(dst, tmp);
+        int h=src.getHeight();
+        int r0=i_row_begin>2?i_row_begin-2:0;
+        int r1=i_row_end+2<h?i_row_end+2:h;
+        apply_filter(i_runner,tmp, src,r0,r1);
+        r0=r0>2?r0-2:0;r1=r1+2<h?r1+2:h;
+        apply_filter(i_runner,dst, tmp,r0,r1);
     }   
     
     
 
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,238 @@
+/* 
+ * PROJECT: NyARToolkit
+ * --------------------------------------------------------------------------------
+ * The NyARToolkit is Java edition ARToolKit class library.
+ *  Copyright (C)2016 Ryo Iizuka
+ * 
+ * NyARToolkit is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * NyARToolkit is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and to
+ * copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module
+ * which is neither derived from nor based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you
+ * are not obligated to do so. If you do not wish to do so, delete this exception
+ * statement from your version.
+ * 
+ */
+package jp.nyatla.nyartoolkit.core.kpm.utils;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+
+/**
+ * このクラスは、入力画像を縮小したシグネチャを比較して、画像の変化した行範囲を求めます。
+ * シグネチャは、{@link #BLOCK_SIZE}四方のブロック毎の、全ての画素値の合計です。
+ * <p>
+ * 比較の基準は、前回変化したと判定した時の画像です。変化した行範囲を含むブロック行だけを基準に取り込むので、
+ * 1フレーム毎の変化が小さくても、変化が蓄積すれば検出できます。
+ * 閾値が0の場合は、シグネチャではなく画素値そのものを基準と比較します。1画素でも異なる行は、必ず変化した行範囲に含まれます。
+ * </p>
+ * 入力画像は{@link NyARBufferType#INT1D_GRAY_8}形式です。
+ */
+public class InputChangeDetector
+{
+	/** ブロックの大きさ(画素)*/
+	final public static int BLOCK_SIZE=16;
+	final private static int BLOCK_SHIFT=4;
+	final private int _width;
+	final private int _height;
+	final private int _threshold;
+	/** 横方向のブロック数*/
+	final private int _bw;
+	/** 縦方向のブロック数*/
+	final private int _bh;
+	/** ブロック毎の画素数*/
+	final private int[] _count;
+	final private int[] _sig;
+	final private int[] _ref_sig;
+	/** 閾値が0の場合の、基準の画素値。それ以外はnull*/
+	final private int[] _ref_pixels;
+	private boolean _has_ref;
+	private int _row_begin;
+	private int _row_end;
+	/**
+	 * コンストラクタです。
+	 * @param i_width
+	 * 入力画像の幅
+	 * @param i_height
+	 * 入力画像の高さ
+	 * @param i_threshold
+	 * ブロックの平均画素値の差の閾値。差がこの値を超えたブロックを、変化したブロックとします。
+	 * 0の場合は、画素値が1つでも異なるブロックを、変化したブロックとします。
+	 */
+	public InputChangeDetector(int i_width,int i_height,int i_threshold)
+	{
+		if(i_threshold<0){
+			throw new NyARRuntimeException("Invalid threshold.");
+		}
+		this._width=i_width;
+		this._height=i_height;
+		this._threshold=i_threshold;
+		this._bw=(i_width+BLOCK_SIZE-1)>>BLOCK_SHIFT;
+		this._bh=(i_height+BLOCK_SIZE-1)>>BLOCK_SHIFT;
+		this._count=new int[this._bw*this._bh];
+		this._sig=new int[this._bw*this._bh];
+		this._ref_sig=new int[this._bw*this._bh];
+		this._ref_pixels=i_threshold==0?new int[i_width*i_height]:null;
+		for(int y=0;y<i_height;y++){
+			int row=(y>>BLOCK_SHIFT)*this._bw;
+			for(int x=0;x<i_width;x++){
+				this._count[row+(x>>BLOCK_SHIFT)]++;
+			}
+		}
+		this._has_ref=false;
+	}
+	/**
+	 * 基準のシグネチャを破棄します。次の{@link #update}は、画像全体が変化したと判定します。
+	 */
+	public void reset()
+	{
+		this._has_ref=false;
+	}
+	/**
+	 * 入力画像を基準と比較します。
+	 * 変化した場合は、変化したブロック行を含む行範囲を{@link #getRowBegin},{@link #getRowEnd}に設定して、そのブロック行の基準を更新します。
+	 * @param i_raster
+	 * 入力画像
+	 * @return
+	 * 変化したブロックがあればtrue
+	 */
+	public boolean update(INyARGrayscaleRaster i_raster)
+	{
+		if(!i_raster.isEqualBufferType(NyARBufferType.INT1D_GRAY_8)){
+			throw new NyARRuntimeException();
+		}
+		assert(i_raster.getWidth()==this._width && i_raster.getHeight()==this._height);
+		final int w=this._width;
+		final int h=this._height;
+		final int[] buf=(int[])i_raster.getBuffer();
+		//変化したブロック行の範囲
+		int by0,by1;
+		final boolean is_first=!this._has_ref;
+		if(is_first){
+			by0=0;
+			by1=this._bh;
+			this._has_ref=true;
+		}else{
+			by0=this._bh;
+			by1=0;
+			for(int by=0;by<this._bh;by++){
+				boolean changed=this._ref_pixels!=null?this.isRowsChanged(buf,by):this.isSignatureChanged(buf,by);
+				if(changed){
+					if(by<by0){
+						by0=by;
+					}
+					by1=by+1;
+				}
+			}
+			if(by0>=by1){
+				return false;
+			}
+		}
+		int r0=by0<<BLOCK_SHIFT;
+		int r1=(by1<<BLOCK_SHIFT)<h?(by1<<BLOCK_SHIFT):h;
+		if(this._ref_pixels!=null){
+			System.arraycopy(buf,r0*w,this._ref_pixels,r0*w,(r1-r0)*w);
+		}else{
+			//比較した場合は、全てのブロック行のシグネチャを計算済み
+			if(is_first){
+				for(int by=by0;by<by1;by++){
+					this.computeSignature(buf,by);
+				}
+			}
+			System.arraycopy(this._sig,by0*this._bw,this._ref_sig,by0*this._bw,(by1-by0)*this._bw);
+		}
+		this._row_begin=r0;
+		this._row_end=r1;
+		return true;
+	}
+	/**
+	 * ブロック行i_byの画素値が、基準と1つでも異なるかを返します。
+	 */
+	private boolean isRowsChanged(int[] i_buf,int i_by)
+	{
+		final int w=this._width;
+		final int[] ref=this._ref_pixels;
+		int p=(i_by<<BLOCK_SHIFT)*w;
+		int e=((i_by+1)<<BLOCK_SHIFT)*w;
+		if(e>i_buf.length){
+			e=i_buf.length;
+		}
+		for(;p<e;p++){
+			if(i_buf[p]!=ref[p]){
+				return true;
+			}
+		}
+		return false;
+	}
+	/**
+	 * ブロック行i_byのシグネチャを計算して、基準との差が閾値を超えるブロックがあるかを返します。
+	 */
+	private boolean isSignatureChanged(int[] i_buf,int i_by)
+	{
+		this.computeSignature(i_buf,i_by);
+		final int[] sig=this._sig;
+		final int[] ref=this._ref_sig;
+		final int[] cnt=this._count;
+		final int th=this._threshold;
+		for(int i=i_by*this._bw,e=i+this._bw;i<e;i++){
+			int d=sig[i]-ref[i];
+			if((d<0?-d:d)>th*cnt[i]){
+				return true;
+			}
+		}
+		return false;
+	}
+	/**
+	 * ブロック行i_byのシグネチャを計算します。
+	 */
+	private void computeSignature(int[] i_buf,int i_by)
+	{
+		final int w=this._width;
+		final int[] sig=this._sig;
+		final int row=i_by*this._bw;
+		for(int i=row+this._bw-1;i>=row;i--){
+			sig[i]=0;
+		}
+		int y1=(i_by+1)<<BLOCK_SHIFT;
+		if(y1>this._height){
+			y1=this._height;
+		}
+		for(int y=i_by<<BLOCK_SHIFT;y<y1;y++){
+			int p=y*w;
+			for(int x=0;x<w;x++){
+				sig[row+(x>>BLOCK_SHIFT)]+=i_buf[p+x];
+			}
+		}
+	}
+	/**
+	 * 直前の{@link #update}で変化した行範囲の先頭(含む)を返します。
+	 */
+	public int getRowBegin()
+	{
+		return this._row_begin;
+	}
+	/**
+	 * 直前の{@link #update}で変化した行範囲の終端(含まない)を返します。
+	 */
+	public int getRowEnd()
+	{
+		return this._row_end;
+	}
+}
@@ -42,6 +42,8 @@ package jp.nyatla.nyartoolkit.core.kpm.utils;
  */
 public class LongDescripter768 extends LongDescripter
 {
+	/** 1デスクプタあたりのlong値の数*/
+	final public static int NUMBER_OF_LONG=12;
 	public LongDescripter768()
 	{
 		super(96*8);
@@ -51,19 +53,88 @@ public class LongDescripter768 extends LongDescripter
 	final public int hammingDistance(LongDescripter i_value)
 	{
 		//assert i_value.bits==this.bits;
-		long b;
-		long c=0;
-		for(int i=this._desc.length-1;i>=0;i--){
-			b=this._desc[i]^i_value._desc[i];
-	        b = (b & 0x5555555555555555L) + (b >> 1 & 0x5555555555555555L);
-	        b = (b & 0x3333333333333333L) + (b >> 2 & 0x3333333333333333L);
-	        b = (b & 0x0f0f0f0f0f0f0f0fL) + (b >> 4 & 0x0f0f0f0f0f0f0f0fL);
-	        b = (b & 0x00ff00ff00ff00ffL) + (b >> 8 & 0x00ff00ff00ff00ffL);
-	        b = (b & 0x0000ffff0000ffffL) + (b >> 16 & 0x0000ffff0000ffffL);
-	        b = (b & 0x00000000ffffffffL) + (b >> 32 & 0x00000000ffffffffL);
-	        c+=b;
+		return this.hammingDistance(i_value._desc,0);
+	}
+	/**
+	 * デスクプタブロックのi_index番目のデスクプタとの間でHammingDistanceを計算します。
+	 * @param i_block
+	 * デスクプタブロック。{@link #NUMBER_OF_LONG}個のlong値を1デスクプタとして、連続して格納した配列です。
+	 * @param i_index
+	 * デスクプタのインデクス
+	 */
+	final public int hammingDistance(long[] i_block,int i_index)
+	{
+		final long[] d=this._desc;
+		final int p=i_index*NUMBER_OF_LONG;
+		return
+			Long.bitCount(d[ 0]^i_block[p+ 0])+Long.bitCount(d[ 1]^i_block[p+ 1])+
+			Long.bitCount(d[ 2]^i_block[p+ 2])+Long.bitCount(d[ 3]^i_block[p+ 3])+
+			Long.bitCount(d[ 4]^i_block[p+ 4])+Long.bitCount(d[ 5]^i_block[p+ 5])+
+			Long.bitCount(d[ 6]^i_block[p+ 6])+Long.bitCount(d[ 7]^i_block[p+ 7])+
+			Long.bitCount(d[ 8]^i_block[p+ 8])+Long.bitCount(d[ 9]^i_block[p+ 9])+
+			Long.bitCount(d[10]^i_block[p+10])+Long.bitCount(d[11]^i_block[p+11]);
+	}
+	/**
+	 * デスクプタブロックの先頭からi_num個のデスクプタとの間でHammingDistanceを計算します。
+	 * @param i_block
+	 * デスクプタブロック
+	 * @param i_num
+	 * 計算するデスクプタの数
+	 * @param o_distance
+	 * 距離の格納先。i_num以上の長さが必要です。
+	 */
+	final public void hammingDistance(long[] i_block,int i_num,int[] o_distance)
+	{
+		for(int i=0;i<i_num;i++){
+			o_distance[i]=this.hammingDistance(i_block,i);
 		}
-        return (int)c;
 	}
-
+	/**
+	 * デスクプタブロックの先頭からi_num個のデスクプタから、最も近いデスクプタと2番目に近いデスクプタの距離を探索します。
+	 * 距離が同じ場合は、インデクスが小さいデスクプタを優先します。
+	 * @param i_block
+	 * デスクプタブロック
+	 * @param i_num
+	 * 探索するデスクプタの数
+	 * @param o_best2
+	 * 距離の格納先。[0]に最も近い距離、[1]に2番目に近い距離を格納します。見つからない場合は{@link Integer#MAX_VALUE}です。
+	 * @return
+	 * 最も近いデスクプタのインデクス。i_numが0の場合は-1です。
+	 */
+	final public int searchBest2(long[] i_block,int i_num,int[] o_best2)
+	{
+		int first_best=Integer.MAX_VALUE;
+		int second_best=Integer.MAX_VALUE;
+		int best_index=-1;
+		for(int i=0;i<i_num;i++){
+			int d=this.hammingDistance(i_block,i);
+			if(d<first_best){
+				second_best=first_best;
+				first_best=d;
+				best_index=i;
+			}else if(d<second_best){
+				second_best=d;
+			}
+		}
+		o_best2[0]=first_best;
+		o_best2[1]=second_best;
+		return best_index;
+	}
+	/**
+	 * デスクプタの配列から、デスクプタブロックを作ります。
+	 * @param i_src
+	 * デスクプタの配列
+	 * @param i_num
+	 * デスクプタの数
+	 * @return
+	 * デスクプタブロック
+	 */
+	public static long[] createBlock(LongDescripter768[] i_src,int i_num)
+	{
+		long[] r=new long[i_num*NUMBER_OF_LONG];
+		for(int i=0;i<i_num;i++){
+			System.arraycopy(i_src[i]._desc,0,r,i*NUMBER_OF_LONG,NUMBER_OF_LONG);
+		}
+		return r;
+	}
 }
@@ -0,0 +1,104 @@
+/* 
+ * PROJECT: NyARToolkit
+ * --------------------------------------------------------------------------------
+ * The NyARToolkit is Java edition ARToolKit class library.
+ *  Copyright (C)2016 Ryo Iizuka
+ * 
+ * NyARToolkit is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * NyARToolkit is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and to
+ * copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module
+ * which is neither derived from nor based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you
+ * are not obligated to do so. If you do not wish to do so, delete this exception
+ * statement from your version.
+ * 
+ */
+package jp.nyatla.nyartoolkit.core.kpm.utils;
+
+import jp.nyatla.nyartoolkit.core.utils.BandRunner;
+
+/**
+ * このクラスは、複数の画像の行範囲を、画素数を単位にして1つの範囲[0,{@link #size})に並べた表です。
+ * 大きさの異なる画像をまとめて{@link BandRunner}で分割するときに、帯毎の画素数を揃えるために使います。
+ * <p>
+ * 帯[i_begin,i_end)が処理する画像kの行は、[{@link #firstRow}(k,i_begin),{@link #firstRow}(k,i_end))です。
+ * 連続した帯で分割すると、全ての行はどれか1つの帯に含まれます。
+ * </p>
+ */
+public class RowSpanTable
+{
+	final private int[] _base;
+	final private int[] _width;
+	final private int[] _row_begin;
+	final private int[] _row_end;
+	final private int _size;
+	/**
+	 * コンストラクタです。
+	 * @param i_width
+	 * 画像毎の幅
+	 * @param i_row_begin
+	 * 画像毎の処理する行の先頭(含む)
+	 * @param i_row_end
+	 * 画像毎の処理する行の終端(含まない)
+	 */
+	public RowSpanTable(int[] i_width,int[] i_row_begin,int[] i_row_end)
+	{
+		int n=i_width.length;
+		this._base=new int[n];
+		this._width=i_width.clone();
+		this._row_begin=i_row_begin.clone();
+		this._row_end=i_row_end.clone();
+		int s=0;
+		for(int i=0;i<n;i++){
+			this._base[i]=s;
+			if(i_row_end[i]>i_row_begin[i]){
+				s+=(i_row_end[i]-i_row_begin[i])*i_width[i];
+			}
+		}
+		this._size=s;
+	}
+	/**
+	 * 範囲の大きさ(画素数の合計)を返します。
+	 */
+	public int size()
+	{
+		return this._size;
+	}
+	/**
+	 * 画像i_indexの行のうち、先頭の位置がi_unit以上になる最初の行を返します。
+	 * @param i_index
+	 * 画像の番号
+	 * @param i_unit
+	 * 範囲内の位置
+	 * @return
+	 * 行番号。行範囲の外側の場合は、先頭または終端の値です。
+	 */
+	public int firstRow(int i_index,int i_unit)
+	{
+		int b=this._row_begin[i_index];
+		int e=this._row_end[i_index];
+		int d=i_unit-this._base[i_index];
+		if(d<=0 || e<=b){
+			return b;
+		}
+		int w=this._width[i_index];
+		int r=b+(d+w-1)/w;
+		return r<e?r:e;
+	}
+}
@@ -0,0 +1,398 @@
+/* 
+ * PROJECT: NyARToolkit
+ * --------------------------------------------------------------------------------
+ * This work is based on the ARToolKit developed by
+ *   Hirokazu Kato
+ *   Mark Billinghurst
+ *   HITLab, University of Washington, Seattle
+ * http://www.hitl.washington.edu/artoolkit/
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.core.marker.artk.algo;
+
+import java.util.ArrayList;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.marker.artk.NyARCode;
+import jp.nyatla.nyartoolkit.core.marker.artk.match.NyARMatchPattDeviationColorData;
+import jp.nyatla.nyartoolkit.core.marker.artk.match.NyARMatchPattResult;
+
+/**
+ * このクラスは、同じ解像度の多数の基準パターンを保持して、{@link NyARMatchPatt_Color_WITHOUT_PCA}と同じ評価を高速に行います。
+ * <p>
+ * 基準パターンと検査パターンは、方位毎に低解像度のシグネチャ(ブロック毎のチャンネル合計値)と、
+ * シグネチャで表現できない残差のノルムを持ちます。
+ * 2パターンの内積は「シグネチャの内積+残差の内積」に分解でき、残差の内積は残差のノルムの積を越えないので、
+ * シグネチャだけで一致度の上限値を計算できます。
+ * 上限値が敷居値や暫定の最良値に届かない基準パターンは、全画素の比較をせずに除外します。
+ * シグネチャは4x4ブロックと8x8ブロックの2段階で、粗い方から順に除外を試みます。
+ * 除外は上限値に基づくので、結果は全ての基準パターンを{@link NyARMatchPatt_Color_WITHOUT_PCA#evaluate}で評価したときと同じです。
+ * </p>
+ * <p>
+ * 基準パターンの表は、{@link #NyARMatchPattLibrary_Color_WITHOUT_PCA(NyARMatchPattLibrary_Color_WITHOUT_PCA)}で
+ * 作ったインスタンスと共有できます。インスタンスは比較の作業領域だけを個別に持つので、
+ * 共有したインスタンスをスレッド毎に1つ使えば、複数のスレッドから同時に比較できます。
+ * 基準パターンの追加は、共有している全てのインスタンスの比較と同時に行うことはできません。
+ * </p>
+ */
+public class NyARMatchPattLibrary_Color_WITHOUT_PCA
+{
+	/** シグネチャのブロック数(1軸あたり)。粗い順。*/
+	private final static int[] LEVEL_BLOCKS={4,8};
+	/** 浮動小数点誤差で候補を落とさないためのマージン*/
+	private final static double MARGIN=1e-9;
+	/**
+	 * 1段階分のシグネチャを保持します。
+	 */
+	private static class Level
+	{
+		/** 画素番号からブロック番号への変換表*/
+		private final int[] _block_of_pix;
+		/** ブロック毎の画素数の逆数*/
+		private final double[] _inv_block_pix;
+		/** シグネチャの次元数*/
+		public final int sig_len;
+		/** [パターン番号*4+方位][シグネチャ]。ブロック合計値をブロックの画素数で割った値。*/
+		public double[] sig=new double[0];
+		/** [パターン番号*4+方位]。残差のノルム/pow値*/
+		public double[] res=new double[0];
+		public Level(int i_width,int i_height,int i_blocks)
+		{
+			int bw=i_width<i_blocks?i_width:i_blocks;
+			int bh=i_height<i_blocks?i_height:i_blocks;
+			this._block_of_pix=new int[i_width*i_height];
+			int[] n=new int[bw*bh];
+			for(int y=0;y<i_height;y++){
+				for(int x=0;x<i_width;x++){
+					int b=(y*bh/i_height)*bw+(x*bw/i_width);
+					this._block_of_pix[y*i_width+x]=b;
+					n[b]++;
+				}
+			}
+			this._inv_block_pix=new double[bw*bh];
+			for(int i=0;i<n.length;i++){
+				this._inv_block_pix[i]=1.0/n[i];
+			}
+			this.sig_len=bw*bh*3;
+		}
+		/**
+		 * 基準パターンの格納領域をi_num個分に拡張します。
+		 */
+		public void reserve(int i_num)
+		{
+			double[] sig=new double[i_num*4*this.sig_len];
+			System.arraycopy(this.sig,0,sig,0,this.sig.length);
+			this.sig=sig;
+			double[] res=new double[i_num*4];
+			System.arraycopy(this.res,0,res,0,this.res.length);
+			this.res=res;
+		}
+		/**
+		 * 基準パターンのシグネチャをi_idx番目に格納します。
+		 */
+		public void setPattern(int i_idx,NyARMatchPattDeviationColorData i_data,double i_inv_pow)
+		{
+			int sl=this.sig_len;
+			double[] sig=new double[sl];
+			double r=this.makeSignature(i_data.getData(),sig);
+			for(int i=0;i<sl;i++){
+				this.sig[i_idx*sl+i]=sig[i]*this._inv_block_pix[i/3];
+			}
+			this.res[i_idx]=r*i_inv_pow;
+		}
+		/**
+		 * i_idx番目の基準パターンの方位毎の上限値のうち、最大のものを返します。
+		 * 値は一致度*検査パターンのpow値の上限です。
+		 * @param i_in_sig
+		 * 検査パターンのシグネチャ
+		 * @param i_in_res
+		 * 検査パターンの残差のノルム
+		 */
+		public double upperBound(int i_idx,double[] i_inv_pow,double[] i_in_sig,double i_in_res)
+		{
+			double[] sig=this.sig;
+			int sl=this.sig_len;
+			double max=0;
+			for(int j=0;j<4;j++){
+				int p=i_idx*4+j;
+				int s=p*sl;
+				double sum=0;
+				for(int k=0;k<sl;k++){
+					sum+=i_in_sig[k]*sig[s+k];
+				}
+				double ub=sum*i_inv_pow[p]+i_in_res*this.res[p];
+				if(ub>max){
+					max=ub;
+				}
+			}
+			return max;
+		}
+		/**
+		 * 差分画像からシグネチャを計算します。
+		 * @return
+		 * 残差のノルム
+		 */
+		public double makeSignature(int[] i_data,double[] o_sig)
+		{
+			int[] bp=this._block_of_pix;
+			double[] ibp=this._inv_block_pix;
+			for(int i=o_sig.length-1;i>=0;i--){
+				o_sig[i]=0;
+			}
+			long pow=0;
+			for(int i=bp.length-1;i>=0;i--){
+				int s=bp[i]*3;
+				int r=i_data[i*3+0];
+				int g=i_data[i*3+1];
+				int b=i_data[i*3+2];
+				o_sig[s+0]+=r;
+				o_sig[s+1]+=g;
+				o_sig[s+2]+=b;
+				pow+=r*r+g*g+b*b;
+			}
+			//残差^2=全体^2-射影^2
+			double p=pow;
+			for(int i=o_sig.length-1;i>=0;i--){
+				p-=o_sig[i]*o_sig[i]*ibp[i/3];
+			}
+			return p>0?Math.sqrt(p):0;
+		}
+	}
+	/** 基準パターンの表を持つインスタンス。共有していなければthisです。*/
+	private final NyARMatchPattLibrary_Color_WITHOUT_PCA _shared;
+	//基準パターンの表(_sharedのものだけを使う)
+	private final int _width;
+	private final int _height;
+	private final Level[] _levels;
+	private final ArrayList<NyARMatchPatt_Color_WITHOUT_PCA> _patt;
+	/** [パターン番号*4+方位]。1/pow値*/
+	private double[] _inv_pow=new double[0];
+	//作業領域
+	/** [段階]。検査パターンのシグネチャ*/
+	private final double[][] _in_sig;
+	/** [段階]。検査パターンの残差のノルム*/
+	private final double[] _in_res;
+	/** 最も粗いシグネチャによる上限値*/
+	private double[] _ub=new double[0];
+	private final NyARMatchPattResult _tmp_result=new NyARMatchPattResult();
+	/**
+	 * コンストラクタです。
+	 * @param i_width
+	 * 基準パターンの幅
+	 * @param i_height
+	 * 基準パターンの高さ
+	 */
+	public NyARMatchPattLibrary_Color_WITHOUT_PCA(int i_width,int i_height)
+	{
+		this._shared=this;
+		this._width=i_width;
+		this._height=i_height;
+		this._levels=new Level[LEVEL_BLOCKS.length];
+		for(int i=0;i<LEVEL_BLOCKS.length;i++){
+			this._levels[i]=new Level(i_width,i_height,LEVEL_BLOCKS[i]);
+		}
+		this._patt=new ArrayList<NyARMatchPatt_Color_WITHOUT_PCA>();
+		this._in_sig=new double[LEVEL_BLOCKS.length][];
+		for(int i=0;i<LEVEL_BLOCKS.length;i++){
+			this._in_sig[i]=new double[this._levels[i].sig_len];
+		}
+		this._in_res=new double[LEVEL_BLOCKS.length];
+	}
+	/**
+	 * コンストラクタです。i_sharedと基準パターンの表を共有して、作業領域だけを持つインスタンスを作ります。
+	 * i_sharedとこのインスタンスのどちらに追加した基準パターンも、両方のインスタンスから使えます。
+	 * @param i_shared
+	 * 基準パターンの表を持つインスタンス
+	 */
+	public NyARMatchPattLibrary_Color_WITHOUT_PCA(NyARMatchPattLibrary_Color_WITHOUT_PCA i_shared)
+	{
+		NyARMatchPattLibrary_Color_WITHOUT_PCA s=i_shared._shared;
+		this._shared=s;
+		this._width=s._width;
+		this._height=s._height;
+		this._levels=s._levels;
+		this._patt=s._patt;
+		this._in_sig=new double[s._levels.length][];
+		for(int i=0;i<s._levels.length;i++){
+			this._in_sig[i]=new double[s._levels[i].sig_len];
+		}
+		this._in_res=new double[s._levels.length];
+	}
+	/**
+	 * 基準パターンを追加します。
+	 * @param i_code
+	 * 追加する基準パターン。サイズはコンストラクタに指定したものと同じである必要があります。
+	 * @return
+	 * 基準パターンの番号。追加した順に0から割り当てます。
+	 */
+	public int addARCode(NyARCode i_code)
+	{
+		NyARMatchPattLibrary_Color_WITHOUT_PCA s=this._shared;
+		if(i_code.getWidth()!=s._width || i_code.getHeight()!=s._height){
+			throw new NyARRuntimeException("Invalid pattern size");
+		}
+		int idx=s._patt.size();
+		//領域の拡張
+		if(s._inv_pow.length<(idx+1)*4){
+			int l=(idx+1)*2;
+			for(int i=0;i<s._levels.length;i++){
+				s._levels[i].reserve(l);
+			}
+			double[] inv_pow=new double[l*4];
+			System.arraycopy(s._inv_pow,0,inv_pow,0,s._inv_pow.length);
+			s._inv_pow=inv_pow;
+		}
+		for(int j=0;j<4;j++){
+			NyARMatchPattDeviationColorData d=i_code.getColorData(j);
+			int p=idx*4+j;
+			s._inv_pow[p]=1.0/d.getPow();
+			for(int i=0;i<s._levels.length;i++){
+				s._levels[i].setPattern(p,d,s._inv_pow[p]);
+			}
+		}
+		s._patt.add(new NyARMatchPatt_Color_WITHOUT_PCA(i_code));
+		return idx;
+	}
+	/**
+	 * 登録した基準パターンの数を返します。
+	 */
+	public int getLength()
+	{
+		return this._patt.size();
+	}
+	/**
+	 * 検査パターンのシグネチャを計算して、全ての基準パターンの、最も粗いシグネチャによる一致度の上限値を_ubに格納します。
+	 */
+	private void setInput(NyARMatchPattDeviationColorData i_patt)
+	{
+		Level[] levels=this._levels;
+		for(int i=0;i<levels.length;i++){
+			this._in_res[i]=levels[i].makeSignature(i_patt.getData(),this._in_sig[i]);
+		}
+		int len=this._patt.size();
+		if(this._ub.length<len){
+			this._ub=new double[len*2];
+		}
+		double[] inv_pow_table=this._shared._inv_pow;
+		double inv_pow=1.0/i_patt.getPow();
+		for(int i=len-1;i>=0;i--){
+			this._ub[i]=levels[0].upperBound(i,inv_pow_table,this._in_sig[0],this._in_res[0])*inv_pow*(1+MARGIN)+MARGIN;
+		}
+	}
+	/**
+	 * i_idx番目の基準パターンの一致度がi_th以上になりうるかを、細かいシグネチャで調べます。
+	 * 最も粗いシグネチャの判定は済んでいる必要があります。
+	 */
+	private boolean isReachable(int i_idx,double i_th,double i_inv_pow)
+	{
+		double[] inv_pow_table=this._shared._inv_pow;
+		for(int i=1;i<this._levels.length;i++){
+			if(this._levels[i].upperBound(i_idx,inv_pow_table,this._in_sig[i],this._in_res[i])*i_inv_pow*(1+MARGIN)+MARGIN<i_th){
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * 一致度がi_th以上になりうる基準パターンの番号を列挙します。
+	 * 一致度がi_th以上の基準パターンは、必ず結果に含まれます。
+	 * @param i_patt
+	 * 検査パターン。サイズは基準パターンと同じである必要があります。
+	 * @param i_th
+	 * 一致度の敷居値
+	 * @param o_index
+	 * 基準パターンの番号の格納先。{@link #getLength}以上の長さが必要です。番号は昇順に格納します。
+	 * @return
+	 * 格納した番号の数
+	 */
+	public int shortlist(NyARMatchPattDeviationColorData i_patt,double i_th,int[] o_index)
+	{
+		int n=0;
+		if(i_th<=0){
+			//全て候補
+			for(int i=0;i<this._patt.size();i++){
+				o_index[n++]=i;
+			}
+			return n;
+		}
+		this.setInput(i_patt);
+		double inv_pow=1.0/i_patt.getPow();
+		double[] ub=this._ub;
+		for(int i=0;i<this._patt.size();i++){
+			if(ub[i]>=i_th && this.isReachable(i,i_th,inv_pow)){
+				o_index[n++]=i;
+			}
+		}
+		return n;
+	}
+	/**
+	 * i_index番目の基準パターンと検査パターンを比較します。
+	 * 結果は{@link NyARMatchPatt_Color_WITHOUT_PCA#evaluate}と同じです。
+	 */
+	public boolean evaluate(int i_index,NyARMatchPattDeviationColorData i_patt,NyARMatchPattResult o_result)
+	{
+		return this._patt.get(i_index).evaluate(i_patt,o_result);
+	}
+	/**
+	 * 最も一致度の高い基準パターンを探索します。
+	 * 結果は、全ての基準パターンを番号順に評価して、一致度が最大のもの(同値の場合は番号の小さいもの)を選んだときと同じです。
+	 * @param i_patt
+	 * 検査パターン
+	 * @param o_result
+	 * 最も一致度の高い基準パターンの一致度と方位
+	 * @return
+	 * 基準パターンの番号。基準パターンが無い場合は-1
+	 */
+	public int evaluateBest(NyARMatchPattDeviationColorData i_patt,NyARMatchPattResult o_result)
+	{
+		int len=this._patt.size();
+		if(len==0){
+			return -1;
+		}
+		this.setInput(i_patt);
+		double inv_pow=1.0/i_patt.getPow();
+		double[] ub=this._ub;
+		NyARMatchPattResult tmp=this._tmp_result;
+		//上限値が最大のものを暫定の最良値にする。
+		int best=0;
+		for(int i=1;i<len;i++){
+			if(ub[i]>ub[best]){
+				best=i;
+			}
+		}
+		this._patt.get(best).evaluate(i_patt,o_result);
+		//上限値が最良値に届くものだけを評価する。
+		for(int i=0;i<len;i++){
+			if(i==best || ub[i]<o_result.confidence || !this.isReachable(i,o_result.confidence,inv_pow)){
+				continue;
+			}
+			this._patt.get(i).evaluate(i_patt,tmp);
+			if(tmp.confidence>o_result.confidence || (tmp.confidence==o_result.confidence && i<best)){
+				o_result.confidence=tmp.confidence;
+				o_result.direction=tmp.direction;
+				best=i;
+			}
+		}
+		return best;
+	}
+}
@@ -41,6 +41,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
 
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
 import jp.nyatla.nyartoolkit.core.kpm.keyframe.KeyframeMap;
@@ -90,12 +91,49 @@ public class NyARNftDataSet
 	 * @param i_freak_fset_page_id
 	 */
 	public NyARNftDataSet(NyARNftIsetFile i_iset,NyARNftFsetFile i_fset,NyARNftFreakFsetFile i_freak_fset,int i_freak_fset_page_id,double i_width_in_msec)
+	{
+		this(i_iset,i_fset,i_freak_fset,i_freak_fset_page_id,i_width_in_msec,null);
+	}
+	/**
+	 * コンストラクタです。
+	 * キーマップを{@link NyARNftFreakBhFile}形式のキャッシュファイルから読み出します。
+	 * キャッシュファイルが無いか、i_freak_fsetと一致しない場合は、キーマップを生成してキャッシュファイルに書き出します。
+	 * @param i_freak_bh_file
+	 * キャッシュファイルのパス。nullの場合はキャッシュを使いません。
+	 */
+	public NyARNftDataSet(NyARNftIsetFile i_iset,NyARNftFsetFile i_fset,NyARNftFreakFsetFile i_freak_fset,int i_freak_fset_page_id,double i_width_in_msec,File i_freak_bh_file)
 	{
 		if(!Double.isNaN(i_width_in_msec)){
 			scaling(i_iset,i_fset,i_freak_fset,i_freak_fset_page_id,i_width_in_msec);
 		}		
 		this.surface_dataset=new NyARSurfaceDataSet(i_iset,i_fset);
-		this.freak_fset = new KeyframeMap(i_freak_fset,i_freak_fset_page_id);
+		if(i_freak_bh_file==null){
+			this.freak_fset = new KeyframeMap(i_freak_fset,i_freak_fset_page_id);
+		}else{
+			this.freak_fset = loadKeyframeMap(i_freak_fset,i_freak_fset_page_id,i_freak_bh_file);
+		}
+	}
+	private static KeyframeMap loadKeyframeMap(NyARNftFreakFsetFile i_freak_fset,int i_freak_fset_page_id,File i_freak_bh_file)
+	{
+		if(i_freak_bh_file.isFile()){
+			try{
+				NyARNftFreakBhFile bh=NyARNftFreakBhFile.loadFromFreakBhFile(i_freak_bh_file);
+				if(bh.isSourceOf(i_freak_fset,i_freak_fset_page_id)){
+					return bh.keyframe_map;
+				}
+			}catch(NyARRuntimeException e){
+				//壊れたキャッシュは作り直す。
+			}catch(BufferUnderflowException e){
+				//壊れたキャッシュは作り直す。
+			}
+		}
+		NyARNftFreakBhFile bh=NyARNftFreakBhFile.genFreakBh(i_freak_fset,i_freak_fset_page_id);
+		try{
+			bh.saveToFile(i_freak_bh_file);
+		}catch(NyARRuntimeException e){
+			//キャッシュを書き出せなくても、キーマップは使える。
+		}
+		return bh.keyframe_map;
 	}
 
 	
@@ -136,6 +174,23 @@ public class NyARNftDataSet
 			throw new NyARRuntimeException(e);
 		}
 	}
+	/**
+	 * {@link #loadFromNftFiles(String,int,double)}に、キーマップのキャッシュファイルを指定できるようにしたものです。
+	 * @param i_freak_bh_file
+	 * キーマップのキャッシュファイル。{@link #NyARNftDataSet(NyARNftIsetFile,NyARNftFsetFile,NyARNftFreakFsetFile,int,double,File)}を参照してください。
+	 */
+	public static NyARNftDataSet loadFromNftFiles(String i_fname_prefix,int i_freak_fset_page_id,double i_width_in_msec,File i_freak_bh_file)
+	{
+		try {
+			return new NyARNftDataSet(
+				NyARNftIsetFile.loadFromIsetFile(new FileInputStream(new File(i_fname_prefix+".iset"))),
+				NyARNftFsetFile.loadFromFsetFile(new FileInputStream(new File(i_fname_prefix+".fset"))),
+				NyARNftFreakFsetFile.loadFromfset3File(new FileInputStream(new File(i_fname_prefix+".fset3"))),
+				i_freak_fset_page_id,i_width_in_msec,i_freak_bh_file);
+		} catch (FileNotFoundException e) {
+			throw new NyARRuntimeException(e);
+		}
+	}
 	/**
 	 * {@link #loadFromNftFiles(String,int)}の第二パラメータが0のものと同じです。
 	 * @param i_fname_prefix
@@ -163,6 +218,20 @@ public class NyARNftDataSet
 			throw new NyARRuntimeException(e);
 		}		
 	}
+	/**
+	 * {@link #loadFromNftDataSet(String,double)}に、キーマップのキャッシュファイルを指定できるようにしたものです。
+	 * @param i_freak_bh_file
+	 * キーマップのキャッシュファイル。{@link #NyARNftDataSet(NyARNftIsetFile,NyARNftFsetFile,NyARNftFreakFsetFile,int,double,File)}を参照してください。
+	 */
+	public static NyARNftDataSet loadFromNftDataSet(String i_fname,double i_width_in_msec,File i_freak_bh_file)
+	{
+		try {
+			NyARNftDataSetFile nfp = NyARNftDataSetFile.loadFromNftFilePack(new FileInputStream(new File(i_fname)));
+			return new NyARNftDataSet(nfp.iset,nfp.fset,nfp.fset3,0,i_width_in_msec,i_freak_bh_file);
+		} catch (FileNotFoundException e) {
+			throw new NyARRuntimeException(e);
+		}
+	}
 	public static NyARNftDataSet loadFromNftDataSet(String i_fname)
 	{	
 		return loadFromNftDataSet(i_fname,Double.NaN);
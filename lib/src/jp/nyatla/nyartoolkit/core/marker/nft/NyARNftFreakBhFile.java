@@ -0,0 +1,322 @@
+/* 
+ * PROJECT: NyARToolkit
+ * --------------------------------------------------------------------------------
+ * This work is based on the original ARToolKit developed by
+ *  Copyright 2013-2015 Daqri, LLC.
+ *  Author(s): Chris Broaddus
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ *  Copyright (C)2016 Ryo Iizuka
+ * 
+ * NyARToolkit is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * NyARToolkit is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and to
+ * copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module
+ * which is neither derived from nor based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you
+ * are not obligated to do so. If you do not wish to do so, delete this exception
+ * statement from your version.
+ * 
+ */
+package jp.nyatla.nyartoolkit.core.marker.nft;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.kpm.binaryhierarchicalclustering.BinaryHierarchicalNode;
+import jp.nyatla.nyartoolkit.core.kpm.keyframe.FreakMatchPointSetStack;
+import jp.nyatla.nyartoolkit.core.kpm.keyframe.Keyframe;
+import jp.nyatla.nyartoolkit.core.kpm.keyframe.KeyframeMap;
+import jp.nyatla.nyartoolkit.core.kpm.utils.LongDescripter768;
+import jp.nyatla.nyartoolkit.j2se.BinaryWriter;
+
+/**
+ * {@link KeyframeMap}の構築済インデクス({@link BinaryHierarchicalNode}のツリー)と特徴点を格納するファイル形式です。
+ * fset3からのキーマップの生成はk-medoidsによるクラスタリングを伴うので、ターゲットが多いと起動に時間がかかります。
+ * このファイルに保存したキーマップは、クラスタリングをせずに読み出すことができます。
+ * <p>
+ * ファイルは元のfset3(またはnftdataset)と同じ場所に置くことを想定しています。
+ * ヘッダには元のfset3とページ番号のフィンガープリントを格納するので、{@link #isSourceOf}で元データとの一致を確認できます。
+ * </p>
+ * <pre>
+ * 全ての値はリトルエンディアンです。
+ *	HEADERSTR:=	byte[32]	"NYARFREAKBH/1"
+ *	PAGE_ID:=	int
+ *	FINGERPRINT:=	long		{@link #fingerprint}の値
+ *	NUM_KEYFRAME:=	int
+ *	KEYFRAME[NUM_KEYFRAME]:={
+ *		KEY,WIDTH,HEIGHT:=	int,int,int
+ *		NUM_FEATURE:=	int
+ *		FEATURE[NUM_FEATURE]:={
+ *			X,Y,ANGLE,SCALE:=	double*4
+ *			MAXIMA:=	int
+ *			POS3D:=	double*3
+ *			DESCRIPTER:=	long*12
+ *		}
+ *		NODE:=	ルートノード。NODEは次の形式で、子ノードを前順で格納します。
+ *		{
+ *			ID:=	int
+ *			CENTER:=	int	中心の特徴点番号。無い場合は-1
+ *			IS_LEAF:=	int
+ *			IS_LEAF!=0の場合	NUM_INDEX:=int,INDEX:=int[NUM_INDEX]	特徴点番号
+ *			IS_LEAF==0の場合	NUM_CHILDREN:=int,NODE[NUM_CHILDREN]
+ *		}
+ *	}
+ * </pre>
+ */
+public class NyARNftFreakBhFile
+{
+	final static private String HS_FREAKBH_V1="NYARFREAKBH/1";
+	/**
+	 * 読み出すノードの深さの上限です。
+	 * 正しいファイルの深さは特徴点数の対数程度なので、これを超えるファイルは壊れているとみなします。
+	 */
+	final static private int MAX_NODE_DEPTH=128;
+	/** fset3のページ番号*/
+	final public int page_id;
+	/** 元データのフィンガープリント*/
+	final public long fingerprint;
+	/** 読み出したキーマップ*/
+	final public KeyframeMap keyframe_map;
+	
+	public NyARNftFreakBhFile(int i_page_id,long i_fingerprint,KeyframeMap i_keyframe_map)
+	{
+		this.page_id=i_page_id;
+		this.fingerprint=i_fingerprint;
+		this.keyframe_map=i_keyframe_map;
+	}
+	/**
+	 * fset3とページ番号からキーマップを生成して、インスタンスを作成します。
+	 * インデクスの構築を伴うので、時間がかかります。
+	 */
+	public static NyARNftFreakBhFile genFreakBh(NyARNftFreakFsetFile i_fset3,int i_page_id)
+	{
+		return new NyARNftFreakBhFile(i_page_id,fingerprint(i_fset3,i_page_id),new KeyframeMap(i_fset3,i_page_id));
+	}
+	/**
+	 * fset3とページ番号のフィンガープリントを計算します。
+	 * 値はfset3のファイルイメージとページ番号のCRC32です。
+	 */
+	public static long fingerprint(NyARNftFreakFsetFile i_fset3,int i_page_id)
+	{
+		CRC32 crc=new CRC32();
+		crc.update(i_fset3.makeFset3Binary());
+		crc.update(i_page_id);
+		return crc.getValue();
+	}
+	/**
+	 * このインスタンスが、i_fset3のi_page_idから生成したものかを返します。
+	 */
+	public boolean isSourceOf(NyARNftFreakFsetFile i_fset3,int i_page_id)
+	{
+		return this.page_id==i_page_id && this.fingerprint==fingerprint(i_fset3,i_page_id);
+	}
+	/**
+	 * ファイルを読み出して、インスタンスを作成します。
+	 * 内容は全てヒープ上のオブジェクトにコピーするので、ファイルをメモリマップせずに一括で読み出します。
+	 * @param i_file
+	 * @return
+	 */
+	public static NyARNftFreakBhFile loadFromFreakBhFile(File i_file)
+	{
+		try {
+			return loadFromFreakBhFile(ByteBuffer.wrap(Files.readAllBytes(i_file.toPath())));
+		} catch (IOException e) {
+			throw new NyARRuntimeException(e);
+		}
+	}
+	/**
+	 * バッファの現在位置から、インスタンスを読み出します。
+	 * @param i_buf
+	 * ファイルイメージを格納したバッファ。バイトオーダーは関数が設定します。
+	 * @return
+	 */
+	public static NyARNftFreakBhFile loadFromFreakBhFile(ByteBuffer i_buf)
+	{
+		ByteBuffer bb=i_buf.order(ByteOrder.LITTLE_ENDIAN);
+		//タイプチェック
+		byte[] hs=new byte[32];
+		bb.get(hs);
+		if(!HS_FREAKBH_V1.equals(byteArray2NullTerminateStr(hs))){
+			throw new NyARRuntimeException("Invalid header");
+		}
+		int page_id=bb.getInt();
+		long fingerprint=bb.getLong();
+		int num_of_keyframe=bb.getInt();
+		KeyframeMap map=new KeyframeMap();
+		for(int i=0;i<num_of_keyframe;i++){
+			int key=bb.getInt();
+			int w=bb.getInt();
+			int h=bb.getInt();
+			int num_of_feature=bb.getInt();
+			if(num_of_feature<0 || num_of_feature>bb.remaining()){
+				throw new NyARRuntimeException("Invalid feature size");
+			}
+			FreakMatchPointSetStack fps=new FreakMatchPointSetStack(num_of_feature);
+			for(int j=0;j<num_of_feature;j++){
+				FreakMatchPointSetStack.Item fp=fps.prePush();
+				fp.x=bb.getDouble();
+				fp.y=bb.getDouble();
+				fp.angle=bb.getDouble();
+				fp.scale=bb.getDouble();
+				fp.maxima=bb.getInt()!=0;
+				fp.pos3d.x=bb.getDouble();
+				fp.pos3d.y=bb.getDouble();
+				fp.pos3d.z=bb.getDouble();
+				long[] d=fp.descripter._desc;
+				for(int k=0;k<LongDescripter768.NUMBER_OF_LONG;k++){
+					d[k]=bb.getLong();
+				}
+			}
+			map.put(key,new Keyframe(w,h,fps,readNode(bb,fps.getArray(),num_of_feature,0)));
+		}
+		return new NyARNftFreakBhFile(page_id,fingerprint,map);
+	}
+	private static BinaryHierarchicalNode readNode(ByteBuffer i_bb,FreakMatchPointSetStack.Item[] i_features,int i_num_of_feature,int i_depth)
+	{
+		if(i_depth>MAX_NODE_DEPTH){
+			throw new NyARRuntimeException("Invalid node");
+		}
+		int id=i_bb.getInt();
+		int center=i_bb.getInt();
+		boolean is_leaf=i_bb.getInt()!=0;
+		int n=i_bb.getInt();
+		if(center<-1 || center>=i_num_of_feature || n<0 || n>i_bb.remaining()){
+			throw new NyARRuntimeException("Invalid node");
+		}
+		if(is_leaf){
+			FreakMatchPointSetStack.Item[] index=new FreakMatchPointSetStack.Item[n];
+			for(int i=0;i<n;i++){
+				int idx=i_bb.getInt();
+				if(idx<0 || idx>=i_num_of_feature){
+					throw new NyARRuntimeException("Invalid node");
+				}
+				index[i]=i_features[idx];
+			}
+			return new BinaryHierarchicalNode(id,center<0?null:i_features[center],true,index,null);
+		}else{
+			BinaryHierarchicalNode[] children=new BinaryHierarchicalNode[n];
+			for(int i=0;i<n;i++){
+				children[i]=readNode(i_bb,i_features,i_num_of_feature,i_depth+1);
+			}
+			return new BinaryHierarchicalNode(id,center<0?null:i_features[center],false,null,children);
+		}
+	}
+	/**
+	 * 現在のファイルイメージをbyte[]で返却します。
+	 * @return
+	 */
+	public byte[] makeFreakBhBinary()
+	{
+		BinaryWriter bw=new BinaryWriter(BinaryWriter.ENDIAN_LITTLE,2*1024*1024);
+		{	//HEADERSTR
+			byte[] hs=new byte[32];
+			byte[] s=HS_FREAKBH_V1.getBytes();
+			System.arraycopy(s,0,hs,0,s.length);
+			bw.putByteArray(hs);
+		}
+		bw.putInt(this.page_id);
+		bw.putLong(this.fingerprint);
+		bw.putInt(this.keyframe_map.size());
+		for(Map.Entry<Integer,Keyframe> e:this.keyframe_map.entrySet()){
+			Keyframe kf=e.getValue();
+			FreakMatchPointSetStack fps=kf.getFeaturePointSet();
+			bw.putInt(e.getKey());
+			bw.putInt(kf.width());
+			bw.putInt(kf.height());
+			bw.putInt(fps.getLength());
+			//特徴点から特徴点番号への変換表
+			Map<FreakMatchPointSetStack.Item,Integer> idx=new IdentityHashMap<FreakMatchPointSetStack.Item,Integer>();
+			for(int i=0;i<fps.getLength();i++){
+				FreakMatchPointSetStack.Item fp=fps.getItem(i);
+				idx.put(fp,i);
+				bw.putDouble(fp.x);
+				bw.putDouble(fp.y);
+				bw.putDouble(fp.angle);
+				bw.putDouble(fp.scale);
+				bw.putInt(fp.maxima?1:0);
+				bw.putDouble(fp.pos3d.x);
+				bw.putDouble(fp.pos3d.y);
+				bw.putDouble(fp.pos3d.z);
+				long[] d=fp.descripter._desc;
+				for(int k=0;k<LongDescripter768.NUMBER_OF_LONG;k++){
+					bw.putLong(d[k]);
+				}
+			}
+			writeNode(bw,kf.getIndex(),idx);
+		}
+		return bw.getBinary();
+	}
+	private static void writeNode(BinaryWriter i_bw,BinaryHierarchicalNode i_node,Map<FreakMatchPointSetStack.Item,Integer> i_idx)
+	{
+		i_bw.putInt(i_node.id);
+		i_bw.putInt(i_node.center==null?-1:i_idx.get(i_node.center));
+		i_bw.putInt(i_node.is_leaf?1:0);
+		if(i_node.is_leaf){
+			i_bw.putInt(i_node.reserv_index.length);
+			for(int i=0;i<i_node.reserv_index.length;i++){
+				i_bw.putInt(i_idx.get(i_node.reserv_index[i]));
+			}
+		}else{
+			i_bw.putInt(i_node.children.length);
+			for(int i=0;i<i_node.children.length;i++){
+				writeNode(i_bw,i_node.children[i],i_idx);
+			}
+		}
+	}
+	/**
+	 * ファイルイメージをファイルに書き出します。
+	 * 同じディレクトリの一時ファイルに書き出してから置き換えるので、既存のファイルを読み出し中の他のプロセスには影響しません。
+	 * @param i_file
+	 */
+	public void saveToFile(File i_file)
+	{
+		File dir=i_file.getAbsoluteFile().getParentFile();
+		File tmp=null;
+		try {
+			tmp=File.createTempFile("."+i_file.getName()+".",".tmp",dir);
+			Files.write(tmp.toPath(),this.makeFreakBhBinary());
+			Files.move(tmp.toPath(),i_file.toPath(),StandardCopyOption.ATOMIC_MOVE,StandardCopyOption.REPLACE_EXISTING);
+			tmp=null;
+		} catch (IOException e) {
+			throw new NyARRuntimeException(e);
+		} finally {
+			//失敗した場合は一時ファイルを消す
+			if(tmp!=null){
+				tmp.delete();
+			}
+		}
+	}
+	private static String byteArray2NullTerminateStr(byte[] i_bytes)
+	{
+		int l=0;
+		while(l<i_bytes.length && i_bytes[l]!=0){
+			l++;
+		}
+		return new String(i_bytes,0,l);
+	}
+}
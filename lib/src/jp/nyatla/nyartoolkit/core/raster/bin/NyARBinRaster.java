@@ -28,6 +28,7 @@ package jp.nyatla.nyartoolkit.core.raster.bin;
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
 import jp.nyatla.nyartoolkit.core.raster.bin.format.NyARBinRaster_INT1D_BIN_8;
 import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARLabeling_Rle;
+import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARRleLabelingEngine;
 import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARContourPickup;
 import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
 import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
@@ -165,6 +166,9 @@ public abstract class NyARBinRaster implements INyARBinRaster
 		if(i_iid==NyARLabeling_Rle.IRasterDriver.class){
 			return NyARLabeling_Rle.RasterDriverFactory.createDriver(this);
 		}
+		if(i_iid==NyARRleLabelingEngine.IRasterDriver.class){
+			return NyARRleLabelingEngine.RasterDriverFactory.createDriver(this);
+		}
 		if(i_iid==NyARContourPickup.IRasterDriver.class){
 			return NyARContourPickup.ImageDriverFactory.createDriver(this);
 		}
@@ -0,0 +1,363 @@
+/* 
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.core.raster.gs;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.integralimage.NyARIntegralImage;
+import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARLabeling_Rle;
+import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARRleLabelingEngine;
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARContourPickup;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
+
+/**
+ * このクラスは、グレースケール画像を局所平均で2値化するためのラスタです。
+ * 画素値の代わりに、画素値と周囲の窓の平均値の差を返します。
+ * 平均値は{@link NyARIntegralImage}から1画素あたり4回の参照で計算するので、窓の大きさに関わらず処理時間は一定です。
+ * <p>
+ * 画素値は、(元画像の画素値-窓の平均値)+{@link #CENTER}を0-255に丸めた値です。
+ * {@link #getThreshold}の値を敷居値にして{@link NyARLabeling_Rle}や{@link NyARContourPickup}に入力すると、
+ * 周囲より暗い画素を暗点として扱います。照明のむらがある画像でも、1回のラベリングでマーカを検出できます。
+ * </p>
+ * <p>
+ * 元画像を更新したときは、使用前に{@link #update}を呼び出して積分画像を作り直してください。
+ * 窓は画像の範囲でクリップします。
+ * </p>
+ * <p>使用できるインタフェイス -
+ * <ul>
+ * <li>{@link NyARLabeling_Rle.IRasterDriver}
+ * <li>{@link NyARRleLabelingEngine.IRasterDriver}
+ * <li>{@link NyARContourPickup.IRasterDriver}
+ * </ul>
+ * </p>
+ */
+public class NyARAdaptiveThresholdRaster implements INyARGrayscaleRaster
+{
+	/** 画素値が窓の平均値と等しいときの値です。*/
+	public final static int CENTER=128;
+	/** {@link #getThreshold}の標準のオフセット値です。*/
+	public final static int DEFAULT_OFFSET=7;
+	/**
+	 * この関数は、窓の平均値よりi_offset以上暗い画素を暗点とする敷居値を返します。
+	 * @param i_offset
+	 * 平均値からのオフセット値
+	 * @return
+	 * ラベリング、輪郭線抽出に使う敷居値
+	 */
+	public static int getThreshold(int i_offset)
+	{
+		return CENTER-1-i_offset;
+	}
+	private final INyARGrayscaleRaster _ref_src;
+	private final NyARIntegralImage _iimage;
+	private final NyARIntSize _size;
+	private final int _radius;
+	/** 元画像が{@link NyARBufferType#INT1D_GRAY_8}の場合のバッファ*/
+	private int[] _ref_src_buf=null;
+	/**
+	 * コンストラクタです。
+	 * @param i_src
+	 * 元画像。
+	 * @param i_radius
+	 * 窓の半径。窓の大きさは(i_radius*2+1)^2画素です。1以上、1023以下である必要があります。
+	 */
+	public NyARAdaptiveThresholdRaster(INyARGrayscaleRaster i_src,int i_radius)
+	{
+		//窓の画素数*512がintに収まる大きさ
+		if(i_radius<1 || i_radius>1023){
+			throw new NyARRuntimeException();
+		}
+		this._ref_src=i_src;
+		this._size=i_src.getSize();
+		this._iimage=new NyARIntegralImage(this._size.w,this._size.h);
+		this._radius=i_radius;
+	}
+	/**
+	 * コンストラクタです。窓の半径は、画像の長辺の1/16です。
+	 * @param i_src
+	 * 元画像。
+	 */
+	public NyARAdaptiveThresholdRaster(INyARGrayscaleRaster i_src)
+	{
+		this(i_src,Math.max(Math.min(Math.max(i_src.getWidth(),i_src.getHeight())/16,1023),1));
+	}
+	/**
+	 * この関数は、元画像から積分画像を作り直します。
+	 * 元画像を更新したときは、ラスタを使う前に呼び出してください。
+	 */
+	public void update()
+	{
+		this._iimage.genIntegralImage(this._ref_src);
+		this._ref_src_buf=this._ref_src.isEqualBufferType(NyARBufferType.INT1D_GRAY_8)?(int[])this._ref_src.getBuffer():null;
+	}
+	/**
+	 * 元画像を返します。
+	 */
+	public INyARGrayscaleRaster getSource()
+	{
+		return this._ref_src;
+	}
+	/**
+	 * 積分画像を返します。
+	 */
+	public NyARIntegralImage getIntegralImage()
+	{
+		return this._iimage;
+	}
+	@Override
+	final public int getWidth()
+	{
+		return this._size.w;
+	}
+	@Override
+	final public int getHeight()
+	{
+		return this._size.h;
+	}
+	@Override
+	final public NyARIntSize getSize()
+	{
+		return this._size;
+	}
+	/**
+	 * このラスタはバッファを持ちません。nullを返します。
+	 */
+	@Override
+	final public Object getBuffer()
+	{
+		return null;
+	}
+	@Override
+	final public int getBufferType()
+	{
+		return NyARBufferType.USER_DEFINE;
+	}
+	@Override
+	final public boolean isEqualBufferType(int i_type_value)
+	{
+		return i_type_value==NyARBufferType.USER_DEFINE;
+	}
+	@Override
+	final public boolean hasBuffer()
+	{
+		return false;
+	}
+	@Override
+	final public void wrapBuffer(Object i_ref_buf)
+	{
+		NyARRuntimeException.notImplement();
+	}
+	@Override
+	public Object createInterface(Class<?> i_iid)
+	{
+		if(i_iid==NyARLabeling_Rle.IRasterDriver.class){
+			return new NyARAdaptiveRlePixelDriver(this);
+		}
+		if(i_iid==NyARRleLabelingEngine.IRasterDriver.class){
+			return new NyARAdaptiveRleEnginePixelDriver(this);
+		}
+		if(i_iid==NyARContourPickup.IRasterDriver.class){
+			return NyARContourPickup.ImageDriverFactory.createDriver(this);
+		}
+		throw new NyARRuntimeException();
+	}
+	@Override
+	final public int getPixel(int i_x,int i_y)
+	{
+		final int w=this._size.w;
+		final int h=this._size.h;
+		final int r=this._radius;
+		//窓の上の1つ外側の行と、下の行
+		final int y0=i_y-r-1;
+		final int y1=i_y+r<h?i_y+r:h-1;
+		final int p0=y0>=0?y0*w:-1;
+		final int x0=i_x-r-1;
+		final int x1=i_x+r<w?i_x+r:w-1;
+		final int a=(x1-(x0>=0?x0:-1))*(y1-(y0>=0?y0:-1));
+		final int d=this.getSrcPixel(i_x,i_y)*a-boxSum((int[])this._iimage.getBuffer(),p0,y1*w,x0,x1);
+		//floor(d/a)
+		final int v=CENTER+(d>=0?d/a:-((a-1-d)/a));
+		return v<0?0:(v>255?255:v);
+	}
+	@Override
+	final public int[] getPixelSet(int[] i_x,int[] i_y,int i_n,int[] o_buf,int i_st_buf)
+	{
+		for(int i=i_n-1;i>=0;i--){
+			o_buf[i_st_buf+i]=this.getPixel(i_x[i],i_y[i]);
+		}
+		return o_buf;
+	}
+	@Override
+	final public void setPixel(int i_x,int i_y,int i_gs)
+	{
+		NyARRuntimeException.notImplement();
+	}
+	@Override
+	final public void setPixels(int[] i_x,int[] i_y,int i_num,int[] i_intgs)
+	{
+		NyARRuntimeException.notImplement();
+	}
+	private int getSrcPixel(int i_x,int i_y)
+	{
+		final int[] b=this._ref_src_buf;
+		return b!=null?b[i_x+i_y*this._size.w]:this._ref_src.getPixel(i_x,i_y);
+	}
+	/**
+	 * 積分画像から、窓(x0,y0)-(x1,y1]の合計値を計算します。
+	 * @param i_p0
+	 * 上側の1つ外側の行の先頭位置。画像の外なら負の値。
+	 * @param i_p1
+	 * 下側の行の先頭位置。
+	 */
+	private static int boxSum(int[] i_ii,int i_p0,int i_p1,int i_x0,int i_x1)
+	{
+		int s=i_ii[i_p1+i_x1];
+		if(i_p0>=0){
+			s-=i_ii[i_p0+i_x1];
+			if(i_x0>=0){
+				s+=i_ii[i_p0+i_x0]-i_ii[i_p1+i_x0];
+			}
+		}else if(i_x0>=0){
+			s-=i_ii[i_p1+i_x0];
+		}
+		return s;
+	}
+	/**
+	 * 画素(i_x,i_y)が暗点かを返します。i_p0,i_p1,i_whは行毎の値です。
+	 */
+	private boolean isDark(int[] i_ii,int i_p0,int i_p1,int i_wh,int i_x,int i_y,int i_k)
+	{
+		final int x0=i_x-this._radius-1;
+		final int x1=i_x+this._radius<this._size.w?i_x+this._radius:this._size.w-1;
+		//(画素値-k)*面積 < 窓の合計 なら暗点
+		return (this.getSrcPixel(i_x,i_y)-i_k)*((x1-(x0>=0?x0:-1))*i_wh)<boxSum(i_ii,i_p0,i_p1,x0,x1);
+	}
+	/**
+	 * 行i_yの[i_x,i_x+i_len)を、暗点のRLE要素に変換します。
+	 * 暗点の判定は、{@link #getPixel}の値がi_th以下であることと同じです。
+	 * @param o_l
+	 * RLE要素の左端(この点を含む)
+	 * @param o_r
+	 * RLE要素の右端(この点を含まない)
+	 * @return
+	 * RLE要素の数
+	 */
+	final int xLineToRle(int i_x,int i_y,int i_len,int i_th,int[] o_l,int[] o_r)
+	{
+		final int[] ii=(int[])this._iimage.getBuffer();
+		final int k=i_th-(CENTER-1);
+		final int y0=i_y-this._radius-1;
+		final int y1=i_y+this._radius<this._size.h?i_y+this._radius:this._size.h-1;
+		final int p0=y0>=0?y0*this._size.w:-1;
+		final int p1=y1*this._size.w;
+		final int wh=y1-(y0>=0?y0:-1);
+		int current=0;
+		int l=-1;
+		for(int i=0;i<i_len;i++){
+			if(this.isDark(ii,p0,p1,wh,i_x+i,i_y,k)){
+				if(l<0){
+					l=i;
+				}
+			}else if(l>=0){
+				o_l[current]=l;
+				o_r[current]=i;
+				current++;
+				l=-1;
+			}
+		}
+		if(l>=0){
+			o_l[current]=l;
+			o_r[current]=i_len;
+			current++;
+		}
+		return current;
+	}
+	/**
+	 * {@link #xLineToRle(int, int, int, int, int[], int[])}の、{@link NyARLabeling_Rle.RleElement}に出力する版です。
+	 */
+	final int xLineToRle(int i_x,int i_y,int i_len,int i_th,NyARLabeling_Rle.RleElement[] o_out)
+	{
+		final int[] ii=(int[])this._iimage.getBuffer();
+		final int k=i_th-(CENTER-1);
+		final int y0=i_y-this._radius-1;
+		final int y1=i_y+this._radius<this._size.h?i_y+this._radius:this._size.h-1;
+		final int p0=y0>=0?y0*this._size.w:-1;
+		final int p1=y1*this._size.w;
+		final int wh=y1-(y0>=0?y0:-1);
+		int current=0;
+		int l=-1;
+		for(int i=0;i<i_len;i++){
+			if(this.isDark(ii,p0,p1,wh,i_x+i,i_y,k)){
+				if(l<0){
+					l=i;
+				}
+			}else if(l>=0){
+				o_out[current].l=l;
+				o_out[current].r=i;
+				current++;
+				l=-1;
+			}
+		}
+		if(l>=0){
+			o_out[current].l=l;
+			o_out[current].r=i_len;
+			current++;
+		}
+		return current;
+	}
+}
+
+/**
+ * {@link NyARAdaptiveThresholdRaster}の{@link NyARLabeling_Rle}用ドライバ
+ */
+class NyARAdaptiveRlePixelDriver implements NyARLabeling_Rle.IRasterDriver
+{
+	private final NyARAdaptiveThresholdRaster _ref_raster;
+	public NyARAdaptiveRlePixelDriver(NyARAdaptiveThresholdRaster i_raster)
+	{
+		this._ref_raster=i_raster;
+	}
+	public int xLineToRle(int i_x,int i_y,int i_len,int i_th,NyARLabeling_Rle.RleElement[] i_out)
+	{
+		return this._ref_raster.xLineToRle(i_x,i_y,i_len,i_th,i_out);
+	}
+}
+
+/**
+ * {@link NyARAdaptiveThresholdRaster}の{@link NyARRleLabelingEngine}用ドライバ
+ */
+class NyARAdaptiveRleEnginePixelDriver implements NyARRleLabelingEngine.IRasterDriver
+{
+	private final NyARAdaptiveThresholdRaster _ref_raster;
+	public NyARAdaptiveRleEnginePixelDriver(NyARAdaptiveThresholdRaster i_raster)
+	{
+		this._ref_raster=i_raster;
+	}
+	public int xLineToRle(int i_x,int i_y,int i_len,int i_th,int[] o_l,int[] o_r)
+	{
+		return this._ref_raster.xLineToRle(i_x,i_y,i_len,i_th,o_l,o_r);
+	}
+}
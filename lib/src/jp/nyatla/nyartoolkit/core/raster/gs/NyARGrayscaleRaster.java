@@ -26,10 +26,12 @@
 package jp.nyatla.nyartoolkit.core.raster.gs;
 
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.gs.format.NyARGsRaster_BBUF1D_GRAY_8;
 import jp.nyatla.nyartoolkit.core.raster.gs.format.NyARGsRaster_INT1D_GRAY_8;
 import jp.nyatla.nyartoolkit.core.rasterdriver.histogram.INyARHistogramFromRaster;
 import jp.nyatla.nyartoolkit.core.rasterdriver.histogram.NyARHistogramFromRasterFactory;
 import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARLabeling_Rle;
+import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARRleLabelingEngine;
 import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARContourPickup;
 import jp.nyatla.nyartoolkit.core.types.*;
 
@@ -63,6 +65,7 @@ public abstract class NyARGrayscaleRaster implements INyARGrayscaleRaster
 	 * {@link NyARBufferType}に定義された定数値を指定してください。指定できる値は、以下の通りです。
 	 * <ul>
 	 * <li>{@link NyARBufferType#INT1D_GRAY_8}
+	 * <li>{@link NyARBufferType#BBUF1D_GRAY_8} - バッファは{@link java.nio.ByteBuffer}です。
 	 * <ul>
 	 * @param i_is_alloc
 	 * バッファを外部参照にするかのフラグ値。
@@ -75,6 +78,8 @@ public abstract class NyARGrayscaleRaster implements INyARGrayscaleRaster
 		switch(i_raster_type){
 		case NyARBufferType.INT1D_GRAY_8:
 			return new NyARGsRaster_INT1D_GRAY_8(i_width,i_height,i_is_alloc);
+		case NyARBufferType.BBUF1D_GRAY_8:
+			return new NyARGsRaster_BBUF1D_GRAY_8(i_width,i_height,i_is_alloc);
 		}
 		throw new NyARRuntimeException();
 	}
@@ -177,6 +182,9 @@ public abstract class NyARGrayscaleRaster implements INyARGrayscaleRaster
 		if(i_iid==NyARLabeling_Rle.IRasterDriver.class){
 			return NyARLabeling_Rle.RasterDriverFactory.createDriver(this);
 		}
+		if(i_iid==NyARRleLabelingEngine.IRasterDriver.class){
+			return NyARRleLabelingEngine.RasterDriverFactory.createDriver(this);
+		}
 		if(i_iid==NyARContourPickup.IRasterDriver.class){
 			return NyARContourPickup.ImageDriverFactory.createDriver(this);
 		}
@@ -0,0 +1,76 @@
+package jp.nyatla.nyartoolkit.core.raster.gs.format;
+
+import java.nio.ByteBuffer;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+
+/**
+ * このクラスは、{@link ByteBuffer}をバッファに持つグレースケールラスタです。
+ * 1画素は1バイト(0-255)です。
+ * 画素はバッファの先頭(インデクス0)から格納します。position/limitは使用しません。
+ */
+public class NyARGsRaster_BBUF1D_GRAY_8 extends NyARGrayscaleRaster
+{
+	protected ByteBuffer _buf;
+	public NyARGsRaster_BBUF1D_GRAY_8(int i_width,int i_height,boolean i_is_alloc)
+	{
+		super(i_width,i_height,i_is_alloc);
+		this._buf=i_is_alloc ? ByteBuffer.allocateDirect(i_width * i_height) : null;
+	}
+
+	@Override
+	final public Object getBuffer()
+	{
+		return this._buf;
+	}
+	@Override
+	final public int getBufferType()
+	{
+		return NyARBufferType.BBUF1D_GRAY_8;
+	}
+	/**
+	 * この関数は、ラスタに外部参照バッファをセットします。
+	 * 外部参照バッファを持つインスタンスでのみ使用できます。内部参照バッファを持つインスタンスでは使用できません。
+	 */
+	@Override
+	final public void wrapBuffer(Object i_buf)
+	{
+		assert (!this._is_attached_buffer);// バッファがアタッチされていたら機能しない。
+		ByteBuffer b=(ByteBuffer)i_buf;
+		if(b.capacity()<this._size.w*this._size.h){
+			throw new NyARRuntimeException();
+		}
+		this._buf = b;
+	}
+	@Override
+	final public int[] getPixelSet(int[] i_x, int[] i_y, int i_n, int[] o_buf,int i_st_buf)
+	{
+		final int w = this._size.w;
+		final ByteBuffer b = this._buf;
+		for (int i = i_n - 1; i >= 0; i--) {
+			o_buf[i_st_buf+i] = b.get(i_x[i] + i_y[i] * w) & 0xff;
+		}
+		return o_buf;
+	}
+	@Override
+	final public int getPixel(int i_x, int i_y)
+	{
+		return this._buf.get(i_x + i_y * this._size.w) & 0xff;
+	}
+	@Override
+	final public void setPixel(int i_x, int i_y, int i_gs)
+	{
+		this._buf.put(i_x + i_y * this._size.w,(byte)i_gs);
+	}
+	@Override
+	final public void setPixels(int[] i_x, int[] i_y, int i_num, int[] i_intgs)
+	{
+		int w=this._size.w;
+		ByteBuffer r=this._buf;
+		for (int i = i_num - 1; i >= 0; i--){
+			r.put(i_x[i] + i_y[i] * w,(byte)i_intgs[i]);
+		}
+	}
+}
@@ -27,18 +27,23 @@ package jp.nyatla.nyartoolkit.core.raster.rgb;
 
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
 import jp.nyatla.nyartoolkit.core.marker.artk.match.NyARMatchPattDeviationColorData;
+import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BBUF1D_C8C8C8;
 import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BYTE1D_B8G8R8X8_32;
 import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BYTE1D_B8G8R8_24;
 import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BYTE1D_R8G8B8_24;
 import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BYTE1D_X8B8G8R8_32;
 import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BYTE1D_X8R8G8B8_32;
+import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BYTE1D_YUV420;
 import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_INT1D_X8R8G8B8_32;
 import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_WORD1D_R5G6B5_16LE;
+import jp.nyatla.nyartoolkit.core.rasterdriver.histogram.INyARHistogramFromRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.histogram.NyARHistogramFromRasterFactory;
 import jp.nyatla.nyartoolkit.core.rasterdriver.perspectivecopy.INyARPerspectiveCopy;
 import jp.nyatla.nyartoolkit.core.rasterdriver.perspectivecopy.NyARPerspectiveCopyFactory;
 import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilter;
 import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilterArtkTh;
 import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilterRgbAve;
+import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilterRgbAveHist;
 import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilterRgbCube;
 import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilterYCbCr;
 import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.NyARRgb2GsFilterArtkThFactory;
@@ -57,7 +62,18 @@ import jp.nyatla.nyartoolkit.core.types.*;
  * <li>{@link NyARBufferType#BYTE1D_B8G8R8_24}
  * <li>{@link NyARBufferType#BYTE1D_X8R8G8B8_32}
  * <li>{@link NyARBufferType#WORD1D_R5G6B5_16LE}
+ * <li>{@link NyARBufferType#BBUF1D_R8G8B8_24}
+ * <li>{@link NyARBufferType#BBUF1D_B8G8R8_24}
+ * <li>{@link NyARBufferType#BBUF1D_B8G8R8X8_32}
+ * <li>{@link NyARBufferType#BBUF1D_X8R8G8B8_32}
+ * <li>{@link NyARBufferType#BBUF1D_X8B8G8R8_32}
+ * <li>{@link NyARBufferType#BYTE1D_YUV420SP}
+ * <li>{@link NyARBufferType#BYTE1D_NV12}
+ * <li>{@link NyARBufferType#BYTE1D_I420}
+ * <li>{@link NyARBufferType#BYTE1D_YV12}
  * </ul>
+ * BBUF1D形式のバッファは{@link java.nio.ByteBuffer}です。
+ * YUV形式のラスタは、グレースケール化にY面を使い、RGB値は読み出した画素だけを変換します。
  * </p>
  */
 public abstract class NyARRgbRaster implements INyARRgbRaster
@@ -100,6 +116,17 @@ public abstract class NyARRgbRaster implements INyARRgbRaster
 				return new NyARRgbRaster_BYTE1D_B8G8R8_24(i_width,i_height,i_is_alloc);				
 			case NyARBufferType.WORD1D_R5G6B5_16LE:
 				return new NyARRgbRaster_WORD1D_R5G6B5_16LE(i_width,i_height,i_is_alloc);				
+			case NyARBufferType.BBUF1D_R8G8B8_24:
+			case NyARBufferType.BBUF1D_B8G8R8_24:
+			case NyARBufferType.BBUF1D_B8G8R8X8_32:
+			case NyARBufferType.BBUF1D_X8R8G8B8_32:
+			case NyARBufferType.BBUF1D_X8B8G8R8_32:
+				return new NyARRgbRaster_BBUF1D_C8C8C8(i_width,i_height,i_buffer_type,i_is_alloc);
+			case NyARBufferType.BYTE1D_YUV420SP:
+			case NyARBufferType.BYTE1D_NV12:
+			case NyARBufferType.BYTE1D_I420:
+			case NyARBufferType.BYTE1D_YV12:
+				return new NyARRgbRaster_BYTE1D_YUV420(i_width,i_height,i_buffer_type,i_is_alloc);
 			default:
 				throw new NyARRuntimeException();
 		}		
@@ -121,6 +148,26 @@ public abstract class NyARRgbRaster implements INyARRgbRaster
 	{
 		return createInstance(i_width,i_height,i_raster_type,true);
 	}
+	/**
+	 * 外部参照バッファをラップしたインスタンスを生成します。
+	 * i_bufには、バッファ形式に対応する配列、または{@link java.nio.ByteBuffer}を指定します。
+	 * メモリマップドファイルやダイレクトバッファの画像は、BBUF1D形式を指定すればコピーせずに処理できます。
+	 * @param i_width
+	 * ラスタのサイズ
+	 * @param i_height
+	 * ラスタのサイズ
+	 * @param i_raster_type
+	 * ラスタのバッファ形式。
+	 * @param i_buf
+	 * ラップするバッファ
+	 * @throws NyARRuntimeException
+	 */
+	public static INyARRgbRaster createInstance(int i_width, int i_height,int i_raster_type,Object i_buf)
+	{
+		INyARRgbRaster ret=createInstance(i_width,i_height,i_raster_type,false);
+		ret.wrapBuffer(i_buf);
+		return ret;
+	}
 	/**
 	 * コンストラクタです。
 	 * 画像サイズを指定してインスタンスを生成します。
@@ -197,9 +244,11 @@ public abstract class NyARRgbRaster implements INyARRgbRaster
 	 * <li>{@link NyARMatchPattDeviationColorData.IRasterDriver}
 	 * <li>{@link INyARRgb2GsFilter}
 	 * <li>{@link INyARRgb2GsFilterRgbAve}
+	 * <li>{@link INyARRgb2GsFilterRgbAveHist}
 	 * <li>{@link INyARRgb2GsFilterRgbCube}
 	 * <li>{@link INyARRgb2GsFilterYCbCr}
 	 * <li>{@link INyARRgb2GsFilterArtkTh}
+	 * <li>{@link INyARHistogramFromRaster}
 	 * </ul>
 	 */
 	public Object createInterface(Class<?> iIid)
@@ -215,6 +264,8 @@ public abstract class NyARRgbRaster implements INyARRgbRaster
 			return NyARRgb2GsFilterFactory.createRgbAveDriver(this);
 		}else if(iIid==INyARRgb2GsFilterRgbAve.class){
 			return NyARRgb2GsFilterFactory.createRgbAveDriver(this);
+		}else if(iIid==INyARRgb2GsFilterRgbAveHist.class){
+			return NyARRgb2GsFilterFactory.createRgbAveHistDriver(this);
 		}else if(iIid==INyARRgb2GsFilterRgbCube.class){
 			return NyARRgb2GsFilterFactory.createRgbCubeDriver(this);
 		}else if(iIid==INyARRgb2GsFilterYCbCr.class){
@@ -223,6 +274,9 @@ public abstract class NyARRgbRaster implements INyARRgbRaster
 		if(iIid==INyARRgb2GsFilterArtkTh.class){
 			return NyARRgb2GsFilterArtkThFactory.createDriver(this);
 		}
+		if(iIid==INyARHistogramFromRaster.class){
+			return NyARHistogramFromRasterFactory.createInstance(this);
+		}
 		//クラスが見つからない
 		throw new NyARRuntimeException("Interface not found!");
 //		return null;
@@ -0,0 +1,144 @@
+package jp.nyatla.nyartoolkit.core.raster.rgb.format;
+
+import java.nio.ByteBuffer;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.rgb.NyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+
+/**
+ * このクラスは、{@link ByteBuffer}をバッファに持つRGBラスタです。
+ * ダイレクトバッファや{@link java.nio.MappedByteBuffer}をラップすると、ヒープへのコピーをせずに画像を処理できます。
+ * <p>
+ * 画素はバッファの先頭(インデクス0)から格納します。position/limitは使用しません。
+ * バッファの一部を使う場合は、{@link ByteBuffer#slice}で切り出したものを指定してください。
+ * </p>
+ * 対応しているバッファタイプ-
+ * <ul>
+ * <li>{@link NyARBufferType#BBUF1D_R8G8B8_24}
+ * <li>{@link NyARBufferType#BBUF1D_B8G8R8_24}
+ * <li>{@link NyARBufferType#BBUF1D_B8G8R8X8_32}
+ * <li>{@link NyARBufferType#BBUF1D_X8R8G8B8_32}
+ * <li>{@link NyARBufferType#BBUF1D_X8B8G8R8_32}
+ * </ul>
+ */
+public class NyARRgbRaster_BBUF1D_C8C8C8 extends NyARRgbRaster
+{
+	/**
+	 * この関数は、バッファ形式の画素サイズと、画素内のR,G,Bの位置を返します。
+	 * ラスタドライバから使います。
+	 * @param i_buffer_type
+	 * BBUF1D形式のバッファタイプ値。
+	 * @return
+	 * [R位置,G位置,B位置,画素サイズ]の配列。
+	 */
+	public static int[] getPixelLayout(int i_buffer_type)
+	{
+		switch(i_buffer_type){
+		case NyARBufferType.BBUF1D_R8G8B8_24:
+			return new int[]{0,1,2,3};
+		case NyARBufferType.BBUF1D_B8G8R8_24:
+			return new int[]{2,1,0,3};
+		case NyARBufferType.BBUF1D_B8G8R8X8_32:
+			return new int[]{2,1,0,4};
+		case NyARBufferType.BBUF1D_X8R8G8B8_32:
+			return new int[]{1,2,3,4};
+		case NyARBufferType.BBUF1D_X8B8G8R8_32:
+			return new int[]{3,2,1,4};
+		default:
+			throw new NyARRuntimeException();
+		}
+	}
+	protected ByteBuffer _buf;
+	private final int _buffer_type;
+	private final int _r;
+	private final int _g;
+	private final int _b;
+	private final int _pix;
+	/**
+	 * コンストラクタです。
+	 * @param i_width
+	 * ラスタのサイズ
+	 * @param i_height
+	 * ラスタのサイズ
+	 * @param i_buffer_type
+	 * BBUF1D形式のバッファタイプ値。
+	 * @param i_is_alloc
+	 * trueなら、ダイレクトバッファを確保します。
+	 */
+	public NyARRgbRaster_BBUF1D_C8C8C8(int i_width, int i_height,int i_buffer_type,boolean i_is_alloc)
+	{
+		super(i_width, i_height, i_is_alloc);
+		int[] l=getPixelLayout(i_buffer_type);
+		this._buffer_type=i_buffer_type;
+		this._r=l[0];
+		this._g=l[1];
+		this._b=l[2];
+		this._pix=l[3];
+		this._buf=i_is_alloc?ByteBuffer.allocateDirect(i_width*i_height*this._pix):null;
+	}
+	@Override
+	final public Object getBuffer()
+	{
+		return this._buf;
+	}
+	@Override
+	final public int getBufferType()
+	{
+		return this._buffer_type;
+	}
+	@Override
+	final public void wrapBuffer(Object i_buf)
+	{
+		assert (!this._is_attached_buffer);// バッファがアタッチされていたら機能しない。
+		ByteBuffer b=(ByteBuffer)i_buf;
+		if(b.capacity()<this._size.w*this._size.h*this._pix){
+			throw new NyARRuntimeException();
+		}
+		this._buf = b;
+	}
+	@Override
+	final public int[] getPixel(int i_x, int i_y, int[] o_rgb)
+	{
+		final ByteBuffer ref_buf = this._buf;
+		final int bp = (i_x + i_y * this._size.w) * this._pix;
+		o_rgb[0] = (ref_buf.get(bp + this._r) & 0xff);// R
+		o_rgb[1] = (ref_buf.get(bp + this._g) & 0xff);// G
+		o_rgb[2] = (ref_buf.get(bp + this._b) & 0xff);// B
+		return o_rgb;
+	}
+	@Override
+	final public int[] getPixelSet(int[] i_x, int[] i_y, int i_num, int[] o_rgb)
+	{
+		int bp;
+		final int width = this._size.w;
+		final int pix = this._pix;
+		final ByteBuffer ref_buf = this._buf;
+		for (int i = i_num - 1; i >= 0; i--) {
+			bp = (i_x[i] + i_y[i] * width) * pix;
+			o_rgb[i * 3 + 0] = (ref_buf.get(bp + this._r) & 0xff);// R
+			o_rgb[i * 3 + 1] = (ref_buf.get(bp + this._g) & 0xff);// G
+			o_rgb[i * 3 + 2] = (ref_buf.get(bp + this._b) & 0xff);// B
+		}
+		return o_rgb;
+	}
+	@Override
+	final public void setPixel(int i_x, int i_y, int i_r, int i_g, int i_b)
+	{
+		final ByteBuffer ref_buf = this._buf;
+		final int bp = (i_x + i_y * this._size.w) * this._pix;
+		ref_buf.put(bp + this._r,(byte) i_r);// R
+		ref_buf.put(bp + this._g,(byte) i_g);// G
+		ref_buf.put(bp + this._b,(byte) i_b);// B
+	}
+	@Override
+	final public void setPixel(int i_x, int i_y, int[] i_rgb)
+	{
+		this.setPixel(i_x,i_y,i_rgb[0],i_rgb[1],i_rgb[2]);
+	}
+	@Override
+	final public void setPixels(int[] i_x, int[] i_y, int i_num, int[] i_intrgb)
+	{
+		NyARRuntimeException.notImplement();
+	}
+}
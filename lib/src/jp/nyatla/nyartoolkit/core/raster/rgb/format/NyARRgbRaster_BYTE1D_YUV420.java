@@ -0,0 +1,152 @@
+package jp.nyatla.nyartoolkit.core.raster.rgb.format;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.rgb.NyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+
+/**
+ * このクラスは、YUV420形式のbyte[]をバッファに持つラスタです。
+ * バッファの先頭はw*hバイトのY面で、その後に(w+1)/2*(h+1)/2画素の色差面が続きます。
+ * <p>
+ * RGB値は、{@link #getPixel}等で読み出した画素だけをITU-R BT.601(16-235)で変換します。
+ * グレースケール化ドライバはY面をそのまま使うので、画像全体のRGB変換は行いません。
+ * </p>
+ * 対応しているバッファタイプ-
+ * <ul>
+ * <li>{@link NyARBufferType#BYTE1D_YUV420SP} (NV21)
+ * <li>{@link NyARBufferType#BYTE1D_NV12}
+ * <li>{@link NyARBufferType#BYTE1D_I420}
+ * <li>{@link NyARBufferType#BYTE1D_YV12}
+ * </ul>
+ */
+public class NyARRgbRaster_BYTE1D_YUV420 extends NyARRgbRaster
+{
+	/**
+	 * この関数は、YUV420形式のバッファサイズを返します。
+	 * @param i_width
+	 * @param i_height
+	 * @return
+	 * バイト数
+	 */
+	public static int getBufferSize(int i_width,int i_height)
+	{
+		return i_width*i_height+((i_width+1)/2)*((i_height+1)/2)*2;
+	}
+	protected byte[] _buf;
+	private final int _buffer_type;
+	/** U,V面の先頭位置*/
+	private final int _u_base;
+	private final int _v_base;
+	/** 色差面の1画素/1行の幅*/
+	private final int _c_step;
+	private final int _c_row;
+	public NyARRgbRaster_BYTE1D_YUV420(int i_width, int i_height,int i_buffer_type,boolean i_is_alloc)
+	{
+		super(i_width, i_height, i_is_alloc);
+		final int ys=i_width*i_height;
+		final int cw=(i_width+1)/2;
+		final int cs=cw*((i_height+1)/2);
+		switch(i_buffer_type){
+		case NyARBufferType.BYTE1D_YUV420SP:
+			this._v_base=ys;
+			this._u_base=ys+1;
+			this._c_step=2;
+			break;
+		case NyARBufferType.BYTE1D_NV12:
+			this._u_base=ys;
+			this._v_base=ys+1;
+			this._c_step=2;
+			break;
+		case NyARBufferType.BYTE1D_I420:
+			this._u_base=ys;
+			this._v_base=ys+cs;
+			this._c_step=1;
+			break;
+		case NyARBufferType.BYTE1D_YV12:
+			this._v_base=ys;
+			this._u_base=ys+cs;
+			this._c_step=1;
+			break;
+		default:
+			throw new NyARRuntimeException();
+		}
+		this._c_row=cw*this._c_step;
+		this._buffer_type=i_buffer_type;
+		this._buf=i_is_alloc?new byte[getBufferSize(i_width,i_height)]:null;
+	}
+	@Override
+	final public Object getBuffer()
+	{
+		return this._buf;
+	}
+	@Override
+	final public int getBufferType()
+	{
+		return this._buffer_type;
+	}
+	@Override
+	final public void wrapBuffer(Object i_buf)
+	{
+		assert (!this._is_attached_buffer);// バッファがアタッチされていたら機能しない。
+		//ラスタの形式は省略。
+		this._buf = (byte[])i_buf;
+	}
+	@Override
+	final public int[] getPixel(int i_x, int i_y, int[] o_rgb)
+	{
+		final byte[] ref_buf = this._buf;
+		final int cp=(i_y>>1)*this._c_row+(i_x>>1)*this._c_step;
+		yuv2rgb(ref_buf[i_x+i_y*this._size.w]&0xff,ref_buf[this._u_base+cp]&0xff,ref_buf[this._v_base+cp]&0xff,o_rgb,0);
+		return o_rgb;
+	}
+	@Override
+	final public int[] getPixelSet(int[] i_x, int[] i_y, int i_num, int[] o_rgb)
+	{
+		final int width = this._size.w;
+		final byte[] ref_buf = this._buf;
+		for (int i = i_num - 1; i >= 0; i--) {
+			final int x=i_x[i];
+			final int y=i_y[i];
+			final int cp=(y>>1)*this._c_row+(x>>1)*this._c_step;
+			yuv2rgb(ref_buf[x+y*width]&0xff,ref_buf[this._u_base+cp]&0xff,ref_buf[this._v_base+cp]&0xff,o_rgb,i*3);
+		}
+		return o_rgb;
+	}
+	/**
+	 * 色差は2x2画素で共有するので、最後に書き込んだ画素の値になります。
+	 */
+	@Override
+	final public void setPixel(int i_x, int i_y, int i_r, int i_g, int i_b)
+	{
+		final byte[] ref_buf = this._buf;
+		final int cp=(i_y>>1)*this._c_row+(i_x>>1)*this._c_step;
+		ref_buf[i_x+i_y*this._size.w]=(byte)((( 66*i_r+129*i_g+ 25*i_b+128)>>8)+16);
+		ref_buf[this._u_base+cp]     =(byte)(((-38*i_r- 74*i_g+112*i_b+128)>>8)+128);
+		ref_buf[this._v_base+cp]     =(byte)(((112*i_r- 94*i_g- 18*i_b+128)>>8)+128);
+	}
+	@Override
+	final public void setPixel(int i_x, int i_y, int[] i_rgb)
+	{
+		this.setPixel(i_x,i_y,i_rgb[0],i_rgb[1],i_rgb[2]);
+	}
+	@Override
+	final public void setPixels(int[] i_x, int[] i_y, int i_num, int[] i_intrgb)
+	{
+		NyARRuntimeException.notImplement();
+	}
+	/**
+	 * 1画素のYUV値をRGB値に変換して、o_rgb[i_idx]から格納します。
+	 */
+	private static void yuv2rgb(int i_y,int i_u,int i_v,int[] o_rgb,int i_idx)
+	{
+		int y=1192*(i_y<16?0:i_y-16);
+		int u=i_u-128;
+		int v=i_v-128;
+		int r=(y+1634*v)>>10;
+		int g=(y-833*v-400*u)>>10;
+		int b=(y+2066*u)>>10;
+		o_rgb[i_idx+0]=r<0?0:(r>255?255:r);// R
+		o_rgb[i_idx+1]=g<0?0:(g>255?255:g);// G
+		o_rgb[i_idx+2]=b<0?0:(b>255?255:b);// B
+	}
+}
@@ -25,11 +25,14 @@
  */
 package jp.nyatla.nyartoolkit.core.rasterdriver.histogram;
 
+import java.nio.ByteBuffer;
+
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
 import jp.nyatla.nyartoolkit.core.histogram.NyARHistogram;
 import jp.nyatla.nyartoolkit.core.raster.INyARRaster;
 import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
 import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BBUF1D_C8C8C8;
 import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
 import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
 
@@ -41,6 +44,8 @@ import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
  * <li>{@link INyARRgbRaster}の継承ラスタ</li>
  * <li>{@link NyARBufferType#INT1D_GRAY_8}形式のバッファを持つもの<li>
  * <li>{@link NyARBufferType#INT1D_BIN_8}形式のバッファを持つもの<li>
+ * <li>BBUF1D形式({@link ByteBuffer})のバッファを持つもの<li>
+ * <li>YUV420形式のバッファを持つもの(Y面のヒストグラム)<li>
  */
 public class NyARHistogramFromRasterFactory
 {
@@ -50,6 +55,8 @@ public class NyARHistogramFromRasterFactory
 		case NyARBufferType.INT1D_GRAY_8:
 		case NyARBufferType.INT1D_BIN_8:
 			return new NyARHistogramFromRaster_INTGS8(i_raster);
+		case NyARBufferType.BBUF1D_GRAY_8:
+			return new NyARHistogramFromRaster_BBUFGS8(i_raster);
 		default:
 			if(i_raster instanceof INyARGrayscaleRaster){
 				return new NyARHistogramFromRaster_AnyGs((INyARGrayscaleRaster)i_raster);
@@ -63,6 +70,21 @@ public class NyARHistogramFromRasterFactory
 	}
 	public static INyARHistogramFromRaster createInstance(INyARRgbRaster i_raster)
 	{
+		switch(i_raster.getBufferType()){
+		case NyARBufferType.BBUF1D_R8G8B8_24:
+		case NyARBufferType.BBUF1D_B8G8R8_24:
+		case NyARBufferType.BBUF1D_B8G8R8X8_32:
+		case NyARBufferType.BBUF1D_X8R8G8B8_32:
+		case NyARBufferType.BBUF1D_X8B8G8R8_32:
+			return new NyARHistogramFromRaster_BBUFRgb(i_raster);
+		case NyARBufferType.BYTE1D_YUV420SP:
+		case NyARBufferType.BYTE1D_NV12:
+		case NyARBufferType.BYTE1D_I420:
+		case NyARBufferType.BYTE1D_YV12:
+			return new NyARHistogramFromRaster_BYTE1D_Y8(i_raster);
+		default:
+			break;
+		}
 		if(i_raster instanceof INyARRgbRaster){
 			return new NyARHistogramFromRaster_AnyRgb((INyARRgbRaster)i_raster);
 		}
@@ -183,6 +205,121 @@ class NyARHistogramFromRaster_INTGS8 implements INyARHistogramFromRaster
 }
 
 
+class NyARHistogramFromRaster_BBUFGS8 implements INyARHistogramFromRaster
+{
+	private INyARRaster _gsr;
+	public NyARHistogramFromRaster_BBUFGS8(INyARRaster i_raster)
+	{
+		this._gsr=i_raster;
+	}
+	public void createHistogram(int i_skip,NyARHistogram o_histogram)
+	{
+		NyARIntSize s=this._gsr.getSize();
+		this.createHistogram(0,0,s.w,s.h,i_skip,o_histogram);
+	}
+	public void createHistogram(int i_l,int i_t,int i_w,int i_h,int i_skip,NyARHistogram o_histogram)
+	{
+		o_histogram.reset();
+		final ByteBuffer input=(ByteBuffer)this._gsr.getBuffer();
+		NyARIntSize s=this._gsr.getSize();
+		int skip=(i_skip*s.w-i_w);
+		//左上から1行づつ走査していく
+		int pt=(i_t*s.w+i_l);
+		int[] data=o_histogram.data;
+		for (int y = i_h-1; y >=0 ; y-=i_skip){
+			for (int x = i_w-1; x >=0; x--){
+				data[input.get(pt++)&0xff]++;
+			}
+			//スキップ
+			pt+=skip;
+		}
+		o_histogram.total_of_data=i_w*i_h/i_skip;
+		return;
+	}
+}
+
+/**
+ * YUV420形式のラスタのY面からヒストグラムを作ります。
+ */
+class NyARHistogramFromRaster_BYTE1D_Y8 implements INyARHistogramFromRaster
+{
+	private INyARRaster _gsr;
+	public NyARHistogramFromRaster_BYTE1D_Y8(INyARRaster i_raster)
+	{
+		this._gsr=i_raster;
+	}
+	public void createHistogram(int i_skip,NyARHistogram o_histogram)
+	{
+		NyARIntSize s=this._gsr.getSize();
+		this.createHistogram(0,0,s.w,s.h,i_skip,o_histogram);
+	}
+	public void createHistogram(int i_l,int i_t,int i_w,int i_h,int i_skip,NyARHistogram o_histogram)
+	{
+		o_histogram.reset();
+		final byte[] input=(byte[])this._gsr.getBuffer();
+		NyARIntSize s=this._gsr.getSize();
+		int skip=(i_skip*s.w-i_w);
+		//左上から1行づつ走査していく
+		int pt=(i_t*s.w+i_l);
+		int[] data=o_histogram.data;
+		for (int y = i_h-1; y >=0 ; y-=i_skip){
+			for (int x = i_w-1; x >=0; x--){
+				data[input[pt++]&0xff]++;
+			}
+			//スキップ
+			pt+=skip;
+		}
+		o_histogram.total_of_data=i_w*i_h/i_skip;
+		return;
+	}
+}
+
+class NyARHistogramFromRaster_BBUFRgb implements INyARHistogramFromRaster
+{
+	private INyARRaster _gsr;
+	private final int _r;
+	private final int _g;
+	private final int _b;
+	private final int _pix;
+	public NyARHistogramFromRaster_BBUFRgb(INyARRaster i_raster)
+	{
+		int[] l=NyARRgbRaster_BBUF1D_C8C8C8.getPixelLayout(i_raster.getBufferType());
+		this._gsr=i_raster;
+		this._r=l[0];
+		this._g=l[1];
+		this._b=l[2];
+		this._pix=l[3];
+	}
+	public void createHistogram(int i_skip,NyARHistogram o_histogram)
+	{
+		NyARIntSize s=this._gsr.getSize();
+		this.createHistogram(0,0,s.w,s.h,i_skip,o_histogram);
+	}
+	public void createHistogram(int i_l,int i_t,int i_w,int i_h,int i_skip,NyARHistogram o_histogram)
+	{
+		o_histogram.reset();
+		final ByteBuffer input=(ByteBuffer)this._gsr.getBuffer();
+		NyARIntSize s=this._gsr.getSize();
+		final int pix=this._pix;
+		final int r=this._r;
+		final int g=this._g;
+		final int b=this._b;
+		int skip=(i_skip*s.w-i_w)*pix;
+		//左上から1行づつ走査していく
+		int pt=(i_t*s.w+i_l)*pix;
+		int[] data=o_histogram.data;
+		for (int y = i_h-1; y >=0 ; y-=i_skip){
+			for (int x = i_w-1; x >=0; x--){
+				data[((input.get(pt+r)&0xff)+(input.get(pt+g)&0xff)+(input.get(pt+b)&0xff))/3]++;
+				pt+=pix;
+			}
+			//スキップ
+			pt+=skip;
+		}
+		o_histogram.total_of_data=i_w*i_h/i_skip;
+		return;
+	}
+}
 
 
 
@@ -25,13 +25,14 @@
  */
 package jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle;
 
+import java.util.concurrent.ForkJoinPool;
+
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
 import jp.nyatla.nyartoolkit.core.raster.*;
 import jp.nyatla.nyartoolkit.core.raster.bin.NyARBinRaster;
 import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
 import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
 import jp.nyatla.nyartoolkit.core.types.*;
-import jp.nyatla.nyartoolkit.core.types.stack.NyARObjectStack;
 
 
 /**
@@ -60,6 +61,10 @@ import jp.nyatla.nyartoolkit.core.types.stack.NyARObjectStack;
  * </ul>
  * </p>
  * </p>
+ * <p>並列ラベリング -
+ * {@link #setParallelMode}を設定すると、画像を水平方向のストリップに分割して並列にラベリングします。
+ * 出力されるラベルとその順番は、シリアル処理と同じです。
+ * </p>
  */
 public abstract class NyARLabeling_Rle
 {
@@ -130,6 +135,8 @@ public abstract class NyARLabeling_Rle
 	private int _min_area;
 	/** 入力ラスタのサイズ*/
 	protected NyARIntSize _raster_size=new NyARIntSize();
+	/** 並列ラベリングの実装。nullの場合はシリアル処理です。*/
+	private NyARRleStripLabeler _strip_labeler=null;
 	/**
 	 * コンストラクタです。{@link #labeling}に入力するラスタのサイズを指定して、インスタンスを生成します。
 	 * @param i_width
@@ -171,6 +178,23 @@ public abstract class NyARLabeling_Rle
 		this._min_area=i_min;
 		return;
 	}
+	/**
+	 * 並列ラベリングモードを設定します。
+	 * 画像を最大でi_number_of_strips個の水平ストリップに分割して、i_poolでラベリングします。
+	 * ストリップの高さが小さくなる画像では、シリアル処理を行います。
+	 * @param i_pool
+	 * ストリップの処理に使うスレッドプール。
+	 * @param i_number_of_strips
+	 * 最大ストリップ数。1以下の場合は、シリアル処理に戻します。
+	 */
+	public void setParallelMode(ForkJoinPool i_pool,int i_number_of_strips)
+	{
+		if(i_pool==null || i_number_of_strips<2){
+			this._strip_labeler=null;
+			return;
+		}
+		this._strip_labeler=new NyARRleStripLabeler(i_pool,i_number_of_strips,this._raster_size.w,this._rlestack.getArraySize());
+	}
 	/**
 	 * フラグメントをRLEスタックへ追加する。
 	 * @param i_rel_img
@@ -231,7 +255,7 @@ public abstract class NyARLabeling_Rle
 	 */
 	public boolean labeling(INyARGrayscaleRaster i_raster,NyARIntRect i_area,int i_th)
 	{
-		return this.imple_labeling(i_raster,0,i_area.x,i_area.y,i_area.w,i_area.h);
+		return this.imple_labeling(i_raster,i_th,i_area.x,i_area.y,i_area.w,i_area.h);
 	}
 	private INyARRaster _last_input_raster=null;
 	private IRasterDriver _image_driver;
@@ -249,12 +273,21 @@ public abstract class NyARLabeling_Rle
 		//ラスタドライバのチェック
 		if(_last_input_raster!=i_raster){
 			this._image_driver=(IRasterDriver)i_raster.createInterface(IRasterDriver.class);
+			this._last_input_raster=i_raster;
 		}
 		IRasterDriver pixdrv=this._image_driver;
-		RleElement[] rle_prev = this._rle1;
-		RleElement[] rle_current = this._rle2;
 		// リセット処理
 		final RleInfoStack rlestack=this._rlestack;
+		//並列処理
+		if(this._strip_labeler!=null && this._strip_labeler.getNumberOfStrips(i_height)>1){
+			if(!this._strip_labeler.labeling(pixdrv,i_th,i_left,i_top,i_width,i_height,rlestack)){
+				return false;
+			}
+			this.notifyLabels(rlestack.getArray(),rlestack.getLength(),i_left);
+			return true;
+		}
+		RleElement[] rle_prev = this._rle1;
+		RleElement[] rle_current = this._rle2;
 		rlestack.clear();
 
 		//
@@ -404,6 +437,15 @@ public abstract class NyARLabeling_Rle
 			len_prev = len_current;
 			rle_current = tmp;
 		}
+		this.notifyLabels(f_array,id_max,i_left);
+		return true;
+	}
+	/**
+	 * フラグメント配列から、対象のラベルだけを{@link #onLabelFound}で通知します。
+	 * 通知の順番は、フラグメントIDの降順です。
+	 */
+	private void notifyLabels(NyARRleLabelFragmentInfo[] f_array,int id_max,int i_left)
+	{
 		//対象のラベルだけを追記
 		final int max=this._max_area;
 		final int min=this._min_area;
@@ -422,7 +464,7 @@ public abstract class NyARLabeling_Rle
 			//コールバック関数コール
 			this.onLabelFound(src_info);
 		}
-		return true;
+		return;
 	}
 	/**
 	 * この仮想関数は自己コールバック関数です。
@@ -442,24 +484,6 @@ public abstract class NyARLabeling_Rle
 	public final static boolean _sf_label_array_safe_reference=true;
 }
 
-/**
- * このクラスは、{@link NyARLabeling_Rle_old}が内部的に使うRLEスタックです。
- * ユーザが使うことはありません。
- */
-class RleInfoStack extends NyARObjectStack<NyARRleLabelFragmentInfo>
-{	
-	public RleInfoStack(int i_length)
-	{
-		super(i_length, NyARRleLabelFragmentInfo.class);
-		return;
-	}
-
-	protected NyARRleLabelFragmentInfo createElement()
-	{
-		return new NyARRleLabelFragmentInfo();
-	}
-}
-
 //
 //画像ドライバ
 //
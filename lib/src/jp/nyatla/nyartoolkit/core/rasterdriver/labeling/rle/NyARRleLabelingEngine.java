@@ -0,0 +1,567 @@
+/*
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ *
+ */
+package jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.INyARRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.types.*;
+
+/**
+ * このクラスは、作業領域をプリミティブ配列で持つRLEラベリングエンジンです。
+ * アルゴリズムは{@link NyARLabeling_Rle}と同じですが、RLE要素(l,r,fid)とフラグメント(area,clip,pos)を
+ * 要素毎のオブジェクトではなく、並列なint配列に格納します。
+ * 結合ループがオブジェクトの参照を辿らないので、キャッシュミスが減ります。
+ * <p>結果の取得 -
+ * ラベリングの結果は、{@link #getLabels}で{@link NyARRleLabelFragmentInfoPtrStack}へ出力します。
+ * 出力される要素とその順番は、{@link NyARLabeling_Rle#onLabelFound}の通知と同じです。
+ * </p>
+ * <p>入力できる画素形式 -
+ * {@link NyARLabeling_Rle}と同じです。
+ * </p>
+ */
+public class NyARRleLabelingEngine
+{
+	/**
+	 * NyARRleLabelingEngineクラスが使用するピクセルドライブインタフェイスです。
+	 */
+	public interface IRasterDriver
+	{
+		/**
+		 * 現在のラスタの指定点(x,y)から、幅i_lenの領域をRLE圧縮して、左端と右端の配列に返します。
+		 * @param i_x
+		 * @param i_y
+		 * @param i_len
+		 * @param i_th
+		 * @param o_l
+		 * RLE要素の左端(この点を含む)
+		 * @param o_r
+		 * RLE要素の右端(この点を含まない)
+		 * @return
+		 * RLE要素の数
+		 */
+		public int xLineToRle(int i_x,int i_y,int i_len,int i_th,int[] o_l,int[] o_r);
+	}
+	/**
+	 * Labeling用の画像ドライバを構築します。
+	 */
+	public static class RasterDriverFactory
+	{
+		/**
+		 * この関数はラスタから呼ばれる。
+		 * @param i_raster
+		 * @return
+		 */
+		public static NyARRleLabelingEngine.IRasterDriver createDriver(INyARGrayscaleRaster i_raster)
+		{
+			switch(i_raster.getBufferType()){
+			case NyARBufferType.INT1D_GRAY_8:
+			case NyARBufferType.INT1D_BIN_8:
+				return new NyARRleEnginePixelDriver_BIN_GS8(i_raster);
+			default:
+				if(i_raster instanceof INyARGrayscaleRaster){
+					return new NyARRleEnginePixelDriver_GSReader(i_raster);
+				}
+				throw new NyARRuntimeException();
+			}
+		}
+	}
+	private static final int AR_AREA_MAX = 100000;// #define AR_AREA_MAX 100000
+	private static final int AR_AREA_MIN = 70;// #define AR_AREA_MIN 70
+	private int _max_area;
+	private int _min_area;
+	/** 入力ラスタのサイズ*/
+	protected final NyARIntSize _raster_size=new NyARIntSize();
+
+	//RLE要素(前の行と現在の行)
+	private int[] _rle_l1;
+	private int[] _rle_r1;
+	private int[] _rle_fid1;
+	private int[] _rle_l2;
+	private int[] _rle_r2;
+	private int[] _rle_fid2;
+	//フラグメント
+	private final int _max_frags;
+	private int _num_of_frags;
+	private final int[] _area;
+	private final int[] _clip_l;
+	private final int[] _clip_r;
+	private final int[] _clip_t;
+	private final int[] _clip_b;
+	private final int[] _entry_x;
+	private final long[] _pos_x;
+	private final long[] _pos_y;
+	/** 最後にラベリングした範囲の左端*/
+	private int _left;
+	/** {@link #getLabels}が出力する要素の実体*/
+	private final RleInfoStack _label_pool;
+
+	private INyARRaster _last_input_raster=null;
+	private IRasterDriver _image_driver;
+	/**
+	 * コンストラクタです。入力するラスタのサイズを指定して、インスタンスを生成します。
+	 * @param i_width
+	 * 入力画像の幅
+	 * @param i_height
+	 * 入力画像の高さ
+	 */
+	public NyARRleLabelingEngine(int i_width,int i_height)
+	{
+		this._raster_size.setValue(i_width,i_height);
+		//NyARLabeling_Rleと同じ上限
+		long t=(long)i_width*i_height*3000/(320*240)+100;//full HD support
+		this._max_frags=(int)t;
+		this._area=new int[this._max_frags];
+		this._clip_l=new int[this._max_frags];
+		this._clip_r=new int[this._max_frags];
+		this._clip_t=new int[this._max_frags];
+		this._clip_b=new int[this._max_frags];
+		this._entry_x=new int[this._max_frags];
+		this._pos_x=new long[this._max_frags];
+		this._pos_y=new long[this._max_frags];
+		final int rl=i_width/2+1;
+		this._rle_l1=new int[rl];
+		this._rle_r1=new int[rl];
+		this._rle_fid1=new int[rl];
+		this._rle_l2=new int[rl];
+		this._rle_r2=new int[rl];
+		this._rle_fid2=new int[rl];
+		long p=(long)i_width*i_height*2048/(320*240)+32;
+		this._label_pool=new RleInfoStack((int)p);
+		this._max_area=AR_AREA_MAX;
+		this._min_area=AR_AREA_MIN;
+	}
+	/**
+	 * 検出するラベルのエリア（画素数）範囲を設定します。
+	 * 初期値は、{@link NyARLabeling_Rle}と同じです。
+	 * @param i_max
+	 * エリアの最大値を指定します。
+	 * @param i_min
+	 * エリアの最小値を指定します。
+	 */
+	public void setAreaRange(int i_max,int i_min)
+	{
+		assert(i_min>0 && i_max>i_min);
+		this._max_area=i_max;
+		this._min_area=i_min;
+		return;
+	}
+	/**
+	 * この関数は、ラスタを敷居値i_thで2値化して、ラベリングします。
+	 * 結果は、{@link #getLabels}で取得します。
+	 * @param i_raster
+	 * 入力画像
+	 * @param i_th
+	 * 敷居値を指定します。2値画像の場合は、0を指定してください。
+	 * @return
+	 * フラグメント数が上限に達したときはfalse
+	 */
+	public boolean labeling(INyARGrayscaleRaster i_raster,int i_th)
+	{
+		NyARIntSize size=i_raster.getSize();
+		return this.imple_labeling(i_raster,i_th,0,0,size.w,size.h);
+	}
+	/**
+	 * この関数は、ラスタの指定範囲を敷居値i_thで2値化して、ラベリングします。
+	 * 結果は、{@link #getLabels}で取得します。
+	 * @param i_raster
+	 * 入力画像
+	 * @param i_area
+	 * ラべリングする画像内の範囲
+	 * @param i_th
+	 * 敷居値
+	 * @return
+	 * フラグメント数が上限に達したときはfalse
+	 */
+	public boolean labeling(INyARGrayscaleRaster i_raster,NyARIntRect i_area,int i_th)
+	{
+		return this.imple_labeling(i_raster,i_th,i_area.x,i_area.y,i_area.w,i_area.h);
+	}
+	/**
+	 * 最後の{@link #labeling}の結果から、エリア範囲にあるラベルをo_stackへ追記します。
+	 * 追記する順番は、{@link NyARLabeling_Rle#onLabelFound}の通知と同じです。
+	 * o_stackが一杯になった場合、それ以降のラベルは追記しません。
+	 * <p>
+	 * 追記される要素はこのインスタンスが所有します。値の有効期間は、次の{@link #labeling}か{@link #getLabels}が実行されるまでです。
+	 * </p>
+	 * @param o_stack
+	 * 出力先のスタック
+	 * @param i_ignore_edge
+	 * trueの場合、画像の枠に接するラベルを除外します。
+	 * @return
+	 * 追記したラベルの数
+	 */
+	public int getLabels(NyARRleLabelFragmentInfoPtrStack o_stack,boolean i_ignore_edge)
+	{
+		final int max=this._max_area;
+		final int min=this._min_area;
+		final int left=this._left;
+		final int right=this._raster_size.w-1;
+		final int bottom=this._raster_size.h-1;
+		final int[] area_a=this._area;
+		final RleInfoStack pool=this._label_pool;
+		pool.clear();
+		int n=0;
+		for(int i=this._num_of_frags-1;i>=0;i--){
+			final int area=area_a[i];
+			if(area<min || area>max){//対象外のエリア0のもminではじく
+				continue;
+			}
+			//値を相対位置に補正
+			final int clip_l=this._clip_l[i]+left;
+			final int clip_r=this._clip_r[i]+left;
+			if(i_ignore_edge){
+				// クリップ領域が画面の枠に接していれば除外
+				if(clip_l==0 || clip_r==right || this._clip_t[i]==0 || this._clip_b[i]==bottom){
+					continue;
+				}
+			}
+			NyARRleLabelFragmentInfo v=pool.prePush();
+			if(v==null){
+				break;
+			}
+			v.area=area;
+			v.clip_l=clip_l;
+			v.clip_r=clip_r;
+			v.clip_t=this._clip_t[i];
+			v.clip_b=this._clip_b[i];
+			v.entry_x=this._entry_x[i]+left;
+			v.pos_x=(double)this._pos_x[i]/area;
+			v.pos_y=(double)this._pos_y[i]/area;
+			if(o_stack.push(v)==null){
+				break;
+			}
+			n++;
+		}
+		return n;
+	}
+	private boolean addFragment(int i_l,int i_r,int[] o_fid,int i_idx,int i_row_index)
+	{
+		final int id=this._num_of_frags;
+		if(id>=this._max_frags){
+			return false;
+		}
+		final int len=i_r-i_l;
+		o_fid[i_idx]=id;// REL毎の固有ID
+		this._entry_x[id]=i_l;
+		this._area[id]=len;
+		this._clip_l[id]=i_l;
+		this._clip_r[id]=i_r-1;
+		this._clip_t[id]=i_row_index;
+		this._clip_b[id]=i_row_index;
+		this._pos_x[id]=(len*(2*i_l+(len-1)))/2;
+		this._pos_y[id]=i_row_index*len;
+		this._num_of_frags++;
+		return true;
+	}
+	/**
+	 * ラベリングの実体。ループの構造は{@link NyARLabeling_Rle}と同じです。
+	 * @return
+	 * ラベル数が上限に達したときはfalse
+	 */
+	private boolean imple_labeling(INyARRaster i_raster,int i_th,int i_left,int i_top,int i_width, int i_height)
+	{
+		//ラスタのサイズを確認
+		assert(i_raster.getSize().isEqualSize(this._raster_size));
+		//ラスタドライバのチェック
+		if(this._last_input_raster!=i_raster){
+			this._image_driver=(IRasterDriver)i_raster.createInterface(IRasterDriver.class);
+			this._last_input_raster=i_raster;
+		}
+		final IRasterDriver pixdrv=this._image_driver;
+		final int[] area=this._area;
+		final int[] clip_l=this._clip_l;
+		final int[] clip_r=this._clip_r;
+		final int[] clip_t=this._clip_t;
+		final int[] clip_b=this._clip_b;
+		final int[] entry_x=this._entry_x;
+		final long[] pos_x=this._pos_x;
+		final long[] pos_y=this._pos_y;
+		int[] prev_l=this._rle_l1;
+		int[] prev_r=this._rle_r1;
+		int[] prev_fid=this._rle_fid1;
+		int[] cur_l=this._rle_l2;
+		int[] cur_r=this._rle_r2;
+		int[] cur_fid=this._rle_fid2;
+		// リセット処理
+		this._num_of_frags=0;
+		this._left=i_left;
+		this._label_pool.clear();
+
+		final int bottom=i_top+i_height;
+		int ypos=i_top;
+		// 初段登録
+		int len_prev = pixdrv.xLineToRle(i_left,ypos,i_width,i_th,prev_l,prev_r);
+		for (int i = 0; i < len_prev; i++) {
+			if(!this.addFragment(prev_l[i],prev_r[i],prev_fid,i,ypos)){
+				return false;
+			}
+		}
+		// 次段結合
+		for (int y = i_top + 1; y < bottom; y++) {
+			// カレント行の読込
+			ypos++;
+			final int len_current = pixdrv.xLineToRle(i_left,ypos,i_width,i_th,cur_l,cur_r);
+			int index_prev = 0;
+
+			SCAN_CUR: for (int i = 0; i < len_current; i++) {
+				final int l=cur_l[i];
+				final int r=cur_r[i];
+				int id = -1;
+				// チェックすべきprevがあれば確認
+				SCAN_PREV: while (index_prev < len_prev) {
+					if (l - prev_r[index_prev] > 0) {// 0なら8方位ラベリング
+						// prevがcurの左方にある→次のフラグメントを探索
+						index_prev++;
+						continue;
+					} else if (prev_l[index_prev] - r > 0) {// 0なら8方位ラベリングになる
+						// prevがcur右方にある→独立フラグメント
+						if(!this.addFragment(l,r,cur_fid,i,y)){
+							return false;
+						}
+						continue SCAN_CUR;
+					}
+					id=prev_fid[index_prev];//ルートフラグメントid
+					//結合対象(初回)->prevのIDをコピーして、ルートフラグメントの情報を更新
+					cur_fid[i] = id;
+					final int len=r-l;
+					//結合先フラグメントの情報を更新する。
+					area[id] += len;
+					clip_l[id]=l<clip_l[id]?l:clip_l[id];
+					clip_r[id]=r>clip_r[id]?r-1:clip_r[id];
+					clip_b[id]=y;
+					pos_x[id]+=(len*(2*l+(len-1)))/2;
+					pos_y[id]+=y*len;
+					//多重結合の確認（２個目以降）
+					index_prev++;
+					while (index_prev < len_prev) {
+						if (l - prev_r[index_prev] > 0) {
+							// prevがcurの左方にある→prevはcurに連結していない。
+							break SCAN_PREV;
+						} else if (prev_l[index_prev] - r > 0) {
+							// prevがcurの右方にある→prevはcurに連結していない。
+							index_prev--;
+							continue SCAN_CUR;
+						}
+						// prevとcurは連結している→ルートフラグメントの統合
+						final int prev_id =prev_fid[index_prev];
+						if (id != prev_id){
+							//prevとcurrentのフラグメントidを書き換える。
+							for(int i2=index_prev;i2<len_prev;i2++){
+								if(prev_fid[i2]==prev_id){
+									prev_fid[i2]=id;
+								}
+							}
+							for(int i2=0;i2<i;i2++){
+								if(cur_fid[i2]==prev_id){
+									cur_fid[i2]=id;
+								}
+							}
+							//現在のルートフラグメントに情報を集約
+							area[id] +=area[prev_id];
+							pos_x[id]+=pos_x[prev_id];
+							pos_y[id]+=pos_y[prev_id];
+							//tとentry_xの決定
+							if (clip_t[id] > clip_t[prev_id]) {
+								// 現在の方が下にある。
+								clip_t[id] = clip_t[prev_id];
+								entry_x[id] = entry_x[prev_id];
+							}else if (clip_t[id] == clip_t[prev_id]) {
+								// 水平方向で小さい方がエントリポイント。
+								if (entry_x[id] > entry_x[prev_id]) {
+									entry_x[id] = entry_x[prev_id];
+								}
+							}
+							//lの決定
+							if (clip_l[id] > clip_l[prev_id]) {
+								clip_l[id]=clip_l[prev_id];
+							}
+							//rの決定
+							if (clip_r[id] < clip_r[prev_id]) {
+								clip_r[id]=clip_r[prev_id];
+							}
+							//結合済のルートフラグメントを無効化する。
+							area[prev_id]=0;
+						}
+						index_prev++;
+					}
+					index_prev--;
+					break;
+				}
+				// 右端独立フラグメントを追加
+				if (id < 0){
+					if(!this.addFragment(l,r,cur_fid,i,y)){
+						return false;
+					}
+				}
+			}
+			// prevとcurの交換
+			int[] tmp;
+			tmp=prev_l;prev_l=cur_l;cur_l=tmp;
+			tmp=prev_r;prev_r=cur_r;cur_r=tmp;
+			tmp=prev_fid;prev_fid=cur_fid;cur_fid=tmp;
+			len_prev = len_current;
+		}
+		return true;
+	}
+}
+
+//
+//画像ドライバ
+//
+
+class NyARRleEnginePixelDriver_BIN_GS8 implements NyARRleLabelingEngine.IRasterDriver
+{
+	private INyARRaster _ref_raster;
+	public NyARRleEnginePixelDriver_BIN_GS8(INyARRaster i_ref_raster)
+	{
+		this._ref_raster=i_ref_raster;
+	}
+	public int xLineToRle(int i_x,int i_y,int i_len,int i_th,int[] o_l,int[] o_r)
+	{
+		final int[] buf=(int[])this._ref_raster.getBuffer();
+		int current = 0;
+		int r = -1;
+		// 行確定開始
+		final int st=i_x+this._ref_raster.getWidth()*i_y;
+		int x = st;
+		final int right_edge = st + i_len - 1;
+		while (x < right_edge) {
+			// 暗点(0)スキャン
+			if (buf[x] > i_th) {
+				x++;//明点
+				continue;
+			}
+			// 暗点発見→暗点長を調べる
+			r = (x - st);
+			o_l[current] = r;
+			r++;// 暗点+1
+			x++;
+			while (x < right_edge) {
+				if (buf[x] > i_th) {
+					// 明点(1)→暗点(0)配列終了>登録
+					o_r[current] = r;
+					current++;
+					x++;// 次点の確認。
+					r = -1;// 右端の位置を0に。
+					break;
+				} else {
+					// 暗点(0)長追加
+					r++;
+					x++;
+				}
+			}
+		}
+		// 最後の1点だけ判定方法が少し違うの。
+		if (buf[x] > i_th) {
+			// 明点→rカウント中なら暗点配列終了>登録
+			if (r >= 0) {
+				o_r[current] = r;
+				current++;
+			}
+		} else {
+			// 暗点→カウント中でなければl1で追加
+			if (r >= 0) {
+				o_r[current] = (r + 1);
+			} else {
+				// 最後の1点の場合
+				o_l[current] = (i_len - 1);
+				o_r[current] = (i_len);
+			}
+			current++;
+		}
+		// 行確定
+		return current;
+	}
+}
+
+/**
+ * GSPixelDriverを使ったクラス
+ */
+class NyARRleEnginePixelDriver_GSReader implements NyARRleLabelingEngine.IRasterDriver
+{
+	private final INyARGrayscaleRaster _ref_raster;
+	public NyARRleEnginePixelDriver_GSReader(INyARGrayscaleRaster i_raster)
+	{
+		this._ref_raster=i_raster;
+	}
+	public int xLineToRle(int i_x,int i_y,int i_len,int i_th,int[] o_l,int[] o_r)
+	{
+		final INyARGrayscaleRaster raster=this._ref_raster;
+		int current = 0;
+		int r = -1;
+		// 行確定開始
+		final int st=i_x;
+		int x = st;
+		final int right_edge = st + i_len - 1;
+		while (x < right_edge) {
+			// 暗点(0)スキャン
+			if (raster.getPixel(x,i_y) > i_th) {
+				x++;//明点
+				continue;
+			}
+			// 暗点発見→暗点長を調べる
+			r = (x - st);
+			o_l[current] = r;
+			r++;// 暗点+1
+			x++;
+			while (x < right_edge) {
+				if (raster.getPixel(x,i_y) > i_th) {
+					// 明点(1)→暗点(0)配列終了>登録
+					o_r[current] = r;
+					current++;
+					x++;// 次点の確認。
+					r = -1;// 右端の位置を0に。
+					break;
+				} else {
+					// 暗点(0)長追加
+					r++;
+					x++;
+				}
+			}
+		}
+		// 最後の1点だけ判定方法が少し違うの。
+		if (raster.getPixel(x,i_y) > i_th) {
+			// 明点→rカウント中なら暗点配列終了>登録
+			if (r >= 0) {
+				o_r[current] = r;
+				current++;
+			}
+		} else {
+			// 暗点→カウント中でなければl1で追加
+			if (r >= 0) {
+				o_r[current] = (r + 1);
+			} else {
+				// 最後の1点の場合
+				o_l[current] = (i_len - 1);
+				o_r[current] = (i_len);
+			}
+			current++;
+		}
+		// 行確定
+		return current;
+	}
+}
@@ -0,0 +1,480 @@
+/*
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ *
+ */
+package jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+
+/**
+ * このクラスは、{@link NyARLabeling_Rle}の並列ラベリングを実装します。
+ * 画像を水平方向のストリップに分割して、ストリップ毎のRLE圧縮とフラグメント結合を{@link ForkJoinPool}で実行し、
+ * その後に境界を跨ぐフラグメントを結合します。
+ * <p>
+ * 結果は、シリアル版の{@link NyARLabeling_Rle}と完全に一致します。
+ * ストリップの先頭行は、一つ上の行(前のストリップの最終行)のRLEを仮フラグメントとして参照するので、
+ * フラグメントIDの割当順と結合の勝敗は、シリアル版と同じになります。
+ * 境界の結合は、ストリップ毎に記録した結合イベントを、ラスタ順に再生して解決します。
+ * </p>
+ * ユーザが使うことはありません。
+ */
+final class NyARRleStripLabeler
+{
+	/** ストリップ1個あたりの最小行数。これより小さくなる場合は、ストリップ数を減らします。*/
+	private final static int MIN_STRIP_HEIGHT=32;
+	/**
+	 * ストリップ1個分の作業領域です。
+	 * フラグメントのパラメータは、プリミティブ配列に格納します。
+	 * ローカルIDは、[0,num_of_ph)が仮フラグメント、[num_of_ph,num_of_frag)がストリップ内のフラグメントです。
+	 */
+	private final static class Strip implements Callable<Boolean>
+	{
+		private NyARLabeling_Rle.IRasterDriver _drv;
+		private int _left;
+		private int _width;
+		private int _th;
+		/** 先頭行(この行を含む)*/
+		private int _top;
+		/** 最終行(この行を含まない)*/
+		private int _bottom;
+		/** 一つ上の行を仮フラグメントとして参照するか*/
+		private boolean _has_prev_row;
+
+		private final NyARLabeling_Rle.RleElement[] _rle1;
+		private final NyARLabeling_Rle.RleElement[] _rle2;
+
+		int num_of_ph;
+		int num_of_frag;
+		int[] area;
+		int[] clip_l;
+		int[] clip_r;
+		int[] clip_t;
+		int[] clip_b;
+		int[] entry_x;
+		long[] pos_x;
+		long[] pos_y;
+		/** 結合イベント(loser,survivor)のペア列*/
+		int[] events;
+		int num_of_events;
+		/** 最終行のRLEが属するローカルID*/
+		final int[] last_fid;
+		int last_len;
+
+		public Strip(int i_width,int i_initial_frags)
+		{
+			this._rle1=NyARLabeling_Rle.RleElement.createArray(i_width/2+1);
+			this._rle2=NyARLabeling_Rle.RleElement.createArray(i_width/2+1);
+			this.last_fid=new int[i_width/2+1];
+			this.area=new int[i_initial_frags];
+			this.clip_l=new int[i_initial_frags];
+			this.clip_r=new int[i_initial_frags];
+			this.clip_t=new int[i_initial_frags];
+			this.clip_b=new int[i_initial_frags];
+			this.entry_x=new int[i_initial_frags];
+			this.pos_x=new long[i_initial_frags];
+			this.pos_y=new long[i_initial_frags];
+			this.events=new int[i_initial_frags*2];
+		}
+		public void setup(NyARLabeling_Rle.IRasterDriver i_drv,int i_th,int i_left,int i_width,int i_top,int i_bottom,boolean i_has_prev_row)
+		{
+			this._drv=i_drv;
+			this._th=i_th;
+			this._left=i_left;
+			this._width=i_width;
+			this._top=i_top;
+			this._bottom=i_bottom;
+			this._has_prev_row=i_has_prev_row;
+		}
+		private void reserve(int i_len)
+		{
+			if(i_len<=this.area.length){
+				return;
+			}
+			int n=this.area.length*2;
+			while(n<i_len){
+				n*=2;
+			}
+			this.area=expand(this.area,n);
+			this.clip_l=expand(this.clip_l,n);
+			this.clip_r=expand(this.clip_r,n);
+			this.clip_t=expand(this.clip_t,n);
+			this.clip_b=expand(this.clip_b,n);
+			this.entry_x=expand(this.entry_x,n);
+			this.pos_x=expand(this.pos_x,n);
+			this.pos_y=expand(this.pos_y,n);
+		}
+		private int addPlaceholder()
+		{
+			final int id=this.num_of_frag;
+			this.reserve(id+1);
+			this.area[id]=0;
+			this.clip_l[id]=Integer.MAX_VALUE;
+			this.clip_r[id]=-1;
+			this.clip_t[id]=Integer.MAX_VALUE;
+			this.clip_b[id]=-1;
+			this.entry_x[id]=0;
+			this.pos_x[id]=0;
+			this.pos_y[id]=0;
+			this.num_of_frag++;
+			return id;
+		}
+		private void addFragment(NyARLabeling_Rle.RleElement i_rel_img,int i_row_index)
+		{
+			final int id=this.num_of_frag;
+			this.reserve(id+1);
+			final int l=i_rel_img.l;
+			final int len=i_rel_img.r - l;
+			i_rel_img.fid=id;
+			this.entry_x[id]=l;
+			this.area[id]=len;
+			this.clip_l[id]=l;
+			this.clip_r[id]=i_rel_img.r-1;
+			this.clip_t[id]=i_row_index;
+			this.clip_b[id]=i_row_index;
+			this.pos_x[id]=(len*(2*l+(len-1)))/2;
+			this.pos_y[id]=i_row_index*len;
+			this.num_of_frag++;
+		}
+		private void addEvent(int i_loser,int i_survivor)
+		{
+			int n=this.num_of_events*2;
+			if(n+2>this.events.length){
+				this.events=expand(this.events,this.events.length*2);
+			}
+			this.events[n]=i_loser;
+			this.events[n+1]=i_survivor;
+			this.num_of_events++;
+		}
+		/**
+		 * ストリップをラベリングします。
+		 * ループの構造は、{@link NyARLabeling_Rle}のシリアル版と同じです。
+		 */
+		public Boolean call()
+		{
+			final NyARLabeling_Rle.IRasterDriver pixdrv=this._drv;
+			final int left=this._left;
+			final int width=this._width;
+			final int th=this._th;
+			NyARLabeling_Rle.RleElement[] rle_prev = this._rle1;
+			NyARLabeling_Rle.RleElement[] rle_current = this._rle2;
+			this.num_of_frag=0;
+			this.num_of_events=0;
+			int len_prev;
+			int y;
+			if(this._has_prev_row){
+				//一つ上の行のRLEを仮フラグメントとして登録
+				len_prev=pixdrv.xLineToRle(left,this._top-1,width,th,rle_prev);
+				for(int i=0;i<len_prev;i++){
+					rle_prev[i].fid=this.addPlaceholder();
+				}
+				this.num_of_ph=len_prev;
+				y=this._top;
+			}else{
+				len_prev=pixdrv.xLineToRle(left,this._top,width,th,rle_prev);
+				for(int i=0;i<len_prev;i++){
+					this.addFragment(rle_prev[i],this._top);
+				}
+				this.num_of_ph=0;
+				y=this._top+1;
+			}
+			for(;y<this._bottom;y++){
+				final int len_current=pixdrv.xLineToRle(left,y,width,th,rle_current);
+				int index_prev = 0;
+				SCAN_CUR: for (int i = 0; i < len_current; i++) {
+					int id = -1;
+					SCAN_PREV: while (index_prev < len_prev) {
+						if (rle_current[i].l - rle_prev[index_prev].r > 0) {
+							index_prev++;
+							continue;
+						} else if (rle_prev[index_prev].l - rle_current[i].r > 0) {
+							this.addFragment(rle_current[i],y);
+							continue SCAN_CUR;
+						}
+						id=rle_prev[index_prev].fid;
+						rle_current[i].fid = id;
+						final int l= rle_current[i].l;
+						final int r= rle_current[i].r;
+						final int len=r-l;
+						this.area[id]+= len;
+						this.clip_l[id]=l<this.clip_l[id]?l:this.clip_l[id];
+						this.clip_r[id]=r>this.clip_r[id]?r-1:this.clip_r[id];
+						this.clip_b[id]=y;
+						this.pos_x[id]+=(len*(2*l+(len-1)))/2;
+						this.pos_y[id]+=y*len;
+						//多重結合の確認（２個目以降）
+						index_prev++;
+						while (index_prev < len_prev) {
+							if (rle_current[i].l - rle_prev[index_prev].r > 0) {
+								break SCAN_PREV;
+							} else if (rle_prev[index_prev].l - rle_current[i].r > 0) {
+								index_prev--;
+								continue SCAN_CUR;
+							}
+							final int prev_id =rle_prev[index_prev].fid;
+							if (id != prev_id){
+								for(int i2=index_prev;i2<len_prev;i2++){
+									if(rle_prev[i2].fid==prev_id){
+										rle_prev[i2].fid=id;
+									}
+								}
+								for(int i2=0;i2<i;i2++){
+									if(rle_current[i2].fid==prev_id){
+										rle_current[i2].fid=id;
+									}
+								}
+								this.merge(prev_id,id);
+							}
+							index_prev++;
+						}
+						index_prev--;
+						break;
+					}
+					if (id < 0){
+						this.addFragment(rle_current[i],y);
+					}
+				}
+				NyARLabeling_Rle.RleElement[] tmp = rle_prev;
+				rle_prev = rle_current;
+				len_prev = len_current;
+				rle_current = tmp;
+			}
+			//最終行のIDを保存
+			for(int i=0;i<len_prev;i++){
+				this.last_fid[i]=rle_prev[i].fid;
+			}
+			this.last_len=len_prev;
+			return Boolean.TRUE;
+		}
+		/**
+		 * i_loserのフラグメントを、i_survivorに集約します。
+		 */
+		private void merge(int i_loser,int i_survivor)
+		{
+			this.area[i_survivor]+=this.area[i_loser];
+			this.pos_x[i_survivor]+=this.pos_x[i_loser];
+			this.pos_y[i_survivor]+=this.pos_y[i_loser];
+			if(this.clip_t[i_survivor]>this.clip_t[i_loser]){
+				this.clip_t[i_survivor]=this.clip_t[i_loser];
+				this.entry_x[i_survivor]=this.entry_x[i_loser];
+			}else if(this.clip_t[i_survivor]==this.clip_t[i_loser]){
+				if(this.entry_x[i_survivor]>this.entry_x[i_loser]){
+					this.entry_x[i_survivor]=this.entry_x[i_loser];
+				}
+			}
+			if(this.clip_l[i_survivor]>this.clip_l[i_loser]){
+				this.clip_l[i_survivor]=this.clip_l[i_loser];
+			}
+			if(this.clip_r[i_survivor]<this.clip_r[i_loser]){
+				this.clip_r[i_survivor]=this.clip_r[i_loser];
+			}
+			this.area[i_loser]=0;
+			this.addEvent(i_loser,i_survivor);
+		}
+	}
+
+	private final ForkJoinPool _pool;
+	private final Strip[] _strips;
+	private final List<Callable<Boolean>> _tasks=new ArrayList<Callable<Boolean>>();
+	/** グローバルID空間のUnion-Find配列*/
+	private int[] _parent=new int[0];
+	/** ストリップ毎の、実フラグメントと仮フラグメントのグローバルIDのベース値*/
+	private final int[] _base_real;
+	private final int[] _base_ph;
+
+	/**
+	 * コンストラクタです。
+	 * @param i_pool
+	 * ストリップの処理に使うスレッドプール
+	 * @param i_number_of_strips
+	 * 最大ストリップ数
+	 * @param i_width
+	 * 入力画像の幅
+	 * @param i_max_frags
+	 * ラベリングクラスのフラグメントスタックのサイズ
+	 */
+	public NyARRleStripLabeler(ForkJoinPool i_pool,int i_number_of_strips,int i_width,int i_max_frags)
+	{
+		assert(i_number_of_strips>1);
+		this._pool=i_pool;
+		this._strips=new Strip[i_number_of_strips];
+		for(int i=0;i<i_number_of_strips;i++){
+			this._strips[i]=new Strip(i_width,i_max_frags/i_number_of_strips+16);
+		}
+		this._base_real=new int[i_number_of_strips];
+		this._base_ph=new int[i_number_of_strips];
+	}
+	/**
+	 * 高さi_heightの領域を処理するときのストリップ数を返します。
+	 * 1以下の場合は、シリアル版で処理するべきです。
+	 */
+	public int getNumberOfStrips(int i_height)
+	{
+		int n=i_height/MIN_STRIP_HEIGHT;
+		return n<this._strips.length?n:this._strips.length;
+	}
+	/**
+	 * 並列ラベリングを実行して、結果をo_stackへ格納します。
+	 * o_stackのi番目の要素は、シリアル版のフラグメントID=iの要素と同じ値になります。
+	 * @return
+	 * フラグメント数がo_stackの上限を超えたときはfalse
+	 */
+	public boolean labeling(NyARLabeling_Rle.IRasterDriver i_drv,int i_th,int i_left,int i_top,int i_width,int i_height,RleInfoStack o_stack)
+	{
+		final int nos=this.getNumberOfStrips(i_height);
+		assert(nos>1);
+		final Strip[] strips=this._strips;
+		//ストリップの分割
+		final List<Callable<Boolean>> tasks=this._tasks;
+		tasks.clear();
+		for(int i=0;i<nos;i++){
+			int t=i_top+i_height*i/nos;
+			int b=i_top+i_height*(i+1)/nos;
+			strips[i].setup(i_drv,i_th,i_left,i_width,t,b,i>0);
+			tasks.add(strips[i]);
+		}
+		try{
+			for(Future<Boolean> f:this._pool.invokeAll(tasks)){
+				f.get();
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new NyARRuntimeException(e);
+		}catch(ExecutionException e){
+			throw new NyARRuntimeException(e);
+		}
+		//グローバルIDの割当
+		int num_of_real=0;
+		int num_of_ph=0;
+		for(int i=0;i<nos;i++){
+			this._base_real[i]=num_of_real;
+			num_of_real+=strips[i].num_of_frag-strips[i].num_of_ph;
+			num_of_ph+=strips[i].num_of_ph;
+		}
+		if(num_of_real>o_stack.getArraySize()){
+			return false;
+		}
+		int ph=num_of_real;
+		for(int i=0;i<nos;i++){
+			this._base_ph[i]=ph;
+			ph+=strips[i].num_of_ph;
+		}
+		//Union-Findの初期化
+		final int num_of_ids=num_of_real+num_of_ph;
+		if(this._parent.length<num_of_ids){
+			this._parent=new int[num_of_ids*3/2];
+		}
+		final int[] parent=this._parent;
+		for(int i=0;i<num_of_ids;i++){
+			parent[i]=i;
+		}
+		//ラスタ順に、仮フラグメントの参照先設定と結合イベントを再生
+		for(int i=0;i<nos;i++){
+			final Strip s=strips[i];
+			if(i>0){
+				final Strip p=strips[i-1];
+				assert(p.last_len==s.num_of_ph);
+				for(int j=0;j<s.num_of_ph;j++){
+					parent[this._base_ph[i]+j]=this.toGlobalId(i-1,p.last_fid[j]);
+				}
+			}
+			final int[] ev=s.events;
+			for(int j=0;j<s.num_of_events;j++){
+				final int a=find(parent,this.toGlobalId(i,ev[j*2]));
+				final int b=find(parent,this.toGlobalId(i,ev[j*2+1]));
+				if(a!=b){
+					parent[a]=b;
+				}
+			}
+		}
+		//ルートフラグメントへ集約
+		o_stack.clear();
+		for(int i=0;i<num_of_real;i++){
+			final NyARRleLabelFragmentInfo v=o_stack.prePush();
+			v.area=0;
+			v.clip_l=Integer.MAX_VALUE;
+			v.clip_r=-1;
+			v.clip_t=Integer.MAX_VALUE;
+			v.clip_b=-1;
+			v.entry_x=0;
+			v.pos_x=0;
+			v.pos_y=0;
+		}
+		final NyARRleLabelFragmentInfo[] f_array=o_stack.getArray();
+		for(int i=0;i<nos;i++){
+			final Strip s=strips[i];
+			for(int j=0;j<s.num_of_frag;j++){
+				if(s.area[j]==0){
+					continue;
+				}
+				final NyARRleLabelFragmentInfo d=f_array[find(parent,this.toGlobalId(i,j))];
+				if(d.clip_t>s.clip_t[j]){
+					d.clip_t=s.clip_t[j];
+					d.entry_x=s.entry_x[j];
+				}else if(d.clip_t==s.clip_t[j] && d.entry_x>s.entry_x[j]){
+					d.entry_x=s.entry_x[j];
+				}
+				d.area+=s.area[j];
+				d.clip_l=d.clip_l<s.clip_l[j]?d.clip_l:s.clip_l[j];
+				d.clip_r=d.clip_r>s.clip_r[j]?d.clip_r:s.clip_r[j];
+				d.clip_b=d.clip_b>s.clip_b[j]?d.clip_b:s.clip_b[j];
+				d.pos_x+=s.pos_x[j];
+				d.pos_y+=s.pos_y[j];
+			}
+		}
+		return true;
+	}
+	private int toGlobalId(int i_strip,int i_local_id)
+	{
+		final int nph=this._strips[i_strip].num_of_ph;
+		return i_local_id<nph?this._base_ph[i_strip]+i_local_id:this._base_real[i_strip]+(i_local_id-nph);
+	}
+	private static int find(int[] i_parent,int i_id)
+	{
+		int id=i_id;
+		while(i_parent[id]!=id){
+			i_parent[id]=i_parent[i_parent[id]];
+			id=i_parent[id];
+		}
+		return id;
+	}
+	private static int[] expand(int[] i_src,int i_len)
+	{
+		int[] ret=new int[i_len];
+		System.arraycopy(i_src,0,ret,0,i_src.length);
+		return ret;
+	}
+	private static long[] expand(long[] i_src,int i_len)
+	{
+		long[] ret=new long[i_len];
+		System.arraycopy(i_src,0,ret,0,i_src.length);
+		return ret;
+	}
+}
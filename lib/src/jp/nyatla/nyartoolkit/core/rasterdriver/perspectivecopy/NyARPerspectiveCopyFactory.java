@@ -25,9 +25,12 @@
  */
 package jp.nyatla.nyartoolkit.core.rasterdriver.perspectivecopy;
 
+import java.nio.ByteBuffer;
+
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
 import jp.nyatla.nyartoolkit.core.raster.INyARRaster;
 import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BBUF1D_C8C8C8;
 import jp.nyatla.nyartoolkit.core.types.*;
 
 public class NyARPerspectiveCopyFactory
@@ -40,6 +43,7 @@ public class NyARPerspectiveCopyFactory
 	 * <li>{@link NyARBufferType#BYTE1D_B8G8R8X8_32}
 	 * <li>{@link NyARBufferType#BYTE1D_B8G8R8_24}
 	 * <li>{@link NyARBufferType#BYTE1D_R8G8B8_24}
+	 * <li>BBUF1D形式({@link ByteBuffer})のバッファ
 	 * </ul>
 	 * </p>
 	 * <p>出力ラスタについて
@@ -67,6 +71,12 @@ public class NyARPerspectiveCopyFactory
 			return new PerspectiveCopy_BYTE1D_B8G8R8_24(i_raster);
 		case NyARBufferType.BYTE1D_R8G8B8_24:
 			return new PerspectiveCopy_BYTE1D_R8G8B8_24(i_raster);
+		case NyARBufferType.BBUF1D_R8G8B8_24:
+		case NyARBufferType.BBUF1D_B8G8R8_24:
+		case NyARBufferType.BBUF1D_B8G8R8X8_32:
+		case NyARBufferType.BBUF1D_X8R8G8B8_32:
+		case NyARBufferType.BBUF1D_X8B8G8R8_32:
+			return new PerspectiveCopy_BBUF1D_C8C8C8(i_raster);
 		default:
 			return new PerspectiveCopy_ANYRgb(i_raster);
 		}
@@ -458,6 +468,188 @@ class PerspectiveCopy_BYTE1D_B8G8R8X8_32 extends NyARPerspectiveCopy_Base
 	}	
 }
 
+/**
+ * BBUF1D形式({@link ByteBuffer})のラスタをソースにしたフィルタ
+ */
+class PerspectiveCopy_BBUF1D_C8C8C8 extends NyARPerspectiveCopy_Base
+{
+	protected INyARRgbRaster _ref_raster;
+	private final int _r;
+	private final int _g;
+	private final int _b;
+	private final int _pix;
+	public PerspectiveCopy_BBUF1D_C8C8C8(INyARRaster i_ref_raster)
+	{
+		int[] l=NyARRgbRaster_BBUF1D_C8C8C8.getPixelLayout(i_ref_raster.getBufferType());
+		this._ref_raster=(INyARRgbRaster)i_ref_raster;
+		this._r=l[0];
+		this._g=l[1];
+		this._b=l[2];
+		this._pix=l[3];
+	}
+	protected boolean onePixel(int pk_l,int pk_t,double[] cpara,INyARRaster o_out)throws NyARRuntimeException
+	{
+		int in_w=this._ref_raster.getWidth();
+		int in_h=this._ref_raster.getHeight();
+		ByteBuffer i_in_buf=(ByteBuffer)this._ref_raster.getBuffer();
+		final int pix=this._pix;
+		final int pr=this._r;
+		final int pg=this._g;
+		final int pb=this._b;
+
+		//ピクセルリーダーを取得
+		double cp0=cpara[0];
+		double cp3=cpara[3];
+		double cp6=cpara[6];
+		double cp1=cpara[1];
+		double cp4=cpara[4];
+		double cp7=cpara[7];
+		
+		int out_w=o_out.getWidth();
+		int out_h=o_out.getHeight();
+		double cp7_cy_1  =cp7*pk_t+1.0+cp6*pk_l;
+		double cp1_cy_cp2=cp1*pk_t+cpara[2]+cp0*pk_l;
+		double cp4_cy_cp5=cp4*pk_t+cpara[5]+cp3*pk_l;
+		int r,g,b,p;
+		switch(o_out.getBufferType())
+		{
+		case NyARBufferType.INT1D_X8R8G8B8_32:
+			int[] pat_data=(int[])o_out.getBuffer();
+			p=0;
+			for(int iy=0;iy<out_h;iy++){
+				//解像度分の点を取る。
+				double cp7_cy_1_cp6_cx  =cp7_cy_1;
+				double cp1_cy_cp2_cp0_cx=cp1_cy_cp2;
+				double cp4_cy_cp5_cp3_cx=cp4_cy_cp5;
+				
+				for(int ix=0;ix<out_w;ix++){
+					//1ピクセルを作成
+					final double d=1/(cp7_cy_1_cp6_cx);
+					int x=(int)((cp1_cy_cp2_cp0_cx)*d);
+					int y=(int)((cp4_cy_cp5_cp3_cx)*d);
+					if(x<0){x=0;}else if(x>=in_w){x=in_w-1;}
+					if(y<0){y=0;}else if(y>=in_h){y=in_h-1;}
+							
+					final int bp = (x + y * in_w) * pix;
+					r=(i_in_buf.get(bp + pr) & 0xff);
+					g=(i_in_buf.get(bp + pg) & 0xff);
+					b=(i_in_buf.get(bp + pb) & 0xff);
+					cp7_cy_1_cp6_cx+=cp6;
+					cp1_cy_cp2_cp0_cx+=cp0;
+					cp4_cy_cp5_cp3_cx+=cp3;
+					pat_data[p]=(r<<16)|(g<<8)|((b&0xff));
+					p++;
+				}
+				cp7_cy_1+=cp7;
+				cp1_cy_cp2+=cp1;
+				cp4_cy_cp5+=cp4;
+			}
+			return true;
+		default:
+			//ANY to RGBx
+			if(o_out instanceof INyARRgbRaster){
+				INyARRgbRaster out_reader=(INyARRgbRaster)o_out;
+				for(int iy=0;iy<out_h;iy++){
+					//解像度分の点を取る。
+					double cp7_cy_1_cp6_cx  =cp7_cy_1;
+					double cp1_cy_cp2_cp0_cx=cp1_cy_cp2;
+					double cp4_cy_cp5_cp3_cx=cp4_cy_cp5;
+					
+					for(int ix=0;ix<out_w;ix++){
+						//1ピクセルを作成
+						final double d=1/(cp7_cy_1_cp6_cx);
+						int x=(int)((cp1_cy_cp2_cp0_cx)*d);
+						int y=(int)((cp4_cy_cp5_cp3_cx)*d);
+						if(x<0){x=0;}else if(x>=in_w){x=in_w-1;}
+						if(y<0){y=0;}else if(y>=in_h){y=in_h-1;}
+								
+						final int bp = (x + y * in_w) * pix;
+						r=(i_in_buf.get(bp + pr) & 0xff);
+						g=(i_in_buf.get(bp + pg) & 0xff);
+						b=(i_in_buf.get(bp + pb) & 0xff);
+						cp7_cy_1_cp6_cx+=cp6;
+						cp1_cy_cp2_cp0_cx+=cp0;
+						cp4_cy_cp5_cp3_cx+=cp3;
+						out_reader.setPixel(ix,iy,r,g,b);
+					}
+					cp7_cy_1+=cp7;
+					cp1_cy_cp2+=cp1;
+					cp4_cy_cp5+=cp4;
+				}
+				return true;
+			}
+			break;
+		}
+		return false;
+	}
+	protected boolean multiPixel(int pk_l,int pk_t,double[] cpara,int i_resolution,INyARRaster o_out)throws NyARRuntimeException
+	{
+		int in_w=this._ref_raster.getWidth();
+		int in_h=this._ref_raster.getHeight();
+		ByteBuffer i_in_buf=(ByteBuffer)this._ref_raster.getBuffer();
+		final int pix=this._pix;
+		final int pr=this._r;
+		final int pg=this._g;
+		final int pb=this._b;
+		final int res_pix=i_resolution*i_resolution;
+
+		//ピクセルリーダーを取得
+		double cp0=cpara[0];
+		double cp3=cpara[3];
+		double cp6=cpara[6];
+		double cp1=cpara[1];
+		double cp4=cpara[4];
+		double cp7=cpara[7];
+		double cp2=cpara[2];
+		double cp5=cpara[5];
+		
+		int out_w=o_out.getWidth();
+		int out_h=o_out.getHeight();
+		if(o_out instanceof INyARRgbRaster){
+			INyARRgbRaster out_reader=(INyARRgbRaster)o_out;
+			for(int iy=out_h-1;iy>=0;iy--){
+				//解像度分の点を取る。
+				for(int ix=out_w-1;ix>=0;ix--){
+					int r,g,b;
+					r=g=b=0;
+					int cy=pk_t+iy*i_resolution;
+					int cx=pk_l+ix*i_resolution;
+					double cp7_cy_1_cp6_cx_b  =cp7*cy+1.0+cp6*cx;
+					double cp1_cy_cp2_cp0_cx_b=cp1*cy+cp2+cp0*cx;
+					double cp4_cy_cp5_cp3_cx_b=cp4*cy+cp5+cp3*cx;
+					for(int i2y=i_resolution-1;i2y>=0;i2y--){
+						double cp7_cy_1_cp6_cx  =cp7_cy_1_cp6_cx_b;
+						double cp1_cy_cp2_cp0_cx=cp1_cy_cp2_cp0_cx_b;
+						double cp4_cy_cp5_cp3_cx=cp4_cy_cp5_cp3_cx_b;
+						for(int i2x=i_resolution-1;i2x>=0;i2x--){
+							//1ピクセルを作成
+							final double d=1/(cp7_cy_1_cp6_cx);
+							int x=(int)((cp1_cy_cp2_cp0_cx)*d);
+							int y=(int)((cp4_cy_cp5_cp3_cx)*d);
+							if(x<0){x=0;}else if(x>=in_w){x=in_w-1;}
+							if(y<0){y=0;}else if(y>=in_h){y=in_h-1;}
+							
+							final int bp = (x + y * in_w) * pix;
+							r+=(i_in_buf.get(bp + pr) & 0xff);
+							g+=(i_in_buf.get(bp + pg) & 0xff);
+							b+=(i_in_buf.get(bp + pb) & 0xff);
+							cp7_cy_1_cp6_cx+=cp6;
+							cp1_cy_cp2_cp0_cx+=cp0;
+							cp4_cy_cp5_cp3_cx+=cp3;
+						}
+						cp7_cy_1_cp6_cx_b+=cp7;
+						cp1_cy_cp2_cp0_cx_b+=cp1;
+						cp4_cy_cp5_cp3_cx_b+=cp4;
+					}
+					out_reader.setPixel(ix,iy,r/res_pix,g/res_pix,b/res_pix);
+				}
+			}
+			return true;
+		}
+		return false;
+	}	
+}
+
 class PerspectiveCopy_BYTE1D_B8G8R8_24 extends NyARPerspectiveCopy_Base
 {
 	protected INyARRgbRaster _ref_raster;
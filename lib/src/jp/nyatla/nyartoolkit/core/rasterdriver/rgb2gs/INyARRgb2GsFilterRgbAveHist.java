@@ -0,0 +1,65 @@
+/* 
+ * PROJECT: NyARToolkit(Extension)
+ * --------------------------------------------------------------------------------
+ *
+ * The NyARToolkit is Java edition ARToolKit class library.
+ * Copyright (C)2008-2012 Ryo Iizuka
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * For further information please contact.
+ *	http://nyatla.jp/nyatoolkit/
+ *	<airmail(at)ebony.plala.or.jp> or <nyatla(at)nyatla.jp>
+ * 
+ */
+package jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs;
+
+import jp.nyatla.nyartoolkit.core.histogram.NyARHistogram;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.histogram.INyARHistogramFromRaster;
+
+/**
+ * このインタフェイスは、{@link INyARRgb2GsFilterRgbAve}に、グレースケール画像とヒストグラムを
+ * 1回の走査で生成する機能を追加します。
+ * 入力画像を1度だけ読み出すので、変換後にヒストグラムを作るよりもメモリアクセスが少なくなります。
+ * ヒストグラムは、生成したグレースケール画像から{@link INyARHistogramFromRaster#createHistogram}で
+ * 作ったものと同じです。
+ */
+public interface INyARRgb2GsFilterRgbAveHist extends INyARRgb2GsFilterRgbAve
+{
+	/**
+	 * 元画像の指定範囲の矩形からグレイスケール画像を生成してo_rasterへコピーし、同時にヒストグラムを生成します。
+	 * @param l
+	 * @param t
+	 * @param w
+	 * @param h
+	 * @param i_skip
+	 * ヒストグラムを作るときの行の間引き数。1以上の値です。
+	 * @param o_raster
+	 * グレースケール画像の出力先
+	 * @param o_histogram
+	 * ヒストグラムの出力先
+	 */
+	public void convertRect(int l,int t,int w,int h,int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram);
+	/**
+	 * o_rasterへグレースケール画像を生成し、同時に画像全体のヒストグラムを生成します。
+	 * @param i_skip
+	 * ヒストグラムを作るときの行の間引き数。1以上の値です。
+	 * @param o_raster
+	 * 出力先のラスタオブジェクト。同一サイズである必要があります。
+	 * @param o_histogram
+	 * ヒストグラムの出力先
+	 */
+	public void convert(int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram);
+}
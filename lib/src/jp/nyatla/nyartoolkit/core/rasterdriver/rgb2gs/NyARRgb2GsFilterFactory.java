@@ -25,21 +25,34 @@
  */
 package jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.histogram.NyARHistogram;
 import jp.nyatla.nyartoolkit.core.raster.INyARRaster;
 import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
 import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.format.NyARRgbRaster_BBUF1D_C8C8C8;
 import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
 import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
+import jp.nyatla.nyartoolkit.core.utils.BandRunner;
 
 public class NyARRgb2GsFilterFactory
 {
+	/**
+	 * 並列ドライバが、画像を分割して処理する最小の画素数です。
+	 * 変換範囲の画素数がこれより少ない場合は、呼び出したスレッドだけで変換します。
+	 */
+	public final static int PARALLEL_MIN_PIXELS=640*480;
 	/**
 	 * この関数は、(R*G*B)/3 でグレースケール化するフィルタを生成します。
 	 * 最適化されている形式は以下の通りです。
 	 * <ul>
 	 * <li>{@link NyARBufferType#BYTE1D_B8G8R8X8_32}</li>
+	 * <li>BBUF1D形式({@link ByteBuffer})のRGBバッファ</li>
 	 * </ul>
+	 * YUV420形式({@link NyARBufferType#BYTE1D_YUV420SP}等)のラスタでは、Y面をグレースケール値として使います。
 	 * @param i_raster
 	 * @return
 	 * @throws NyARRuntimeException
@@ -56,10 +69,66 @@ public class NyARRgb2GsFilterFactory
 			return new NyARRgb2GsFilterRgbAve_BYTE1D_X8C8C8C8_32(i_raster);
 		case NyARBufferType.INT1D_X8R8G8B8_32:
 			return new NyARRgb2GsFilterRgbAve_INT1D_X8R8G8B8_32(i_raster);
+		case NyARBufferType.BBUF1D_R8G8B8_24:
+		case NyARBufferType.BBUF1D_B8G8R8_24:
+		case NyARBufferType.BBUF1D_B8G8R8X8_32:
+		case NyARBufferType.BBUF1D_X8R8G8B8_32:
+		case NyARBufferType.BBUF1D_X8B8G8R8_32:
+			return new NyARRgb2GsFilterRgbAve_BBUF1D_C8C8C8(i_raster);
+		case NyARBufferType.BYTE1D_YUV420SP:
+		case NyARBufferType.BYTE1D_NV12:
+		case NyARBufferType.BYTE1D_I420:
+		case NyARBufferType.BYTE1D_YV12:
+			return new NyARRgb2GsFilter_BYTE1D_Y8(i_raster);
 		default:
 			return new NyARRgb2GsFilterRgbAve_Any(i_raster);
 		}
 	}
+	/**
+	 * この関数は、(R*G*B)/3 でグレースケール化し、同時にヒストグラムを生成するフィルタを生成します。
+	 * 最適化されている形式は以下の通りです。
+	 * <ul>
+	 * <li>{@link NyARBufferType#BYTE1D_B8G8R8X8_32}</li>
+	 * <li>{@link NyARBufferType#BYTE1D_B8G8R8_24}</li>
+	 * <li>{@link NyARBufferType#BYTE1D_R8G8B8_24}</li>
+	 * <li>{@link NyARBufferType#BYTE1D_X8R8G8B8_32}</li>
+	 * <li>{@link NyARBufferType#BYTE1D_X8B8G8R8_32}</li>
+	 * <li>{@link NyARBufferType#INT1D_X8R8G8B8_32}</li>
+	 * <li>BBUF1D形式({@link ByteBuffer})のRGBバッファ</li>
+	 * </ul>
+	 * 出力先が{@link NyARBufferType#INT1D_GRAY_8}以外の場合は、変換後にヒストグラムを生成します。
+	 * @param i_raster
+	 * @return
+	 * @throws NyARRuntimeException
+	 */
+	public static INyARRgb2GsFilterRgbAveHist createRgbAveHistDriver(INyARRgbRaster i_raster)
+	{
+		switch(i_raster.getBufferType()){
+		case NyARBufferType.BYTE1D_B8G8R8X8_32:
+			return new NyARRgb2GsFilterRgbAveHist_BYTE1D_C8C8C8(i_raster,0,4);
+		case NyARBufferType.BYTE1D_B8G8R8_24:
+		case NyARBufferType.BYTE1D_R8G8B8_24:
+			return new NyARRgb2GsFilterRgbAveHist_BYTE1D_C8C8C8(i_raster,0,3);
+		case NyARBufferType.BYTE1D_X8R8G8B8_32:
+		case NyARBufferType.BYTE1D_X8B8G8R8_32:
+			return new NyARRgb2GsFilterRgbAveHist_BYTE1D_C8C8C8(i_raster,1,4);
+		case NyARBufferType.INT1D_X8R8G8B8_32:
+			return new NyARRgb2GsFilterRgbAveHist_INT1D_X8R8G8B8_32(i_raster);
+		case NyARBufferType.BBUF1D_R8G8B8_24:
+		case NyARBufferType.BBUF1D_B8G8R8_24:
+		case NyARBufferType.BBUF1D_B8G8R8X8_32:
+		case NyARBufferType.BBUF1D_X8R8G8B8_32:
+		case NyARBufferType.BBUF1D_X8B8G8R8_32:
+			return new NyARRgb2GsFilterRgbAveHist_BBUF1D_C8C8C8(i_raster);
+		case NyARBufferType.BYTE1D_YUV420SP:
+		case NyARBufferType.BYTE1D_NV12:
+		case NyARBufferType.BYTE1D_I420:
+		case NyARBufferType.BYTE1D_YV12:
+			return new NyARRgb2GsFilterRgbAveHist_BYTE1D_Y8(i_raster);
+		default:
+			return new NyARRgb2GsFilterRgbAveHist_Any(i_raster);
+		}
+	}
 	/**
 	 * この関数は、(R*G*B>>16) でグレースケール化するフィルタを生成します。
 	 * 最適化されていません。
@@ -67,7 +136,7 @@ public class NyARRgb2GsFilterFactory
 	 * @return
 	 * @throws NyARRuntimeException
 	 */
-	public static INyARRgb2GsFilterRgbAve createRgbCubeDriver(INyARRgbRaster i_raster)
+	public static INyARRgb2GsFilterRgbCube createRgbCubeDriver(INyARRgbRaster i_raster)
 	{
 		switch(i_raster.getBufferType()){
 		default:
@@ -76,7 +145,7 @@ public class NyARRgb2GsFilterFactory
 	}
 	/**
 	 * この関数は(Yrcb)でグレースケール化するフィルタを生成します。
-	 * 最適化されていません。
+	 * YUV420形式のラスタではY面をコピーします。他の形式は最適化されていません。
 	 * @param i_raster
 	 * @return
 	 * @throws NyARRuntimeException
@@ -84,10 +153,112 @@ public class NyARRgb2GsFilterFactory
 	public static INyARRgb2GsFilterYCbCr createYCbCrDriver(INyARRgbRaster i_raster)
 	{
 		switch(i_raster.getBufferType()){
+		case NyARBufferType.BYTE1D_YUV420SP:
+		case NyARBufferType.BYTE1D_NV12:
+		case NyARBufferType.BYTE1D_I420:
+		case NyARBufferType.BYTE1D_YV12:
+			return new NyARRgb2GsFilter_BYTE1D_Y8(i_raster);
 		default:
 			return new NyARRgb2GsFilterYCbCr_Any(i_raster);
 		}
 	}
+	/**
+	 * この関数は、{@link #createRgbAveDriver(INyARRgbRaster)}のドライバを並列化したフィルタを生成します。
+	 * 変換範囲を行単位の帯に分割して、i_poolのスレッドで変換します。
+	 * 帯の数は、i_poolの並列数です。変換範囲の画素数が{@link #PARALLEL_MIN_PIXELS}未満の場合は分割しません。
+	 * 結果は、{@link #createRgbAveDriver(INyARRgbRaster)}のドライバと同じです。
+	 * <p>
+	 * ドライバは帯毎の作業領域を持つので、1つのドライバを複数のスレッドから同時に使うことはできません。
+	 * </p>
+	 * @param i_raster
+	 * @param i_pool
+	 * 変換に使うスレッドプール。複数のドライバで共有できます。
+	 * @return
+	 * @throws NyARRuntimeException
+	 */
+	public static INyARRgb2GsFilterRgbAve createRgbAveDriver(INyARRgbRaster i_raster,ForkJoinPool i_pool)
+	{
+		INyARRgb2GsFilter[] drv=new INyARRgb2GsFilter[i_pool.getParallelism()];
+		for(int i=0;i<drv.length;i++){
+			drv[i]=createRgbAveDriver(i_raster);
+		}
+		return new NyARRgb2GsFilterRgbAve_Parallel(i_raster,i_pool,drv);
+	}
+	/**
+	 * この関数は、{@link #createRgbAveHistDriver(INyARRgbRaster)}のドライバを並列化したフィルタを生成します。
+	 * 動作は{@link #createRgbAveHistDriver(INyARRgbRaster,ForkJoinPool,int)}と同じです。帯の数は、i_poolの並列数です。
+	 * @param i_raster
+	 * @param i_pool
+	 * 変換に使うスレッドプール。複数のドライバで共有できます。
+	 * @return
+	 * @throws NyARRuntimeException
+	 */
+	public static INyARRgb2GsFilterRgbAveHist createRgbAveHistDriver(INyARRgbRaster i_raster,ForkJoinPool i_pool)
+	{
+		return createRgbAveHistDriver(i_raster,i_pool,i_pool.getParallelism());
+	}
+	/**
+	 * この関数は、{@link #createRgbAveHistDriver(INyARRgbRaster)}のドライバを並列化したフィルタを生成します。
+	 * 変換範囲を、ヒストグラムの間引き行数の倍数の行を持つ帯に分割して、i_poolのスレッドで変換します。
+	 * ヒストグラムは帯毎に作り、最後に合算します。
+	 * 変換範囲の画素数が{@link #PARALLEL_MIN_PIXELS}未満の場合は分割しません。
+	 * 結果は、グレースケール画像とヒストグラムのどちらも{@link #createRgbAveHistDriver(INyARRgbRaster)}のドライバと同じです。
+	 * <p>
+	 * ドライバは帯毎の作業領域を持つので、1つのドライバを複数のスレッドから同時に使うことはできません。
+	 * </p>
+	 * @param i_raster
+	 * @param i_pool
+	 * 変換に使うスレッドプール。複数のドライバで共有できます。
+	 * @param i_number_of_strips
+	 * 最大の帯の数。1以上の値です。
+	 * @return
+	 * @throws NyARRuntimeException
+	 */
+	public static INyARRgb2GsFilterRgbAveHist createRgbAveHistDriver(INyARRgbRaster i_raster,ForkJoinPool i_pool,int i_number_of_strips)
+	{
+		if(i_number_of_strips<1){
+			throw new NyARRuntimeException("Invalid number of strips.");
+		}
+		INyARRgb2GsFilterRgbAveHist[] drv=new INyARRgb2GsFilterRgbAveHist[i_number_of_strips];
+		for(int i=0;i<drv.length;i++){
+			drv[i]=createRgbAveHistDriver(i_raster);
+		}
+		return new NyARRgb2GsFilterRgbAveHist_Parallel(i_raster,i_pool,drv);
+	}
+	/**
+	 * この関数は、{@link #createRgbCubeDriver(INyARRgbRaster)}のドライバを並列化したフィルタを生成します。
+	 * 動作は{@link #createRgbAveDriver(INyARRgbRaster,ForkJoinPool)}と同じです。
+	 * @param i_raster
+	 * @param i_pool
+	 * 変換に使うスレッドプール。複数のドライバで共有できます。
+	 * @return
+	 * @throws NyARRuntimeException
+	 */
+	public static INyARRgb2GsFilterRgbCube createRgbCubeDriver(INyARRgbRaster i_raster,ForkJoinPool i_pool)
+	{
+		INyARRgb2GsFilter[] drv=new INyARRgb2GsFilter[i_pool.getParallelism()];
+		for(int i=0;i<drv.length;i++){
+			drv[i]=createRgbCubeDriver(i_raster);
+		}
+		return new NyARRgb2GsFilterRgbCube_Parallel(i_raster,i_pool,drv);
+	}
+	/**
+	 * この関数は、{@link #createYCbCrDriver(INyARRgbRaster)}のドライバを並列化したフィルタを生成します。
+	 * 動作は{@link #createRgbAveDriver(INyARRgbRaster,ForkJoinPool)}と同じです。
+	 * @param i_raster
+	 * @param i_pool
+	 * 変換に使うスレッドプール。複数のドライバで共有できます。
+	 * @return
+	 * @throws NyARRuntimeException
+	 */
+	public static INyARRgb2GsFilterYCbCr createYCbCrDriver(INyARRgbRaster i_raster,ForkJoinPool i_pool)
+	{
+		INyARRgb2GsFilter[] drv=new INyARRgb2GsFilter[i_pool.getParallelism()];
+		for(int i=0;i<drv.length;i++){
+			drv[i]=createYCbCrDriver(i_raster);
+		}
+		return new NyARRgb2GsFilterYCbCr_Parallel(i_raster,i_pool,drv);
+	}
 }
 
 
@@ -342,7 +513,7 @@ class NyARRgb2GsFilterRgbAve_INT1D_X8R8G8B8_32 implements INyARRgb2GsFilterRgbAv
 			for (int y = t; y < b; y++) {
 				int x=0;
 				for (x = pix_count-1; x >=pix_mod_part; x--){
-					v=in_buf[src_ptr++];out_buf[bp++]=(((v>>16)& 0xff)+((v>>8)& 0xff)+(v &0xff))>>2;
+					v=in_buf[src_ptr++];out_buf[bp++]=(((v>>16)& 0xff)+((v>>8)& 0xff)+(v &0xff))/3;
 				}
 				for (;x>=0;x-=8){
 					v=in_buf[src_ptr++];out_buf[bp++]=(((v>>16)& 0xff)+((v>>8)& 0xff)+(v &0xff))/3;
@@ -372,7 +543,125 @@ class NyARRgb2GsFilterRgbAve_INT1D_X8R8G8B8_32 implements INyARRgb2GsFilterRgbAv
 
 
 
+/**
+ * BBUF1D形式のラスタのドライバです。
+ * {@link ByteBuffer}から直接読み出すので、ヒープへのコピーは発生しません。
+ */
+class NyARRgb2GsFilterRgbAve_BBUF1D_C8C8C8 implements INyARRgb2GsFilterRgbAve
+{
+	private INyARRaster _ref_raster;
+	private final int _r;
+	private final int _g;
+	private final int _b;
+	private final int _pix;
+	public NyARRgb2GsFilterRgbAve_BBUF1D_C8C8C8(INyARRaster i_ref_raster)
+	{
+		int[] l=NyARRgbRaster_BBUF1D_C8C8C8.getPixelLayout(i_ref_raster.getBufferType());
+		this._ref_raster=i_ref_raster;
+		this._r=l[0];
+		this._g=l[1];
+		this._b=l[2];
+		this._pix=l[3];
+	}
+	public void convert(INyARGrayscaleRaster i_raster)
+	{
+		NyARIntSize s=this._ref_raster.getSize();
+		this.convertRect(0,0,s.w,s.h,i_raster);
+	}
+	public void convertRect(int l,int t,int w,int h,INyARGrayscaleRaster o_raster)
+	{
+		NyARIntSize size=this._ref_raster.getSize();
+		final int pix=this._pix;
+		final int r=this._r;
+		final int g=this._g;
+		final int bl=this._b;
+		int bp = (l+t*size.w)*pix;
+		final int b=t+h;
+		final int row_padding_dst=(size.w-w);
+		final int row_padding_src=row_padding_dst*pix;
+		int dst_ptr=t*size.w+l;
+		ByteBuffer in_buf = (ByteBuffer) this._ref_raster.getBuffer();
+		switch(o_raster.getBufferType()){
+		case NyARBufferType.INT1D_GRAY_8:
+			int[] out_buf=(int[])o_raster.getBuffer();
+			for (int y = t; y < b; y++) {
+				for (int x = w-1; x >=0; x--){
+					out_buf[dst_ptr++] = ((in_buf.get(bp+r) & 0xff) + (in_buf.get(bp+g) & 0xff) + (in_buf.get(bp+bl) & 0xff)) /3;
+					bp+=pix;
+				}
+				bp+=row_padding_src;
+				dst_ptr+=row_padding_dst;
+			}
+			return;
+		case NyARBufferType.BBUF1D_GRAY_8:
+			ByteBuffer out_bbuf=(ByteBuffer)o_raster.getBuffer();
+			for (int y = t; y < b; y++) {
+				for (int x = w-1; x >=0; x--){
+					out_bbuf.put(dst_ptr++,(byte)(((in_buf.get(bp+r) & 0xff) + (in_buf.get(bp+g) & 0xff) + (in_buf.get(bp+bl) & 0xff)) /3));
+					bp+=pix;
+				}
+				bp+=row_padding_src;
+				dst_ptr+=row_padding_dst;
+			}
+			return;
+		default:
+			for (int y = t; y < b; y++) {
+				for (int x = 0; x<w; x++){
+					o_raster.setPixel(l+x,y,((in_buf.get(bp+r) & 0xff) + (in_buf.get(bp+g) & 0xff) + (in_buf.get(bp+bl) & 0xff)) /3);
+					bp+=pix;
+				}
+				bp+=row_padding_src;
+			}
+			return;
+		}
+	}
+}
 
+/**
+ * YUV420形式のラスタのドライバです。バッファ先頭のY面をグレースケール値としてコピーします。
+ * RgbAveとYCbCrの両方のドライバとして使います。
+ */
+class NyARRgb2GsFilter_BYTE1D_Y8 implements INyARRgb2GsFilterRgbAve,INyARRgb2GsFilterYCbCr
+{
+	private INyARRaster _ref_raster;
+	public NyARRgb2GsFilter_BYTE1D_Y8(INyARRaster i_ref_raster)
+	{
+		this._ref_raster=i_ref_raster;
+	}
+	public void convert(INyARGrayscaleRaster i_raster)
+	{
+		NyARIntSize s=this._ref_raster.getSize();
+		this.convertRect(0,0,s.w,s.h,i_raster);
+	}
+	public void convertRect(int l,int t,int w,int h,INyARGrayscaleRaster o_raster)
+	{
+		NyARIntSize size=this._ref_raster.getSize();
+		int ptr=t*size.w+l;
+		final int b=t+h;
+		final int row_padding=(size.w-w);
+		byte[] in_buf = (byte[]) this._ref_raster.getBuffer();
+		switch(o_raster.getBufferType()){
+		case NyARBufferType.INT1D_GRAY_8:
+			int[] out_buf=(int[])o_raster.getBuffer();
+			for (int y = t; y < b; y++) {
+				for (int x = w-1; x >=0; x--){
+					out_buf[ptr]=in_buf[ptr]&0xff;
+					ptr++;
+				}
+				ptr+=row_padding;
+			}
+			return;
+		default:
+			for (int y = t; y < b; y++) {
+				for (int x = 0; x<w; x++){
+					o_raster.setPixel(l+x,y,in_buf[ptr++]&0xff);
+				}
+				ptr+=row_padding;
+			}
+			return;
+		}
+	}
+}
 
 class NyARRgb2GsFilterRgbAve_Any implements INyARRgb2GsFilterRgbAve
 {
@@ -406,6 +695,294 @@ class NyARRgb2GsFilterRgbAve_Any implements INyARRgb2GsFilterRgbAve
 	}
 }
 
+////////////////////////////////////////////////////////////////////////////////
+//
+// RgbAveHistのラスタドライバ
+//
+////////////////////////////////////////////////////////////////////////////////
+
+/**
+ * RgbAveHistドライバの基底クラスです。
+ * ヒストグラムを作らない関数は、{@link NyARRgb2GsFilterFactory#createRgbAveDriver}のドライバに委譲します。
+ * ヒストグラムの走査行は{@link jp.nyatla.nyartoolkit.core.rasterdriver.histogram.INyARHistogramFromRaster}と同じで、
+ * 矩形の先頭行からi_skip行毎です。
+ */
+abstract class NyARRgb2GsFilterRgbAveHist_Base implements INyARRgb2GsFilterRgbAveHist
+{
+	protected final INyARRgbRaster _ref_raster;
+	private final INyARRgb2GsFilterRgbAve _drv;
+	protected NyARRgb2GsFilterRgbAveHist_Base(INyARRgbRaster i_ref_raster)
+	{
+		this._ref_raster=i_ref_raster;
+		this._drv=NyARRgb2GsFilterFactory.createRgbAveDriver(i_ref_raster);
+	}
+	public void convert(INyARGrayscaleRaster i_raster)
+	{
+		this._drv.convert(i_raster);
+	}
+	public void convertRect(int l,int t,int w,int h,INyARGrayscaleRaster o_raster)
+	{
+		this._drv.convertRect(l,t,w,h,o_raster);
+	}
+	public void convert(int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram)
+	{
+		NyARIntSize s=this._ref_raster.getSize();
+		this.convertRect(0,0,s.w,s.h,i_skip,o_raster,o_histogram);
+	}
+	/**
+	 * 融合処理のできない出力ラスタ向けの関数です。変換後に、出力ラスタからヒストグラムを生成します。
+	 */
+	protected void convertRectAny(int l,int t,int w,int h,int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram)
+	{
+		this._drv.convertRect(l,t,w,h,o_raster);
+		o_histogram.reset();
+		int[] data=o_histogram.data;
+		final int b=t+h;
+		final int r=l+w;
+		for(int y=t;y<b;y+=i_skip){
+			for(int x=l;x<r;x++){
+				data[o_raster.getPixel(x,y)]++;
+			}
+		}
+		o_histogram.total_of_data=w*h/i_skip;
+	}
+}
+
+/**
+ * 3バイトの輝度値が連続して並ぶbyte[]形式のドライバです。
+ * 輝度値の開始位置と画素サイズで、24/32bitの各形式を扱います。
+ */
+class NyARRgb2GsFilterRgbAveHist_BYTE1D_C8C8C8 extends NyARRgb2GsFilterRgbAveHist_Base
+{
+	private final int _offset;
+	private final int _pix;
+	public NyARRgb2GsFilterRgbAveHist_BYTE1D_C8C8C8(INyARRgbRaster i_ref_raster,int i_offset,int i_pix)
+	{
+		super(i_ref_raster);
+		this._offset=i_offset;
+		this._pix=i_pix;
+	}
+	public void convertRect(int l,int t,int w,int h,int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram)
+	{
+		if(!o_raster.isEqualBufferType(NyARBufferType.INT1D_GRAY_8)){
+			this.convertRectAny(l,t,w,h,i_skip,o_raster,o_histogram);
+			return;
+		}
+		NyARIntSize size=this._ref_raster.getSize();
+		final int pix=this._pix;
+		int bp = (l+t*size.w)*pix+this._offset;
+		final int b=t+h;
+		final int row_padding_dst=(size.w-w);
+		final int row_padding_src=row_padding_dst*pix;
+		int dst_ptr=t*size.w+l;
+		byte[] in_buf = (byte[]) this._ref_raster.getBuffer();
+		int[] out_buf=(int[])o_raster.getBuffer();
+		o_histogram.reset();
+		int[] data=o_histogram.data;
+		int v;
+		for (int y = t,sk=0; y < b; y++,sk--) {
+			if(sk==0){
+				//ヒストグラムの行
+				for (int x = w-1; x >=0; x--){
+					v=((in_buf[bp] & 0xff) + (in_buf[bp+1] & 0xff) + (in_buf[bp+2] & 0xff))/3;
+					out_buf[dst_ptr++]=v;
+					data[v]++;
+					bp+=pix;
+				}
+				sk=i_skip;
+			}else{
+				for (int x = w-1; x >=0; x--){
+					out_buf[dst_ptr++]=((in_buf[bp] & 0xff) + (in_buf[bp+1] & 0xff) + (in_buf[bp+2] & 0xff))/3;
+					bp+=pix;
+				}
+			}
+			bp+=row_padding_src;
+			dst_ptr+=row_padding_dst;
+		}
+		o_histogram.total_of_data=w*h/i_skip;
+	}
+}
+
+class NyARRgb2GsFilterRgbAveHist_INT1D_X8R8G8B8_32 extends NyARRgb2GsFilterRgbAveHist_Base
+{
+	public NyARRgb2GsFilterRgbAveHist_INT1D_X8R8G8B8_32(INyARRgbRaster i_ref_raster)
+	{
+		super(i_ref_raster);
+	}
+	public void convertRect(int l,int t,int w,int h,int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram)
+	{
+		if(!o_raster.isEqualBufferType(NyARBufferType.INT1D_GRAY_8)){
+			this.convertRectAny(l,t,w,h,i_skip,o_raster,o_histogram);
+			return;
+		}
+		NyARIntSize size=this._ref_raster.getSize();
+		final int b=t+h;
+		final int row_padding=(size.w-w);
+		int ptr=t*size.w+l;
+		int[] in_buf = (int[]) this._ref_raster.getBuffer();
+		int[] out_buf=(int[])o_raster.getBuffer();
+		o_histogram.reset();
+		int[] data=o_histogram.data;
+		int v;
+		for (int y = t,sk=0; y < b; y++,sk--) {
+			if(sk==0){
+				//ヒストグラムの行
+				for (int x = w-1; x >=0; x--){
+					v=in_buf[ptr];
+					v=(((v>>16)& 0xff)+((v>>8)& 0xff)+(v &0xff))/3;
+					out_buf[ptr++]=v;
+					data[v]++;
+				}
+				sk=i_skip;
+			}else{
+				for (int x = w-1; x >=0; x--){
+					v=in_buf[ptr];
+					out_buf[ptr++]=(((v>>16)& 0xff)+((v>>8)& 0xff)+(v &0xff))/3;
+				}
+			}
+			ptr+=row_padding;
+		}
+		o_histogram.total_of_data=w*h/i_skip;
+	}
+}
+
+class NyARRgb2GsFilterRgbAveHist_BBUF1D_C8C8C8 extends NyARRgb2GsFilterRgbAveHist_Base
+{
+	private final int _r;
+	private final int _g;
+	private final int _b;
+	private final int _pix;
+	public NyARRgb2GsFilterRgbAveHist_BBUF1D_C8C8C8(INyARRgbRaster i_ref_raster)
+	{
+		super(i_ref_raster);
+		int[] l=NyARRgbRaster_BBUF1D_C8C8C8.getPixelLayout(i_ref_raster.getBufferType());
+		this._r=l[0];
+		this._g=l[1];
+		this._b=l[2];
+		this._pix=l[3];
+	}
+	public void convertRect(int l,int t,int w,int h,int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram)
+	{
+		if(!o_raster.isEqualBufferType(NyARBufferType.INT1D_GRAY_8)){
+			this.convertRectAny(l,t,w,h,i_skip,o_raster,o_histogram);
+			return;
+		}
+		NyARIntSize size=this._ref_raster.getSize();
+		final int pix=this._pix;
+		final int r=this._r;
+		final int g=this._g;
+		final int bl=this._b;
+		int bp = (l+t*size.w)*pix;
+		final int b=t+h;
+		final int row_padding_dst=(size.w-w);
+		final int row_padding_src=row_padding_dst*pix;
+		int dst_ptr=t*size.w+l;
+		ByteBuffer in_buf = (ByteBuffer) this._ref_raster.getBuffer();
+		int[] out_buf=(int[])o_raster.getBuffer();
+		o_histogram.reset();
+		int[] data=o_histogram.data;
+		int v;
+		for (int y = t,sk=0; y < b; y++,sk--) {
+			if(sk==0){
+				//ヒストグラムの行
+				for (int x = w-1; x >=0; x--){
+					v=((in_buf.get(bp+r) & 0xff) + (in_buf.get(bp+g) & 0xff) + (in_buf.get(bp+bl) & 0xff))/3;
+					out_buf[dst_ptr++]=v;
+					data[v]++;
+					bp+=pix;
+				}
+				sk=i_skip;
+			}else{
+				for (int x = w-1; x >=0; x--){
+					out_buf[dst_ptr++]=((in_buf.get(bp+r) & 0xff) + (in_buf.get(bp+g) & 0xff) + (in_buf.get(bp+bl) & 0xff))/3;
+					bp+=pix;
+				}
+			}
+			bp+=row_padding_src;
+			dst_ptr+=row_padding_dst;
+		}
+		o_histogram.total_of_data=w*h/i_skip;
+	}
+}
+
+/**
+ * YUV420形式のラスタのドライバです。Y面をコピーしながらヒストグラムを生成します。
+ */
+class NyARRgb2GsFilterRgbAveHist_BYTE1D_Y8 extends NyARRgb2GsFilterRgbAveHist_Base
+{
+	public NyARRgb2GsFilterRgbAveHist_BYTE1D_Y8(INyARRgbRaster i_ref_raster)
+	{
+		super(i_ref_raster);
+	}
+	public void convertRect(int l,int t,int w,int h,int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram)
+	{
+		if(!o_raster.isEqualBufferType(NyARBufferType.INT1D_GRAY_8)){
+			this.convertRectAny(l,t,w,h,i_skip,o_raster,o_histogram);
+			return;
+		}
+		NyARIntSize size=this._ref_raster.getSize();
+		final int b=t+h;
+		final int row_padding=(size.w-w);
+		int ptr=t*size.w+l;
+		byte[] in_buf = (byte[]) this._ref_raster.getBuffer();
+		int[] out_buf=(int[])o_raster.getBuffer();
+		o_histogram.reset();
+		int[] data=o_histogram.data;
+		int v;
+		for (int y = t,sk=0; y < b; y++,sk--) {
+			if(sk==0){
+				//ヒストグラムの行
+				for (int x = w-1; x >=0; x--){
+					v=in_buf[ptr]&0xff;
+					out_buf[ptr++]=v;
+					data[v]++;
+				}
+				sk=i_skip;
+			}else{
+				for (int x = w-1; x >=0; x--){
+					out_buf[ptr]=in_buf[ptr]&0xff;
+					ptr++;
+				}
+			}
+			ptr+=row_padding;
+		}
+		o_histogram.total_of_data=w*h/i_skip;
+	}
+}
+
+class NyARRgb2GsFilterRgbAveHist_Any extends NyARRgb2GsFilterRgbAveHist_Base
+{
+	private int[] _wk=new int[3];
+	public NyARRgb2GsFilterRgbAveHist_Any(INyARRgbRaster i_ref_raster)
+	{
+		super(i_ref_raster);
+	}
+	public void convertRect(int l,int t,int w,int h,int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram)
+	{
+		int[] wk=this._wk;
+		final int b=t+h;
+		final int r=l+w;
+		INyARRgbRaster in_drv=this._ref_raster;
+		o_histogram.reset();
+		int[] data=o_histogram.data;
+		int v;
+		for (int y = t,sk=0; y < b; y++,sk--) {
+			for (int x = l; x<r; x++){
+				in_drv.getPixel(x,y,wk);
+				v=(wk[0]+wk[1]+wk[2])/3;
+				o_raster.setPixel(x,y,v);
+				if(sk==0){
+					data[v]++;
+				}
+			}
+			if(sk==0){
+				sk=i_skip;
+			}
+		}
+		o_histogram.total_of_data=w*h/i_skip;
+	}
+}
+
 ////////////////////////////////////////////////////////////////////////////////
 //
 // RgbCubeのラスタドライバ
@@ -413,7 +990,7 @@ class NyARRgb2GsFilterRgbAve_Any implements INyARRgb2GsFilterRgbAve
 ////////////////////////////////////////////////////////////////////////////////
 
 
-class NyARRgb2GsFilterRgbCube_Any implements INyARRgb2GsFilterRgbAve
+class NyARRgb2GsFilterRgbCube_Any implements INyARRgb2GsFilterRgbCube
 {
 	private INyARRgbRaster _ref_raster;
 	public NyARRgb2GsFilterRgbCube_Any(INyARRgbRaster i_ref_raster)
@@ -482,6 +1059,158 @@ class NyARRgb2GsFilterYCbCr_Any implements INyARRgb2GsFilterYCbCr
 	}
 }
 
+////////////////////////////////////////////////////////////////////////////////
+//
+// 並列ドライバ
+//
+////////////////////////////////////////////////////////////////////////////////
+
+/**
+ * 変換範囲を行単位の帯に分割して、帯毎のドライバで並列に変換する基底クラスです。
+ * 帯の分割と実行は{@link BandRunner}で行います。帯のドライバは、同じラスタから生成した直列ドライバです。
+ * 各帯は出力ラスタの異なる行に書き込むので、出力の同期は不要です。
+ */
+abstract class NyARRgb2GsFilterParallel_Base implements INyARRgb2GsFilter
+{
+	/**
+	 * 1つの帯を変換するジョブです。変換のパラメータは、{@link NyARRgb2GsFilterParallel_Base#invokeStrips}が設定します。
+	 */
+	private static class StripJob implements BandRunner.IBandJob
+	{
+		private final INyARRgb2GsFilter[] _drv;
+		public int l,t,w,h;
+		/** 帯の行数の単位。ヒストグラムを作るときは行の間引き数です。*/
+		public int unit;
+		public INyARGrayscaleRaster raster;
+		/** nullでなければ、変換と同時に帯毎のヒストグラムを作ります。ドライバは{@link INyARRgb2GsFilterRgbAveHist}である必要があります。*/
+		public NyARHistogram[] histogram;
+		public StripJob(INyARRgb2GsFilter[] i_drv)
+		{
+			this._drv=i_drv;
+		}
+		@Override
+		public void run(int i_band,int i_begin,int i_end)
+		{
+			final int b=this.t+this.h;
+			int y=this.t+i_begin*this.unit;
+			int e=this.t+i_end*this.unit;
+			if(e>b){
+				e=b;
+			}
+			if(this.histogram!=null){
+				((INyARRgb2GsFilterRgbAveHist)this._drv[i_band]).convertRect(this.l,y,this.w,e-y,this.unit,this.raster,this.histogram[i_band]);
+			}else{
+				this._drv[i_band].convertRect(this.l,y,this.w,e-y,this.raster);
+			}
+		}
+	}
+	protected final INyARRgbRaster _ref_raster;
+	private final BandRunner _runner;
+	private final StripJob _job;
+	protected NyARRgb2GsFilterParallel_Base(INyARRgbRaster i_ref_raster,ForkJoinPool i_pool,INyARRgb2GsFilter[] i_drv)
+	{
+		this._ref_raster=i_ref_raster;
+		this._runner=new BandRunner(i_pool,i_drv.length);
+		this._job=new StripJob(i_drv);
+	}
+	public void convert(INyARGrayscaleRaster i_raster)
+	{
+		NyARIntSize s=this._ref_raster.getSize();
+		this.convertRect(0,0,s.w,s.h,i_raster);
+	}
+	public void convertRect(int l,int t,int w,int h,INyARGrayscaleRaster o_raster)
+	{
+		this.invokeStrips(l,t,w,h,1,o_raster,null);
+	}
+	/**
+	 * 変換範囲を帯に分割して、並列に変換します。
+	 * 帯の行数は、最後の帯を除いてi_unitの倍数にします。小さい画像は分割せずに、先頭の帯のドライバで変換します。
+	 * @param i_unit
+	 * 帯の行数の単位
+	 * @param o_histogram
+	 * nullでなければ、帯毎のヒストグラムを格納する配列。要素数は帯のドライバの数以上です。
+	 * @return
+	 * 使った帯の数
+	 */
+	protected final int invokeStrips(int l,int t,int w,int h,int i_unit,INyARGrayscaleRaster o_raster,NyARHistogram[] o_histogram)
+	{
+		StripJob job=this._job;
+		job.l=l;
+		job.t=t;
+		job.w=w;
+		job.h=h;
+		job.unit=i_unit;
+		job.raster=o_raster;
+		job.histogram=o_histogram;
+		int units=(h+i_unit-1)/i_unit;
+		try{
+			//小さい画像は分割しない
+			return this._runner.run(job,units,w*h<NyARRgb2GsFilterFactory.PARALLEL_MIN_PIXELS?units:1);
+		}finally{
+			job.raster=null;
+			job.histogram=null;
+		}
+	}
+}
+
+class NyARRgb2GsFilterRgbAve_Parallel extends NyARRgb2GsFilterParallel_Base implements INyARRgb2GsFilterRgbAve
+{
+	public NyARRgb2GsFilterRgbAve_Parallel(INyARRgbRaster i_ref_raster,ForkJoinPool i_pool,INyARRgb2GsFilter[] i_drv)
+	{
+		super(i_ref_raster,i_pool,i_drv);
+	}
+}
+/**
+ * RgbAveHistの並列ドライバです。
+ * 帯の先頭行をヒストグラムの間引き行数の倍数に揃えるので、帯毎のヒストグラムの合計は直列ドライバのヒストグラムと同じです。
+ */
+class NyARRgb2GsFilterRgbAveHist_Parallel extends NyARRgb2GsFilterParallel_Base implements INyARRgb2GsFilterRgbAveHist
+{
+	private final NyARHistogram[] _histogram;
+	public NyARRgb2GsFilterRgbAveHist_Parallel(INyARRgbRaster i_ref_raster,ForkJoinPool i_pool,INyARRgb2GsFilterRgbAveHist[] i_drv)
+	{
+		super(i_ref_raster,i_pool,i_drv);
+		this._histogram=new NyARHistogram[i_drv.length];
+		for(int i=0;i<i_drv.length;i++){
+			this._histogram[i]=new NyARHistogram(256);
+		}
+	}
+	public void convert(int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram)
+	{
+		NyARIntSize s=this._ref_raster.getSize();
+		this.convertRect(0,0,s.w,s.h,i_skip,o_raster,o_histogram);
+	}
+	public void convertRect(int l,int t,int w,int h,int i_skip,INyARGrayscaleRaster o_raster,NyARHistogram o_histogram)
+	{
+		NyARHistogram[] s=this._histogram;
+		int n=this.invokeStrips(l,t,w,h,i_skip,o_raster,s);
+		//帯毎のヒストグラムを合算
+		o_histogram.reset();
+		int[] data=o_histogram.data;
+		for(int i=0;i<n;i++){
+			int[] sd=s[i].data;
+			for(int j=data.length-1;j>=0;j--){
+				data[j]+=sd[j];
+			}
+		}
+		o_histogram.total_of_data=w*h/i_skip;
+	}
+}
+class NyARRgb2GsFilterRgbCube_Parallel extends NyARRgb2GsFilterParallel_Base implements INyARRgb2GsFilterRgbCube
+{
+	public NyARRgb2GsFilterRgbCube_Parallel(INyARRgbRaster i_ref_raster,ForkJoinPool i_pool,INyARRgb2GsFilter[] i_drv)
+	{
+		super(i_ref_raster,i_pool,i_drv);
+	}
+}
+class NyARRgb2GsFilterYCbCr_Parallel extends NyARRgb2GsFilterParallel_Base implements INyARRgb2GsFilterYCbCr
+{
+	public NyARRgb2GsFilterYCbCr_Parallel(INyARRgbRaster i_ref_raster,ForkJoinPool i_pool,INyARRgb2GsFilter[] i_drv)
+	{
+		super(i_ref_raster,i_pool,i_drv);
+	}
+}
+
 /*	old cut filters
  		public void doCutFilter(INyARRaster i_input, int l,int t,int i_st,INyARGrayscaleRaster o_output)
 		{
@@ -52,6 +52,7 @@ import jp.nyatla.nyartoolkit.core.types.*;
  * <ul>
  * <li>{@link NyARBufferType#INT1D_GRAY_8}
  * </ul>
+ * それ以外の{@link INyARGrayscaleRaster}は、getPixel関数で画素を読み出します。
  * </p>
  */
 public class NyARContourPickup
@@ -69,12 +70,8 @@ public class NyARContourPickup
 			case NyARBufferType.INT1D_BIN_8:
 				return new NyARContourPickup_BIN_GS8(i_ref_raster);
 			default:
-				if(i_ref_raster instanceof NyARContourPickup_GsReader){
-					return new NyARContourPickup_GsReader((INyARGrayscaleRaster)i_ref_raster);
-				}
-				break;
+				return new NyARContourPickup_GsReader(i_ref_raster);
 			}
-			throw new NyARRuntimeException();
 		}
 	}
 	/** 最後に処理したラスタ*/
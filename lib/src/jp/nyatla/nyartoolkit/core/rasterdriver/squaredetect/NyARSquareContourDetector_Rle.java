@@ -24,13 +24,19 @@
  */
 package jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
 import jp.nyatla.nyartoolkit.core.raster.*;
 import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.NyARLabelInfo;
 import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.NyARLabelOverlapChecker;
 import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARLabeling_Rle;
 import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARRleLabelFragmentInfo;
 import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARRleLabelFragmentInfoPtrStack;
+import jp.nyatla.nyartoolkit.core.rasterdriver.labeling.rle.NyARRleLabelingEngine;
 import jp.nyatla.nyartoolkit.core.types.*;
 
 /**
@@ -46,6 +52,8 @@ public class NyARSquareContourDetector_Rle extends NyARSquareContourDetector
 		public NyARRleLabelFragmentInfoPtrStack label_stack;
 		int _right;
 		int _bottom;
+		/** nullでなければ、ラベリングにこのエンジンを使います。*/
+		NyARRleLabelingEngine _engine=null;
 		
 		
 		public Labeling(int i_width,int i_height)
@@ -62,7 +70,15 @@ public class NyARSquareContourDetector_Rle extends NyARSquareContourDetector
 			//配列初期化
 			this.label_stack.clear();
 			//ラベルの検出
-			boolean ret=super.labeling(i_raster, i_area, i_th);
+			boolean ret;
+			if(this._engine!=null){
+				ret=this._engine.labeling(i_raster, i_area, i_th);
+				if(ret){
+					this._engine.getLabels(this.label_stack,true);
+				}
+			}else{
+				ret=super.labeling(i_raster, i_area, i_th);
+			}
 			//ソート
 			this.label_stack.sortByArea();
 			return ret;
@@ -72,7 +88,15 @@ public class NyARSquareContourDetector_Rle extends NyARSquareContourDetector
 			//配列初期化
 			this.label_stack.clear();
 			//ラベルの検出
-			boolean ret=super.labeling(i_raster,i_th);
+			boolean ret;
+			if(this._engine!=null){
+				ret=this._engine.labeling(i_raster,i_th);
+				if(ret){
+					this._engine.getLabels(this.label_stack,true);
+				}
+			}else{
+				ret=super.labeling(i_raster,i_th);
+			}
 			//ソート
 			this.label_stack.sortByArea();
 			return ret;
@@ -122,6 +146,42 @@ public class NyARSquareContourDetector_Rle extends NyARSquareContourDetector
 		this._labeling=new Labeling(i_size.w,i_size.h);
 		this._cpickup=new NyARContourPickup();
 	}	
+	/**
+	 * ラベリングの並列モードを設定します。
+	 * 詳細は、{@link NyARLabeling_Rle#setParallelMode}を参照してください。
+	 * 並列モードを有効にすると、{@link #setArrayLabelingEngine}の設定は解除されます。
+	 * @param i_pool
+	 * ラベリングに使うスレッドプール。nullの場合はシリアル処理です。
+	 * @param i_number_of_strips
+	 * 最大ストリップ数
+	 */
+	public void setParallelMode(ForkJoinPool i_pool,int i_number_of_strips)
+	{
+		this._labeling.setParallelMode(i_pool,i_number_of_strips);
+		if(i_pool!=null && i_number_of_strips>=2){
+			//配列版のエンジンとは併用できない
+			this._labeling._engine=null;
+		}
+	}
+	/**
+	 * ラベリングに、プリミティブ配列版のエンジン{@link NyARRleLabelingEngine}を使うかを設定します。
+	 * 検出結果は変わりません。並列モードとは併用できないので、有効にすると{@link #setParallelMode}の設定は解除されます。
+	 * @param i_enable
+	 * trueの場合、{@link NyARRleLabelingEngine}を使います。
+	 */
+	public void setArrayLabelingEngine(boolean i_enable)
+	{
+		if(!i_enable){
+			this._labeling._engine=null;
+			return;
+		}
+		//並列モードとは併用できない
+		this._labeling.setParallelMode(null,0);
+		if(this._labeling._engine==null){
+			NyARIntSize s=new NyARIntSize(this._labeling._right+1,this._labeling._bottom+1);
+			this._labeling._engine=new NyARRleLabelingEngine(s.w,s.h);
+		}
+	}
 
 	private final int[] __detectMarker_mkvertex = new int[4];
 	/**
@@ -253,7 +313,233 @@ public class NyARSquareContourDetector_Rle extends NyARSquareContourDetector
 		}
 		return;
 	}
+	/**
+	 * 複数敷居値の検出で、通知済の矩形のラベルの位置と面積を記録するリストです。
+	 * 判定は{@link NyARLabelOverlapChecker}と同じです。
+	 * ラベルのインスタンスはラベリング毎に再利用されるので、値をコピーして保持します。
+	 */
+	private static class FoundLabelList
+	{
+		private double[] _pos_x;
+		private double[] _pos_y;
+		private int[] _area;
+		private int _length;
+		public FoundLabelList(int i_initial_size)
+		{
+			this._pos_x=new double[i_initial_size];
+			this._pos_y=new double[i_initial_size];
+			this._area=new int[i_initial_size];
+		}
+		public void clear()
+		{
+			this._length=0;
+		}
+		public void push(NyARLabelInfo i_label)
+		{
+			if(this._length>=this._area.length){
+				int n=this._area.length*2;
+				this._pos_x=Arrays.copyOf(this._pos_x,n);
+				this._pos_y=Arrays.copyOf(this._pos_y,n);
+				this._area=Arrays.copyOf(this._area,n);
+			}
+			this._pos_x[this._length]=i_label.pos_x;
+			this._pos_y[this._length]=i_label.pos_y;
+			this._area[this._length]=i_label.area;
+			this._length++;
+		}
+		/**
+		 * @return
+		 * 何れかのラベルの内側にあるならばfalse
+		 */
+		public boolean check(NyARLabelInfo i_label)
+		{
+			final int px1=(int)i_label.pos_x;
+			final int py1=(int)i_label.pos_y;
+			for(int i=this._length-1;i>=0;i--){
+				final int px2=(int)this._pos_x[i];
+				final int py2=(int)this._pos_y[i];
+				final int d=(px1-px2)*(px1-px2)+(py1-py2)*(py1-py2);
+				if(d<this._area[i]/4){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	/** 複数敷居値の検出で使う、画素を敷居値毎の段階に量子化した画像*/
+	private INyARGrayscaleRaster _level_raster=null;
+	/** 画素値から段階値への変換テーブル*/
+	private final int[] _level_lut=new int[256];
+	/** 敷居値の配列の順に並べた段階値*/
+	private int[] _levels=new int[8];
+	/** 昇順に並べた敷居値*/
+	private int[] _sorted_th=new int[8];
+	private final FoundLabelList _found_labels=new FoundLabelList(32);
+	/**
+	 * この関数は、複数の敷居値でラスタから矩形を検出して、コールバック関数で通知します。
+	 * 敷居値毎に{@link #detectMarker(INyARGrayscaleRaster, int, NyARSquareContourDetector.CbHandler)}を呼び出すのと同じ矩形を検出しますが、
+	 * 次の点が異なります。
+	 * <ul>
+	 * <li>{@link NyARBufferType#INT1D_GRAY_8}以外の入力画像は1回だけ走査して、画素を敷居値毎の段階に量子化します。
+	 * ラベリングと輪郭線の抽出は、量子化した画像に対して行います。
+	 * {@link jp.nyatla.nyartoolkit.core.raster.gs.NyARAdaptiveThresholdRaster}のように画素の読出しが重いラスタでも、読出しは1画素1回です。
+	 * {@link NyARBufferType#INT1D_GRAY_8}は量子化せずに、入力画像を直接ラベリングします。
+	 * <li>先の敷居値で通知した矩形と重なるラベルは、輪郭線の抽出前に除外します。同じ矩形を複数回通知しません。
+	 * </ul>
+	 * @param i_raster
+	 * 検出元のラスタ画像
+	 * @param i_th
+	 * 敷居値の配列。値は0から255の範囲です。配列の先頭から順に検出します。
+	 * @param i_num_of_th
+	 * 敷居値の数
+	 * @param i_cb
+	 * 矩形の通知先
+	 */
+	public void detectMarker(INyARGrayscaleRaster i_raster,int[] i_th,int i_num_of_th,NyARSquareContourDetector.CbHandler i_cb)
+	{
+		NyARIntSize s=i_raster.getSize();
+		INyARGrayscaleRaster q=this.quantize(i_raster,0,0,s.w,s.h,i_th,i_num_of_th);
+		this._found_labels.clear();
+		for(int i=0;i<i_num_of_th;i++){
+			final int lv=this._levels[i];
+			if(lv<0){
+				continue;
+			}
+			if(!this._labeling.labeling(q,lv)){
+				continue;
+			}
+			this.detectLevel(q,null,lv,i_cb);
+		}
+	}
+	/**
+	 * この関数は、複数の敷居値でラスタの一部の範囲から矩形を検出して、コールバック関数で通知します。
+	 * 詳細は{@link #detectMarker(INyARGrayscaleRaster, int[], int, NyARSquareContourDetector.CbHandler)}を参照してください。
+	 * @param i_raster
+	 * 検出元のラスタ画像
+	 * @param i_area
+	 * 検出する範囲。検出元のラスタの内側である必要があります。
+	 * 範囲の境界に接するラベルは、矩形の一部が範囲外にあるかもしれないので検出しません。
+	 * @param i_th
+	 * 敷居値の配列。値は0から255の範囲です。配列の先頭から順に検出します。
+	 * @param i_num_of_th
+	 * 敷居値の数
+	 * @param i_cb
+	 * 矩形の通知先
+	 */
+	public void detectMarker(INyARGrayscaleRaster i_raster,NyARIntRect i_area,int[] i_th,int i_num_of_th,NyARSquareContourDetector.CbHandler i_cb)
+	{
+		assert(i_area.w*i_area.h>0);
+		INyARGrayscaleRaster q=this.quantize(i_raster,i_area.x,i_area.y,i_area.w,i_area.h,i_th,i_num_of_th);
+		this._found_labels.clear();
+		for(int i=0;i<i_num_of_th;i++){
+			final int lv=this._levels[i];
+			if(lv<0){
+				continue;
+			}
+			if(!this._labeling.labeling(q,i_area,lv)){
+				continue;
+			}
+			this.detectLevel(q,i_area,lv,i_cb);
+		}
+	}
+	/**
+	 * 量子化した画像の1つの段階から矩形を検出します。ラベリングは済ませておきます。
+	 * @param i_area
+	 * 検出する範囲。画像全体の場合はnull
+	 */
+	private void detectLevel(INyARGrayscaleRaster i_raster,NyARIntRect i_area,int i_level,NyARSquareContourDetector.CbHandler i_cb)
+	{
+		final NyARRleLabelFragmentInfoPtrStack flagment=this._labeling.label_stack;
+		final FoundLabelList found=this._found_labels;
+		final int label_num=flagment.getLength();
+		NyARRleLabelFragmentInfo[] labels=flagment.getArray();
+		NyARIntCoordinates coord = this._coord;
+		final int[] mkvertex =this.__detectMarker_mkvertex;
+		for (int i=0; i < label_num; i++) {
+			final NyARRleLabelFragmentInfo label_pt=labels[i];
+			// 既に通知した矩形(他の敷居値で通知したものを含む)との重なりを確認
+			if (!found.check(label_pt)) {
+				continue;
+			}
+			//輪郭を取得
+			boolean ret=i_area==null?
+				this._cpickup.getContour(i_raster,i_level,label_pt.entry_x,label_pt.clip_t,coord):
+				this._cpickup.getContour(i_raster,i_area,i_level,label_pt.entry_x,label_pt.clip_t,coord);
+			if(!ret){
+				continue;
+			}
+			//輪郭線をチェックして、矩形かどうかを判定。矩形ならばmkvertexに取得
+			if (!this._coord2vertex.getVertexIndexes(coord,label_pt.area,mkvertex)) {
+				continue;
+			}
+			//矩形を発見したことをコールバック関数で通知
+			i_cb.detectMarkerCallback(coord,mkvertex);
+			found.push(label_pt);
+		}
+	}
+	/**
+	 * 入力画像の範囲を、敷居値毎の段階に量子化します。
+	 * 敷居値を昇順にならべたときのk番目の敷居値で暗点になる画素は、段階値がk以下になります。
+	 * 段階値は{@link #_levels}に、i_thと同じ順に格納します。重複する敷居値の段階値は-1です。
+	 * 入力画像が{@link NyARBufferType#INT1D_GRAY_8}の場合は、量子化せずに敷居値をそのまま段階値にします。
+	 * @return
+	 * ラベリングする画像
+	 */
+	private INyARGrayscaleRaster quantize(INyARGrayscaleRaster i_raster,int i_l,int i_t,int i_w,int i_h,int[] i_th,int i_num_of_th)
+	{
+		//敷居値を昇順に並べて、重複を除く
+		if(this._levels.length<i_num_of_th){
+			this._levels=new int[i_num_of_th];
+			this._sorted_th=new int[i_num_of_th];
+		}
+		final int[] sorted=this._sorted_th;
+		System.arraycopy(i_th,0,sorted,0,i_num_of_th);
+		Arrays.sort(sorted,0,i_num_of_th);
+		int n=0;
+		for(int i=0;i<i_num_of_th;i++){
+			if(sorted[i]<0 || sorted[i]>255){
+				throw new NyARRuntimeException();
+			}
+			if(n==0 || sorted[n-1]!=sorted[i]){
+				sorted[n]=sorted[i];
+				n++;
+			}
+		}
+		//段階値。画素値より小さい敷居値の数
+		final int[] lut=this._level_lut;
+		for(int i=0,k=0;i<256;i++){
+			while(k<n && sorted[k]<i){
+				k++;
+			}
+			lut[i]=k;
+		}
+		//INT1Dはそのまま読む方が速い
+		final boolean direct=i_raster.isEqualBufferType(NyARBufferType.INT1D_GRAY_8);
+		for(int i=0;i<i_num_of_th;i++){
+			int lv=direct?i_th[i]:Arrays.binarySearch(sorted,0,n,i_th[i]);
+			//先に出てきた敷居値と同じなら-1
+			for(int j=0;j<i;j++){
+				if(i_th[j]==i_th[i]){
+					lv=-1;
+					break;
+				}
+			}
+			this._levels[i]=lv;
+		}
+		if(direct){
+			return i_raster;
+		}
+		//量子化
+		NyARIntSize s=i_raster.getSize();
+		if(this._level_raster==null || !this._level_raster.getSize().isEqualSize(s)){
+			this._level_raster=NyARGrayscaleRaster.createInstance(s.w,s.h,NyARBufferType.INT1D_GRAY_8,true);
+		}
+		final int[] out=(int[])this._level_raster.getBuffer();
+		for(int y=i_t;y<i_t+i_h;y++){
+			for(int x=i_l,p=y*s.w+i_l;x<i_l+i_w;x++,p++){
+				out[p]=lut[i_raster.getPixel(x,y)];
+			}
+		}
+		return this._level_raster;
+	}
 }
-
-
-
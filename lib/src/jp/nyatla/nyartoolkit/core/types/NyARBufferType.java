@@ -34,7 +34,7 @@ package jp.nyatla.nyartoolkit.core.types;
  * <table>
  * <tr><td>ビットイールド(ビット幅)</td><td>カテゴリ</td><td>備考</td></tr>
  * <tr><td>24-31(8)</td><td>予約</td><td></td></tr>
- * <tr><td>16-27(8)</td><td>型ID</td><td>00:無効/01:byte[]/02:int[][]/03:short[]</td></tr>
+ * <tr><td>16-27(8)</td><td>型ID</td><td>00:無効/01:byte[]/02:int[][]/03:short[]/04:int[]/05:java.nio.ByteBuffer</td></tr>
  * <tr><td>08-15(8)</td><td>ビットフォーマットID</td><td>00:24bit/01:32bit/02:16bit</td></tr>
  * <tr><td>00-07(8)</td><td>型番号</td><td></td></tr>
  * </table>
@@ -46,6 +46,7 @@ public class NyARBufferType
 	private static final int T_INT2D  =0x00020000;
 	private static final int T_SHORT1D=0x00030000;
 	private static final int T_INT1D  =0x00040000;
+	private static final int T_BBUF1D =0x00050000;
 	private static final int T_OBJECT =0x00100000;
 	private static final int T_USER   =0x00FF0000;
 	//
@@ -89,9 +90,18 @@ public class NyARBufferType
 	 */
     public static final int BYTE1D_R5G6B5_16BE = T_BYTE1D|0x0202;
     
-    /**　byte[]のYUV420形式
+    /**　byte[]のYUV420形式(NV21)。Y面(w*h)の後に、V,Uの順で交互に並んだ色差面が続く。
      */
     public static final int BYTE1D_YUV420SP = T_BYTE1D|0x0301;
+    /**　byte[]のYUV420形式(NV12)。Y面(w*h)の後に、U,Vの順で交互に並んだ色差面が続く。
+     */
+    public static final int BYTE1D_NV12 = T_BYTE1D|0x0302;
+    /**　byte[]のYUV420形式(I420)。Y面(w*h)、U面、V面の順に並ぶ。
+     */
+    public static final int BYTE1D_I420 = T_BYTE1D|0x0303;
+    /**　byte[]のYUV420形式(YV12)。Y面(w*h)、V面、U面の順に並ぶ。
+     */
+    public static final int BYTE1D_YV12 = T_BYTE1D|0x0304;
 
     /** byte[]のGrayscale8bit*/
 	public static final int BYTE1D_GRAY_8 = T_BYTE1D|0x0401;
@@ -104,6 +114,29 @@ public class NyARBufferType
 	 */
     public static final int WORD1D_R5G6B5_16BE = T_SHORT1D|0x0202;
 
+    //
+    //ByteBuffer形式
+    //
+
+	/** RGB形式。ByteBufferで、R8G8B8の24ビットの画素形式。
+	 * 画素の並びは{@link #BYTE1D_R8G8B8_24}と同じです。以下のBBUF1D形式も同様です。
+	 */
+	public static final int BBUF1D_R8G8B8_24   = T_BBUF1D|0x0001;
+	/** RGB形式。ByteBufferで、B8G8R8の24ビットの画素形式。
+	 */
+	public static final int BBUF1D_B8G8R8_24   = T_BBUF1D|0x0002;
+	/** RGB形式。ByteBufferで、B8G8R8X8の32ビットの画素形式。
+	 */
+	public static final int BBUF1D_B8G8R8X8_32 = T_BBUF1D|0x0101;
+	/** RGB形式。ByteBufferで、X8R8G8B8の32ビットの画素形式。
+	 */
+	public static final int BBUF1D_X8R8G8B8_32 = T_BBUF1D|0x0102;
+	/** RGB形式。ByteBufferで、X8B8G8R8の32ビットの画素形式。
+	 */
+	public static final int BBUF1D_X8B8G8R8_32 = T_BBUF1D|0x0103;
+	/** ByteBufferのGrayscale8bit*/
+	public static final int BBUF1D_GRAY_8      = T_BBUF1D|0x0401;
+
     //
     //int[][]形式
     //
@@ -0,0 +1,182 @@
+/* 
+ * PROJECT: NyARToolkit
+ * --------------------------------------------------------------------------------
+ * The NyARToolkit is Java edition ARToolKit class library.
+ *  Copyright (C)2016 Ryo Iizuka
+ * 
+ * NyARToolkit is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as publishe
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * NyARToolkit is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and to
+ * copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module
+ * which is neither derived from nor based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you
+ * are not obligated to do so. If you do not wish to do so, delete this exception
+ * statement from your version.
+ * 
+ */
+package jp.nyatla.nyartoolkit.core.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * このクラスは、[0,n)の範囲を連続した帯に分割して、{@link ForkJoinPool}で並列に処理します。
+ * 帯には範囲の先頭から順に番号を振ります。帯毎の結果を番号順に結合すると、先頭から順に処理した結果と同じ順序になります。
+ * <p>
+ * 帯のタスクは再利用するので、{@link #run}はヒープを確保しません。
+ * 1つのインスタンスを複数のスレッドから同時に使うことはできません。
+ * </p>
+ */
+public class BandRunner
+{
+	/**
+	 * 画像を分割する場合の、1つの帯の最小の画素数の目安です。
+	 * これより小さい処理は、分割の負荷の方が大きくなります。
+	 */
+	public final static int MIN_BAND_PIXELS=160*100;
+	/**
+	 * 1つの帯を処理するインタフェイスです。
+	 */
+	public interface IBandJob
+	{
+		/**
+		 * 帯を処理します。異なる帯は、異なるスレッドから同時に呼び出されます。
+		 * @param i_band
+		 * 帯番号。0から{@link BandRunner#getNumberOfBands}-1です。
+		 * @param i_begin
+		 * 帯の先頭(含む)
+		 * @param i_end
+		 * 帯の終端(含まない)
+		 */
+		public void run(int i_band,int i_begin,int i_end);
+	}
+	/**
+	 * 1つの帯を処理するタスクです。再利用するので、実行前に{@link #reinitialize}を呼び出します。
+	 */
+	private static class Band extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		public final int band;
+		public IBandJob job;
+		public int begin,end;
+		public Band(int i_band)
+		{
+			this.band=i_band;
+		}
+		@Override
+		protected void compute()
+		{
+			this.job.run(this.band,this.begin,this.end);
+		}
+	}
+	/**
+	 * 帯のタスクを分岐して、完了を待つタスクです。
+	 */
+	private static class Root extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final Band[] _bands;
+		public int num_of_band;
+		public Root(Band[] i_bands)
+		{
+			this._bands=i_bands;
+		}
+		@Override
+		protected void compute()
+		{
+			Band[] b=this._bands;
+			int n=this.num_of_band;
+			for(int i=n-1;i>0;i--){
+				b[i].reinitialize();
+				b[i].fork();
+			}
+			//先頭の帯はこのスレッドで処理
+			b[0].compute();
+			for(int i=1;i<n;i++){
+				b[i].join();
+			}
+		}
+	}
+	private final ForkJoinPool _pool;
+	private final Band[] _bands;
+	private final Root _root;
+	/**
+	 * コンストラクタです。
+	 * @param i_pool
+	 * 帯の処理に使うスレッドプール。nullの場合は、呼び出したスレッドで処理します。
+	 * @param i_number_of_bands
+	 * 最大の帯数。i_poolがnullの場合は1です。
+	 */
+	public BandRunner(ForkJoinPool i_pool,int i_number_of_bands)
+	{
+		assert(i_number_of_bands>0);
+		this._pool=i_pool;
+		this._bands=new Band[i_pool==null?1:i_number_of_bands];
+		for(int i=0;i<this._bands.length;i++){
+			this._bands[i]=new Band(i);
+		}
+		this._root=new Root(this._bands);
+	}
+	/**
+	 * 最大の帯数を返します。帯毎の作業領域は、この数だけ用意します。
+	 */
+	public int getNumberOfBands()
+	{
+		return this._bands.length;
+	}
+	/**
+	 * [0,i_size)を帯に分割して、i_jobで処理します。
+	 * 帯の大きさは、i_min_size以上です。帯が1つの場合は、呼び出したスレッドで処理します。
+	 * @param i_job
+	 * 帯を処理するジョブ
+	 * @param i_size
+	 * 範囲の大きさ
+	 * @param i_min_size
+	 * 帯の最小の大きさ
+	 * @return
+	 * 分割した帯の数
+	 */
+	public int run(IBandJob i_job,int i_size,int i_min_size)
+	{
+		Band[] b=this._bands;
+		int n=i_size/(i_min_size<1?1:i_min_size);
+		if(n>b.length){
+			n=b.length;
+		}
+		if(n<2){
+			i_job.run(0,0,i_size);
+			return 1;
+		}
+		for(int i=0;i<n;i++){
+			b[i].job=i_job;
+			b[i].begin=(int)((long)i_size*i/n);
+			b[i].end=(int)((long)i_size*(i+1)/n);
+		}
+		Root r=this._root;
+		r.num_of_band=n;
+		r.reinitialize();
+		try{
+			this._pool.invoke(r);
+		}finally{
+			for(int i=0;i<n;i++){
+				b[i].job=null;
+			}
+		}
+		return n;
+	}
+}
@@ -19,6 +19,7 @@ public class BinaryWriter
 	{
 		ByteBuffer old=this._bb;
 		this._bb=ByteBuffer.allocate(old.capacity()*2);
+		this._bb.order(old.order());
 		this._bb.put(old.array(),0,old.position());
 	}
 	
@@ -40,6 +41,24 @@ public class BinaryWriter
 			this._bb.putFloat(v);
 		}
 	}
+	public void putLong(long v)
+	{
+		try{
+			this._bb.putLong(v);
+		}catch(BufferOverflowException e){
+			this.realloc();
+			this._bb.putLong(v);
+		}
+	}
+	public void putDouble(double v)
+	{
+		try{
+			this._bb.putDouble(v);
+		}catch(BufferOverflowException e){
+			this.realloc();
+			this._bb.putDouble(v);
+		}
+	}
 	public void putIntArray(int[] v) {
 		for(int i=0;i<v.length;i++){
 			this.putInt(v[i]);
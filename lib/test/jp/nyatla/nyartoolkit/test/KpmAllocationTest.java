@@ -0,0 +1,90 @@
+package jp.nyatla.nyartoolkit.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.management.ManagementFactory;
+
+import jp.nyatla.nyartoolkit.core.kpm.keyframe.KeyframeMap;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.FreakKeypointMatching;
+import jp.nyatla.nyartoolkit.core.marker.nft.NyARNftFreakFsetFile;
+import jp.nyatla.nyartoolkit.core.param.NyARParam;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.NyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilterRgbAve;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix44;
+
+
+/**
+ * KPMの処理(入力画像の設定、特徴点検出、マッチングと姿勢推定)が、ウォームアップ後にヒープを確保しないことを確認します。
+ * 確保量の計測には、com.sun.management.ThreadMXBeanを使います。
+ */
+public class KpmAllocationTest
+{
+	private final static int WARMUP=5;
+	private final static int LOOP=20;
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		try {
+			String img_file="../Data/testcase/test.raw";
+			String cparam_file=	"../Data/testcase/camera_para5.dat";
+			String fset3file="../Data/testcase/pinball.fset3";
+			com.sun.management.ThreadMXBean mx=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+			if(!mx.isThreadAllocatedMemorySupported()){
+				System.out.println("SKIP: ThreadAllocatedMemory is not supported.");
+				return;
+			}
+			mx.setThreadAllocatedMemoryEnabled(true);
+			long tid=Thread.currentThread().getId();
+			//カメラパラメータ
+			NyARParam param=NyARParam.loadFromARParamFile(new FileInputStream(cparam_file),640,480,NyARParam.DISTFACTOR_LT_ARTK5);
+			INyARGrayscaleRaster gs=NyARGrayscaleRaster.createInstance(640,480);
+			//試験画像の準備
+			{
+				INyARRgbRaster rgb=NyARRgbRaster.createInstance(640,480,NyARBufferType.BYTE1D_B8G8R8X8_32);
+				FileInputStream fs = new FileInputStream(img_file);
+				fs.read((byte[])rgb.getBuffer());
+				fs.close();
+				INyARRgb2GsFilterRgbAve filter=(INyARRgb2GsFilterRgbAve) rgb.createInterface(INyARRgb2GsFilterRgbAve.class);
+				filter.convert(gs);
+			}
+			NyARDoubleMatrix44 tmat=new NyARDoubleMatrix44();
+			NyARNftFreakFsetFile f = NyARNftFreakFsetFile.loadFromfset3File(new FileInputStream(new File(fset3file)));
+			FreakKeypointMatching kpm=new FreakKeypointMatching(param);
+			KeyframeMap keymap=new KeyframeMap(f,0);
+			//ウォームアップ
+			for(int i=0;i<WARMUP;i++){
+				kpm.updateInputImage(gs);
+				kpm.updateFeatureSet();
+				kpm.kpmMatching(keymap,tmat);
+			}
+			//計測
+			int found=0;
+			long before=mx.getThreadAllocatedBytes(tid);
+			for(int i=0;i<LOOP;i++){
+				kpm.updateInputImage(gs);
+				kpm.updateFeatureSet();
+				if(kpm.kpmMatching(keymap,tmat)){
+					found++;
+				}
+			}
+			long allocated=mx.getThreadAllocatedBytes(tid)-before;
+			System.out.println("found="+found+"/"+LOOP+" allocated="+allocated+"bytes");
+			if(found!=LOOP){
+				throw new Exception("KPM matching failed.");
+			}
+			if(allocated!=0){
+				throw new Exception("KPM allocated "+allocated+" bytes after warmup.");
+			}
+			System.out.println("OK");
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package jp.nyatla.nyartoolkit.test;
+
+import java.io.FileInputStream;
+import java.util.Arrays;
+
+import jp.nyatla.nyartoolkit.core.kpm.KpmImage;
+import jp.nyatla.nyartoolkit.core.kpm.freak.FreakFeaturePoint;
+import jp.nyatla.nyartoolkit.core.kpm.freak.FreakFeaturePointStack;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.FreakKeypointMatching;
+import jp.nyatla.nyartoolkit.core.kpm.pyramid.BinomialPyramid32f;
+import jp.nyatla.nyartoolkit.core.kpm.utils.InputChangeDetector;
+import jp.nyatla.nyartoolkit.core.param.NyARParam;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.NyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilterRgbAve;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+
+
+/**
+ * 閾値0の変化検出で部分的に再計算したピラミッドと特徴点セットが、毎回全体を計算した結果と一致することを確認します。
+ * 試験画像は、../Data/testcaseの画像を、ずらしたり1画素だけ書き換えたりした連続フレームです。
+ */
+public class KpmChangeDetectionTest
+{
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		try {
+			String img_file="../Data/testcase/test.raw";
+			String cparam_file=	"../Data/testcase/camera_para5.dat";
+			NyARParam param=NyARParam.loadFromARParamFile(new FileInputStream(cparam_file),640,480,NyARParam.DISTFACTOR_LT_ARTK5);
+			INyARGrayscaleRaster src=NyARGrayscaleRaster.createInstance(640,480);
+			//試験画像の準備
+			{
+				INyARRgbRaster rgb=NyARRgbRaster.createInstance(640,480,NyARBufferType.BYTE1D_B8G8R8X8_32);
+				FileInputStream fs = new FileInputStream(img_file);
+				fs.read((byte[])rgb.getBuffer());
+				fs.close();
+				INyARRgb2GsFilterRgbAve filter=(INyARRgb2GsFilterRgbAve) rgb.createInterface(INyARRgb2GsFilterRgbAve.class);
+				filter.convert(src);
+			}
+			int[][] frames=createFrames((int[])src.getBuffer(),640,480);
+			INyARGrayscaleRaster gs=NyARGrayscaleRaster.createInstance(640,480);
+			int[] gs_buf=(int[])gs.getBuffer();
+			//ピラミッド
+			int octaves=BinomialPyramid32f.octavesFromMinimumCoarsestSize(640,480,8);
+			BinomialPyramid32f inc_pyramid=new BinomialPyramid32f(640,480,octaves,3);
+			BinomialPyramid32f full_pyramid=new BinomialPyramid32f(640,480,octaves,3);
+			InputChangeDetector cd=new InputChangeDetector(640,480,0);
+			//特徴点セット
+			FreakKeypointMatching inc_kpm=new FreakKeypointMatching(param);
+			FreakKeypointMatching full_kpm=new FreakKeypointMatching(param);
+			inc_kpm.setChangeDetection(0);
+			for(int i=0;i<frames.length;i++){
+				System.arraycopy(frames[i],0,gs_buf,0,gs_buf.length);
+				boolean changed=cd.update(gs);
+				if(changed){
+					inc_pyramid.build(gs,cd.getRowBegin(),cd.getRowEnd());
+				}
+				full_pyramid.build(gs);
+				System.out.println("frame["+i+"] changed="+changed+" rows="+(changed?cd.getRowBegin()+"-"+cd.getRowEnd():"-"));
+				if(i>0 && changed==Arrays.equals(frames[i],frames[i-1])){
+					throw new Exception("frame["+i+"] change detection is wrong.");
+				}
+				checkPyramid(i,inc_pyramid,full_pyramid);
+				if(inc_kpm.updateInputImage(gs)){
+					inc_kpm.updateFeatureSet();
+				}
+				full_kpm.updateInputImage(gs);
+				full_kpm.updateFeatureSet();
+				checkFeatureSet(i,inc_kpm.getQueryFeatureSet(),full_kpm.getQueryFeatureSet());
+			}
+			System.out.println("OK");
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+	/**
+	 * 試験フレームを作ります。
+	 * 元画像、同じ画像、3画素ずらした画像、奇数行/列の1画素を書き換えた画像、一部の行を書き換えた画像の順です。
+	 */
+	private static int[][] createFrames(int[] i_src,int i_w,int i_h)
+	{
+		int[][] f=new int[6][];
+		f[0]=i_src.clone();
+		f[1]=i_src.clone();
+		f[2]=new int[i_src.length];
+		for(int y=0;y<i_h;y++){
+			for(int x=0;x<i_w;x++){
+				int sx=x+3<i_w?x+3:i_w-1;
+				int sy=y+3<i_h?y+3:i_h-1;
+				f[2][y*i_w+x]=i_src[sy*i_w+sx];
+			}
+		}
+		f[3]=f[2].clone();
+		f[3][47*i_w+301]^=0x01;
+		f[4]=f[3].clone();
+		f[4][479*i_w+639]=255-f[4][479*i_w+639];
+		f[5]=f[4].clone();
+		for(int y=200;y<233;y++){
+			for(int x=0;x<i_w;x++){
+				f[5][y*i_w+x]=255-f[5][y*i_w+x];
+			}
+		}
+		return f;
+	}
+	private static void checkPyramid(int i_frame,BinomialPyramid32f i_a,BinomialPyramid32f i_b) throws Exception
+	{
+		KpmImage[] a=i_a.images();
+		KpmImage[] b=i_b.images();
+		for(int i=0;i<a.length;i++){
+			if(!Arrays.equals((float[])a[i].getBuffer(),(float[])b[i].getBuffer())){
+				throw new Exception("frame["+i_frame+"] pyramid level "+i+" does not match.");
+			}
+		}
+	}
+	private static void checkFeatureSet(int i_frame,FreakFeaturePointStack i_a,FreakFeaturePointStack i_b) throws Exception
+	{
+		if(i_a.getLength()!=i_b.getLength()){
+			throw new Exception("frame["+i_frame+"] number of features does not match.");
+		}
+		for(int i=0;i<i_a.getLength();i++){
+			FreakFeaturePoint a=i_a.getItem(i);
+			FreakFeaturePoint b=i_b.getItem(i);
+			if(a.x!=b.x || a.y!=b.y || a.angle!=b.angle || a.scale!=b.scale || a.maxima!=b.maxima || !Arrays.equals(a.descripter._desc,b.descripter._desc)){
+				throw new Exception("frame["+i_frame+"] feature["+i+"] does not match.");
+			}
+		}
+		System.out.println("frame["+i_frame+"] features="+i_a.getLength());
+	}
+}
@@ -0,0 +1,131 @@
+package jp.nyatla.nyartoolkit.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import jp.nyatla.nyartoolkit.core.kpm.freak.FreakFeaturePoint;
+import jp.nyatla.nyartoolkit.core.kpm.freak.FreakFeaturePointStack;
+import jp.nyatla.nyartoolkit.core.kpm.keyframe.KeyframeMap;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.FreakKeypointMatching;
+import jp.nyatla.nyartoolkit.core.marker.nft.NyARNftFreakFsetFile;
+import jp.nyatla.nyartoolkit.core.param.NyARParam;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.NyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilterRgbAve;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix44;
+
+
+/**
+ * 32bit浮動小数点のピラミッド/DoG/勾配画像で検出したFREAK特徴点と姿勢が、
+ * 64bit浮動小数点(double)で計算していた時の値と許容誤差内で一致することを確認します。
+ * 期待値は、double版で../Data/testcaseを処理した結果です。
+ */
+public class KpmFloatPyramidTest
+{
+	/** 特徴点数*/
+	private final static int NUM_OF_FEATURE=499;
+	/** 先頭の特徴点の{x,y,angle,scale}*/
+	private final static double[][] FEATURE_HEAD={
+		{107.09925381570675,53.39897419641726,0.11731705795080671,1.281549364702382},
+		{107.09925381570675,53.39897419641726,1.4492547819942212,1.281549364702382},
+		{307.9915078155419,53.329781096353585,1.6858010034380673,1.2689109251962445},
+		{307.9915078155419,53.329781096353585,3.022067013910938,1.2689109251962445},
+		{284.0677735857508,64.11352241984027,6.203013819234643,1.3610763569769901},
+		{268.4941756993559,70.05903138353189,3.4422916921025823,1.0889562883899178},
+		{198.409294385259,78.96834582530727,4.744602502806282,1.2639553490617743},
+		{222.32352433640295,78.67188811772387,4.825539173644541,1.3563293533632517}};
+	/** 全特徴点の{x,y,scale}の合計*/
+	private final static double[] FEATURE_SUM={108030.1109023824,92474.0796221347,1328.2134690841};
+	/** 姿勢行列の{m00,m01,m02,m03,m10,m11,m12,m13,m20,m21,m22,m23}*/
+	private final static double[] TRANSMAT={
+		0.98447192594868,0.00565404752035718,-0.1754510152878437,-191.38015883199628,
+		0.010554299611729026,-0.9995794741742369,0.027008916477015154,63.80783125123271,
+		-0.17522452390752236,-0.028441282604446335,-0.9841176045906281,613.3752003579316};
+	/** 特徴点の座標と大きさの許容誤差(pixel)*/
+	private final static double EPS_POS=0.01;
+	/** 特徴点の方向の許容誤差(rad)*/
+	private final static double EPS_ANGLE=0.001;
+	/** 回転成分の許容誤差*/
+	private final static double EPS_ROT=0.0001;
+	/** 平行移動成分の許容誤差(mm)*/
+	private final static double EPS_POSITION=0.01;
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		try {
+			String img_file="../Data/testcase/test.raw";
+			String cparam_file=	"../Data/testcase/camera_para5.dat";
+			String fset3file="../Data/testcase/pinball.fset3";
+			//カメラパラメータ
+			NyARParam param=NyARParam.loadFromARParamFile(new FileInputStream(cparam_file),640,480,NyARParam.DISTFACTOR_LT_ARTK5);
+			INyARGrayscaleRaster gs=NyARGrayscaleRaster.createInstance(640,480);
+			//試験画像の準備
+			{
+				INyARRgbRaster rgb=NyARRgbRaster.createInstance(640,480,NyARBufferType.BYTE1D_B8G8R8X8_32);
+				FileInputStream fs = new FileInputStream(img_file);
+				fs.read((byte[])rgb.getBuffer());
+				fs.close();
+				INyARRgb2GsFilterRgbAve filter=(INyARRgb2GsFilterRgbAve) rgb.createInterface(INyARRgb2GsFilterRgbAve.class);
+				filter.convert(gs);
+			}
+			NyARDoubleMatrix44 tmat=new NyARDoubleMatrix44();
+			NyARNftFreakFsetFile f = NyARNftFreakFsetFile.loadFromfset3File(new FileInputStream(new File(fset3file)));
+			FreakKeypointMatching kpm=new FreakKeypointMatching(param);
+			KeyframeMap keymap=new KeyframeMap(f,0);
+			kpm.updateInputImage(gs);
+			kpm.updateFeatureSet();
+			//特徴点
+			FreakFeaturePointStack fp=kpm.getQueryFeatureSet();
+			System.out.println("features="+fp.getLength());
+			if(fp.getLength()!=NUM_OF_FEATURE){
+				throw new Exception("Number of features does not match.");
+			}
+			for(int i=0;i<FEATURE_HEAD.length;i++){
+				FreakFeaturePoint p=fp.getItem(i);
+				double[] e=FEATURE_HEAD[i];
+				check("feature["+i+"].x",p.x,e[0],EPS_POS);
+				check("feature["+i+"].y",p.y,e[1],EPS_POS);
+				check("feature["+i+"].angle",p.angle,e[2],EPS_ANGLE);
+				check("feature["+i+"].scale",p.scale,e[3],EPS_POS);
+			}
+			double sx=0,sy=0,ss=0;
+			for(int i=0;i<fp.getLength();i++){
+				FreakFeaturePoint p=fp.getItem(i);
+				sx+=p.x;
+				sy+=p.y;
+				ss+=p.scale;
+			}
+			check("sum(x)",sx,FEATURE_SUM[0],EPS_POS*NUM_OF_FEATURE);
+			check("sum(y)",sy,FEATURE_SUM[1],EPS_POS*NUM_OF_FEATURE);
+			check("sum(scale)",ss,FEATURE_SUM[2],EPS_POS*NUM_OF_FEATURE);
+			//姿勢
+			if(!kpm.kpmMatching(keymap,tmat)){
+				throw new Exception("KPM matching failed.");
+			}
+			double[] m={
+				tmat.m00,tmat.m01,tmat.m02,tmat.m03,
+				tmat.m10,tmat.m11,tmat.m12,tmat.m13,
+				tmat.m20,tmat.m21,tmat.m22,tmat.m23};
+			for(int i=0;i<m.length;i++){
+				check("transmat["+i+"]",m[i],TRANSMAT[i],(i%4==3)?EPS_POSITION:EPS_ROT);
+			}
+			System.out.println("OK");
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+	private static void check(String i_name,double i_value,double i_expected,double i_eps) throws Exception
+	{
+		double d=Math.abs(i_value-i_expected);
+		System.out.println(i_name+"="+i_value+" diff="+d);
+		if(d>i_eps){
+			throw new Exception(i_name+" is out of tolerance.");
+		}
+	}
+}
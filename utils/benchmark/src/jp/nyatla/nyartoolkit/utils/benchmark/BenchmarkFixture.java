@@ -0,0 +1,113 @@
+package jp.nyatla.nyartoolkit.utils.benchmark;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.NyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilter;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+
+/**
+ * ベンチマークが使うテストデータ(Dataディレクトリ)の読み出し関数を集めたクラスです。
+ * Dataディレクトリの位置は、システムプロパティ{@link #DATA_DIR_PROPERTY}で変更できます。
+ * 未指定の場合は、utils/benchmarkをカレントディレクトリとした相対パス"../../Data"を使います。
+ */
+public class BenchmarkFixture
+{
+	/** Dataディレクトリの位置を指定するシステムプロパティの名前です。*/
+	public final static String DATA_DIR_PROPERTY="nyartoolkit.benchmark.data";
+	/** マーカ検出用の試験画像(320x240 BGRA)*/
+	public final static String MARKER_IMAGE="320x240ABGR.raw";
+	/** NyId検出用の試験画像(320x240 RGB)*/
+	public final static String NYID_IMAGE="320x240NyId.raw";
+	/** Hiroマーカのパターンファイル*/
+	public final static String PATT_HIRO="patt.hiro";
+	/** 320x240画像用のカメラパラメータ*/
+	public final static String CAMERA_PARA="camera_para.dat";
+	/** NFT用の試験画像(640x480 BGRA)*/
+	public final static String NFT_IMAGE="testcase/test.raw";
+	/** NFT用のカメラパラメータ(ARToolKit5形式)*/
+	public final static String NFT_CAMERA_PARA="testcase/camera_para5.dat";
+	/** NFT用の特徴点ファイル*/
+	public final static String NFT_FSET3="testcase/pinball.fset3";
+
+	private BenchmarkFixture()
+	{
+	}
+	/**
+	 * Dataディレクトリにあるファイルを返します。
+	 * @param i_name
+	 * Dataディレクトリからの相対パス
+	 * @return
+	 * ファイルオブジェクト
+	 */
+	public static File getDataFile(String i_name)
+	{
+		return new File(System.getProperty(DATA_DIR_PROPERTY,"../../Data"),i_name);
+	}
+	/**
+	 * Dataディレクトリにあるファイルのストリームを開きます。
+	 * @param i_name
+	 * Dataディレクトリからの相対パス
+	 */
+	public static InputStream openDataFile(String i_name) throws IOException
+	{
+		return new FileInputStream(getDataFile(i_name));
+	}
+	/**
+	 * Dataディレクトリにあるファイルを全て読み出します。
+	 * @param i_name
+	 * Dataディレクトリからの相対パス
+	 */
+	public static byte[] loadDataFile(String i_name) throws IOException
+	{
+		File f=getDataFile(i_name);
+		byte[] buf=new byte[(int)f.length()];
+		DataInputStream ds=new DataInputStream(new FileInputStream(f));
+		try{
+			ds.readFully(buf);
+		}finally{
+			ds.close();
+		}
+		return buf;
+	}
+	/**
+	 * RAW形式の試験画像を読み出して、そのバッファをラップしたRGBラスタを返します。
+	 * @param i_name
+	 * Dataディレクトリからの相対パス
+	 * @param i_width
+	 * 画像の幅
+	 * @param i_height
+	 * 画像の高さ
+	 * @param i_buffer_type
+	 * 画像の形式。{@link NyARBufferType}の定数です。
+	 */
+	public static INyARRgbRaster loadRgbRaster(String i_name,int i_width,int i_height,int i_buffer_type) throws IOException
+	{
+		INyARRgbRaster ra=NyARRgbRaster.createInstance(i_width,i_height,i_buffer_type,false);
+		ra.wrapBuffer(loadDataFile(i_name));
+		return ra;
+	}
+	/**
+	 * RAW形式の試験画像を読み出して、グレースケール画像に変換して返します。
+	 * 変換には{@link INyARRgb2GsFilter}を使います。
+	 */
+	public static INyARGrayscaleRaster loadGsRaster(String i_name,int i_width,int i_height,int i_buffer_type) throws IOException
+	{
+		INyARRgbRaster rgb=loadRgbRaster(i_name,i_width,i_height,i_buffer_type);
+		INyARGrayscaleRaster gs=NyARGrayscaleRaster.createInstance(i_width,i_height);
+		INyARRgb2GsFilter filter=(INyARRgb2GsFilter)rgb.createInterface(INyARRgb2GsFilter.class);
+		if(filter==null){
+			throw new NyARRuntimeException();
+		}
+		filter.convert(gs);
+		return gs;
+	}
+}
@@ -0,0 +1,266 @@
+package jp.nyatla.nyartoolkit.utils.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.kpm.binaryhierarchicalclustering.BinaryHierarchicalNode;
+import jp.nyatla.nyartoolkit.core.kpm.binaryhierarchicalclustering.selector.BinaryHierarchicalSelector;
+import jp.nyatla.nyartoolkit.core.kpm.binaryhierarchicalclustering.selector.BinaryHierarchicalSelector_O1;
+import jp.nyatla.nyartoolkit.core.kpm.binaryhierarchicalclustering.selector.BinaryHierarchicalSelector_O2;
+import jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid.DoGScaleInvariantDetector;
+import jp.nyatla.nyartoolkit.core.kpm.dogscalepyramid.DogFeaturePointStack;
+import jp.nyatla.nyartoolkit.core.kpm.freak.FREAKExtractor;
+import jp.nyatla.nyartoolkit.core.kpm.freak.FreakFeaturePoint;
+import jp.nyatla.nyartoolkit.core.kpm.freak.FreakFeaturePointStack;
+import jp.nyatla.nyartoolkit.core.kpm.keyframe.Keyframe;
+import jp.nyatla.nyartoolkit.core.kpm.keyframe.KeyframeMap;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.FeaturePairStack;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.FreakKeypointMatching;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.binaryfeature.BinaryHirerarchialClusteringMatcher;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.houghsimilarityvoting.HoughSimilarityVoting;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.houghsimilarityvoting.HoughSimilarityVoting_O1;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.houghsimilarityvoting.HoughSimilarityVoting_O2;
+import jp.nyatla.nyartoolkit.core.kpm.matcher.houghsimilarityvoting.HoughSimilarityVoting_O3;
+import jp.nyatla.nyartoolkit.core.kpm.pyramid.BinomialPyramid32f;
+import jp.nyatla.nyartoolkit.core.marker.nft.NyARNftFreakFsetFile;
+import jp.nyatla.nyartoolkit.core.param.NyARParam;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix44;
+
+/**
+ * NFTのキーポイントマッチング(KPM)の各ステージを計測するJMHベンチマークです。
+ * 入力は../Data/testcase/test.raw、camera_para5.dat、pinball.fset3です。
+ * <p>
+ * {@link FreakKeypointMatching}のステージ(ピラミッド生成、特徴点検出、マッチング)に加えて、
+ * ハフ投票({@link HoughSimilarityVoting}と_O1～_O3)と、
+ * 階層クラスタ探索({@link BinaryHierarchicalSelector}と_O1,_O2)の実装毎の処理時間を計測します。
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=10,time=1)
+@Fork(1)
+public class KpmPipelineBenchmark
+{
+	private final static int W=640;
+	private final static int H=480;
+	private final static int MAX_FEATURES=500;
+
+	private INyARGrayscaleRaster _gs;
+	private NyARParam _param;
+	private KeyframeMap _keymap;
+	private FreakKeypointMatching _kpm;
+	private final NyARDoubleMatrix44 _tmat=new NyARDoubleMatrix44();
+	/** ステージ毎の計測に使う、{@link FreakKeypointMatching}と同じ構成の部品*/
+	private BinomialPyramid32f _pyramid;
+	private DoGScaleInvariantDetector _dog_detector;
+	private final FREAKExtractor _extractor=new FREAKExtractor();
+	private final DogFeaturePointStack _dog_points=new DogFeaturePointStack(MAX_FEATURES);
+	private final FreakFeaturePointStack _query=new FreakFeaturePointStack(MAX_FEATURES);
+	/** 最初のキーフレームと、そのキーフレームに対するマッチング結果*/
+	private Keyframe _keyframe;
+	private FeaturePairStack _matches;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		this._gs=BenchmarkFixture.loadGsRaster(BenchmarkFixture.NFT_IMAGE,W,H,NyARBufferType.BYTE1D_B8G8R8X8_32);
+		this._param=NyARParam.loadFromARParamFile(BenchmarkFixture.openDataFile(BenchmarkFixture.NFT_CAMERA_PARA),W,H,NyARParam.DISTFACTOR_LT_ARTK5);
+		NyARNftFreakFsetFile fset=NyARNftFreakFsetFile.loadFromfset3File(BenchmarkFixture.openDataFile(BenchmarkFixture.NFT_FSET3));
+		this._keymap=new KeyframeMap(fset,0);
+		this._kpm=new FreakKeypointMatching(this._param);
+		this._kpm.updateInputImage(this._gs);
+		this._kpm.updateFeatureSet();
+
+		int octerves=BinomialPyramid32f.octavesFromMinimumCoarsestSize(W,H,8);
+		this._pyramid=new BinomialPyramid32f(W,H,octerves,3);
+		this._dog_detector=new DoGScaleInvariantDetector(W,H,octerves,3,3,4,MAX_FEATURES);
+		this._pyramid.build(this._gs);
+		this.detect();
+		this.extract();
+		//最初のキーフレームに対する対応点
+		this._keyframe=this._keymap.firstEntry().getValue();
+		this._matches=new FeaturePairStack(MAX_FEATURES);
+		new BinaryHirerarchialClusteringMatcher().match(this._query,this._keyframe,this._matches);
+		if(this._matches.getLength()==0){
+			throw new NyARRuntimeException("No matches in "+BenchmarkFixture.NFT_IMAGE);
+		}
+	}
+	private int detect()
+	{
+		this._dog_points.clear();
+		this._dog_detector.detect(this._pyramid,this._dog_points);
+		return this._dog_points.getLength();
+	}
+	private int extract()
+	{
+		this._query.clear();
+		this._extractor.extract(this._pyramid,this._dog_points,this._query);
+		return this._query.getLength();
+	}
+
+	/**
+	 * ガウシアンピラミッドの生成です。({@link FreakKeypointMatching#updateInputImage})
+	 */
+	@Benchmark
+	public BinomialPyramid32f pyramid()
+	{
+		this._pyramid.build(this._gs);
+		return this._pyramid;
+	}
+	/**
+	 * DoG特徴点の検出です。
+	 */
+	@Benchmark
+	public int dogDetect()
+	{
+		return this.detect();
+	}
+	/**
+	 * FREAK特徴量の計算です。
+	 */
+	@Benchmark
+	public int freakExtract()
+	{
+		return this.extract();
+	}
+	/**
+	 * 特徴点セットとキーフレームマップのマッチングと姿勢推定です。({@link FreakKeypointMatching#kpmMatching})
+	 */
+	@Benchmark
+	public boolean kpmMatching()
+	{
+		return this._kpm.kpmMatching(this._keymap,this._tmat);
+	}
+	/**
+	 * 画像入力から姿勢推定までの全体です。
+	 */
+	@Benchmark
+	public boolean kpmTotal()
+	{
+		this._kpm.updateInputImage(this._gs);
+		this._kpm.updateFeatureSet();
+		return this._kpm.kpmMatching(this._keymap,this._tmat);
+	}
+
+	/**
+	 * ハフ投票の実装毎のステートです。
+	 */
+	@State(Scope.Thread)
+	public static class HoughState
+	{
+		@Param({"BASE","O1","O2","O3"})
+		public String impl;
+		private HoughSimilarityVoting _base;
+		private HoughSimilarityVoting_O1 _o1;
+		private HoughSimilarityVoting_O2 _o2;
+		private HoughSimilarityVoting_O3 _o3;
+		/** extractMatchesは入力を書き換えるので、毎回ここに対応点をコピーする*/
+		public final FeaturePairStack work=new FeaturePairStack(MAX_FEATURES);
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			double dx=W+(W*0.2f);
+			double dy=H+(H*0.2f);
+			if(this.impl.equals("BASE")){
+				this._base=new HoughSimilarityVoting(-dx,dx,-dy,dy,12,10);
+			}else if(this.impl.equals("O1")){
+				this._o1=new HoughSimilarityVoting_O1(-dx,dx,-dy,dy,12,10);
+			}else if(this.impl.equals("O2")){
+				this._o2=new HoughSimilarityVoting_O2(-dx,dx,-dy,dy,12,10);
+			}else{
+				this._o3=new HoughSimilarityVoting_O3(-dx,dx,-dy,dy,12,10);
+			}
+		}
+		public boolean extractMatches(FeaturePairStack i_matches,int i_ref_w,int i_ref_h)
+		{
+			FeaturePairStack.Item[] src=i_matches.getArray();
+			this.work.clear();
+			for(int i=0;i<i_matches.getLength();i++){
+				FeaturePairStack.Item t=this.work.prePush();
+				t.query=src[i].query;
+				t.ref=src[i].ref;
+			}
+			if(this._base!=null){
+				return this._base.extractMatches(this.work,i_ref_w,i_ref_h);
+			}else if(this._o1!=null){
+				return this._o1.extractMatches(this.work,i_ref_w,i_ref_h);
+			}else if(this._o2!=null){
+				return this._o2.extractMatches(this.work,i_ref_w,i_ref_h);
+			}
+			return this._o3.extractMatches(this.work,i_ref_w,i_ref_h);
+		}
+	}
+	/**
+	 * 最初のキーフレームに対する対応点のハフ投票です。
+	 */
+	@Benchmark
+	public boolean houghVoting(HoughState s)
+	{
+		return s.extractMatches(this._matches,this._keyframe.width(),this._keyframe.height());
+	}
+
+	/**
+	 * 階層クラスタ探索の実装毎のステートです。
+	 */
+	@State(Scope.Thread)
+	public static class SelectorState
+	{
+		@Param({"BASE","O1","O2"})
+		public String impl;
+		private BinaryHierarchicalSelector _base;
+		private BinaryHierarchicalSelector_O1 _o1;
+		private BinaryHierarchicalSelector_O2 _o2;
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			//BinaryHirerarchialClusteringMatcherと同じパラメータ
+			if(this.impl.equals("BASE")){
+				this._base=new BinaryHierarchicalSelector(8,100);
+			}else if(this.impl.equals("O1")){
+				this._o1=new BinaryHierarchicalSelector_O1(8,100);
+			}else{
+				this._o2=new BinaryHierarchicalSelector_O2(8,100);
+			}
+		}
+		public int query(BinaryHierarchicalNode i_node,FreakFeaturePoint i_point)
+		{
+			if(this._base!=null){
+				return this._base.query(i_node,i_point.descripter);
+			}else if(this._o1!=null){
+				return this._o1.query(i_node,i_point.descripter);
+			}
+			return this._o2.query(i_node,i_point.descripter);
+		}
+	}
+	/**
+	 * 全ての特徴点について、最初のキーフレームのインデクスから候補点を探索します。
+	 */
+	@Benchmark
+	public int hierarchicalQuery(SelectorState s)
+	{
+		BinaryHierarchicalNode index=this._keyframe.getIndex();
+		FreakFeaturePoint[] q=this._query.getArray();
+		int n=0;
+		for(int i=this._query.getLength()-1;i>=0;i--){
+			n+=s.query(index,q[i]);
+		}
+		return n;
+	}
+}
@@ -0,0 +1,328 @@
+package jp.nyatla.nyartoolkit.utils.benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jp.nyatla.nyartoolkit.core.NyARRuntimeException;
+import jp.nyatla.nyartoolkit.core.coord2liner.NyARCoord2Linear;
+import jp.nyatla.nyartoolkit.core.histogram.NyARHistogram;
+import jp.nyatla.nyartoolkit.core.histogram.algo.NyARHistogramAnalyzer_SlidePTile;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.NyIdMarkerParam;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.NyIdMarkerPattern;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.NyIdMarkerPickup;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.data.NyIdMarkerDataEncoder_RawBitId;
+import jp.nyatla.nyartoolkit.core.marker.nyidmarker.data.NyIdMarkerData_RawBitId;
+import jp.nyatla.nyartoolkit.core.param.NyARParam;
+import jp.nyatla.nyartoolkit.core.raster.gs.INyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.gs.NyARGrayscaleRaster;
+import jp.nyatla.nyartoolkit.core.raster.rgb.INyARRgbRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.histogram.INyARHistogramFromRaster;
+import jp.nyatla.nyartoolkit.core.rasterdriver.rgb2gs.INyARRgb2GsFilter;
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquare;
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector;
+import jp.nyatla.nyartoolkit.core.rasterdriver.squaredetect.NyARSquareContourDetector_Rle;
+import jp.nyatla.nyartoolkit.core.transmat.INyARTransMat;
+import jp.nyatla.nyartoolkit.core.transmat.NyARRectOffset;
+import jp.nyatla.nyartoolkit.core.transmat.NyARTransMatResultParam;
+import jp.nyatla.nyartoolkit.core.types.NyARBufferType;
+import jp.nyatla.nyartoolkit.core.types.NyARIntCoordinates;
+import jp.nyatla.nyartoolkit.core.types.NyARIntSize;
+import jp.nyatla.nyartoolkit.core.types.matrix.NyARDoubleMatrix44;
+import jp.nyatla.nyartoolkit.markersystem.NyARMarkerSystem;
+import jp.nyatla.nyartoolkit.markersystem.NyARMarkerSystemConfig;
+import jp.nyatla.nyartoolkit.markersystem.NyARSensor;
+
+/**
+ * ARマーカ検出パイプラインの各ステージを計測するJMHベンチマークです。
+ * 入力は../Data/320x240ABGR.rawとpatt.hiroで、{@link NyARMarkerSystem#update}の処理を
+ * グレースケール変換、ヒストグラム、閾値、矩形検出、輪郭線計算、姿勢推定、NyId読出しに分けて計測します。
+ * 全体の処理時間は{@link #markerSystemUpdate}で計測します。
+ * <p>
+ * 矩形検出はラベリングの実装({@link LabelingState#mode})毎に、
+ * 姿勢推定は{@link NyARMarkerSystemConfig}の計算アルゴリズム({@link TransMatState#algo})毎に計測します。
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=10,time=1)
+@Fork(1)
+public class MarkerPipelineBenchmark
+{
+	private final static int W=320;
+	private final static int H=240;
+
+	private INyARRgbRaster _rgb;
+	private INyARGrayscaleRaster _gs;
+	private INyARRgb2GsFilter _rgb2gs;
+	private INyARHistogramFromRaster _hist_drv;
+	private NyARHistogram _hist;
+	private NyARHistogramAnalyzer_SlidePTile _hist_th;
+	private int _th;
+	private NyARParam _param;
+	private NyARCoord2Linear _coordline;
+	/** 試験画像から検出した最初の矩形の輪郭線*/
+	private final NyARIntCoordinates _contour=new NyARIntCoordinates(W*H/4);
+	private final int[] _vertex_index=new int[4];
+	private final NyARSquare _square=new NyARSquare();
+	//NyId
+	private INyARGrayscaleRaster _nyid_gs;
+	private final NyARSquare _nyid_square=new NyARSquare();
+	private final NyIdMarkerPickup _nyid_pickup=new NyIdMarkerPickup();
+	private final NyIdMarkerPattern _nyid_patt=new NyIdMarkerPattern();
+	private final NyIdMarkerParam _nyid_param=new NyIdMarkerParam();
+	private final NyIdMarkerDataEncoder_RawBitId _nyid_encoder=new NyIdMarkerDataEncoder_RawBitId();
+	private final NyIdMarkerData_RawBitId _nyid_data=new NyIdMarkerData_RawBitId();
+	//MarkerSystem
+	private NyARSensor _sensor;
+	private NyARMarkerSystem _ms;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		this._rgb=BenchmarkFixture.loadRgbRaster(BenchmarkFixture.MARKER_IMAGE,W,H,NyARBufferType.BYTE1D_B8G8R8X8_32);
+		this._gs=NyARGrayscaleRaster.createInstance(W,H);
+		this._rgb2gs=(INyARRgb2GsFilter)this._rgb.createInterface(INyARRgb2GsFilter.class);
+		this._rgb2gs.convert(this._gs);
+		this._hist_drv=(INyARHistogramFromRaster)this._gs.createInterface(INyARHistogramFromRaster.class);
+		this._hist=new NyARHistogram(256);
+		this._hist_drv.createHistogram(4,this._hist);
+		this._hist_th=new NyARHistogramAnalyzer_SlidePTile(15);
+		this._th=this._hist_th.getThreshold(this._hist);
+		this._param=NyARParam.loadFromARParamFile(BenchmarkFixture.openDataFile(BenchmarkFixture.CAMERA_PARA),W,H);
+		this._coordline=new NyARCoord2Linear(this._param.getScreenSize(),this._param.getDistortionFactor());
+		//最初の矩形を記録
+		if(!detectFirstSquare(this._gs,this._th,this._contour,this._vertex_index,this._square)){
+			throw new NyARRuntimeException("No square in "+BenchmarkFixture.MARKER_IMAGE);
+		}
+		//NyId
+		this._nyid_gs=BenchmarkFixture.loadGsRaster(BenchmarkFixture.NYID_IMAGE,W,H,NyARBufferType.BYTE1D_R8G8B8_24);
+		{
+			NyARHistogram h=new NyARHistogram(256);
+			((INyARHistogramFromRaster)this._nyid_gs.createInterface(INyARHistogramFromRaster.class)).createHistogram(4,h);
+			if(!detectFirstSquare(this._nyid_gs,this._hist_th.getThreshold(h),new NyARIntCoordinates(W*H/4),new int[4],this._nyid_square)){
+				throw new NyARRuntimeException("No square in "+BenchmarkFixture.NYID_IMAGE);
+			}
+		}
+		//MarkerSystem
+		NyARMarkerSystemConfig config=new NyARMarkerSystemConfig(this._param);
+		this._sensor=new NyARSensor(config.getScreenSize());
+		this._ms=new NyARMarkerSystem(config);
+		this._ms.addARMarker(BenchmarkFixture.openDataFile(BenchmarkFixture.PATT_HIRO),16,25,80);
+		this._sensor.update(this._rgb);
+	}
+	/**
+	 * i_rasterから最初に見つかった矩形の輪郭線と頂点インデクスを記録し、その矩形の4直線と頂点を計算します。
+	 */
+	private boolean detectFirstSquare(INyARGrayscaleRaster i_raster,int i_th,final NyARIntCoordinates o_coord,final int[] o_vertex_index,NyARSquare o_square)
+	{
+		final boolean[] found=new boolean[1];
+		NyARSquareContourDetector_Rle sd=new NyARSquareContourDetector_Rle(i_raster.getSize());
+		sd.detectMarker(i_raster,i_th,new NyARSquareContourDetector.CbHandler(){
+			public void detectMarkerCallback(NyARIntCoordinates i_coord,int[] i_vertex_index)
+			{
+				if(found[0]){
+					return;
+				}
+				for(int i=0;i<i_coord.length;i++){
+					o_coord.items[i].x=i_coord.items[i].x;
+					o_coord.items[i].y=i_coord.items[i].y;
+				}
+				o_coord.length=i_coord.length;
+				System.arraycopy(i_vertex_index,0,o_vertex_index,0,4);
+				found[0]=true;
+			}
+		});
+		return found[0] && coord2Square(o_coord,o_vertex_index,o_square);
+	}
+	private boolean coord2Square(NyARIntCoordinates i_coord,int[] i_vertex_index,NyARSquare o_square)
+	{
+		for(int i=0;i<4;i++){
+			if(!this._coordline.coord2Line(i_vertex_index[i],i_vertex_index[(i+1)%4],i_coord,o_square.line[i])){
+				return false;
+			}
+		}
+		for(int i=0;i<4;i++){
+			if(!o_square.line[i].crossPos(o_square.line[(i+3)%4],o_square.sqvertex[i])){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * RGB画像からグレースケール画像への変換です。
+	 */
+	@Benchmark
+	public INyARGrayscaleRaster rgb2gs()
+	{
+		this._rgb2gs.convert(this._gs);
+		return this._gs;
+	}
+	/**
+	 * グレースケール画像からのヒストグラム生成です。({@link NyARSensor#getGsHistogram}と同じ間引き値)
+	 */
+	@Benchmark
+	public NyARHistogram histogram()
+	{
+		this._hist_drv.createHistogram(4,this._hist);
+		return this._hist;
+	}
+	/**
+	 * ヒストグラムからの閾値計算です。
+	 */
+	@Benchmark
+	public int threshold()
+	{
+		return this._hist_th.getThreshold(this._hist);
+	}
+	/**
+	 * 矩形の輪郭線から4直線と頂点を計算します。
+	 */
+	@Benchmark
+	public NyARSquare coord2Square()
+	{
+		this.coord2Square(this._contour,this._vertex_index,this._square);
+		return this._square;
+	}
+	/**
+	 * NyIdマーカの読出しとID値への変換です。
+	 */
+	@Benchmark
+	public long nyIdDecode()
+	{
+		if(!this._nyid_pickup.pickFromRaster(this._nyid_gs,this._nyid_square.sqvertex,this._nyid_patt,this._nyid_param)){
+			return -1;
+		}
+		if(!this._nyid_encoder.encode(this._nyid_patt,this._nyid_data)){
+			return -1;
+		}
+		return this._nyid_data.marker_id;
+	}
+	/**
+	 * {@link NyARMarkerSystem#update}の全体です。
+	 * センサのタイムスタンプを更新するので、グレースケール画像とヒストグラムのキャッシュは毎回作り直されます。
+	 */
+	@Benchmark
+	public void markerSystemUpdate(Blackhole bh)
+	{
+		this._sensor.updateTimeStamp();
+		this._ms.update(this._sensor);
+		bh.consume(this._ms);
+	}
+
+	/**
+	 * ラベリング実装毎の矩形検出のステートです。
+	 */
+	@State(Scope.Thread)
+	public static class LabelingState
+	{
+		/**
+		 * ラベリングの実装です。
+		 * SERIAL=標準,PARALLEL=ストリップ並列({@link NyARSquareContourDetector_Rle#setParallelMode}),ARRAY=配列版({@link NyARSquareContourDetector_Rle#setArrayLabelingEngine})
+		 */
+		@Param({"SERIAL","PARALLEL","ARRAY"})
+		public String mode;
+		public NyARSquareContourDetector_Rle detector;
+		/** 検出した矩形の数を数えるハンドラ*/
+		public final CountHandler handler=new CountHandler();
+		private ForkJoinPool _pool;
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			this.detector=new NyARSquareContourDetector_Rle(new NyARIntSize(W,H));
+			if(this.mode.equals("PARALLEL")){
+				this._pool=new ForkJoinPool();
+				this.detector.setParallelMode(this._pool,this._pool.getParallelism());
+			}else if(this.mode.equals("ARRAY")){
+				this.detector.setArrayLabelingEngine(true);
+			}
+		}
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			if(this._pool!=null){
+				this._pool.shutdown();
+			}
+		}
+	}
+	private static class CountHandler implements NyARSquareContourDetector.CbHandler
+	{
+		public int count;
+		public void detectMarkerCallback(NyARIntCoordinates i_coord,int[] i_vertex_index)
+		{
+			this.count++;
+		}
+	}
+	/**
+	 * ラベリングと輪郭線抽出を含む矩形検出です。戻り値は検出した矩形の数です。
+	 */
+	@Benchmark
+	public int squareDetect(LabelingState s)
+	{
+		s.handler.count=0;
+		s.detector.detectMarker(this._gs,this._th,s.handler);
+		return s.handler.count;
+	}
+
+	/**
+	 * 姿勢推定アルゴリズム毎のステートです。
+	 */
+	@State(Scope.Thread)
+	public static class TransMatState
+	{
+		/**
+		 * {@link NyARMarkerSystemConfig#TM_ARTKV2},{@link NyARMarkerSystemConfig#TM_NYARTK},{@link NyARMarkerSystemConfig#TM_ARTKICP}の何れか。
+		 */
+		@Param({"1","2","3"})
+		public int algo;
+		public INyARTransMat transmat;
+		public final NyARRectOffset offset=new NyARRectOffset();
+		public final NyARDoubleMatrix44 prev=new NyARDoubleMatrix44();
+		public final NyARDoubleMatrix44 result=new NyARDoubleMatrix44();
+		public final NyARTransMatResultParam param=new NyARTransMatResultParam();
+		@Setup(Level.Trial)
+		public void setup(MarkerPipelineBenchmark i_parent)
+		{
+			this.transmat=new NyARMarkerSystemConfig(i_parent._param,this.algo).createTransmatAlgorism();
+			this.offset.setSquare(80);
+			if(!this.transmat.transMat(i_parent._square,this.offset,this.prev,this.param)){
+				throw new NyARRuntimeException("transMat failed.");
+			}
+		}
+	}
+	/**
+	 * 初回の姿勢推定です。
+	 */
+	@Benchmark
+	public NyARDoubleMatrix44 transMat(TransMatState s)
+	{
+		s.transmat.transMat(this._square,s.offset,s.result,s.param);
+		return s.result;
+	}
+	/**
+	 * 前回の姿勢を使った継続姿勢推定です。
+	 */
+	@Benchmark
+	public NyARDoubleMatrix44 transMatContinue(TransMatState s)
+	{
+		s.transmat.transMatContinue(this._square,s.offset,s.prev,s.param.last_error,s.result,s.param);
+		return s.result;
+	}
+}